@@ -9,16 +9,16 @@ package hr.fer.zemris.java.custom.scripting.elems;
 public class ElementConstantInteger extends Element {
 
 	/**
-	 * <code>Long</code> value that element contains
+	 * <code>long</code> value that element contains
 	 */
-	private Long value;
+	private long value;
 	
 	/**
 	 * Constructor for creating new <code>ElementConstantInteger</code>.
 	 * 
-	 * @param value <code>Long</code> value that is stored in element
+	 * @param value <code>long</code> value that is stored in element
 	 */
-	public ElementConstantInteger(Long value) {
+	public ElementConstantInteger(long value) {
 		this.value = value;
 	}
 	
@@ -30,9 +30,9 @@ public class ElementConstantInteger extends Element {
 	/**
 	 * Method returns value that element contains
 	 * 
-	 * @return <code>Long</code> value of element
+	 * @return <code>long</code> value of element
 	 */
-	public Long getValue() {
+	public long getValue() {
 		return value;
 	}
 	
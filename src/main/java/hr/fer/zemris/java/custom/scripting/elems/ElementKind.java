@@ -0,0 +1,34 @@
+package hr.fer.zemris.java.custom.scripting.elems;
+
+/**
+ * Class represents different kinds of elements of tags.
+ * 
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public enum ElementKind {
+	/**
+	 * represents <code>ElementVariable</code>
+	 */
+	VARIABLE,
+	/**
+	 * represents <code>ElementConstantInteger</code>
+	 */
+	CONSTANT_INTEGER,
+	/**
+	 * represents <code>ElementConstantDouble</code>
+	 */
+	CONSTANT_DOUBLE,
+	/**
+	 * represents <code>ElementString</code>
+	 */
+	STRING,
+	/**
+	 * represents <code>ElementFunction</code>
+	 */
+	FUNCTION,
+	/**
+	 * represents <code>ElementOperator</code>
+	 */
+	OPERATOR
+}
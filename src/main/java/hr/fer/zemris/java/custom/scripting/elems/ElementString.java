@@ -9,30 +9,40 @@ package hr.fer.zemris.java.custom.scripting.elems;
 public class ElementString extends Element {
 
 	/**
-	 * string value of element
+	 * string value of element, either a <code>String</code> or a slice of parsed text
 	 */
-	private String value;
+	private CharSequence value;
 	
 	/**
 	 * Constructor for creating new <code>ElementString</code>.
 	 * 
-	 * @param value <code>String</code> value of element
+	 * @param value value of element
 	 */
-	public ElementString(String value) {
+	public ElementString(CharSequence value) {
 		this.value = value;
 	}
 	
 	@Override
 	public String asText() {
-		return value;
+		return getValue();
 	}
 	
 	/**
-	 * Method returns string value of element.
+	 * Method returns string value of element. If element references a slice of parsed text,
+	 * new <code>String</code> is created on every call.
 	 * 
 	 * @return <code>String</code> that element contains.
 	 */
 	public String getValue() {
+		return value == null ? null : value.toString();
+	}
+	
+	/**
+	 * Method returns value of element without copying it.
+	 * 
+	 * @return <code>CharSequence</code> that element contains
+	 */
+	public CharSequence getValueSequence() {
 		return value;
 	}
 	
@@ -0,0 +1,881 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class writes a minimal JVM class file: constant pool, fields and methods with their code.
+ * Class files have version 49, which is verified by type inference, so no stack map frames
+ * are written. Only instructions that template compiler needs are supported, and every one
+ * of them updates stack depth, so maximal stack and locals of methods are computed as code is written.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+final class ClassFileWriter {
+
+	/**
+	 * public access flag
+	 */
+	static final int ACC_PUBLIC = 0x0001;
+	/**
+	 * private access flag
+	 */
+	static final int ACC_PRIVATE = 0x0002;
+	/**
+	 * final access flag
+	 */
+	static final int ACC_FINAL = 0x0010;
+	/**
+	 * flag of classes that use new semantics of <code>invokespecial</code>
+	 */
+	static final int ACC_SUPER = 0x0020;
+
+	/**
+	 * opcode that pushes integer 0, the following opcodes push integers up to 5
+	 */
+	static final int ICONST_0 = 0x03;
+	/**
+	 * opcode that pushes long 0, the next one pushes 1
+	 */
+	static final int LCONST_0 = 0x09;
+	/**
+	 * opcode that pushes double 0
+	 */
+	static final int DCONST_0 = 0x0e;
+	/**
+	 * opcode that pushes byte
+	 */
+	static final int BIPUSH = 0x10;
+	/**
+	 * opcode that pushes short
+	 */
+	static final int SIPUSH = 0x11;
+	/**
+	 * opcode that pushes constant with one byte index
+	 */
+	static final int LDC = 0x12;
+	/**
+	 * opcode that pushes constant with two byte index
+	 */
+	static final int LDC_W = 0x13;
+	/**
+	 * opcode that pushes long or double constant
+	 */
+	static final int LDC2_W = 0x14;
+	/**
+	 * opcode that loads long from local variable
+	 */
+	static final int LLOAD = 0x16;
+	/**
+	 * opcode that loads double from local variable
+	 */
+	static final int DLOAD = 0x18;
+	/**
+	 * opcode that loads reference from local variable
+	 */
+	static final int ALOAD = 0x19;
+	/**
+	 * opcode that loads reference from array
+	 */
+	static final int AALOAD = 0x32;
+	/**
+	 * opcode that stores long into local variable
+	 */
+	static final int LSTORE = 0x37;
+	/**
+	 * opcode that stores double into local variable
+	 */
+	static final int DSTORE = 0x39;
+	/**
+	 * opcode that stores reference into local variable
+	 */
+	static final int ASTORE = 0x3a;
+	/**
+	 * opcode that stores reference into array
+	 */
+	static final int AASTORE = 0x53;
+	/**
+	 * opcode that pops one value
+	 */
+	static final int POP = 0x57;
+	/**
+	 * opcode that duplicates one value
+	 */
+	static final int DUP = 0x59;
+	/**
+	 * opcode that adds longs
+	 */
+	static final int LADD = 0x61;
+	/**
+	 * opcode that adds doubles
+	 */
+	static final int DADD = 0x63;
+	/**
+	 * opcode that subtracts longs
+	 */
+	static final int LSUB = 0x65;
+	/**
+	 * opcode that subtracts doubles
+	 */
+	static final int DSUB = 0x67;
+	/**
+	 * opcode that multiplies longs
+	 */
+	static final int LMUL = 0x69;
+	/**
+	 * opcode that multiplies doubles
+	 */
+	static final int DMUL = 0x6b;
+	/**
+	 * opcode that divides doubles
+	 */
+	static final int DDIV = 0x6f;
+	/**
+	 * opcode that converts long to double
+	 */
+	static final int L2D = 0x8a;
+	/**
+	 * opcode that compares longs
+	 */
+	static final int LCMP = 0x94;
+	/**
+	 * opcode that compares doubles, -1 if either is NaN
+	 */
+	static final int DCMPL = 0x97;
+	/**
+	 * opcode that compares doubles, 1 if either is NaN
+	 */
+	static final int DCMPG = 0x98;
+	/**
+	 * opcode that jumps if integer is zero
+	 */
+	static final int IFEQ = 0x99;
+	/**
+	 * opcode that jumps if integer is negative
+	 */
+	static final int IFLT = 0x9b;
+	/**
+	 * opcode that jumps if integer is positive
+	 */
+	static final int IFGT = 0x9d;
+	/**
+	 * opcode that jumps unconditionally
+	 */
+	static final int GOTO = 0xa7;
+	/**
+	 * opcode that returns from <code>void</code> method
+	 */
+	static final int RETURN = 0xb1;
+	/**
+	 * opcode that reads instance field
+	 */
+	static final int GETFIELD = 0xb4;
+	/**
+	 * opcode that writes instance field
+	 */
+	static final int PUTFIELD = 0xb5;
+	/**
+	 * opcode that invokes instance method
+	 */
+	static final int INVOKEVIRTUAL = 0xb6;
+	/**
+	 * opcode that invokes constructor or private method
+	 */
+	static final int INVOKESPECIAL = 0xb7;
+	/**
+	 * opcode that invokes static method
+	 */
+	static final int INVOKESTATIC = 0xb8;
+	/**
+	 * opcode that creates array of references
+	 */
+	static final int ANEWARRAY = 0xbd;
+	/**
+	 * opcode that throws exception
+	 */
+	static final int ATHROW = 0xbf;
+	/**
+	 * opcode that checks type of reference
+	 */
+	static final int CHECKCAST = 0xc0;
+
+	/**
+	 * maximal length of code of one method
+	 */
+	static final int MAX_CODE_LENGTH = 65535;
+
+	/**
+	 * constant pool, one entry per index, <code>null</code> after long and double constants
+	 */
+	private final List<byte[]> pool = new ArrayList<>();
+	/**
+	 * indexes of constant pool entries by their content
+	 */
+	private final Map<String, Integer> poolIndexes = new HashMap<>();
+	/**
+	 * internal name of written class
+	 */
+	private final String className;
+	/**
+	 * constant pool index of written class
+	 */
+	private final int thisClass;
+	/**
+	 * constant pool index of super class
+	 */
+	private final int superClass;
+	/**
+	 * constant pool indexes of implemented interfaces
+	 */
+	private final int[] interfaces;
+	/**
+	 * written fields, each as access flags, name index and descriptor index
+	 */
+	private final List<int[]> fields = new ArrayList<>();
+	/**
+	 * written methods
+	 */
+	private final List<Code> methods = new ArrayList<>();
+
+	/**
+	 * Constructor for creating new <code>ClassFileWriter</code>.
+	 *
+	 * @param className  internal name of written class
+	 * @param superName  internal name of its super class
+	 * @param interfaces internal names of interfaces it implements
+	 */
+	ClassFileWriter(String className, String superName, String... interfaces) {
+		// index 0 of constant pool is not used
+		pool.add(null);
+		this.className = className;
+		thisClass = classConstant(className);
+		superClass = classConstant(superName);
+		this.interfaces = new int[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			this.interfaces[i] = classConstant(interfaces[i]);
+		}
+	}
+
+	/**
+	 * Returns internal name of written class.
+	 *
+	 * @return internal name
+	 */
+	String getClassName() {
+		return className;
+	}
+
+	/**
+	 * Method adds field to written class.
+	 *
+	 * @param access     access flags
+	 * @param name       name of field
+	 * @param descriptor descriptor of field
+	 */
+	void addField(int access, String name, String descriptor) {
+		fields.add(new int[] { access, utf8(name), utf8(descriptor) });
+	}
+
+	/**
+	 * Method adds method to written class and returns its code, that is written afterwards.
+	 *
+	 * @param access     access flags
+	 * @param name       name of method
+	 * @param descriptor descriptor of method
+	 * @return           code of new method
+	 */
+	Code addMethod(int access, String name, String descriptor) {
+		Code code = new Code(access, name, descriptor);
+		methods.add(code);
+		return code;
+	}
+
+	/**
+	 * Method returns bytes of written class file.
+	 *
+	 * @return class file
+	 * @throws IllegalStateException if code of some method is too long or constant pool is too large
+	 */
+	byte[] toByteArray() {
+		int codeAttribute = utf8("Code");
+		if (pool.size() > 0xFFFF)
+			throw new IllegalStateException("Constant pool is too large");
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			out.writeShort(pool.size());
+			for (byte[] entry : pool) {
+				if (entry != null)
+					out.write(entry);
+			}
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.length);
+			for (int index : interfaces) {
+				out.writeShort(index);
+			}
+
+			out.writeShort(fields.size());
+			for (int[] field : fields) {
+				out.writeShort(field[0]);
+				out.writeShort(field[1]);
+				out.writeShort(field[2]);
+				out.writeShort(0);
+			}
+
+			out.writeShort(methods.size());
+			for (Code method : methods) {
+				if (method.length > MAX_CODE_LENGTH)
+					throw new IllegalStateException("Code of method " + method.name + " is too long");
+				out.writeShort(method.access);
+				out.writeShort(method.nameIndex);
+				out.writeShort(method.descriptorIndex);
+				out.writeShort(1);
+				out.writeShort(codeAttribute);
+				out.writeInt(12 + method.length);
+				out.writeShort(method.maxStack);
+				out.writeShort(method.maxLocals);
+				out.writeInt(method.length);
+				out.write(method.code, 0, method.length);
+				// no exception table and no attributes of code
+				out.writeShort(0);
+				out.writeShort(0);
+			}
+			out.writeShort(0);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Method returns index of constant pool entry with given content, adding the entry if it is missing.
+	 *
+	 * @param key   content of entry that identifies it
+	 * @param entry bytes of entry
+	 * @param wide  <code>true</code> for long and double constants, which take two indexes
+	 * @return      index of entry
+	 */
+	private int constant(String key, byte[] entry, boolean wide) {
+		Integer index = poolIndexes.get(key);
+		if (index != null)
+			return index;
+
+		index = pool.size();
+		pool.add(entry);
+		if (wide)
+			pool.add(null);
+		poolIndexes.put(key, index);
+		return index;
+	}
+
+	/**
+	 * Method returns index of UTF-8 constant.
+	 *
+	 * @param text text of constant
+	 * @return     index of constant
+	 */
+	int utf8(String text) {
+		String key = "U" + text;
+		Integer index = poolIndexes.get(key);
+		if (index != null)
+			return index;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(1);
+			out.writeUTF(text);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return constant(key, bytes.toByteArray(), false);
+	}
+
+	/**
+	 * Method returns index of class constant.
+	 *
+	 * @param internalName internal name of class
+	 * @return             index of constant
+	 */
+	int classConstant(String internalName) {
+		return constant("C" + internalName, entry(7, utf8(internalName)), false);
+	}
+
+	/**
+	 * Method returns index of string constant.
+	 *
+	 * @param text value of constant
+	 * @return     index of constant
+	 */
+	int stringConstant(String text) {
+		return constant("S" + text, entry(8, utf8(text)), false);
+	}
+
+	/**
+	 * Method returns index of long constant.
+	 *
+	 * @param value value of constant
+	 * @return      index of constant
+	 */
+	int longConstant(long value) {
+		return constant("J" + value, wideEntry(5, value), true);
+	}
+
+	/**
+	 * Method returns index of double constant.
+	 *
+	 * @param value value of constant
+	 * @return      index of constant
+	 */
+	int doubleConstant(double value) {
+		long bits = Double.doubleToRawLongBits(value);
+		return constant("D" + bits, wideEntry(6, bits), true);
+	}
+
+	/**
+	 * Method returns index of field or method reference.
+	 *
+	 * @param tag        tag of reference
+	 * @param owner      internal name of class that declares the member
+	 * @param name       name of member
+	 * @param descriptor descriptor of member
+	 * @return           index of reference
+	 */
+	private int memberConstant(int tag, String owner, String name, String descriptor) {
+		int nameAndType = constant("N" + name + ' ' + descriptor, entry(12, utf8(name), utf8(descriptor)), false);
+		return constant("M" + tag + owner + '.' + name + descriptor, entry(tag, classConstant(owner), nameAndType), false);
+	}
+
+	/**
+	 * Helper method that creates constant pool entry with given tag and two byte indexes.
+	 *
+	 * @param tag     tag of entry
+	 * @param indexes indexes that follow the tag
+	 * @return        bytes of entry
+	 */
+	private static byte[] entry(int tag, int... indexes) {
+		byte[] entry = new byte[1 + 2 * indexes.length];
+		entry[0] = (byte) tag;
+		for (int i = 0; i < indexes.length; i++) {
+			entry[1 + 2 * i] = (byte) (indexes[i] >> 8);
+			entry[2 + 2 * i] = (byte) indexes[i];
+		}
+		return entry;
+	}
+
+	/**
+	 * Helper method that creates constant pool entry with given tag and eight byte value.
+	 *
+	 * @param tag   tag of entry
+	 * @param value value that follows the tag
+	 * @return      bytes of entry
+	 */
+	private static byte[] wideEntry(int tag, long value) {
+		byte[] entry = new byte[9];
+		entry[0] = (byte) tag;
+		for (int i = 0; i < 8; i++) {
+			entry[1 + i] = (byte) (value >> (56 - 8 * i));
+		}
+		return entry;
+	}
+
+	/**
+	 * Helper method that returns number of local variable slots that values of given descriptor take.
+	 *
+	 * @param descriptor descriptor of a type, only its first character is checked
+	 * @return           2 for long and double, 0 for void, otherwise 1
+	 */
+	private static int slots(char descriptor) {
+		return descriptor == 'J' || descriptor == 'D' ? 2 : descriptor == 'V' ? 0 : 1;
+	}
+
+	/**
+	 * Helper method that returns number of stack slots that arguments of method with given descriptor take.
+	 *
+	 * @param descriptor descriptor of method
+	 * @return           number of stack slots
+	 */
+	static int argumentSlots(String descriptor) {
+		int slots = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			slots += slots(c);
+			while (descriptor.charAt(i) == '[') {
+				i++;
+			}
+			if (descriptor.charAt(i) == 'L')
+				i = descriptor.indexOf(';', i);
+			i++;
+		}
+		return slots;
+	}
+
+	/**
+	 * Position in code that branches jump to.
+	 */
+	static final class Label {
+		/**
+		 * position of label in code, -1 if it is not placed yet
+		 */
+		private int position = -1;
+		/**
+		 * positions of branch instructions that jump to label before it is placed
+		 */
+		private int[] branches = new int[4];
+		/**
+		 * number of branch instructions in <code>branches</code>
+		 */
+		private int count;
+	}
+
+	/**
+	 * Code of one method, written instruction by instruction.
+	 */
+	final class Code {
+		/**
+		 * access flags of method
+		 */
+		private final int access;
+		/**
+		 * name of method
+		 */
+		private final String name;
+		/**
+		 * constant pool index of name of method
+		 */
+		private final int nameIndex;
+		/**
+		 * constant pool index of descriptor of method
+		 */
+		private final int descriptorIndex;
+		/**
+		 * bytes of code
+		 */
+		private byte[] code = new byte[256];
+		/**
+		 * number of written bytes
+		 */
+		private int length;
+		/**
+		 * current depth of operand stack
+		 */
+		private int stack;
+		/**
+		 * maximal depth of operand stack
+		 */
+		private int maxStack;
+		/**
+		 * number of local variable slots
+		 */
+		private int maxLocals;
+		/**
+		 * first local variable slot that is not used
+		 */
+		private int nextLocal;
+
+		/**
+		 * Constructor for creating new <code>Code</code>.
+		 *
+		 * @param access     access flags of method
+		 * @param name       name of method
+		 * @param descriptor descriptor of method
+		 */
+		private Code(int access, String name, String descriptor) {
+			this.access = access;
+			this.name = name;
+			nameIndex = utf8(name);
+			descriptorIndex = utf8(descriptor);
+			// receiver and arguments are the first locals
+			nextLocal = 1 + argumentSlots(descriptor);
+			maxLocals = nextLocal;
+		}
+
+		/**
+		 * Returns number of written bytes.
+		 *
+		 * @return length of code
+		 */
+		int length() {
+			return length;
+		}
+
+		/**
+		 * Method reserves local variable slots.
+		 *
+		 * @param slots number of slots
+		 * @return      first reserved slot
+		 */
+		int newLocal(int slots) {
+			int local = nextLocal;
+			nextLocal += slots;
+			maxLocals = Math.max(maxLocals, nextLocal);
+			return local;
+		}
+
+		/**
+		 * Returns first local variable slot that is not reserved.
+		 *
+		 * @return first free slot
+		 */
+		int mark() {
+			return nextLocal;
+		}
+
+		/**
+		 * Method releases local variable slots that were reserved after given mark.
+		 *
+		 * @param mark first free slot returned by {@link #mark()}
+		 */
+		void release(int mark) {
+			nextLocal = mark;
+		}
+
+		/**
+		 * Method writes instruction without operands.
+		 *
+		 * @param opcode     opcode of instruction
+		 * @param stackDelta change of stack depth that instruction makes
+		 */
+		void op(int opcode, int stackDelta) {
+			put(opcode);
+			adjust(stackDelta);
+			if (opcode == ATHROW || opcode == RETURN)
+				stack = 0;
+		}
+
+		/**
+		 * Method writes instruction that pushes given integer.
+		 *
+		 * @param value pushed integer
+		 */
+		void pushInt(int value) {
+			if (value >= -1 && value <= 5) {
+				put(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				put(BIPUSH);
+				put(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				put(SIPUSH);
+				putShort(value);
+			} else {
+				put(LDC_W);
+				putShort(constant("I" + value, new byte[] { 3, (byte) (value >> 24), (byte) (value >> 16),
+						(byte) (value >> 8), (byte) value }, false));
+			}
+			adjust(1);
+		}
+
+		/**
+		 * Method writes instruction that pushes given long.
+		 *
+		 * @param value pushed long
+		 */
+		void pushLong(long value) {
+			if (value == 0 || value == 1) {
+				put(LCONST_0 + (int) value);
+			} else {
+				put(LDC2_W);
+				putShort(longConstant(value));
+			}
+			adjust(2);
+		}
+
+		/**
+		 * Method writes instruction that pushes given double.
+		 *
+		 * @param value pushed double
+		 */
+		void pushDouble(double value) {
+			if (Double.doubleToRawLongBits(value) == 0) {
+				put(DCONST_0);
+			} else {
+				put(LDC2_W);
+				putShort(doubleConstant(value));
+			}
+			adjust(2);
+		}
+
+		/**
+		 * Method writes instruction that pushes given <code>String</code> constant.
+		 *
+		 * @param text pushed text, its modified UTF-8 form must fit in 65535 bytes
+		 */
+		void pushString(String text) {
+			int index = stringConstant(text);
+			if (index < 256) {
+				put(LDC);
+				put(index);
+			} else {
+				put(LDC_W);
+				putShort(index);
+			}
+			adjust(1);
+		}
+
+		/**
+		 * Method writes instruction that loads or stores local variable.
+		 *
+		 * @param opcode opcode of <code>load</code> or <code>store</code> instruction
+		 * @param local  slot of local variable
+		 */
+		void local(int opcode, int local) {
+			if (local > 255)
+				put(0xc4);
+			put(opcode);
+			if (local > 255)
+				putShort(local);
+			else
+				put(local);
+			boolean wide = opcode == LLOAD || opcode == DLOAD || opcode == LSTORE || opcode == DSTORE;
+			boolean load = opcode == LLOAD || opcode == DLOAD || opcode == ALOAD;
+			adjust((wide ? 2 : 1) * (load ? 1 : -1));
+			maxLocals = Math.max(maxLocals, local + (wide ? 2 : 1));
+		}
+
+		/**
+		 * Method writes instruction that reads or writes field.
+		 *
+		 * @param opcode     <code>GETFIELD</code> or <code>PUTFIELD</code>
+		 * @param owner      internal name of class that declares the field
+		 * @param name       name of field
+		 * @param descriptor descriptor of field
+		 */
+		void field(int opcode, String owner, String name, String descriptor) {
+			put(opcode);
+			putShort(memberConstant(9, owner, name, descriptor));
+			int size = slots(descriptor.charAt(0));
+			adjust(opcode == GETFIELD ? size - 1 : -size - 1);
+		}
+
+		/**
+		 * Method writes instruction that invokes method of a class.
+		 *
+		 * @param opcode     <code>INVOKESTATIC</code>, <code>INVOKESPECIAL</code> or <code>INVOKEVIRTUAL</code>
+		 * @param owner      internal name of class that declares the method
+		 * @param name       name of method
+		 * @param descriptor descriptor of method
+		 */
+		void invoke(int opcode, String owner, String name, String descriptor) {
+			put(opcode);
+			putShort(memberConstant(10, owner, name, descriptor));
+			int arguments = argumentSlots(descriptor) + (opcode == INVOKESTATIC ? 0 : 1);
+			adjust(slots(descriptor.charAt(descriptor.indexOf(')') + 1)) - arguments);
+		}
+
+		/**
+		 * Method writes instruction that checks type of reference on the stack.
+		 *
+		 * @param internalName internal name of class
+		 */
+		void checkCast(String internalName) {
+			put(CHECKCAST);
+			putShort(classConstant(internalName));
+		}
+
+		/**
+		 * Method writes instruction that creates array of references with length on the stack.
+		 *
+		 * @param internalName internal name of class of elements
+		 */
+		void newArray(String internalName) {
+			put(ANEWARRAY);
+			putShort(classConstant(internalName));
+		}
+
+		/**
+		 * Method writes branch instruction that jumps to given label.
+		 *
+		 * @param opcode     opcode of branch
+		 * @param label      target of branch
+		 * @param stackDelta change of stack depth that branch makes
+		 */
+		void jump(int opcode, Label label, int stackDelta) {
+			int position = length;
+			put(opcode);
+			if (label.position >= 0) {
+				putShort(offset(label.position - position));
+			} else {
+				if (label.count == label.branches.length)
+					label.branches = Arrays.copyOf(label.branches, label.count * 2);
+				label.branches[label.count++] = position;
+				putShort(0);
+			}
+			adjust(stackDelta);
+		}
+
+		/**
+		 * Method places given label at the current position. Stack must be empty there.
+		 *
+		 * @param label label that is placed
+		 */
+		void place(Label label) {
+			label.position = length;
+			for (int i = 0; i < label.count; i++) {
+				int branch = label.branches[i];
+				int offset = offset(length - branch);
+				code[branch + 1] = (byte) (offset >> 8);
+				code[branch + 2] = (byte) offset;
+			}
+			label.count = 0;
+			stack = 0;
+		}
+
+		/**
+		 * Helper method that checks that offset of a branch fits in two bytes.
+		 *
+		 * @param offset offset of branch target from branch instruction
+		 * @return       <code>offset</code>
+		 * @throws IllegalStateException if offset does not fit
+		 */
+		private int offset(int offset) {
+			if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+				throw new IllegalStateException("Branch in method " + name + " is too long");
+			return offset;
+		}
+
+		/**
+		 * Helper method that changes stack depth.
+		 *
+		 * @param delta change of stack depth
+		 */
+		private void adjust(int delta) {
+			stack += delta;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		/**
+		 * Helper method that writes one byte.
+		 *
+		 * @param value byte that is written
+		 */
+		private void put(int value) {
+			if (length == code.length)
+				code = Arrays.copyOf(code, length * 2);
+			code[length++] = (byte) value;
+		}
+
+		/**
+		 * Helper method that writes two bytes.
+		 *
+		 * @param value two bytes that are written, higher first
+		 */
+		private void putShort(int value) {
+			put(value >> 8);
+			put(value);
+		}
+	}
+
+}
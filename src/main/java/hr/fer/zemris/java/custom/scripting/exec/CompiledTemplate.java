@@ -0,0 +1,27 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Interface represents template that was compiled to a class by {@link TemplateCompiler}.
+ * Compiled template keeps no state between renders, so it can be rendered by more threads at once.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public interface CompiledTemplate {
+
+	/**
+	 * Method renders template with given variables and writes its output to given <code>out</code>.
+	 * Output is the same as output of {@link SmartScriptEngine} for the same syntax tree.
+	 *
+	 * @param variables values of variables that are not FOR loop variables
+	 * @param out       output that is written to
+	 * @throws NullPointerException if <code>variables</code> or <code>out</code> is <code>null</code>
+	 * @throws SmartScriptEngineException if template can not be executed
+	 * @throws IOException if output can not be written
+	 */
+	void render(Map<String, ?> variables, Appendable out) throws IOException;
+
+}
@@ -0,0 +1,620 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Class optimizes syntax tree of a document before it is rendered, so that renderer visits
+ * fewer nodes and evaluates fewer operations. Optimized document renders exactly the same
+ * output and throws the same errors as the original one:
+ * <ul>
+ * <li>operations and functions in ECHO tags whose operands are constants are evaluated, and
+ * ECHO tags that are left with constants only become text,</li>
+ * <li>FOR loops whose constant bounds give no iterations are removed,</li>
+ * <li>FOR loops with constant bounds whose body is small enough are unrolled, with the loop
+ * variable replaced by its value in every copy of the body,</li>
+ * <li>adjacent text nodes are merged into one.</li>
+ * </ul>
+ * Operations that fail, like division of integers by zero, are left for the renderer.
+ * Functions are resolved in the registry that document is optimized for, and besides built-in
+ * functions only pure custom functions are evaluated. Original tree is not changed; nodes that
+ * are not changed are shared with the optimized tree. Optimized tree does not keep lengths of
+ * source of its nodes, so it is meant for rendering and not for editing.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class DocumentOptimizer {
+
+	/**
+	 * greatest number of nodes that unrolled FOR loop is replaced with
+	 */
+	private static final int MAX_UNROLLED_NODES = 32;
+
+	/**
+	 * registry that functions are resolved in
+	 */
+	private final FunctionRegistry registry;
+
+	/**
+	 * Constructor for creating new <code>DocumentOptimizer</code>.
+	 *
+	 * @param registry registry that functions are resolved in
+	 */
+	private DocumentOptimizer(FunctionRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Method optimizes syntax tree with given root for rendering with built-in functions only.
+	 *
+	 * @param documentNode root of syntax tree
+	 * @return             root of optimized syntax tree
+	 * @throws NullPointerException if <code>documentNode</code> is <code>null</code>
+	 */
+	public static DocumentNode optimize(DocumentNode documentNode) {
+		return optimize(documentNode, new FunctionRegistry());
+	}
+
+	/**
+	 * Method optimizes syntax tree with given root for rendering with functions from given registry.
+	 * Bodies of lazily parsed FOR loops that are unrolled are parsed while the tree is optimized,
+	 * so their errors are thrown by this method. Bodies of other FOR loops are optimized when
+	 * they are first accessed.
+	 *
+	 * @param documentNode root of syntax tree
+	 * @param registry     registry that functions are resolved in
+	 * @return             root of optimized syntax tree
+	 * @throws NullPointerException if <code>documentNode</code> or <code>registry</code> is <code>null</code>
+	 */
+	public static DocumentNode optimize(DocumentNode documentNode, FunctionRegistry registry) {
+		if (documentNode == null)
+			throw new NullPointerException("Document node must not be null");
+		if (registry == null)
+			throw new NullPointerException("Function registry must not be null");
+
+		DocumentNode optimized = new DocumentNode();
+		Children children = new Children(optimized);
+		new DocumentOptimizer(registry).optimizeChildren(documentNode, Collections.<String, Element>emptyMap(),
+				children);
+		children.flush();
+		return optimized;
+	}
+
+	/**
+	 * Method optimizes children of given node and adds them to the optimized tree.
+	 *
+	 * @param node     node whose children are optimized
+	 * @param bindings values of variables of unrolled loops that are visible in the node
+	 * @param children children of optimized node that children are added to
+	 */
+	private void optimizeChildren(Node node, Map<String, Element> bindings, Children children) {
+		int count = node.numberOfChildren();
+		for (int i = 0; i < count; i++) {
+			Node child = node.getChild(i);
+			if (child instanceof TextNode) {
+				children.addText((TextNode) child);
+			} else if (child instanceof EchoNode) {
+				optimizeEcho((EchoNode) child, bindings, children);
+			} else if (child instanceof ForLoopNode) {
+				optimizeForLoop((ForLoopNode) child, bindings, children);
+			} else {
+				// renderer executes children of other nodes in their place
+				optimizeChildren(child, bindings, children);
+			}
+		}
+	}
+
+	/**
+	 * Method optimizes ECHO tag. Tag whose elements are folded to constants is replaced with
+	 * text it writes.
+	 *
+	 * @param echoNode ECHO tag
+	 * @param bindings values of variables of unrolled loops
+	 * @param children children of optimized node that tag is added to
+	 */
+	private void optimizeEcho(EchoNode echoNode, Map<String, Element> bindings, Children children) {
+		Element[] original = echoNode.getElements();
+		Element[] elements = fold(substitute(original, bindings));
+
+		StringBuilder sb = new StringBuilder();
+		for (Element element : elements) {
+			Object value = constant(element);
+			if (value == null) {
+				children.add(elements == original ? echoNode : new EchoNode(elements));
+				return;
+			}
+			sb.append(value);
+		}
+		children.addValue(sb);
+	}
+
+	/**
+	 * Method optimizes FOR loop. Loop with constant bounds is removed if it has no iterations,
+	 * and unrolled if it is small enough. Other loops are kept with optimized bodies.
+	 *
+	 * @param forNode  FOR loop
+	 * @param bindings values of variables of unrolled loops
+	 * @param children children of optimized node that loop is added to
+	 */
+	private void optimizeForLoop(ForLoopNode forNode, Map<String, Element> bindings, Children children) {
+		Element start = substitute(forNode.getStartExpression(), bindings);
+		Element end = substitute(forNode.getEndExpression(), bindings);
+		Element step = forNode.getStepExpression() == null ? null : substitute(forNode.getStepExpression(), bindings);
+		String name = forNode.getVariable().getName();
+
+		List<Element> values = loopValues(start, end, step);
+		if (values != null) {
+			if (values.isEmpty())
+				return;
+			if (values.size() * (long) size(forNode) <= MAX_UNROLLED_NODES) {
+				for (Element value : values) {
+					Map<String, Element> inner = new HashMap<>(bindings);
+					inner.put(name, value);
+					optimizeChildren(forNode, inner, children);
+				}
+				return;
+			}
+		}
+
+		Map<String, Element> inner = bindings;
+		if (bindings.containsKey(name)) {
+			// loop variable hides variable of unrolled loop in the body
+			inner = new HashMap<>(bindings);
+			inner.remove(name);
+		}
+		Map<String, Element> bodyBindings = inner;
+		ForLoopNode optimized = new ForLoopNode(forNode.getVariable(), start, end, step);
+		if (forNode.hasParsedChildren()) {
+			optimizeBody(forNode, bodyBindings, optimized);
+		} else {
+			optimized.setChildrenParser(node -> optimizeBody(forNode, bodyBindings, node));
+		}
+		children.add(optimized);
+	}
+
+	/**
+	 * Method optimizes body of FOR loop that is kept.
+	 *
+	 * @param forNode   original FOR loop
+	 * @param bindings  values of variables of unrolled loops that are visible in the body
+	 * @param optimized optimized FOR loop that children are added to
+	 */
+	private void optimizeBody(ForLoopNode forNode, Map<String, Element> bindings, Node optimized) {
+		Children body = new Children(optimized);
+		optimizeChildren(forNode, bindings, body);
+		body.flush();
+	}
+
+	/**
+	 * Method folds operations and functions whose operands are constants. Values on the stack
+	 * are followed while elements are folded; folding stops at the first element that would
+	 * throw an error regardless of values, and remaining elements are kept as they are.
+	 *
+	 * @param elements elements of ECHO tag
+	 * @return         folded elements, given array if nothing was folded
+	 */
+	private Element[] fold(Element[] elements) {
+		List<Element> folded = new ArrayList<>(elements.length);
+		// values on the stack, null if value is known only when tag is rendered
+		List<Object> stack = new ArrayList<>();
+		// number of values at the top of the stack that are pushed by last constants in folded
+		int constants = 0;
+		boolean changed = false;
+
+		int index = 0;
+		for (; index < elements.length; index++) {
+			Element element = elements[index];
+			Object value = constant(element);
+			if (value != null || element instanceof ElementVariable) {
+				folded.add(element);
+				stack.add(value);
+				constants = value == null ? 0 : constants + 1;
+				continue;
+			}
+
+			int arity;
+			Object result;
+			if (element instanceof ElementOperator) {
+				String symbol = ((ElementOperator) element).getValue();
+				if (stack.size() < 2 || symbol == null || symbol.length() != 1 || "+-*/^".indexOf(symbol.charAt(0)) < 0)
+					break;
+				arity = 2;
+				result = constants < 2 ? null : operate(stack.get(stack.size() - 2), stack.get(stack.size() - 1),
+						symbol.charAt(0));
+			} else if (element instanceof ElementFunction) {
+				FunctionRegistry.Function function = registry.lookup(((ElementFunction) element).getValue());
+				if (function == null || stack.size() < function.arity)
+					break;
+				arity = function.arity;
+				int size = stack.size();
+				if (function.opcode == EchoProgram.DUP && constants >= 1) {
+					folded.add(folded.get(folded.size() - 1));
+					stack.add(stack.get(size - 1));
+					constants++;
+					changed = true;
+					continue;
+				}
+				if (function.opcode == EchoProgram.SWAP && constants >= 2) {
+					folded.add(folded.remove(folded.size() - 2));
+					stack.add(stack.remove(size - 2));
+					changed = true;
+					continue;
+				}
+				if (function.opcode == EchoProgram.DUP || function.opcode == EchoProgram.SWAP) {
+					// values below the top are not folded any more, so they need not be rearranged
+					folded.add(element);
+					if (function.opcode == EchoProgram.DUP)
+						stack.add(null);
+					constants = 0;
+					continue;
+				}
+				result = constants < arity ? null : apply(function, stack.subList(size - arity, size));
+			} else {
+				break;
+			}
+
+			stack.subList(stack.size() - arity, stack.size()).clear();
+			if (result == null) {
+				folded.add(element);
+				stack.add(null);
+				constants = 0;
+			} else {
+				folded.subList(folded.size() - arity, folded.size()).clear();
+				folded.add(element(result));
+				stack.add(result);
+				constants = constants - arity + 1;
+				changed = true;
+			}
+		}
+
+		if (!changed)
+			return elements;
+		for (; index < elements.length; index++) {
+			folded.add(elements[index]);
+		}
+		return folded.toArray(new Element[folded.size()]);
+	}
+
+	/**
+	 * Helper method that applies operator to constant operands.
+	 *
+	 * @param x        first operand
+	 * @param y        second operand
+	 * @param operator operator character
+	 * @return         result, <code>null</code> if it can not be folded
+	 */
+	private static Object operate(Object x, Object y, char operator) {
+		try {
+			return folded(TemplateRuntime.operate(x, y, operator));
+		} catch (SmartScriptEngineException ex) {
+			// error is thrown when the tag is rendered
+			return null;
+		}
+	}
+
+	/**
+	 * Helper method that applies function, other than <code>dup</code> and <code>swap</code>,
+	 * to constant arguments.
+	 *
+	 * @param function  applied function
+	 * @param arguments constant arguments
+	 * @return          result, <code>null</code> if it can not be folded
+	 */
+	private static Object apply(FunctionRegistry.Function function, List<Object> arguments) {
+		try {
+			switch (function.opcode) {
+			case EchoProgram.SIN:
+				return folded(TemplateRuntime.sin(TemplateRuntime.toDouble(arguments.get(0))));
+			case EchoProgram.DECFMT:
+				return TemplateRuntime.decfmt(arguments.get(0), arguments.get(1));
+			default:
+				return function.pure ? folded(function.invoke(arguments.toArray())) : null;
+			}
+		} catch (SmartScriptEngineException ex) {
+			// error is thrown when the tag is rendered
+			return null;
+		}
+	}
+
+	/**
+	 * Helper method that checks if result of folding can be written as a constant.
+	 *
+	 * @param result result of operation or function
+	 * @return       result as <code>Long</code>, <code>Double</code> or <code>String</code>, <code>null</code>
+	 *               if it is not an integer, a finite floating point number or a string
+	 */
+	private static Object folded(Object result) {
+		if (result instanceof Long || result instanceof Integer || result instanceof Short || result instanceof Byte)
+			return ((Number) result).longValue();
+		if (result instanceof Double || result instanceof Float) {
+			double value = ((Number) result).doubleValue();
+			return Double.isInfinite(value) || Double.isNaN(value) ? null : value;
+		}
+		return result instanceof String ? result : null;
+	}
+
+	/**
+	 * Method returns values of variable of FOR loop with constant bounds, computed the way
+	 * renderer computes them.
+	 *
+	 * @param start start of loop
+	 * @param end   end of loop
+	 * @param step  step of loop, <code>null</code> for step 1
+	 * @return      constants with values of variable, <code>null</code> if a bound is not constant,
+	 *              step is zero or loop has too many iterations to be unrolled
+	 */
+	private static List<Element> loopValues(Element start, Element end, Element step) {
+		Number first = number(start);
+		Number last = number(end);
+		Number increment = step == null ? Long.valueOf(1) : number(step);
+		if (first == null || last == null || increment == null)
+			return null;
+
+		List<Element> values = new ArrayList<>();
+		if (first instanceof Long && last instanceof Long && increment instanceof Long) {
+			long value = first.longValue();
+			long limit = last.longValue();
+			long delta = increment.longValue();
+			if (delta == 0)
+				return null;
+			while (delta > 0 ? value <= limit : value >= limit) {
+				if (values.size() == MAX_UNROLLED_NODES)
+					return null;
+				values.add(new ElementConstantInteger(value));
+				long next = value + delta;
+				if (delta > 0 ? next < value : next > value)
+					break;
+				value = next;
+			}
+		} else {
+			double value = first.doubleValue();
+			double limit = last.doubleValue();
+			double delta = increment.doubleValue();
+			if (delta == 0 || Double.isNaN(delta))
+				return null;
+			while (delta > 0 ? value <= limit : value >= limit) {
+				if (values.size() == MAX_UNROLLED_NODES || Double.isInfinite(value))
+					return null;
+				values.add(new ElementConstantDouble(value));
+				value += delta;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Helper method that returns number of nodes in the body of given node, including nodes in
+	 * bodies of FOR loops.
+	 *
+	 * @param node node whose body is measured
+	 * @return     number of nodes
+	 */
+	private static int size(Node node) {
+		int count = node.numberOfChildren();
+		int size = count;
+		for (int i = 0; i < count && size <= MAX_UNROLLED_NODES; i++) {
+			size += size(node.getChild(i));
+		}
+		return size;
+	}
+
+	/**
+	 * Helper method that replaces variables of unrolled loops with their values.
+	 *
+	 * @param elements elements of ECHO tag
+	 * @param bindings values of variables of unrolled loops
+	 * @return         elements with replaced variables, given array if no variable was replaced
+	 */
+	private static Element[] substitute(Element[] elements, Map<String, Element> bindings) {
+		if (bindings.isEmpty())
+			return elements;
+		Element[] result = elements;
+		for (int i = 0; i < elements.length; i++) {
+			Element element = substitute(elements[i], bindings);
+			if (element != elements[i]) {
+				if (result == elements)
+					result = elements.clone();
+				result[i] = element;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method that replaces variable of unrolled loop with its value.
+	 *
+	 * @param element  element of ECHO tag or bound of FOR loop
+	 * @param bindings values of variables of unrolled loops
+	 * @return         value of variable, or given element if it is not a variable of unrolled loop
+	 */
+	private static Element substitute(Element element, Map<String, Element> bindings) {
+		if (element instanceof ElementVariable) {
+			Element value = bindings.get(((ElementVariable) element).getName());
+			if (value != null)
+				return value;
+		}
+		return element;
+	}
+
+	/**
+	 * Helper method that returns value of constant element as it is pushed onto the stack.
+	 *
+	 * @param element element of ECHO tag
+	 * @return        <code>Long</code>, <code>Double</code> or <code>String</code>, <code>null</code>
+	 *                if element is not a constant
+	 */
+	private static Object constant(Element element) {
+		if (element instanceof ElementConstantInteger)
+			return ((ElementConstantInteger) element).getValue();
+		if (element instanceof ElementConstantDouble)
+			return ((ElementConstantDouble) element).getValue();
+		if (element instanceof ElementString && ((ElementString) element).getValueSequence() != null)
+			return SmartScriptEngine.unescapeString(((ElementString) element).getValueSequence()).toString();
+		return null;
+	}
+
+	/**
+	 * Helper method that returns constant bound of FOR loop as a number.
+	 *
+	 * @param element bound of FOR loop
+	 * @return        <code>Long</code> or <code>Double</code>, <code>null</code> if bound is not a number constant
+	 */
+	private static Number number(Element element) {
+		Object value = constant(element);
+		if (value == null)
+			return null;
+		try {
+			return TemplateRuntime.number(value);
+		} catch (SmartScriptEngineException ex) {
+			// error is thrown when the loop is rendered
+			return null;
+		}
+	}
+
+	/**
+	 * Helper method that creates constant element with given value.
+	 *
+	 * @param value <code>Long</code>, <code>Double</code> or <code>String</code>
+	 * @return      constant element
+	 */
+	private static Element element(Object value) {
+		if (value instanceof Long)
+			return new ElementConstantInteger((Long) value);
+		if (value instanceof Double)
+			return new ElementConstantDouble((Double) value);
+
+		String text = (String) value;
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '\\' || c == '"')
+				sb.append('\\').append(c);
+			else if (c == '\n')
+				sb.append("\\n");
+			else if (c == '\r')
+				sb.append("\\r");
+			else if (c == '\t')
+				sb.append("\\t");
+			else
+				sb.append(c);
+		}
+		return new ElementString(sb.toString());
+	}
+
+	/**
+	 * Children of a node of optimized tree. Adjacent texts are collected and added as one text node.
+	 */
+	private static final class Children {
+		/**
+		 * node that children are added to
+		 */
+		private final Node node;
+		/**
+		 * collected text node, if it is the only collected text
+		 */
+		private TextNode text;
+		/**
+		 * collected texts as they are rendered, if there is more than one
+		 */
+		private StringBuilder merged;
+
+		/**
+		 * Constructor for creating new <code>Children</code>.
+		 *
+		 * @param node node that children are added to
+		 */
+		private Children(Node node) {
+			this.node = node;
+		}
+
+		/**
+		 * Method collects text node.
+		 *
+		 * @param textNode collected text node
+		 */
+		private void addText(TextNode textNode) {
+			CharSequence sequence = textNode.getTextSequence();
+			if (sequence == null || sequence.length() == 0)
+				return;
+			if (text == null && merged == null) {
+				text = textNode;
+				return;
+			}
+			merge().append(TemplateCompiler.unescapeText(sequence));
+		}
+
+		/**
+		 * Method collects text that ECHO tag writes.
+		 *
+		 * @param value text as it is rendered
+		 */
+		private void addValue(CharSequence value) {
+			if (value.length() > 0)
+				merge().append(value);
+		}
+
+		/**
+		 * Method adds node after collected texts.
+		 *
+		 * @param child added node
+		 */
+		private void add(Node child) {
+			flush();
+			node.addChildNode(child);
+		}
+
+		/**
+		 * Method adds collected texts as one text node.
+		 */
+		private void flush() {
+			if (text != null) {
+				node.addChildNode(text);
+			} else if (merged != null) {
+				StringBuilder sb = new StringBuilder(merged.length());
+				for (int i = 0; i < merged.length(); i++) {
+					char c = merged.charAt(i);
+					// backslash escapes the following character in text nodes
+					if (c == '\\')
+						sb.append('\\');
+					sb.append(c);
+				}
+				node.addChildNode(new TextNode(sb.toString()));
+			}
+			text = null;
+			merged = null;
+		}
+
+		/**
+		 * Helper method that starts merging texts.
+		 *
+		 * @return merged texts
+		 */
+		private StringBuilder merge() {
+			if (merged == null) {
+				merged = new StringBuilder();
+				if (text != null)
+					merged.append(TemplateCompiler.unescapeText(text.getTextSequence()));
+				text = null;
+			}
+			return merged;
+		}
+	}
+
+}
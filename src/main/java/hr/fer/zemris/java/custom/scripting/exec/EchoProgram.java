@@ -0,0 +1,704 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+
+/**
+ * Elements of ECHO tag compiled into instructions for {@link SmartScriptEngine}. Every instruction
+ * is an <code>int</code> whose lowest 8 bits are the opcode and the rest is its argument, usually
+ * an index into one of the constant arrays.
+ * <p>
+ * Since every element has a fixed effect on the stack, its depth is known at compile time, so
+ * missing operands are reported without checks at run time. Compiler also knows which values
+ * are integers: operators on two integers are compiled to instructions that skip the checks of
+ * operand kinds, and operators and <code>sin</code> on constants are computed at compile time.
+ * Loop variables are resolved to slots of loops that enclose the tag, strings are unescaped once
+ * and constant patterns of <code>decfmt</code> are resolved to their formats. Functions are
+ * resolved in a {@link FunctionRegistry}: built-in functions have their own instructions, and
+ * every call of a custom function gets its own {@link FunctionCallSite}.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+final class EchoProgram {
+
+	/**
+	 * pushes integer from <code>longs</code>
+	 */
+	static final int PUSH_LONG = 0;
+	/**
+	 * pushes double from <code>doubles</code>
+	 */
+	static final int PUSH_DOUBLE = 1;
+	/**
+	 * pushes string from <code>objects</code>
+	 */
+	static final int PUSH_OBJECT = 2;
+	/**
+	 * pushes value of loop variable in given slot
+	 */
+	static final int PUSH_LOOP = 3;
+	/**
+	 * pushes value of variable whose name is in <code>objects</code>
+	 */
+	static final int PUSH_VARIABLE = 4;
+	/**
+	 * adds two values
+	 */
+	static final int ADD = 5;
+	/**
+	 * subtracts two values
+	 */
+	static final int SUBTRACT = 6;
+	/**
+	 * multiplies two values
+	 */
+	static final int MULTIPLY = 7;
+	/**
+	 * divides two values
+	 */
+	static final int DIVIDE = 8;
+	/**
+	 * raises value to a power
+	 */
+	static final int POWER = 9;
+	/**
+	 * adds two integers
+	 */
+	static final int ADD_LONGS = 10;
+	/**
+	 * subtracts two integers
+	 */
+	static final int SUBTRACT_LONGS = 11;
+	/**
+	 * multiplies two integers
+	 */
+	static final int MULTIPLY_LONGS = 12;
+	/**
+	 * divides two integers
+	 */
+	static final int DIVIDE_LONGS = 13;
+	/**
+	 * computes sine of value in degrees
+	 */
+	static final int SIN = 14;
+	/**
+	 * formats value with pattern that is on top of it
+	 */
+	static final int DECFMT = 15;
+	/**
+	 * formats value with format from <code>objects</code>
+	 */
+	static final int DECFMT_CONSTANT = 16;
+	/**
+	 * duplicates top of the stack
+	 */
+	static final int DUP = 17;
+	/**
+	 * exchanges two values at the top of the stack
+	 */
+	static final int SWAP = 18;
+	/**
+	 * converts two values at the top of the stack to numbers
+	 */
+	static final int TO_NUMBERS = 19;
+	/**
+	 * throws exception with message from <code>objects</code>
+	 */
+	static final int FAIL = 20;
+	/**
+	 * calls custom function through call site from <code>objects</code>
+	 */
+	static final int CALL = 21;
+
+	/**
+	 * number of bits of opcode in an instruction
+	 */
+	static final int OPCODE_BITS = 8;
+	/**
+	 * mask of opcode in an instruction
+	 */
+	static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+	/**
+	 * static kind of values that are always integers
+	 */
+	private static final byte LONG = 0;
+	/**
+	 * static kind of values that are always doubles
+	 */
+	private static final byte DOUBLE = 1;
+	/**
+	 * static kind of values whose kind is known only at run time
+	 */
+	private static final byte UNKNOWN = 2;
+
+	/**
+	 * instructions
+	 */
+	final int[] code;
+	/**
+	 * integer constants
+	 */
+	final long[] longs;
+	/**
+	 * double constants
+	 */
+	final double[] doubles;
+	/**
+	 * strings, names of variables, formats, call sites and messages of errors
+	 */
+	final Object[] objects;
+	/**
+	 * maximal number of values that program keeps on the stack
+	 */
+	final int maxStack;
+
+	/**
+	 * Constructor for creating new <code>EchoProgram</code>.
+	 *
+	 * @param compiler compiler that program was compiled by
+	 */
+	private EchoProgram(Compiler compiler) {
+		code = Arrays.copyOf(compiler.code, compiler.length);
+		longs = Arrays.copyOf(compiler.longs, compiler.longCount);
+		doubles = Arrays.copyOf(compiler.doubles, compiler.doubleCount);
+		objects = compiler.objects.toArray();
+		maxStack = compiler.maxStack;
+	}
+
+	/**
+	 * Method compiles elements of ECHO tag that is inside of given FOR loops.
+	 *
+	 * @param elements  elements of ECHO tag
+	 * @param loopNames names of variables of enclosing loops, innermost last
+	 * @param loopKinds static kinds of values of loop variables, {@link #LONG} for loops that always
+	 *                  count with integers, {@link #DOUBLE} for loops that always count with doubles
+	 * @param loops     number of enclosing loops
+	 * @param formats   formats by their patterns, that constant patterns are resolved with
+	 * @param registry  registry that functions are resolved in
+	 * @return          compiled program
+	 */
+	static EchoProgram compile(Element[] elements, String[] loopNames, byte[] loopKinds, int loops,
+			Map<String, DecimalFormat> formats, FunctionRegistry registry) {
+		Compiler compiler = new Compiler(loopNames, loopKinds, loops, formats, registry);
+		for (Element element : elements) {
+			if (!compiler.compile(element))
+				break;
+		}
+		return new EchoProgram(compiler);
+	}
+
+	/**
+	 * Method returns static kind of values of variable of given FOR loop.
+	 *
+	 * @param start start of loop
+	 * @param end   end of loop
+	 * @param step  step of loop, <code>null</code> for step 1
+	 * @return      {@link #LONG} or {@link #DOUBLE} if loop always counts with integers or doubles,
+	 *              otherwise {@link #UNKNOWN}
+	 */
+	static byte loopKind(Element start, Element end, Element step) {
+		byte kind = kind(start);
+		if (kind == UNKNOWN)
+			return kind;
+		byte endKind = kind(end);
+		byte stepKind = step == null ? LONG : kind(step);
+		if (endKind == UNKNOWN || stepKind == UNKNOWN)
+			return UNKNOWN;
+		return kind == LONG && endKind == LONG && stepKind == LONG ? LONG : DOUBLE;
+	}
+
+	/**
+	 * Helper method that returns static kind of value of FOR loop bound.
+	 *
+	 * @param bound start, end or step of FOR loop
+	 * @return      {@link #LONG} or {@link #DOUBLE} for numeric constants, otherwise {@link #UNKNOWN}
+	 */
+	private static byte kind(Element bound) {
+		if (bound instanceof ElementConstantInteger)
+			return LONG;
+		return bound instanceof ElementConstantDouble ? DOUBLE : UNKNOWN;
+	}
+
+	/**
+	 * Method raises integer to integer power, result is an integer unless exponent is negative.
+	 *
+	 * @param base     base of power
+	 * @param exponent exponent
+	 * @return         <code>Long</code> or <code>Double</code> result
+	 */
+	private static Number power(long base, long exponent) {
+		if (exponent < 0)
+			return Math.pow(base, exponent);
+		long result = 1;
+		while (exponent > 0) {
+			if ((exponent & 1) != 0)
+				result *= base;
+			base *= base;
+			exponent >>= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Compiler of one ECHO tag.
+	 */
+	private static final class Compiler {
+		/**
+		 * names of variables of enclosing loops
+		 */
+		private final String[] loopNames;
+		/**
+		 * static kinds of values of loop variables
+		 */
+		private final byte[] loopKinds;
+		/**
+		 * number of enclosing loops
+		 */
+		private final int loops;
+		/**
+		 * formats by their patterns
+		 */
+		private final Map<String, DecimalFormat> formats;
+		/**
+		 * registry that functions are resolved in
+		 */
+		private final FunctionRegistry registry;
+		/**
+		 * written instructions
+		 */
+		private int[] code = new int[8];
+		/**
+		 * number of written instructions
+		 */
+		private int length;
+		/**
+		 * integer constants
+		 */
+		private long[] longs = new long[4];
+		/**
+		 * number of integer constants
+		 */
+		private int longCount;
+		/**
+		 * double constants
+		 */
+		private double[] doubles = new double[4];
+		/**
+		 * number of double constants
+		 */
+		private int doubleCount;
+		/**
+		 * other constants
+		 */
+		private final List<Object> objects = new ArrayList<>();
+		/**
+		 * static kinds of values on the stack
+		 */
+		private byte[] kinds = new byte[8];
+		/**
+		 * constant values on the stack, <code>null</code> for values that are computed
+		 */
+		private Object[] constants = new Object[8];
+		/**
+		 * number of values on the stack
+		 */
+		private int size;
+		/**
+		 * maximal number of values on the stack
+		 */
+		private int maxStack;
+
+		/**
+		 * Constructor for creating new <code>Compiler</code>.
+		 *
+		 * @param loopNames names of variables of enclosing loops
+		 * @param loopKinds static kinds of values of loop variables
+		 * @param loops     number of enclosing loops
+		 * @param formats   formats by their patterns
+		 * @param registry  registry that functions are resolved in
+		 */
+		private Compiler(String[] loopNames, byte[] loopKinds, int loops, Map<String, DecimalFormat> formats,
+				FunctionRegistry registry) {
+			this.loopNames = loopNames;
+			this.loopKinds = loopKinds;
+			this.loops = loops;
+			this.formats = formats;
+			this.registry = registry;
+		}
+
+		/**
+		 * Method compiles one element.
+		 *
+		 * @param element compiled element
+		 * @return        <code>false</code> if element always fails, so the rest of elements is not compiled
+		 */
+		private boolean compile(Element element) {
+			if (element instanceof ElementConstantInteger) {
+				pushConstant(((ElementConstantInteger) element).getValue());
+			} else if (element instanceof ElementConstantDouble) {
+				pushConstant(((ElementConstantDouble) element).getValue());
+			} else if (element instanceof ElementString) {
+				pushConstant(SmartScriptEngine.unescapeString(((ElementString) element).getValueSequence()).toString());
+			} else if (element instanceof ElementVariable) {
+				pushVariable(((ElementVariable) element).getName());
+			} else if (element instanceof ElementOperator) {
+				return compileOperator(((ElementOperator) element).getValue());
+			} else if (element instanceof ElementFunction) {
+				return compileFunction(((ElementFunction) element).getValue());
+			} else {
+				return fail("Element can not be evaluated: " + (element == null ? null : element.asText()));
+			}
+			return true;
+		}
+
+		/**
+		 * Method compiles push of value of given variable, loop variables are resolved to their slots.
+		 *
+		 * @param name name of variable
+		 */
+		private void pushVariable(String name) {
+			for (int i = loops - 1; i >= 0; i--) {
+				if (loopNames[i].equals(name)) {
+					emit(PUSH_LOOP, i);
+					push(loopKinds[i], null);
+					return;
+				}
+			}
+			emit(PUSH_VARIABLE, object(name));
+			push(UNKNOWN, null);
+		}
+
+		/**
+		 * Method compiles operator. Operator on two integers is compiled to instruction that expects
+		 * integers, and operator on two numeric constants is computed.
+		 *
+		 * @param symbol symbol of operator
+		 * @return       <code>false</code> if operator always fails
+		 */
+		private boolean compileOperator(String symbol) {
+			if (size < 2)
+				return fail("Not enough values on the stack for " + symbol);
+			char operator = symbol.length() == 1 ? symbol.charAt(0) : 0;
+			if (operator == 0 || "+-*/^".indexOf(operator) < 0) {
+				emit(TO_NUMBERS, 0);
+				return fail("Unknown operator: " + symbol);
+			}
+
+			Object x = constants[size - 2];
+			Object y = constants[size - 1];
+			if (x instanceof Long && y instanceof Long && !(operator == '/' && (Long) y == 0)) {
+				long a = (Long) x;
+				long b = (Long) y;
+				removeConstants(2);
+				switch (operator) {
+				case '+':
+					pushConstant(a + b);
+					break;
+				case '-':
+					pushConstant(a - b);
+					break;
+				case '*':
+					pushConstant(a * b);
+					break;
+				case '/':
+					pushConstant(a / b);
+					break;
+				default:
+					Number result = power(a, b);
+					if (result instanceof Long)
+						pushConstant(result.longValue());
+					else
+						pushConstant(result.doubleValue());
+				}
+				return true;
+			}
+			if (x instanceof Number && y instanceof Number && !(x instanceof Long && y instanceof Long)) {
+				double a = ((Number) x).doubleValue();
+				double b = ((Number) y).doubleValue();
+				removeConstants(2);
+				pushConstant(operator == '+' ? a + b : operator == '-' ? a - b : operator == '*' ? a * b
+						: operator == '/' ? a / b : Math.pow(a, b));
+				return true;
+			}
+
+			boolean longs = kinds[size - 2] == LONG && kinds[size - 1] == LONG;
+			byte kind = UNKNOWN;
+			switch (operator) {
+			case '+':
+				emit(longs ? ADD_LONGS : ADD, 0);
+				break;
+			case '-':
+				emit(longs ? SUBTRACT_LONGS : SUBTRACT, 0);
+				break;
+			case '*':
+				emit(longs ? MULTIPLY_LONGS : MULTIPLY, 0);
+				break;
+			case '/':
+				emit(longs ? DIVIDE_LONGS : DIVIDE, 0);
+				break;
+			default:
+				emit(POWER, 0);
+			}
+			if (longs && operator != '^')
+				kind = LONG;
+			else if (kinds[size - 2] != UNKNOWN && kinds[size - 1] != UNKNOWN && !longs)
+				kind = DOUBLE;
+			pop(2);
+			push(kind, null);
+			return true;
+		}
+
+		/**
+		 * Method compiles function.
+		 *
+		 * @param name name of function
+		 * @return     <code>false</code> if function always fails
+		 */
+		private boolean compileFunction(String name) {
+			FunctionRegistry.Function function = registry.lookup(name);
+			if (function == null)
+				return fail("Unknown function: @" + name);
+			if (size < function.arity)
+				return fail("Not enough values on the stack for @" + name);
+
+			switch (function.opcode) {
+			case SIN:
+				Object x = constants[size - 1];
+				if (x instanceof Number) {
+					removeConstants(1);
+					pushConstant(Math.sin(Math.toRadians(((Number) x).doubleValue())));
+				} else {
+					emit(SIN, 0);
+					pop(1);
+					push(DOUBLE, null);
+				}
+				return true;
+			case DECFMT:
+				DecimalFormat format = constants[size - 1] instanceof String ? format((String) constants[size - 1]) : null;
+				if (format != null) {
+					// pattern is not pushed at all
+					removeConstants(1);
+					emit(DECFMT_CONSTANT, object(format));
+					pop(1);
+				} else {
+					emit(DECFMT, 0);
+					pop(2);
+				}
+				push(UNKNOWN, null);
+				return true;
+			case DUP:
+				emit(DUP, 0);
+				push(kinds[size - 1], null);
+				return true;
+			case SWAP:
+				emit(SWAP, 0);
+				byte kind = kinds[size - 2];
+				kinds[size - 2] = kinds[size - 1];
+				kinds[size - 1] = kind;
+				constants[size - 2] = null;
+				constants[size - 1] = null;
+				return true;
+			default:
+				compileCall(function);
+				return true;
+			}
+		}
+
+		/**
+		 * Method compiles call of custom function. Pure function whose arguments are all constants
+		 * is called at compile time, unless it fails or returns something that is not a constant.
+		 *
+		 * @param function called function
+		 */
+		private void compileCall(FunctionRegistry.Function function) {
+			int arity = function.arity;
+			if (function.pure) {
+				Object[] arguments = Arrays.copyOfRange(constants, size - arity, size);
+				if (!Arrays.asList(arguments).contains(null)) {
+					Object result;
+					try {
+						result = function.invoke(arguments);
+					} catch (SmartScriptEngineException ex) {
+						// error is thrown when the call is reached
+						result = null;
+					}
+					if (result instanceof Long || result instanceof Integer || result instanceof Short
+							|| result instanceof Byte) {
+						removeConstants(arity);
+						pushConstant(((Number) result).longValue());
+						return;
+					}
+					if (result instanceof Double || result instanceof Float) {
+						removeConstants(arity);
+						pushConstant(((Number) result).doubleValue());
+						return;
+					}
+					if (result instanceof String) {
+						removeConstants(arity);
+						pushConstant((String) result);
+						return;
+					}
+				}
+			}
+			emit(CALL, object(new FunctionCallSite(registry, function.name, arity)));
+			pop(arity);
+			push(UNKNOWN, null);
+		}
+
+		/**
+		 * Method returns format with given pattern.
+		 *
+		 * @param pattern pattern of format
+		 * @return        format, <code>null</code> if pattern is not valid and error is left for run time
+		 */
+		private DecimalFormat format(String pattern) {
+			DecimalFormat format = formats.get(pattern);
+			if (format == null) {
+				try {
+					format = new DecimalFormat(pattern, DecimalFormatSymbols.getInstance(Locale.ROOT));
+				} catch (IllegalArgumentException ex) {
+					return null;
+				}
+				formats.put(pattern, format);
+			}
+			return format;
+		}
+
+		/**
+		 * Method compiles instruction that throws exception with given message.
+		 *
+		 * @param message message of exception
+		 * @return        always <code>false</code>
+		 */
+		private boolean fail(String message) {
+			emit(FAIL, object(message));
+			return false;
+		}
+
+		/**
+		 * Method compiles push of integer constant.
+		 *
+		 * @param value pushed constant
+		 */
+		private void pushConstant(long value) {
+			if (longCount == longs.length)
+				longs = Arrays.copyOf(longs, longCount * 2);
+			longs[longCount] = value;
+			emit(PUSH_LONG, longCount++);
+			push(LONG, value);
+		}
+
+		/**
+		 * Method compiles push of double constant.
+		 *
+		 * @param value pushed constant
+		 */
+		private void pushConstant(double value) {
+			if (doubleCount == doubles.length)
+				doubles = Arrays.copyOf(doubles, doubleCount * 2);
+			doubles[doubleCount] = value;
+			emit(PUSH_DOUBLE, doubleCount++);
+			push(DOUBLE, value);
+		}
+
+		/**
+		 * Method compiles push of string constant.
+		 *
+		 * @param value pushed constant
+		 */
+		private void pushConstant(String value) {
+			emit(PUSH_OBJECT, object(value));
+			push(UNKNOWN, value);
+		}
+
+		/**
+		 * Method records value that compiled code pushes.
+		 *
+		 * @param kind     static kind of value
+		 * @param constant constant value, <code>null</code> if value is computed
+		 */
+		private void push(byte kind, Object constant) {
+			if (size == kinds.length) {
+				kinds = Arrays.copyOf(kinds, size * 2);
+				constants = Arrays.copyOf(constants, size * 2);
+			}
+			kinds[size] = kind;
+			constants[size++] = constant;
+			maxStack = Math.max(maxStack, size);
+		}
+
+		/**
+		 * Method records that compiled code pops given number of values.
+		 *
+		 * @param count number of values
+		 */
+		private void pop(int count) {
+			for (int i = 0; i < count; i++) {
+				constants[--size] = null;
+			}
+		}
+
+		/**
+		 * Method removes given number of constants from the top of the stack, together with
+		 * instructions that push them. Constants at the top of the stack are always pushed by
+		 * the last instructions, since every other instruction leaves a computed value on top.
+		 *
+		 * @param count number of constants
+		 */
+		private void removeConstants(int count) {
+			for (int i = 0; i < count; i++) {
+				constants[--size] = null;
+				int instruction = code[--length];
+				switch (instruction & OPCODE_MASK) {
+				case PUSH_LONG:
+					longCount--;
+					break;
+				case PUSH_DOUBLE:
+					doubleCount--;
+					break;
+				default:
+					objects.remove(objects.size() - 1);
+				}
+			}
+		}
+
+		/**
+		 * Method returns index of new constant in <code>objects</code>.
+		 *
+		 * @param value constant
+		 * @return      index of constant
+		 */
+		private int object(Object value) {
+			objects.add(value);
+			return objects.size() - 1;
+		}
+
+		/**
+		 * Method writes instruction.
+		 *
+		 * @param opcode   opcode of instruction
+		 * @param argument argument of instruction
+		 */
+		private void emit(int opcode, int argument) {
+			if (length == code.length)
+				code = Arrays.copyOf(code, length * 2);
+			code[length++] = opcode | argument << OPCODE_BITS;
+		}
+	}
+
+}
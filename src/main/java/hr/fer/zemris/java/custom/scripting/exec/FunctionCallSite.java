@@ -0,0 +1,135 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Call of custom function at one place of a template. Call site links to the function when it
+ * is called for the first time and keeps it until the registry changes, so functions are not
+ * looked up by name on every call. Call site of pure function also keeps results of its recent
+ * calls, if the registry allows memoization.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+final class FunctionCallSite {
+
+	/**
+	 * registry that function is looked up in
+	 */
+	private final FunctionRegistry registry;
+	/**
+	 * name of called function
+	 */
+	private final String name;
+	/**
+	 * buffer for arguments, used by <code>SmartScriptEngine</code> that owns the call site
+	 */
+	final Object[] arguments;
+	/**
+	 * function that call site is linked to, <code>null</code> before the first call
+	 */
+	private volatile Link link;
+
+	/**
+	 * Constructor for creating new <code>FunctionCallSite</code>.
+	 *
+	 * @param registry registry that function is looked up in
+	 * @param name     name of called function
+	 * @param arity    number of arguments of function when call site was compiled
+	 */
+	FunctionCallSite(FunctionRegistry registry, String name, int arity) {
+		this.registry = registry;
+		this.name = name;
+		this.arguments = new Object[arity];
+	}
+
+	/**
+	 * Method calls function with given arguments.
+	 *
+	 * @param arguments arguments of function, array is not kept
+	 * @return          result of function
+	 * @throws SmartScriptEngineException if function is no longer registered with the same number
+	 *                                    of parameters, or it fails
+	 */
+	Object call(Object[] arguments) {
+		Link link = this.link;
+		if (link == null || link.version != registry.getVersion())
+			link = relink();
+
+		Map<List<Object>, Object> memo = link.memo;
+		if (memo == null)
+			return link.function.invoke(arguments);
+
+		List<Object> key = Arrays.asList(arguments.clone());
+		synchronized (memo) {
+			Object result = memo.get(key);
+			if (result != null)
+				return result;
+		}
+		Object result = link.function.invoke(arguments);
+		synchronized (memo) {
+			memo.put(key, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Method links call site to the function that is currently registered.
+	 *
+	 * @return new link
+	 */
+	private Link relink() {
+		int version = registry.getVersion();
+		FunctionRegistry.Function function = registry.lookup(name);
+		if (function == null || function.invoker == null || function.arity != arguments.length)
+			throw new SmartScriptEngineException("Function @" + name + " with " + arguments.length
+					+ " arguments is not registered");
+
+		int memoSize = function.pure ? registry.getMemoSize() : 0;
+		Link link = new Link(function, version, memoSize);
+		this.link = link;
+		return link;
+	}
+
+	/**
+	 * Function that call site is linked to, with version of registry it was found in.
+	 */
+	private static final class Link {
+		/**
+		 * linked function
+		 */
+		private final FunctionRegistry.Function function;
+		/**
+		 * version of registry that function was found in
+		 */
+		private final int version;
+		/**
+		 * recent results by their arguments, least recently used first, <code>null</code> if results are not kept
+		 */
+		private final Map<List<Object>, Object> memo;
+
+		/**
+		 * Constructor for creating new <code>Link</code>.
+		 *
+		 * @param function linked function
+		 * @param version  version of registry that function was found in
+		 * @param memoSize number of results that are kept
+		 */
+		private Link(FunctionRegistry.Function function, int version, int memoSize) {
+			this.function = function;
+			this.version = version;
+			this.memo = memoSize == 0 ? null : new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+					return size() > memoSize;
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of functions that ECHO tags can call with <code>@name</code>. Every registry
+ * contains built-in functions <code>sin</code>, <code>decfmt</code>, <code>dup</code> and
+ * <code>swap</code>, which are compiled to their own instructions. Custom functions are given
+ * as <code>MethodHandle</code>s, whose number of parameters is the number of values they take
+ * from the stack. Custom function with the name of a built-in function replaces it.
+ * <p>
+ * Functions are resolved when ECHO tags are compiled, so unknown functions and calls without
+ * enough values on the stack are found before anything is evaluated. Every call site then keeps
+ * the function it was linked to and links again only when the registry changes.
+ * <p>
+ * Arguments are passed to custom functions as <code>Long</code>, <code>Double</code>,
+ * <code>String</code> or the value of a variable, and converted to parameter types of the handle
+ * the way <code>MethodHandle.asType</code> converts them. Result is pushed onto the stack like
+ * value of a variable. Pure functions, whose result depends only on their arguments, are called
+ * at compile time when all arguments are constants, and if memoization is turned on with
+ * {@link #setMemoSize(int)}, their results for other arguments are kept in a bounded cache of
+ * every call site. Registry can be changed while templates are rendered in other threads.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class FunctionRegistry {
+
+	/**
+	 * registered functions by their names
+	 */
+	private final Map<String, Function> functions = new ConcurrentHashMap<>();
+	/**
+	 * number of changes of registry, call sites link again when it changes. Every change gets
+	 * its own version, so call site that linked between two concurrent changes links again.
+	 */
+	private final AtomicInteger version = new AtomicInteger();
+	/**
+	 * number of results of pure function that every call site keeps, 0 if results are not kept
+	 */
+	private volatile int memoSize;
+
+	/**
+	 * Constructor for creating new <code>FunctionRegistry</code> with built-in functions.
+	 */
+	public FunctionRegistry() {
+		builtIn("sin", 1, EchoProgram.SIN);
+		builtIn("decfmt", 2, EchoProgram.DECFMT);
+		builtIn("dup", 1, EchoProgram.DUP);
+		builtIn("swap", 2, EchoProgram.SWAP);
+	}
+
+	/**
+	 * Helper method that registers built-in function.
+	 *
+	 * @param name   name of function
+	 * @param arity  number of values that function needs on the stack
+	 * @param opcode instruction that function is compiled to
+	 */
+	private void builtIn(String name, int arity, int opcode) {
+		functions.put(name, new Function(name, arity, false, opcode, null));
+	}
+
+	/**
+	 * Method registers custom function, or replaces function with the same name.
+	 *
+	 * @param name   name of function, as it is written after <code>@</code>
+	 * @param handle implementation of function, every parameter takes one value from the stack
+	 * @param pure   <code>true</code> if result depends only on arguments and function has no side effects
+	 * @return       this registry
+	 * @throws NullPointerException if <code>name</code> or <code>handle</code> is <code>null</code>
+	 * @throws IllegalArgumentException if <code>name</code> is not a valid function name
+	 *                                  or <code>handle</code> returns <code>void</code>
+	 */
+	public FunctionRegistry register(String name, MethodHandle handle, boolean pure) {
+		if (name == null)
+			throw new NullPointerException("Name of function must not be null");
+		if (handle == null)
+			throw new NullPointerException("Method handle must not be null");
+		if (!isValidName(name))
+			throw new IllegalArgumentException("Invalid function name: " + name);
+		if (handle.type().returnType() == void.class)
+			throw new IllegalArgumentException("Function " + name + " must return a value");
+
+		if (handle.isVarargsCollector())
+			handle = handle.asFixedArity();
+		int arity = handle.type().parameterCount();
+		MethodHandle invoker = handle.asType(MethodType.genericMethodType(arity)).asSpreader(Object[].class, arity);
+		functions.put(name, new Function(name, arity, pure, -1, invoker));
+		version.incrementAndGet();
+		return this;
+	}
+
+	/**
+	 * Method sets number of results of pure functions that every call site keeps.
+	 * Calls of pure functions are not memoized by default.
+	 *
+	 * @param memoSize number of results, 0 turns memoization off
+	 * @return         this registry
+	 * @throws IllegalArgumentException if <code>memoSize</code> is negative
+	 */
+	public FunctionRegistry setMemoSize(int memoSize) {
+		if (memoSize < 0)
+			throw new IllegalArgumentException("Memo size must not be negative, was " + memoSize);
+		this.memoSize = memoSize;
+		version.incrementAndGet();
+		return this;
+	}
+
+	/**
+	 * Method checks if registry contains function with given name.
+	 *
+	 * @param name name of function
+	 * @return     <code>true</code> if function is registered
+	 */
+	public boolean contains(String name) {
+		return name != null && functions.containsKey(name);
+	}
+
+	/**
+	 * Method returns function with given name.
+	 *
+	 * @param name name of function
+	 * @return     function, <code>null</code> if it is not registered
+	 */
+	Function lookup(String name) {
+		return functions.get(name);
+	}
+
+	/**
+	 * Returns number of changes of registry.
+	 *
+	 * @return version of registry
+	 */
+	int getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Returns number of results of pure function that every call site keeps.
+	 *
+	 * @return memo size, 0 if results are not kept
+	 */
+	int getMemoSize() {
+		return memoSize;
+	}
+
+	/**
+	 * Helper method that checks if given name can be written after <code>@</code>.
+	 *
+	 * @param name checked name
+	 * @return     <code>true</code> if name starts with a letter, followed by letters, digits and underscores
+	 */
+	private static boolean isValidName(String name) {
+		if (name.isEmpty() || !Character.isLetter(name.charAt(0)))
+			return false;
+		for (int i = 1; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '_')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Function in the registry.
+	 */
+	static final class Function {
+		/**
+		 * name of function
+		 */
+		final String name;
+		/**
+		 * number of values that function takes from the stack
+		 */
+		final int arity;
+		/**
+		 * <code>true</code> if result depends only on arguments
+		 */
+		final boolean pure;
+		/**
+		 * instruction of built-in function, -1 for custom functions
+		 */
+		final int opcode;
+		/**
+		 * handle that takes arguments as <code>Object[]</code> and returns <code>Object</code>,
+		 * <code>null</code> for built-in functions
+		 */
+		final MethodHandle invoker;
+
+		/**
+		 * Constructor for creating new <code>Function</code>.
+		 *
+		 * @param name    name of function
+		 * @param arity   number of values that function takes from the stack
+		 * @param pure    <code>true</code> if result depends only on arguments
+		 * @param opcode  instruction of built-in function, -1 for custom functions
+		 * @param invoker handle that takes arguments as an array
+		 */
+		private Function(String name, int arity, boolean pure, int opcode, MethodHandle invoker) {
+			this.name = name;
+			this.arity = arity;
+			this.pure = pure;
+			this.opcode = opcode;
+			this.invoker = invoker;
+		}
+
+		/**
+		 * Method calls custom function.
+		 *
+		 * @param arguments arguments of function
+		 * @return          result of function
+		 * @throws SmartScriptEngineException if function fails or returns <code>null</code>
+		 */
+		Object invoke(Object[] arguments) {
+			Object result;
+			try {
+				result = (Object) invoker.invokeExact(arguments);
+			} catch (SmartScriptEngineException | Error ex) {
+				throw ex;
+			} catch (Throwable ex) {
+				throw new SmartScriptEngineException("Function @" + name + " failed: " + ex, ex);
+			}
+			if (result == null)
+				throw new SmartScriptEngineException("Function @" + name + " returned null");
+			return result;
+		}
+	}
+
+}
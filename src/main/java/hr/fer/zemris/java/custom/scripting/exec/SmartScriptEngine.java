@@ -0,0 +1,994 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.FieldPosition;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.lexer.TextSlice;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Class executes syntax tree of a document against given variables and streams its output
+ * to an <code>Appendable</code>, usually a <code>Writer</code>.
+ * <p>
+ * Text is written as it is, without backslashes that escape the following character.
+ * FOR loop sets its variable to the start value and executes its body while the variable
+ * is not greater than the end value (not less than it for negative step), adding step after
+ * every iteration. ECHO tag is evaluated as a stack machine: constants, strings and variables
+ * are pushed, operators pop two operands and push the result, functions pop their arguments
+ * and push their results. Values left on the stack are written from bottom to top.
+ * <p>
+ * Built-in functions are <code>sin(x)</code> of <code>x</code> in degrees, <code>decfmt(x, f)</code>
+ * that formats <code>x</code> with <code>DecimalFormat</code> pattern <code>f</code>,
+ * <code>dup</code> that duplicates the top of the stack and <code>swap</code> that exchanges
+ * two values at the top of the stack. Custom functions can be added with a {@link FunctionRegistry}.
+ * Arithmetic on two integers gives an integer, otherwise a double. Strings are converted to
+ * numbers when they are used as operands.
+ * <p>
+ * Integers and doubles are kept on the stack without boxing, and texts are written straight
+ * from the parsed document, so no intermediate <code>String</code>s are built for them.
+ * ECHO tags are compiled into {@link EchoProgram}s when they are executed for the first time,
+ * and results of <code>decfmt</code> are formatted into reused buffers, so evaluation of
+ * ECHO tags allocates nothing but what <code>DecimalFormat</code> allocates itself.
+ * Engine reuses its buffers and compiled tags between executions, so it must not be used by
+ * more threads at once. Syntax tree itself is not changed and can be shared between engines,
+ * but a node must not be a child of more nodes.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class SmartScriptEngine {
+
+	/**
+	 * kind of stack value that is held in <code>longs</code>
+	 */
+	private static final byte LONG = 0;
+	/**
+	 * kind of stack value that is held in <code>doubles</code>
+	 */
+	private static final byte DOUBLE = 1;
+	/**
+	 * kind of stack value that is held in <code>objects</code>
+	 */
+	private static final byte OBJECT = 2;
+	/**
+	 * kind of stack value that is held in <code>formatted</code>
+	 */
+	private static final byte FORMATTED = 3;
+
+	/**
+	 * root of executed syntax tree
+	 */
+	private final DocumentNode documentNode;
+	/**
+	 * kinds of values on the stack
+	 */
+	private byte[] kinds = new byte[16];
+	/**
+	 * integer values on the stack
+	 */
+	private long[] longs = new long[16];
+	/**
+	 * double values on the stack
+	 */
+	private double[] doubles = new double[16];
+	/**
+	 * other values on the stack
+	 */
+	private Object[] objects = new Object[16];
+	/**
+	 * results of <code>decfmt</code> on the stack, buffers are kept for reuse
+	 */
+	private StringBuffer[] formatted = new StringBuffer[16];
+	/**
+	 * number of values on the stack
+	 */
+	private int size;
+	/**
+	 * index of the first stack value of ECHO tag that is evaluated
+	 */
+	private int frame;
+	/**
+	 * names of variables of FOR loops that are executed, innermost last
+	 */
+	private String[] loopNames = new String[8];
+	/**
+	 * kinds of values of loop variables
+	 */
+	private byte[] loopKinds = new byte[8];
+	/**
+	 * integer values of loop variables
+	 */
+	private long[] loopLongs = new long[8];
+	/**
+	 * double values of loop variables
+	 */
+	private double[] loopDoubles = new double[8];
+	/**
+	 * static kinds of values of loop variables, that ECHO tags are compiled with
+	 */
+	private byte[] loopTypes = new byte[8];
+	/**
+	 * number of FOR loops that are executed
+	 */
+	private int loops;
+	/**
+	 * variables given to current execution
+	 */
+	private Map<String, ?> variables;
+	/**
+	 * output of current execution
+	 */
+	private Appendable out;
+	/**
+	 * buffer that digits of integers are written into
+	 */
+	private final char[] digits = new char[20];
+	/**
+	 * <code>digits</code> as <code>CharSequence</code>, for outputs that are not <code>Writer</code>s
+	 */
+	private final CharBuffer digitSequence = CharBuffer.wrap(digits);
+	/**
+	 * formats used by <code>decfmt</code>, by their patterns
+	 */
+	private final Map<String, DecimalFormat> formats = new HashMap<>();
+	/**
+	 * field position that <code>DecimalFormat</code> needs, it is not used otherwise
+	 */
+	private final FieldPosition fieldPosition = new FieldPosition(0);
+	/**
+	 * buffer that results of <code>decfmt</code> are copied into before they are written to a <code>Writer</code>
+	 */
+	private char[] chars = new char[32];
+	/**
+	 * compiled ECHO tags
+	 */
+	private final Map<EchoNode, EchoProgram> programs = new IdentityHashMap<>();
+	/**
+	 * registry that functions are resolved in
+	 */
+	private final FunctionRegistry registry;
+	/**
+	 * version of registry that ECHO tags in <code>programs</code> were compiled with
+	 */
+	private int registryVersion;
+
+	/**
+	 * Constructor for creating new <code>SmartScriptEngine</code> with built-in functions only.
+	 *
+	 * @param documentNode root of syntax tree that is executed
+	 * @throws NullPointerException if <code>documentNode</code> is <code>null</code>
+	 */
+	public SmartScriptEngine(DocumentNode documentNode) {
+		this(documentNode, new FunctionRegistry());
+	}
+
+	/**
+	 * Constructor for creating new <code>SmartScriptEngine</code> with functions from given registry.
+	 * ECHO tags are compiled again when registry changes between executions.
+	 *
+	 * @param documentNode root of syntax tree that is executed
+	 * @param registry     registry that functions are resolved in
+	 * @throws NullPointerException if <code>documentNode</code> or <code>registry</code> is <code>null</code>
+	 */
+	public SmartScriptEngine(DocumentNode documentNode, FunctionRegistry registry) {
+		if (documentNode == null)
+			throw new NullPointerException("Document node must not be null");
+		if (registry == null)
+			throw new NullPointerException("Function registry must not be null");
+
+		this.documentNode = documentNode;
+		this.registry = registry;
+		this.registryVersion = registry.getVersion();
+	}
+
+	/**
+	 * Method executes syntax tree and writes its output to given <code>out</code>.
+	 *
+	 * @param variables values of variables that are not FOR loop variables
+	 * @param out       output that is written to
+	 * @throws NullPointerException if <code>variables</code> or <code>out</code> is <code>null</code>
+	 * @throws SmartScriptEngineException if syntax tree can not be executed
+	 * @throws IOException if output can not be written
+	 */
+	public void execute(Map<String, ?> variables, Appendable out) throws IOException {
+		if (variables == null)
+			throw new NullPointerException("Variables must not be null");
+		if (out == null)
+			throw new NullPointerException("Output must not be null");
+
+		int version = registry.getVersion();
+		if (version != registryVersion) {
+			programs.clear();
+			registryVersion = version;
+		}
+		this.variables = variables;
+		this.out = out;
+		try {
+			executeChildren(documentNode);
+		} finally {
+			Arrays.fill(objects, 0, size, null);
+			Arrays.fill(loopNames, 0, loops, null);
+			size = 0;
+			frame = 0;
+			loops = 0;
+			this.variables = null;
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Method executes children of given node in order.
+	 *
+	 * @param node node whose children are executed
+	 * @throws IOException if output can not be written
+	 */
+	private void executeChildren(Node node) throws IOException {
+		int count = node.numberOfChildren();
+		for (int i = 0; i < count; i++) {
+			Node child = node.getChild(i);
+			if (child instanceof TextNode) {
+				writeText(((TextNode) child).getTextSequence());
+			} else if (child instanceof EchoNode) {
+				executeEcho((EchoNode) child);
+			} else if (child instanceof ForLoopNode) {
+				executeForLoop((ForLoopNode) child);
+			} else {
+				executeChildren(child);
+			}
+		}
+	}
+
+	/**
+	 * Method executes FOR loop. Loop with integer start, end and step counts with integers,
+	 * otherwise with doubles.
+	 *
+	 * @param forNode FOR loop that is executed
+	 * @throws IOException if output can not be written
+	 */
+	private void executeForLoop(ForLoopNode forNode) throws IOException {
+		int base = size;
+		push(forNode.getStartExpression());
+		push(forNode.getEndExpression());
+		if (forNode.getStepExpression() == null)
+			pushLong(1);
+		else
+			push(forNode.getStepExpression());
+		toNumber(base);
+		toNumber(base + 1);
+		toNumber(base + 2);
+
+		String name = forNode.getVariable().getName();
+		byte type = EchoProgram.loopKind(forNode.getStartExpression(), forNode.getEndExpression(),
+				forNode.getStepExpression());
+		if (kinds[base] == LONG && kinds[base + 1] == LONG && kinds[base + 2] == LONG) {
+			long value = longs[base];
+			long end = longs[base + 1];
+			long step = longs[base + 2];
+			size = base;
+			if (step == 0)
+				throw new SmartScriptEngineException("Step of FOR loop " + name + " must not be zero");
+
+			int slot = bindLoopVariable(name, LONG, type);
+			while (step > 0 ? value <= end : value >= end) {
+				loopLongs[slot] = value;
+				executeChildren(forNode);
+				long next = value + step;
+				// loop ends instead of overflowing
+				if (step > 0 ? next < value : next > value)
+					break;
+				value = next;
+			}
+		} else {
+			double value = doubleAt(base);
+			double end = doubleAt(base + 1);
+			double step = doubleAt(base + 2);
+			size = base;
+			if (step == 0 || Double.isNaN(step))
+				throw new SmartScriptEngineException("Step of FOR loop " + name + " must not be zero");
+
+			int slot = bindLoopVariable(name, DOUBLE, type);
+			while (step > 0 ? value <= end : value >= end) {
+				loopDoubles[slot] = value;
+				executeChildren(forNode);
+				value += step;
+			}
+		}
+		loops--;
+		loopNames[loops] = null;
+	}
+
+	/**
+	 * Method adds variable of FOR loop that starts executing.
+	 *
+	 * @param name name of variable
+	 * @param kind kind of its values
+	 * @param type static kind of its values
+	 * @return     slot that values of variable are stored in
+	 */
+	private int bindLoopVariable(String name, byte kind, byte type) {
+		if (loops == loopNames.length) {
+			int capacity = loops * 2;
+			loopNames = Arrays.copyOf(loopNames, capacity);
+			loopKinds = Arrays.copyOf(loopKinds, capacity);
+			loopLongs = Arrays.copyOf(loopLongs, capacity);
+			loopDoubles = Arrays.copyOf(loopDoubles, capacity);
+			loopTypes = Arrays.copyOf(loopTypes, capacity);
+		}
+		loopNames[loops] = name;
+		loopKinds[loops] = kind;
+		loopTypes[loops] = type;
+		return loops++;
+	}
+
+	/**
+	 * Method evaluates ECHO tag and writes values that are left on the stack.
+	 * Tag is compiled when it is executed for the first time.
+	 *
+	 * @param echoNode ECHO tag
+	 * @throws IOException if output can not be written
+	 */
+	private void executeEcho(EchoNode echoNode) throws IOException {
+		EchoProgram program = programs.get(echoNode);
+		if (program == null) {
+			program = EchoProgram.compile(echoNode.getElements(), loopNames, loopTypes, loops, formats, registry);
+			programs.put(echoNode, program);
+		}
+
+		frame = size;
+		ensureCapacity(program.maxStack);
+		run(program);
+		for (int i = frame; i < size; i++) {
+			writeValue(i);
+		}
+		Arrays.fill(objects, frame, size, null);
+		size = frame;
+	}
+
+	/**
+	 * Method runs instructions of compiled ECHO tag. Stack has room for all values that they push.
+	 *
+	 * @param program compiled ECHO tag
+	 */
+	private void run(EchoProgram program) {
+		for (int instruction : program.code) {
+			int argument = instruction >>> EchoProgram.OPCODE_BITS;
+			switch (instruction & EchoProgram.OPCODE_MASK) {
+			case EchoProgram.PUSH_LONG:
+				kinds[size] = LONG;
+				longs[size++] = program.longs[argument];
+				break;
+			case EchoProgram.PUSH_DOUBLE:
+				kinds[size] = DOUBLE;
+				doubles[size++] = program.doubles[argument];
+				break;
+			case EchoProgram.PUSH_OBJECT:
+				kinds[size] = OBJECT;
+				objects[size++] = program.objects[argument];
+				break;
+			case EchoProgram.PUSH_LOOP:
+				if (loopKinds[argument] == LONG) {
+					kinds[size] = LONG;
+					longs[size++] = loopLongs[argument];
+				} else {
+					kinds[size] = DOUBLE;
+					doubles[size++] = loopDoubles[argument];
+				}
+				break;
+			case EchoProgram.PUSH_VARIABLE:
+				pushGivenVariable((String) program.objects[argument]);
+				break;
+			case EchoProgram.ADD:
+				applyOperator('+');
+				break;
+			case EchoProgram.SUBTRACT:
+				applyOperator('-');
+				break;
+			case EchoProgram.MULTIPLY:
+				applyOperator('*');
+				break;
+			case EchoProgram.DIVIDE:
+				applyOperator('/');
+				break;
+			case EchoProgram.POWER:
+				applyOperator('^');
+				break;
+			case EchoProgram.ADD_LONGS:
+				size--;
+				longs[size - 1] += longs[size];
+				break;
+			case EchoProgram.SUBTRACT_LONGS:
+				size--;
+				longs[size - 1] -= longs[size];
+				break;
+			case EchoProgram.MULTIPLY_LONGS:
+				size--;
+				longs[size - 1] *= longs[size];
+				break;
+			case EchoProgram.DIVIDE_LONGS:
+				size--;
+				if (longs[size] == 0)
+					throw new SmartScriptEngineException("Division by zero");
+				longs[size - 1] /= longs[size];
+				break;
+			case EchoProgram.SIN:
+				toNumber(size - 1);
+				doubles[size - 1] = Math.sin(Math.toRadians(doubleAt(size - 1)));
+				kinds[size - 1] = DOUBLE;
+				break;
+			case EchoProgram.DECFMT:
+				String pattern = stringAt(size - 1);
+				objects[--size] = null;
+				toNumber(size - 1);
+				format(size - 1, format(pattern));
+				break;
+			case EchoProgram.DECFMT_CONSTANT:
+				toNumber(size - 1);
+				format(size - 1, (DecimalFormat) program.objects[argument]);
+				break;
+			case EchoProgram.DUP:
+				duplicate();
+				break;
+			case EchoProgram.SWAP:
+				swap();
+				break;
+			case EchoProgram.TO_NUMBERS:
+				toNumber(size - 2);
+				toNumber(size - 1);
+				break;
+			case EchoProgram.CALL:
+				call((FunctionCallSite) program.objects[argument]);
+				break;
+			default:
+				throw new SmartScriptEngineException((String) program.objects[argument]);
+			}
+		}
+	}
+
+	/**
+	 * Method pushes value of given constant, string or variable onto the stack.
+	 *
+	 * @param element element whose value is pushed
+	 */
+	private void push(Element element) {
+		if (element instanceof ElementConstantInteger) {
+			pushLong(((ElementConstantInteger) element).getValue());
+		} else if (element instanceof ElementConstantDouble) {
+			pushDouble(((ElementConstantDouble) element).getValue());
+		} else if (element instanceof ElementVariable) {
+			pushVariable(((ElementVariable) element).getName());
+		} else if (element instanceof ElementString) {
+			pushObject(unescapeString(((ElementString) element).getValueSequence()));
+		} else {
+			throw new SmartScriptEngineException("Element can not be evaluated: "
+					+ (element == null ? null : element.asText()));
+		}
+	}
+
+	/**
+	 * Method pushes value of given variable, looking up loop variables first, innermost first.
+	 *
+	 * @param name name of variable
+	 */
+	private void pushVariable(String name) {
+		for (int i = loops - 1; i >= 0; i--) {
+			if (loopNames[i].equals(name)) {
+				if (loopKinds[i] == LONG)
+					pushLong(loopLongs[i]);
+				else
+					pushDouble(loopDoubles[i]);
+				return;
+			}
+		}
+		pushGivenVariable(name);
+	}
+
+	/**
+	 * Method pushes value of given variable that is not a loop variable.
+	 *
+	 * @param name name of variable
+	 */
+	private void pushGivenVariable(String name) {
+		Object value = variables.get(name);
+		if (value == null)
+			throw new SmartScriptEngineException("Variable " + name + " is not defined");
+		pushValue(value);
+	}
+
+	/**
+	 * Method pushes value of variable or result of function. Integers of all sizes are pushed as
+	 * integers, floats and doubles as doubles, and other values as objects.
+	 *
+	 * @param value pushed value
+	 */
+	private void pushValue(Object value) {
+		if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			pushLong(((Number) value).longValue());
+		} else if (value instanceof Double || value instanceof Float) {
+			pushDouble(((Number) value).doubleValue());
+		} else {
+			pushObject(value);
+		}
+	}
+
+	/**
+	 * Method pushes integer onto the stack.
+	 *
+	 * @param value pushed value
+	 */
+	private void pushLong(long value) {
+		ensureCapacity(1);
+		kinds[size] = LONG;
+		longs[size++] = value;
+	}
+
+	/**
+	 * Method pushes double onto the stack.
+	 *
+	 * @param value pushed value
+	 */
+	private void pushDouble(double value) {
+		ensureCapacity(1);
+		kinds[size] = DOUBLE;
+		doubles[size++] = value;
+	}
+
+	/**
+	 * Method pushes object onto the stack.
+	 *
+	 * @param value pushed value
+	 */
+	private void pushObject(Object value) {
+		ensureCapacity(1);
+		kinds[size] = OBJECT;
+		objects[size++] = value;
+	}
+
+	/**
+	 * Method makes room for given number of values on the stack.
+	 *
+	 * @param count number of values
+	 */
+	private void ensureCapacity(int count) {
+		if (size + count > kinds.length) {
+			int capacity = Math.max(size + count, kinds.length * 2);
+			kinds = Arrays.copyOf(kinds, capacity);
+			longs = Arrays.copyOf(longs, capacity);
+			doubles = Arrays.copyOf(doubles, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+			formatted = Arrays.copyOf(formatted, capacity);
+		}
+	}
+
+	/**
+	 * Method pops two values and pushes result of given operator applied to them.
+	 *
+	 * @param operator one of <code>+</code>, <code>-</code>, <code>*</code>, <code>/</code> and <code>^</code>
+	 */
+	private void applyOperator(char operator) {
+		int a = size - 2;
+		int b = size - 1;
+		toNumber(a);
+		toNumber(b);
+
+		if (kinds[a] == LONG && kinds[b] == LONG && !(operator == '^' && longs[b] < 0)) {
+			long x = longs[a];
+			long y = longs[b];
+			long result;
+			switch (operator) {
+			case '+':
+				result = x + y;
+				break;
+			case '-':
+				result = x - y;
+				break;
+			case '*':
+				result = x * y;
+				break;
+			case '/':
+				if (y == 0)
+					throw new SmartScriptEngineException("Division by zero");
+				result = x / y;
+				break;
+			default:
+				result = power(x, y);
+			}
+			longs[a] = result;
+		} else {
+			double x = doubleAt(a);
+			double y = doubleAt(b);
+			double result;
+			switch (operator) {
+			case '+':
+				result = x + y;
+				break;
+			case '-':
+				result = x - y;
+				break;
+			case '*':
+				result = x * y;
+				break;
+			case '/':
+				result = x / y;
+				break;
+			default:
+				result = Math.pow(x, y);
+			}
+			kinds[a] = DOUBLE;
+			doubles[a] = result;
+		}
+		size--;
+	}
+
+	/**
+	 * Method raises given integer to given non-negative integer power.
+	 *
+	 * @param base     base of power
+	 * @param exponent non-negative exponent
+	 * @return         <code>base</code> raised to <code>exponent</code>
+	 */
+	private static long power(long base, long exponent) {
+		long result = 1;
+		while (exponent > 0) {
+			if ((exponent & 1) != 0)
+				result *= base;
+			base *= base;
+			exponent >>= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Method pops arguments of custom function and pushes its result. Integers and doubles
+	 * are passed as <code>Long</code> and <code>Double</code>, results of <code>decfmt</code>
+	 * as <code>String</code>.
+	 *
+	 * @param site call site of function
+	 */
+	private void call(FunctionCallSite site) {
+		Object[] arguments = site.arguments;
+		int first = size - arguments.length;
+		for (int i = 0; i < arguments.length; i++) {
+			int index = first + i;
+			switch (kinds[index]) {
+			case LONG:
+				arguments[i] = longs[index];
+				break;
+			case DOUBLE:
+				arguments[i] = doubles[index];
+				break;
+			case FORMATTED:
+				arguments[i] = formatted[index].toString();
+				break;
+			default:
+				arguments[i] = objects[index];
+				objects[index] = null;
+			}
+		}
+		size = first;
+
+		Object result;
+		try {
+			result = site.call(arguments);
+		} finally {
+			Arrays.fill(arguments, null);
+		}
+		pushValue(result);
+	}
+
+	/**
+	 * Method formats number at given index of the stack into a reused buffer.
+	 *
+	 * @param index  index of number
+	 * @param format format that is used
+	 */
+	private void format(int index, DecimalFormat format) {
+		StringBuffer buffer = buffer(index);
+		if (kinds[index] == LONG)
+			format.format(longs[index], buffer, fieldPosition);
+		else
+			format.format(doubles[index], buffer, fieldPosition);
+		kinds[index] = FORMATTED;
+	}
+
+	/**
+	 * Method returns format with given pattern.
+	 *
+	 * @param pattern pattern of format
+	 * @return        <code>DecimalFormat</code> with the pattern
+	 */
+	private DecimalFormat format(String pattern) {
+		DecimalFormat format = formats.get(pattern);
+		if (format == null) {
+			try {
+				format = new DecimalFormat(pattern, DecimalFormatSymbols.getInstance(Locale.ROOT));
+			} catch (IllegalArgumentException ex) {
+				throw new SmartScriptEngineException("Invalid decimal format: " + pattern, ex);
+			}
+			formats.put(pattern, format);
+		}
+		return format;
+	}
+
+	/**
+	 * Method returns empty buffer for result of <code>decfmt</code> at given index of the stack.
+	 *
+	 * @param index index on the stack
+	 * @return      empty buffer
+	 */
+	private StringBuffer buffer(int index) {
+		StringBuffer buffer = formatted[index];
+		if (buffer == null)
+			formatted[index] = buffer = new StringBuffer();
+		buffer.setLength(0);
+		return buffer;
+	}
+
+	/**
+	 * Method pushes copy of value at the top of the stack.
+	 */
+	private void duplicate() {
+		int top = size - 1;
+		kinds[size] = kinds[top];
+		longs[size] = longs[top];
+		doubles[size] = doubles[top];
+		objects[size] = objects[top];
+		if (kinds[top] == FORMATTED)
+			buffer(size).append(formatted[top]);
+		size++;
+	}
+
+	/**
+	 * Method exchanges two values at the top of the stack.
+	 */
+	private void swap() {
+		int a = size - 2;
+		int b = size - 1;
+		byte kind = kinds[a];
+		kinds[a] = kinds[b];
+		kinds[b] = kind;
+		long longValue = longs[a];
+		longs[a] = longs[b];
+		longs[b] = longValue;
+		double doubleValue = doubles[a];
+		doubles[a] = doubles[b];
+		doubles[b] = doubleValue;
+		Object object = objects[a];
+		objects[a] = objects[b];
+		objects[b] = object;
+		StringBuffer buffer = formatted[a];
+		formatted[a] = formatted[b];
+		formatted[b] = buffer;
+	}
+
+	/**
+	 * Method converts object value at given index of the stack to a number. Text that contains
+	 * decimal point or exponent becomes a double, other text becomes an integer.
+	 *
+	 * @param index index of value on the stack
+	 */
+	private void toNumber(int index) {
+		if (kinds[index] == LONG || kinds[index] == DOUBLE)
+			return;
+
+		Object value = kinds[index] == FORMATTED ? formatted[index].toString() : objects[index];
+		objects[index] = null;
+		if (!(value instanceof CharSequence))
+			throw new SmartScriptEngineException("Value is not a number: " + value);
+		String text = value.toString().trim();
+		try {
+			if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0) {
+				doubles[index] = Double.parseDouble(text);
+				kinds[index] = DOUBLE;
+			} else {
+				longs[index] = Long.parseLong(text);
+				kinds[index] = LONG;
+			}
+		} catch (NumberFormatException ex) {
+			throw new SmartScriptEngineException("Value is not a number: " + text, ex);
+		}
+	}
+
+	/**
+	 * Method returns numeric value at given index of the stack as a double.
+	 *
+	 * @param index index of numeric value
+	 * @return      value as a double
+	 */
+	private double doubleAt(int index) {
+		return kinds[index] == LONG ? longs[index] : doubles[index];
+	}
+
+	/**
+	 * Method returns value at given index of the stack as a <code>String</code>.
+	 *
+	 * @param index index of value
+	 * @return      value as a <code>String</code>
+	 */
+	private String stringAt(int index) {
+		switch (kinds[index]) {
+		case LONG:
+			return Long.toString(longs[index]);
+		case DOUBLE:
+			return Double.toString(doubles[index]);
+		case FORMATTED:
+			return formatted[index].toString();
+		default:
+			return String.valueOf(objects[index]);
+		}
+	}
+
+	/**
+	 * Method returns value of string element, with escape sequences replaced by characters
+	 * they represent. Value without escape sequences is returned as it is, without copying.
+	 *
+	 * @param raw value of string element as it is written in the document
+	 * @return    value of string
+	 */
+	static CharSequence unescapeString(CharSequence raw) {
+		int length = raw.length();
+		int first = 0;
+		while (first < length && raw.charAt(first) != '\\') {
+			first++;
+		}
+		if (first == length)
+			return raw;
+
+		StringBuilder sb = new StringBuilder(length);
+		sb.append(raw, 0, first);
+		for (int i = first; i < length; i++) {
+			char c = raw.charAt(i);
+			if (c == '\\' && i + 1 < length) {
+				c = raw.charAt(++i);
+				if (c == 'n')
+					c = '\n';
+				else if (c == 'r')
+					c = '\r';
+				else if (c == 't')
+					c = '\t';
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Method writes text of a text node without backslashes that escape the following character.
+	 * Parts of text between escapes are written straight from the document.
+	 *
+	 * @param text text as it is written in the document
+	 * @throws IOException if output can not be written
+	 */
+	private void writeText(CharSequence text) throws IOException {
+		if (text == null)
+			return;
+
+		int start = 0;
+		int end = text.length();
+		if (text instanceof TextSlice) {
+			TextSlice slice = (TextSlice) text;
+			text = slice.getSource();
+			start = slice.getStart();
+			end = slice.getEnd();
+		}
+
+		int from = start;
+		for (int i = start; i < end - 1; i++) {
+			if (text.charAt(i) == '\\') {
+				write(text, from, i);
+				// escaped character starts the next part, even if it is a backslash
+				from = ++i;
+			}
+		}
+		write(text, from, end);
+	}
+
+	/**
+	 * Method writes value at given index of the stack.
+	 *
+	 * @param index index of value
+	 * @throws IOException if output can not be written
+	 */
+	private void writeValue(int index) throws IOException {
+		switch (kinds[index]) {
+		case LONG:
+			writeLong(longs[index]);
+			break;
+		case DOUBLE:
+			String text = Double.toString(doubles[index]);
+			write(text, 0, text.length());
+			break;
+		case FORMATTED:
+			StringBuffer buffer = formatted[index];
+			if (out instanceof Writer) {
+				int length = buffer.length();
+				if (chars.length < length)
+					chars = new char[Math.max(length, chars.length * 2)];
+				buffer.getChars(0, length, chars, 0);
+				((Writer) out).write(chars, 0, length);
+			} else {
+				out.append(buffer);
+			}
+			break;
+		default:
+			Object value = objects[index];
+			CharSequence sequence = value instanceof CharSequence ? (CharSequence) value : String.valueOf(value);
+			if (sequence instanceof TextSlice) {
+				TextSlice slice = (TextSlice) sequence;
+				write(slice.getSource(), slice.getStart(), slice.getEnd());
+			} else {
+				write(sequence, 0, sequence.length());
+			}
+		}
+	}
+
+	/**
+	 * Method writes decimal digits of given integer without creating a <code>String</code>.
+	 *
+	 * @param value integer that is written
+	 * @throws IOException if output can not be written
+	 */
+	private void writeLong(long value) throws IOException {
+		if (out instanceof StringBuilder) {
+			((StringBuilder) out).append(value);
+			return;
+		}
+		if (value == Long.MIN_VALUE) {
+			String text = Long.toString(value);
+			write(text, 0, text.length());
+			return;
+		}
+
+		int position = digits.length;
+		boolean negative = value < 0;
+		if (negative)
+			value = -value;
+		do {
+			digits[--position] = (char) ('0' + value % 10);
+			value /= 10;
+		} while (value != 0);
+		if (negative)
+			digits[--position] = '-';
+
+		if (out instanceof Writer)
+			((Writer) out).write(digits, position, digits.length - position);
+		else
+			out.append(digitSequence, position, digits.length);
+	}
+
+	/**
+	 * Method writes part of given text between given indexes. <code>String</code> is written
+	 * to a <code>Writer</code> directly, since <code>Writer.append</code> would copy it.
+	 *
+	 * @param text  text whose part is written
+	 * @param start index of first written character
+	 * @param end   index after last written character
+	 * @throws IOException if output can not be written
+	 */
+	private void write(CharSequence text, int start, int end) throws IOException {
+		if (start == end)
+			return;
+		if (text instanceof String && out instanceof Writer)
+			((Writer) out).write((String) text, start, end - start);
+		else
+			out.append(text, start, end);
+	}
+
+}
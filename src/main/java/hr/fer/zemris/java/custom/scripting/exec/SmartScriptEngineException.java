@@ -0,0 +1,43 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * Class represents an exception that <code>SmartScriptEngine</code> uses
+ * when syntax tree can not be executed
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class SmartScriptEngineException extends RuntimeException {
+
+	/**
+	 * default serial number
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * default constructor
+	 */
+	public SmartScriptEngineException() {
+		super();
+	}
+
+	/**
+	 * Constructor that accepts message about situation that occurred during execution
+	 *
+	 * @param message message that describes what went wrong during execution
+	 */
+	public SmartScriptEngineException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Constructor that accepts message and cause of situation that occurred during execution
+	 *
+	 * @param message message that describes what went wrong during execution
+	 * @param cause   exception that caused this one
+	 */
+	public SmartScriptEngineException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
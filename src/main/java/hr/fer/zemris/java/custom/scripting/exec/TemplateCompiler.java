@@ -0,0 +1,918 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import static hr.fer.zemris.java.custom.scripting.exec.ClassFileWriter.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Class compiles syntax tree of a document into a class that renders it, so that nodes and
+ * elements are not dispatched on every render. Texts become constant writes, with escapes already
+ * removed. FOR loops with constant bounds become counted loops over a primitive local variable,
+ * and ECHO tags become straight-line code: stack machine is evaluated at compile time, every value
+ * lives in a local variable of its static type, and integer and double arithmetic is done with
+ * JVM instructions. Values whose type is known only when template is rendered, like variables
+ * that are given to the template, are handled by {@link TemplateRuntime}.
+ * <p>
+ * Children of every FOR loop are compiled to separate methods, and long lists of children are
+ * split into more methods, so that no method gets too long. Every compiled template is loaded
+ * by its own class loader, so its class is unloaded when the template is no longer used.
+ * Output and errors of compiled template are the same as those of {@link SmartScriptEngine}.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class TemplateCompiler {
+
+	/**
+	 * static type of values that are held as <code>long</code>
+	 */
+	private static final byte LONG = 0;
+	/**
+	 * static type of values that are held as <code>double</code>
+	 */
+	private static final byte DOUBLE = 1;
+	/**
+	 * static type of values that are held as <code>Object</code>
+	 */
+	private static final byte REFERENCE = 2;
+
+	/**
+	 * internal name of class with operations that generated code calls
+	 */
+	private static final String RUNTIME = "hr/fer/zemris/java/custom/scripting/exec/TemplateRuntime";
+	/**
+	 * internal name of counter of FOR loops whose bounds are not constants
+	 */
+	private static final String LOOP = RUNTIME + "$Loop";
+	/**
+	 * prefix of internal names of generated classes
+	 */
+	private static final String CLASS_PREFIX = "hr/fer/zemris/java/custom/scripting/exec/GeneratedTemplate";
+	/**
+	 * descriptor of field with constants that are too long for constant pool
+	 */
+	private static final String CONSTANTS_DESCRIPTOR = "[Ljava/lang/Object;";
+	/**
+	 * descriptor of methods that render children of document
+	 */
+	private static final String RENDER_DESCRIPTOR = "(Ljava/util/Map;Ljava/lang/Appendable;)V";
+	/**
+	 * length of code after which children are compiled into another method
+	 */
+	private static final int CHUNK_LENGTH = 8 * 1024;
+	/**
+	 * length of longest text that is put into constant pool
+	 */
+	private static final int MAX_POOL_TEXT = 8 * 1024;
+	/**
+	 * number of classes that were generated
+	 */
+	private static final AtomicLong CLASS_COUNT = new AtomicLong();
+
+	/**
+	 * generated class
+	 */
+	private final ClassFileWriter classFile;
+	/**
+	 * registry that functions are resolved in
+	 */
+	private final FunctionRegistry registry;
+	/**
+	 * texts that are too long for constant pool and call sites of custom functions,
+	 * given to constructor of generated class
+	 */
+	private final List<Object> constants = new ArrayList<>();
+	/**
+	 * number of generated methods that render children of nodes
+	 */
+	private int methodCount;
+
+	/**
+	 * Constructor for creating new <code>TemplateCompiler</code>.
+	 *
+	 * @param className internal name of generated class
+	 * @param registry  registry that functions are resolved in
+	 */
+	private TemplateCompiler(String className, FunctionRegistry registry) {
+		this.registry = registry;
+		classFile = new ClassFileWriter(className, "java/lang/Object",
+				"hr/fer/zemris/java/custom/scripting/exec/CompiledTemplate");
+	}
+
+	/**
+	 * Method compiles syntax tree with given root, with built-in functions only. Bodies of lazily
+	 * parsed FOR loops are parsed while the tree is compiled, so their errors are thrown by this method.
+	 *
+	 * @param documentNode root of syntax tree
+	 * @return             compiled template
+	 * @throws NullPointerException if <code>documentNode</code> is <code>null</code>
+	 * @throws SmartScriptEngineException if template is too large to be compiled
+	 */
+	public static CompiledTemplate compile(DocumentNode documentNode) {
+		return compile(documentNode, new FunctionRegistry());
+	}
+
+	/**
+	 * Method compiles syntax tree with given root, with functions from given registry. Functions
+	 * are resolved and pure functions with constant arguments are called while the tree is compiled,
+	 * other calls of custom functions link again when the registry changes.
+	 *
+	 * @param documentNode root of syntax tree
+	 * @param registry     registry that functions are resolved in
+	 * @return             compiled template
+	 * @throws NullPointerException if <code>documentNode</code> or <code>registry</code> is <code>null</code>
+	 * @throws SmartScriptEngineException if template is too large to be compiled
+	 */
+	public static CompiledTemplate compile(DocumentNode documentNode, FunctionRegistry registry) {
+		if (documentNode == null)
+			throw new NullPointerException("Document node must not be null");
+		if (registry == null)
+			throw new NullPointerException("Function registry must not be null");
+
+		String className = CLASS_PREFIX + CLASS_COUNT.incrementAndGet();
+		TemplateCompiler compiler = new TemplateCompiler(className, registry);
+		byte[] bytes;
+		try {
+			bytes = compiler.compileClass(documentNode);
+		} catch (IllegalStateException ex) {
+			throw new SmartScriptEngineException("Template is too large to compile", ex);
+		}
+
+		TemplateClassLoader loader = new TemplateClassLoader(TemplateCompiler.class.getClassLoader());
+		Class<?> type = loader.define(className.replace('/', '.'), bytes);
+		try {
+			return (CompiledTemplate) type.getConstructor(Object[].class).newInstance((Object) compiler.constants.toArray());
+		} catch (ReflectiveOperationException ex) {
+			throw new SmartScriptEngineException("Compiled template can not be created", ex);
+		}
+	}
+
+	/**
+	 * Method generates class that renders syntax tree with given root.
+	 *
+	 * @param documentNode root of syntax tree
+	 * @return             class file
+	 */
+	private byte[] compileClass(DocumentNode documentNode) {
+		String className = classFile.getClassName();
+		classFile.addField(ACC_PRIVATE | ACC_FINAL, "constants", CONSTANTS_DESCRIPTOR);
+
+		ClassFileWriter.Code constructor = classFile.addMethod(ACC_PUBLIC, "<init>", "(" + CONSTANTS_DESCRIPTOR + ")V");
+		constructor.local(ALOAD, 0);
+		constructor.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+		constructor.local(ALOAD, 0);
+		constructor.local(ALOAD, 1);
+		constructor.field(PUTFIELD, className, "constants", CONSTANTS_DESCRIPTOR);
+		constructor.op(RETURN, 0);
+
+		List<Variable> scope = Collections.emptyList();
+		List<String> body = compileChildren(documentNode, scope);
+		ClassFileWriter.Code render = classFile.addMethod(ACC_PUBLIC, "render", RENDER_DESCRIPTOR);
+		render.local(ALOAD, 1);
+		render.local(ALOAD, 2);
+		render.invoke(INVOKESTATIC, RUNTIME, "checkArguments", RENDER_DESCRIPTOR);
+		invokeChildren(body, scope, render);
+		render.op(RETURN, 0);
+		return classFile.toByteArray();
+	}
+
+	/**
+	 * Method compiles children of given node into methods that are invoked one after another.
+	 * Methods take variables and output of template, followed by values of loop variables
+	 * that are visible in the node.
+	 *
+	 * @param node  node whose children are compiled
+	 * @param scope loop variables that are visible in the node, outermost first
+	 * @return      names of methods
+	 */
+	private List<String> compileChildren(Node node, List<Variable> scope) {
+		String descriptor = descriptor(scope);
+		// loop variables are arguments of generated methods
+		List<Variable> arguments = new ArrayList<>(scope.size());
+		int local = 3;
+		for (Variable variable : scope) {
+			arguments.add(new Variable(variable.name, variable.type, local));
+			local += variable.type == REFERENCE ? 1 : 2;
+		}
+
+		List<String> methods = new ArrayList<>();
+		ClassFileWriter.Code code = null;
+		int count = node.numberOfChildren();
+		for (int i = 0; i < count; i++) {
+			if (code == null) {
+				String name = "body" + methodCount++;
+				code = classFile.addMethod(ACC_PRIVATE, name, descriptor);
+				methods.add(name);
+			}
+			compileNode(node.getChild(i), arguments, code);
+			if (code.length() >= CHUNK_LENGTH) {
+				code.op(RETURN, 0);
+				code = null;
+			}
+		}
+		if (code != null)
+			code.op(RETURN, 0);
+		return methods;
+	}
+
+	/**
+	 * Method writes invocations of methods that children of a node were compiled into.
+	 *
+	 * @param methods names of methods
+	 * @param scope   loop variables that are passed to methods
+	 * @param code    code that invocations are written into
+	 */
+	private void invokeChildren(List<String> methods, List<Variable> scope, ClassFileWriter.Code code) {
+		String descriptor = descriptor(scope);
+		for (String method : methods) {
+			code.local(ALOAD, 0);
+			code.local(ALOAD, 1);
+			code.local(ALOAD, 2);
+			for (Variable variable : scope) {
+				code.local(variable.type == LONG ? LLOAD : variable.type == DOUBLE ? DLOAD : ALOAD, variable.local);
+			}
+			code.invoke(INVOKESPECIAL, classFile.getClassName(), method, descriptor);
+		}
+	}
+
+	/**
+	 * Helper method that returns descriptor of methods that take values of given loop variables.
+	 *
+	 * @param scope loop variables
+	 * @return      descriptor of methods
+	 */
+	private static String descriptor(List<Variable> scope) {
+		StringBuilder sb = new StringBuilder("(Ljava/util/Map;Ljava/lang/Appendable;");
+		for (Variable variable : scope) {
+			sb.append(variable.type == LONG ? "J" : variable.type == DOUBLE ? "D" : "Ljava/lang/Object;");
+		}
+		return sb.append(")V").toString();
+	}
+
+	/**
+	 * Method compiles given node.
+	 *
+	 * @param node  compiled node
+	 * @param scope loop variables that are visible in the node
+	 * @param code  code that node is compiled into
+	 */
+	private void compileNode(Node node, List<Variable> scope, ClassFileWriter.Code code) {
+		if (node instanceof TextNode) {
+			CharSequence text = ((TextNode) node).getTextSequence();
+			if (text == null || text.length() == 0)
+				return;
+			code.local(ALOAD, 2);
+			loadString(unescapeText(text), code);
+			code.invoke(INVOKESTATIC, RUNTIME, "write", "(Ljava/lang/Appendable;Ljava/lang/String;)V");
+		} else if (node instanceof EchoNode) {
+			compileEcho(((EchoNode) node).getElements(), scope, code);
+		} else if (node instanceof ForLoopNode) {
+			compileForLoop((ForLoopNode) node, scope, code);
+		} else {
+			for (int i = 0, count = node.numberOfChildren(); i < count; i++) {
+				compileNode(node.getChild(i), scope, code);
+			}
+		}
+	}
+
+	/**
+	 * Method compiles FOR loop. Loop whose start, end and step are constants counts with a local
+	 * <code>long</code> if all of them are integers, otherwise with a local <code>double</code>.
+	 * Other loops are counted by {@link TemplateRuntime.Loop}.
+	 *
+	 * @param forNode compiled FOR loop
+	 * @param scope   loop variables that are visible in the loop
+	 * @param code    code that loop is compiled into
+	 */
+	private void compileForLoop(ForLoopNode forNode, List<Variable> scope, ClassFileWriter.Code code) {
+		String name = forNode.getVariable().getName();
+		Element[] bounds = { forNode.getStartExpression(), forNode.getEndExpression(), forNode.getStepExpression() };
+		if (bounds[2] == null)
+			bounds[2] = new ElementConstantInteger(1);
+		for (Element bound : bounds) {
+			if (!isValue(bound)) {
+				throwError(notEvaluable(bound), code);
+				return;
+			}
+		}
+
+		int mark = code.mark();
+		Number start = constantNumber(bounds[0]);
+		Number end = constantNumber(bounds[1]);
+		Number step = constantNumber(bounds[2]);
+		if (start != null && end != null && step != null) {
+			boolean integral = start instanceof Long && end instanceof Long && step instanceof Long;
+			if (integral ? step.longValue() == 0 : step.doubleValue() == 0 || Double.isNaN(step.doubleValue())) {
+				throwError("Step of FOR loop " + name + " must not be zero", code);
+				return;
+			}
+
+			int counter = code.newLocal(2);
+			List<Variable> inner = new ArrayList<>(scope);
+			inner.add(new Variable(name, integral ? LONG : DOUBLE, counter));
+			List<String> body = compileChildren(forNode, inner);
+			if (body.isEmpty()) {
+				code.release(mark);
+				return;
+			}
+
+			boolean up = integral ? step.longValue() > 0 : step.doubleValue() > 0;
+			ClassFileWriter.Label head = new ClassFileWriter.Label();
+			ClassFileWriter.Label exit = new ClassFileWriter.Label();
+			if (integral) {
+				code.pushLong(start.longValue());
+				code.local(LSTORE, counter);
+				code.place(head);
+				code.local(LLOAD, counter);
+				code.pushLong(end.longValue());
+				code.op(LCMP, -3);
+				code.jump(up ? IFGT : IFLT, exit, -1);
+				invokeChildren(body, inner, code);
+
+				// loop ends instead of overflowing
+				int next = code.newLocal(2);
+				code.local(LLOAD, counter);
+				code.pushLong(step.longValue());
+				code.op(LADD, -2);
+				code.local(LSTORE, next);
+				code.local(LLOAD, next);
+				code.local(LLOAD, counter);
+				code.op(LCMP, -3);
+				code.jump(up ? IFLT : IFGT, exit, -1);
+				code.local(LLOAD, next);
+				code.local(LSTORE, counter);
+			} else {
+				code.pushDouble(start.doubleValue());
+				code.local(DSTORE, counter);
+				code.place(head);
+				code.local(DLOAD, counter);
+				code.pushDouble(end.doubleValue());
+				// comparison with NaN ends the loop in both directions
+				code.op(up ? DCMPG : DCMPL, -3);
+				code.jump(up ? IFGT : IFLT, exit, -1);
+				invokeChildren(body, inner, code);
+				code.local(DLOAD, counter);
+				code.pushDouble(step.doubleValue());
+				code.op(DADD, -2);
+				code.local(DSTORE, counter);
+			}
+			code.jump(GOTO, head, 0);
+			code.place(exit);
+		} else {
+			loadString(name, code);
+			for (Element bound : bounds) {
+				loadObject(value(bound, scope, code), code);
+			}
+			code.invoke(INVOKESTATIC, RUNTIME, "loop",
+					"(Ljava/lang/String;Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)L" + LOOP + ";");
+			int loop = code.newLocal(1);
+			code.local(ASTORE, loop);
+			int value = code.newLocal(1);
+			List<Variable> inner = new ArrayList<>(scope);
+			inner.add(new Variable(name, REFERENCE, value));
+			List<String> body = compileChildren(forNode, inner);
+
+			ClassFileWriter.Label head = new ClassFileWriter.Label();
+			ClassFileWriter.Label exit = new ClassFileWriter.Label();
+			code.place(head);
+			code.local(ALOAD, loop);
+			code.invoke(INVOKEVIRTUAL, LOOP, "hasNext", "()Z");
+			code.jump(IFEQ, exit, -1);
+			code.local(ALOAD, loop);
+			code.invoke(INVOKEVIRTUAL, LOOP, "next", "()Ljava/lang/Object;");
+			code.local(ASTORE, value);
+			invokeChildren(body, inner, code);
+			code.jump(GOTO, head, 0);
+			code.place(exit);
+		}
+		code.release(mark);
+	}
+
+	/**
+	 * Method returns value of given FOR loop bound if it is a constant number.
+	 *
+	 * @param bound start, end or step of FOR loop
+	 * @return      <code>Long</code> or <code>Double</code>, <code>null</code> if bound is not a constant number
+	 */
+	private static Number constantNumber(Element bound) {
+		if (bound instanceof ElementConstantInteger)
+			return ((ElementConstantInteger) bound).getValue();
+		if (bound instanceof ElementConstantDouble)
+			return ((ElementConstantDouble) bound).getValue();
+		if (bound instanceof ElementString) {
+			try {
+				return TemplateRuntime.number(SmartScriptEngine.unescapeString(((ElementString) bound).getValueSequence()));
+			} catch (SmartScriptEngineException ex) {
+				// error is thrown when loop is reached
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Method compiles ECHO tag. Stack machine is run at compile time on values whose
+	 * places are known, so that only computations of values remain in code.
+	 *
+	 * @param elements elements of ECHO tag
+	 * @param scope    loop variables that are visible in the tag
+	 * @param code     code that tag is compiled into
+	 */
+	private void compileEcho(Element[] elements, List<Variable> scope, ClassFileWriter.Code code) {
+		int mark = code.mark();
+		List<Value> stack = new ArrayList<>();
+		for (Element element : elements) {
+			if (element instanceof ElementOperator) {
+				String symbol = ((ElementOperator) element).getValue();
+				if (stack.size() < 2) {
+					throwError("Not enough values on the stack for " + symbol, code);
+					return;
+				}
+				Value y = stack.remove(stack.size() - 1);
+				Value x = stack.remove(stack.size() - 1);
+				Value result = operate(symbol, x, y, code);
+				if (result == null)
+					return;
+				stack.add(result);
+			} else if (element instanceof ElementFunction) {
+				if (!applyFunction(((ElementFunction) element).getValue(), stack, code))
+					return;
+			} else if (isValue(element)) {
+				stack.add(value(element, scope, code));
+			} else {
+				throwError(notEvaluable(element), code);
+				return;
+			}
+		}
+
+		for (Value value : stack) {
+			code.local(ALOAD, 2);
+			load(value, code);
+			code.invoke(INVOKESTATIC, RUNTIME, "write", value.type == LONG ? "(Ljava/lang/Appendable;J)V"
+					: value.type == DOUBLE ? "(Ljava/lang/Appendable;D)V" : "(Ljava/lang/Appendable;Ljava/lang/Object;)V");
+		}
+		code.release(mark);
+	}
+
+	/**
+	 * Method writes code that applies operator to two values.
+	 *
+	 * @param symbol symbol of operator
+	 * @param x      first operand
+	 * @param y      second operand
+	 * @param code   code that operation is written into
+	 * @return       result, <code>null</code> if operator is unknown and error is thrown instead
+	 */
+	private static Value operate(String symbol, Value x, Value y, ClassFileWriter.Code code) {
+		x = numeric(x);
+		y = numeric(y);
+		char operator = symbol.length() == 1 ? symbol.charAt(0) : 0;
+		if ("+-*/^".indexOf(operator) < 0 || operator == 0) {
+			// operands are still converted to numbers first
+			for (Value value : new Value[] { x, y }) {
+				if (value.type == REFERENCE) {
+					load(value, code);
+					code.invoke(INVOKESTATIC, RUNTIME, "number", "(Ljava/lang/Object;)Ljava/lang/Number;");
+					code.op(POP, -1);
+				}
+			}
+			throwError("Unknown operator: " + symbol, code);
+			return null;
+		}
+
+		if (x.type == LONG && y.type == LONG) {
+			load(x, code);
+			load(y, code);
+			if (operator == '^') {
+				code.invoke(INVOKESTATIC, RUNTIME, "power", "(JJ)Ljava/lang/Object;");
+				return store(REFERENCE, code);
+			}
+			if (operator == '/')
+				code.invoke(INVOKESTATIC, RUNTIME, "divide", "(JJ)J");
+			else
+				code.op(operator == '+' ? LADD : operator == '-' ? LSUB : LMUL, -2);
+			return store(LONG, code);
+		}
+		if (x.type != REFERENCE && y.type != REFERENCE) {
+			loadDouble(x, code);
+			loadDouble(y, code);
+			if (operator == '^')
+				code.invoke(INVOKESTATIC, "java/lang/Math", "pow", "(DD)D");
+			else
+				code.op(operator == '+' ? DADD : operator == '-' ? DSUB : operator == '*' ? DMUL : DDIV, -2);
+			return store(DOUBLE, code);
+		}
+		loadObject(x, code);
+		loadObject(y, code);
+		code.pushInt(operator);
+		code.invoke(INVOKESTATIC, RUNTIME, "operate", "(Ljava/lang/Object;Ljava/lang/Object;C)Ljava/lang/Object;");
+		return store(REFERENCE, code);
+	}
+
+	/**
+	 * Method writes code that applies function to values at the top of the stack.
+	 * Functions that only rearrange the stack are applied at compile time.
+	 *
+	 * @param name  name of function
+	 * @param stack values on the stack
+	 * @param code  code that function is written into
+	 * @return      <code>true</code> if function was applied, <code>false</code> if error is thrown instead
+	 */
+	private boolean applyFunction(String name, List<Value> stack, ClassFileWriter.Code code) {
+		FunctionRegistry.Function function = registry.lookup(name);
+		if (function == null) {
+			throwError("Unknown function: @" + name, code);
+			return false;
+		}
+		int size = stack.size();
+		if (size < function.arity) {
+			throwError("Not enough values on the stack for @" + name, code);
+			return false;
+		}
+		switch (function.opcode) {
+		case EchoProgram.SIN:
+			loadDouble(numeric(stack.remove(size - 1)), code);
+			code.invoke(INVOKESTATIC, RUNTIME, "sin", "(D)D");
+			stack.add(store(DOUBLE, code));
+			return true;
+		case EchoProgram.DECFMT:
+			Value pattern = stack.remove(size - 1);
+			Value x = numeric(stack.remove(size - 2));
+			load(x, code);
+			loadObject(pattern, code);
+			code.invoke(INVOKESTATIC, RUNTIME, "decfmt", x.type == LONG ? "(JLjava/lang/Object;)Ljava/lang/String;"
+					: x.type == DOUBLE ? "(DLjava/lang/Object;)Ljava/lang/String;"
+					: "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/String;");
+			stack.add(store(REFERENCE, code));
+			return true;
+		case EchoProgram.DUP:
+			// values are never changed, so both places can share one
+			stack.add(stack.get(size - 1));
+			return true;
+		case EchoProgram.SWAP:
+			stack.add(stack.remove(size - 2));
+			return true;
+		default:
+			stack.add(call(function, stack.subList(size - function.arity, size), code));
+			return true;
+		}
+	}
+
+	/**
+	 * Method writes code that calls custom function through a call site, which is given to the
+	 * generated class as a constant. Pure function whose arguments are constants is called at
+	 * compile time instead, if it returns a number or a string.
+	 *
+	 * @param function  called function
+	 * @param arguments values that are given to function, removed from the stack
+	 * @param code      code that call is written into
+	 * @return          result of function
+	 */
+	private Value call(FunctionRegistry.Function function, List<Value> arguments, ClassFileWriter.Code code) {
+		if (function.pure) {
+			Value result = fold(function, arguments);
+			if (result != null) {
+				arguments.clear();
+				return result;
+			}
+		}
+
+		code.local(ALOAD, 0);
+		code.field(GETFIELD, classFile.getClassName(), "constants", CONSTANTS_DESCRIPTOR);
+		code.pushInt(constants.size());
+		code.op(AALOAD, -1);
+		constants.add(new FunctionCallSite(registry, function.name, function.arity));
+		code.pushInt(arguments.size());
+		code.newArray("java/lang/Object");
+		for (int i = 0; i < arguments.size(); i++) {
+			code.op(DUP, 1);
+			code.pushInt(i);
+			loadObject(arguments.get(i), code);
+			code.op(AASTORE, -3);
+		}
+		arguments.clear();
+		code.invoke(INVOKESTATIC, RUNTIME, "call", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;");
+		return store(REFERENCE, code);
+	}
+
+	/**
+	 * Helper method that calls pure function on constant arguments at compile time.
+	 *
+	 * @param function  called function
+	 * @param arguments values that are given to function
+	 * @return          constant result, <code>null</code> if an argument is not a constant, function
+	 *                  fails or its result is not a number or a string
+	 */
+	private static Value fold(FunctionRegistry.Function function, List<Value> arguments) {
+		Object[] values = new Object[arguments.size()];
+		for (int i = 0; i < values.length; i++) {
+			Value argument = arguments.get(i);
+			if (argument.local >= 0)
+				return null;
+			values[i] = argument.constant;
+		}
+		Object result;
+		try {
+			result = function.invoke(values);
+		} catch (SmartScriptEngineException ex) {
+			// error is thrown when the call is reached
+			return null;
+		}
+		if (result instanceof Long || result instanceof Integer || result instanceof Short || result instanceof Byte)
+			return new Value(LONG, -1, ((Number) result).longValue());
+		if (result instanceof Double || result instanceof Float)
+			return new Value(DOUBLE, -1, ((Number) result).doubleValue());
+		if (result instanceof String)
+			return new Value(REFERENCE, -1, result);
+		return null;
+	}
+
+	/**
+	 * Helper method that checks if given element is a constant, string or variable.
+	 *
+	 * @param element checked element
+	 * @return        <code>true</code> if element has a value
+	 */
+	private static boolean isValue(Element element) {
+		return element instanceof ElementConstantInteger || element instanceof ElementConstantDouble
+				|| element instanceof ElementString || element instanceof ElementVariable;
+	}
+
+	/**
+	 * Helper method that returns message of error about element that has no value.
+	 *
+	 * @param element element without value
+	 * @return        message of error
+	 */
+	private static String notEvaluable(Element element) {
+		return "Element can not be evaluated: " + (element == null ? null : element.asText());
+	}
+
+	/**
+	 * Method returns value of constant, string or variable. Constants are kept as constants,
+	 * loop variables are read from their local variables, and code that reads other variables
+	 * into a new local variable is written.
+	 *
+	 * @param element constant, string or variable
+	 * @param scope   loop variables that are visible
+	 * @param code    code that reads variable
+	 * @return        value of element
+	 */
+	private Value value(Element element, List<Variable> scope, ClassFileWriter.Code code) {
+		if (element instanceof ElementConstantInteger)
+			return new Value(LONG, -1, ((ElementConstantInteger) element).getValue());
+		if (element instanceof ElementConstantDouble)
+			return new Value(DOUBLE, -1, ((ElementConstantDouble) element).getValue());
+		if (element instanceof ElementString)
+			return new Value(REFERENCE, -1,
+					SmartScriptEngine.unescapeString(((ElementString) element).getValueSequence()).toString());
+
+		String name = ((ElementVariable) element).getName();
+		for (int i = scope.size() - 1; i >= 0; i--) {
+			Variable variable = scope.get(i);
+			if (variable.name.equals(name))
+				return new Value(variable.type, variable.local, null);
+		}
+		code.local(ALOAD, 1);
+		loadString(name, code);
+		code.invoke(INVOKESTATIC, RUNTIME, "variable", "(Ljava/util/Map;Ljava/lang/String;)Ljava/lang/Object;");
+		return store(REFERENCE, code);
+	}
+
+	/**
+	 * Helper method that converts string constant to a number constant, so that operations on it
+	 * are compiled for its static type.
+	 *
+	 * @param value value of operand
+	 * @return      number constant, or given value if it is not a string constant that is a number
+	 */
+	private static Value numeric(Value value) {
+		if (value.type != REFERENCE || value.local >= 0)
+			return value;
+		try {
+			Number number = TemplateRuntime.number(value.constant);
+			return new Value(number instanceof Long ? LONG : DOUBLE, -1, number);
+		} catch (SmartScriptEngineException ex) {
+			// error is thrown when tag is rendered
+			return value;
+		}
+	}
+
+	/**
+	 * Helper method that stores value on the operand stack into a new local variable.
+	 *
+	 * @param type static type of value
+	 * @param code code that value is stored in
+	 * @return     stored value
+	 */
+	private static Value store(byte type, ClassFileWriter.Code code) {
+		int local = code.newLocal(type == REFERENCE ? 1 : 2);
+		code.local(type == LONG ? LSTORE : type == DOUBLE ? DSTORE : ASTORE, local);
+		return new Value(type, local, null);
+	}
+
+	/**
+	 * Helper method that pushes given value onto the operand stack.
+	 *
+	 * @param value pushed value
+	 * @param code  code that value is pushed in
+	 */
+	private static void load(Value value, ClassFileWriter.Code code) {
+		if (value.local >= 0) {
+			code.local(value.type == LONG ? LLOAD : value.type == DOUBLE ? DLOAD : ALOAD, value.local);
+		} else if (value.type == LONG) {
+			code.pushLong((Long) value.constant);
+		} else if (value.type == DOUBLE) {
+			code.pushDouble((Double) value.constant);
+		} else {
+			code.pushString((String) value.constant);
+		}
+	}
+
+	/**
+	 * Helper method that pushes given value onto the operand stack as a double.
+	 *
+	 * @param value pushed value
+	 * @param code  code that value is pushed in
+	 */
+	private static void loadDouble(Value value, ClassFileWriter.Code code) {
+		if (value.type == LONG && value.local < 0) {
+			code.pushDouble((Long) value.constant);
+			return;
+		}
+		load(value, code);
+		if (value.type == LONG)
+			code.op(L2D, 0);
+		else if (value.type == REFERENCE)
+			code.invoke(INVOKESTATIC, RUNTIME, "toDouble", "(Ljava/lang/Object;)D");
+	}
+
+	/**
+	 * Helper method that pushes given value onto the operand stack as an <code>Object</code>.
+	 *
+	 * @param value pushed value
+	 * @param code  code that value is pushed in
+	 */
+	private static void loadObject(Value value, ClassFileWriter.Code code) {
+		load(value, code);
+		if (value.type == LONG)
+			code.invoke(INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;");
+		else if (value.type == DOUBLE)
+			code.invoke(INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+	}
+
+	/**
+	 * Method pushes given text onto the operand stack, from constant pool if it is short enough,
+	 * otherwise from constants of generated class.
+	 *
+	 * @param text pushed text
+	 * @param code code that text is pushed in
+	 */
+	private void loadString(String text, ClassFileWriter.Code code) {
+		if (text.length() <= MAX_POOL_TEXT) {
+			code.pushString(text);
+			return;
+		}
+		code.local(ALOAD, 0);
+		code.field(GETFIELD, classFile.getClassName(), "constants", CONSTANTS_DESCRIPTOR);
+		code.pushInt(constants.size());
+		code.op(AALOAD, -1);
+		code.checkCast("java/lang/String");
+		constants.add(text);
+	}
+
+	/**
+	 * Helper method that writes code which throws <code>SmartScriptEngineException</code> with given message.
+	 *
+	 * @param message message of exception
+	 * @param code    code that exception is thrown in
+	 */
+	private static void throwError(String message, ClassFileWriter.Code code) {
+		code.pushString(message.length() <= MAX_POOL_TEXT ? message : message.substring(0, MAX_POOL_TEXT));
+		code.invoke(INVOKESTATIC, RUNTIME, "error",
+				"(Ljava/lang/String;)Lhr/fer/zemris/java/custom/scripting/exec/SmartScriptEngineException;");
+		code.op(ATHROW, -1);
+	}
+
+	/**
+	 * Helper method that removes backslashes that escape the following character from text of text node.
+	 *
+	 * @param text text as it is written in the document
+	 * @return     text as it is rendered
+	 */
+	static String unescapeText(CharSequence text) {
+		int length = text.length();
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == '\\' && i + 1 < length)
+				c = text.charAt(++i);
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Loop variable that is visible in compiled code.
+	 */
+	private static final class Variable {
+		/**
+		 * name of variable
+		 */
+		private final String name;
+		/**
+		 * static type of its values
+		 */
+		private final byte type;
+		/**
+		 * local variable that holds its value
+		 */
+		private final int local;
+
+		/**
+		 * Constructor for creating new <code>Variable</code>.
+		 *
+		 * @param name  name of variable
+		 * @param type  static type of its values
+		 * @param local local variable that holds its value
+		 */
+		private Variable(String name, byte type, int local) {
+			this.name = name;
+			this.type = type;
+			this.local = local;
+		}
+	}
+
+	/**
+	 * Value on the stack of ECHO tag that is compiled, either a constant or a local variable.
+	 */
+	private static final class Value {
+		/**
+		 * static type of value
+		 */
+		private final byte type;
+		/**
+		 * local variable that holds value, -1 for constants
+		 */
+		private final int local;
+		/**
+		 * <code>Long</code>, <code>Double</code> or <code>String</code> constant
+		 */
+		private final Object constant;
+
+		/**
+		 * Constructor for creating new <code>Value</code>.
+		 *
+		 * @param type     static type of value
+		 * @param local    local variable that holds value, -1 for constants
+		 * @param constant constant value
+		 */
+		private Value(byte type, int local, Object constant) {
+			this.type = type;
+			this.local = local;
+			this.constant = constant;
+		}
+	}
+
+	/**
+	 * Class loader that loads one generated class.
+	 */
+	private static final class TemplateClassLoader extends ClassLoader {
+
+		/**
+		 * Constructor for creating new <code>TemplateClassLoader</code>.
+		 *
+		 * @param parent class loader of classes that generated class uses
+		 */
+		private TemplateClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		/**
+		 * Method defines class from given class file.
+		 *
+		 * @param name  binary name of class
+		 * @param bytes class file
+		 * @return      defined class
+		 */
+		private Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+}
@@ -0,0 +1,459 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.lexer.TextSlice;
+
+/**
+ * Class contains operations that code generated by {@link TemplateCompiler} calls for everything
+ * that is not plain arithmetic on integers and doubles. Operations behave the same way as
+ * the matching parts of {@link SmartScriptEngine}. Methods are public only because generated classes
+ * are loaded by their own class loaders, they are not meant to be called directly.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class TemplateRuntime {
+
+	/**
+	 * formats used by <code>decfmt</code> in every thread, by their patterns
+	 */
+	private static final ThreadLocal<Map<String, DecimalFormat>> FORMATS = ThreadLocal.withInitial(HashMap::new);
+
+	/**
+	 * Private constructor, class only contains static methods.
+	 */
+	private TemplateRuntime() {
+	}
+
+	/**
+	 * Method checks arguments of {@link CompiledTemplate#render(Map, Appendable)}.
+	 *
+	 * @param variables values of variables
+	 * @param out       output
+	 * @throws NullPointerException if <code>variables</code> or <code>out</code> is <code>null</code>
+	 */
+	public static void checkArguments(Map<String, ?> variables, Appendable out) {
+		if (variables == null)
+			throw new NullPointerException("Variables must not be null");
+		if (out == null)
+			throw new NullPointerException("Output must not be null");
+	}
+
+	/**
+	 * Method returns value of given variable.
+	 *
+	 * @param variables values of variables
+	 * @param name      name of variable
+	 * @return          value of variable
+	 * @throws SmartScriptEngineException if variable is not defined
+	 */
+	public static Object variable(Map<String, ?> variables, String name) {
+		Object value = variables.get(name);
+		if (value == null)
+			throw new SmartScriptEngineException("Variable " + name + " is not defined");
+		return value;
+	}
+
+	/**
+	 * Method creates exception with given message, that generated code throws.
+	 *
+	 * @param message message of exception
+	 * @return        new <code>SmartScriptEngineException</code>
+	 */
+	public static SmartScriptEngineException error(String message) {
+		return new SmartScriptEngineException(message);
+	}
+
+	/**
+	 * Method converts given value to a number: integers to <code>Long</code>, floating point
+	 * numbers to <code>Double</code>, and text that contains decimal point or exponent to
+	 * <code>Double</code>, other text to <code>Long</code>.
+	 *
+	 * @param value value that is converted
+	 * @return      <code>Long</code> or <code>Double</code>
+	 * @throws SmartScriptEngineException if value is not a number
+	 */
+	public static Number number(Object value) {
+		if (value instanceof Long || value instanceof Double)
+			return (Number) value;
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return ((Number) value).longValue();
+		if (value instanceof Float)
+			return ((Number) value).doubleValue();
+		if (!(value instanceof CharSequence))
+			throw new SmartScriptEngineException("Value is not a number: " + value);
+
+		String text = value.toString().trim();
+		try {
+			if (text.indexOf('.') >= 0 || text.indexOf('e') >= 0 || text.indexOf('E') >= 0)
+				return Double.parseDouble(text);
+			return Long.parseLong(text);
+		} catch (NumberFormatException ex) {
+			throw new SmartScriptEngineException("Value is not a number: " + text, ex);
+		}
+	}
+
+	/**
+	 * Method converts given value to a number and returns it as a double.
+	 *
+	 * @param value value that is converted
+	 * @return      value as a double
+	 * @throws SmartScriptEngineException if value is not a number
+	 */
+	public static double toDouble(Object value) {
+		return number(value).doubleValue();
+	}
+
+	/**
+	 * Method applies operator to two values that are converted to numbers.
+	 *
+	 * @param x        first operand
+	 * @param y        second operand
+	 * @param operator operator character
+	 * @return         result as <code>Long</code> or <code>Double</code>
+	 * @throws SmartScriptEngineException if operands are not numbers or integer is divided by zero
+	 */
+	public static Object operate(Object x, Object y, char operator) {
+		Number a = number(x);
+		Number b = number(y);
+		if (a instanceof Long && b instanceof Long) {
+			long first = a.longValue();
+			long second = b.longValue();
+			switch (operator) {
+			case '+':
+				return first + second;
+			case '-':
+				return first - second;
+			case '*':
+				return first * second;
+			case '/':
+				return divide(first, second);
+			default:
+				return power(first, second);
+			}
+		}
+
+		double first = a.doubleValue();
+		double second = b.doubleValue();
+		switch (operator) {
+		case '+':
+			return first + second;
+		case '-':
+			return first - second;
+		case '*':
+			return first * second;
+		case '/':
+			return first / second;
+		default:
+			return Math.pow(first, second);
+		}
+	}
+
+	/**
+	 * Method divides two integers.
+	 *
+	 * @param x dividend
+	 * @param y divisor
+	 * @return  quotient
+	 * @throws SmartScriptEngineException if divisor is zero
+	 */
+	public static long divide(long x, long y) {
+		if (y == 0)
+			throw new SmartScriptEngineException("Division by zero");
+		return x / y;
+	}
+
+	/**
+	 * Method raises integer to integer power, result is an integer unless exponent is negative.
+	 *
+	 * @param x base
+	 * @param y exponent
+	 * @return  result as <code>Long</code> or <code>Double</code>
+	 */
+	public static Object power(long x, long y) {
+		if (y < 0)
+			return Math.pow(x, y);
+
+		long result = 1;
+		while (y > 0) {
+			if ((y & 1) != 0)
+				result *= x;
+			x *= x;
+			y >>= 1;
+		}
+		return result;
+	}
+
+	/**
+	 * Method returns sine of given angle in degrees.
+	 *
+	 * @param degrees angle in degrees
+	 * @return        sine of angle
+	 */
+	public static double sin(double degrees) {
+		return Math.sin(Math.toRadians(degrees));
+	}
+
+	/**
+	 * Method formats integer with given <code>DecimalFormat</code> pattern.
+	 *
+	 * @param x       formatted number
+	 * @param pattern pattern of format
+	 * @return        formatted number
+	 * @throws SmartScriptEngineException if pattern is not valid
+	 */
+	public static String decfmt(long x, Object pattern) {
+		return format(pattern).format(x);
+	}
+
+	/**
+	 * Method formats double with given <code>DecimalFormat</code> pattern.
+	 *
+	 * @param x       formatted number
+	 * @param pattern pattern of format
+	 * @return        formatted number
+	 * @throws SmartScriptEngineException if pattern is not valid
+	 */
+	public static String decfmt(double x, Object pattern) {
+		return format(pattern).format(x);
+	}
+
+	/**
+	 * Method converts value to a number and formats it with given <code>DecimalFormat</code> pattern.
+	 *
+	 * @param x       formatted value
+	 * @param pattern pattern of format
+	 * @return        formatted number
+	 * @throws SmartScriptEngineException if value is not a number or pattern is not valid
+	 */
+	public static String decfmt(Object x, Object pattern) {
+		String text = String.valueOf(pattern);
+		Number number = number(x);
+		return number instanceof Long ? decfmt(number.longValue(), text) : decfmt(number.doubleValue(), text);
+	}
+
+	/**
+	 * Helper method that returns format with given pattern, cached for the current thread.
+	 *
+	 * @param pattern pattern of format
+	 * @return        <code>DecimalFormat</code> with the pattern
+	 */
+	private static DecimalFormat format(Object pattern) {
+		String text = String.valueOf(pattern);
+		Map<String, DecimalFormat> formats = FORMATS.get();
+		DecimalFormat format = formats.get(text);
+		if (format == null) {
+			try {
+				format = new DecimalFormat(text, DecimalFormatSymbols.getInstance(Locale.ROOT));
+			} catch (IllegalArgumentException ex) {
+				throw new SmartScriptEngineException("Invalid decimal format: " + text, ex);
+			}
+			formats.put(text, format);
+		}
+		return format;
+	}
+
+	/**
+	 * Method calls custom function through its call site. Integers of all sizes are given to
+	 * function and returned from it as <code>Long</code>, floats as <code>Double</code>, as they
+	 * are by {@link SmartScriptEngine}.
+	 *
+	 * @param site      call site of function
+	 * @param arguments arguments of function
+	 * @return          result of function
+	 * @throws SmartScriptEngineException if function is not registered with the same number of
+	 *                                    parameters, or it fails
+	 */
+	public static Object call(Object site, Object[] arguments) {
+		for (int i = 0; i < arguments.length; i++)
+			arguments[i] = normalize(arguments[i]);
+		return normalize(((FunctionCallSite) site).call(arguments));
+	}
+
+	/**
+	 * Helper method that converts integers to <code>Long</code> and floats to <code>Double</code>.
+	 *
+	 * @param value converted value
+	 * @return      converted value, or given value if it is not such a number
+	 */
+	private static Object normalize(Object value) {
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+			return ((Number) value).longValue();
+		if (value instanceof Float)
+			return ((Number) value).doubleValue();
+		return value;
+	}
+
+	/**
+	 * Method writes given text.
+	 *
+	 * @param out  output
+	 * @param text written text
+	 * @throws IOException if output can not be written
+	 */
+	public static void write(Appendable out, String text) throws IOException {
+		if (out instanceof Writer)
+			((Writer) out).write(text);
+		else
+			out.append(text);
+	}
+
+	/**
+	 * Method writes given integer.
+	 *
+	 * @param out   output
+	 * @param value written integer
+	 * @throws IOException if output can not be written
+	 */
+	public static void write(Appendable out, long value) throws IOException {
+		if (out instanceof StringBuilder)
+			((StringBuilder) out).append(value);
+		else
+			write(out, Long.toString(value));
+	}
+
+	/**
+	 * Method writes given double.
+	 *
+	 * @param out   output
+	 * @param value written double
+	 * @throws IOException if output can not be written
+	 */
+	public static void write(Appendable out, double value) throws IOException {
+		write(out, Double.toString(value));
+	}
+
+	/**
+	 * Method writes given value, numbers the same way as integers and doubles are written.
+	 *
+	 * @param out   output
+	 * @param value written value
+	 * @throws IOException if output can not be written
+	 */
+	public static void write(Appendable out, Object value) throws IOException {
+		if (value instanceof String) {
+			write(out, (String) value);
+		} else if (value instanceof TextSlice) {
+			TextSlice slice = (TextSlice) value;
+			if (out instanceof Writer)
+				((Writer) out).write(slice.getSource(), slice.getStart(), slice.getEnd() - slice.getStart());
+			else
+				out.append(slice.getSource(), slice.getStart(), slice.getEnd());
+		} else if (value instanceof CharSequence) {
+			out.append((CharSequence) value);
+		} else if (value instanceof Float) {
+			write(out, ((Float) value).doubleValue());
+		} else {
+			write(out, String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Method creates counter of FOR loop whose start, end or step is not a constant.
+	 * Loop counts with integers if all of them are integers, otherwise with doubles.
+	 *
+	 * @param name  name of loop variable
+	 * @param start start value
+	 * @param end   end value
+	 * @param step  step
+	 * @return      counter of the loop
+	 * @throws SmartScriptEngineException if values are not numbers or step is zero
+	 */
+	public static Loop loop(String name, Object start, Object end, Object step) {
+		return new Loop(name, number(start), number(end), number(step));
+	}
+
+	/**
+	 * Counter of FOR loop whose values are known only when the loop starts.
+	 */
+	public static final class Loop {
+		/**
+		 * <code>true</code> if loop counts with integers
+		 */
+		private final boolean integral;
+		/**
+		 * next integer value
+		 */
+		private long longValue;
+		/**
+		 * integer end value
+		 */
+		private final long longEnd;
+		/**
+		 * integer step
+		 */
+		private final long longStep;
+		/**
+		 * next double value
+		 */
+		private double doubleValue;
+		/**
+		 * double end value
+		 */
+		private final double doubleEnd;
+		/**
+		 * double step
+		 */
+		private final double doubleStep;
+		/**
+		 * <code>true</code> if integer counter would overflow
+		 */
+		private boolean overflow;
+
+		/**
+		 * Constructor for creating new <code>Loop</code>.
+		 *
+		 * @param name  name of loop variable
+		 * @param start start value
+		 * @param end   end value
+		 * @param step  step
+		 */
+		private Loop(String name, Number start, Number end, Number step) {
+			integral = start instanceof Long && end instanceof Long && step instanceof Long;
+			longValue = start.longValue();
+			longEnd = end.longValue();
+			longStep = step.longValue();
+			doubleValue = start.doubleValue();
+			doubleEnd = end.doubleValue();
+			doubleStep = step.doubleValue();
+			if (integral ? longStep == 0 : doubleStep == 0 || Double.isNaN(doubleStep))
+				throw new SmartScriptEngineException("Step of FOR loop " + name + " must not be zero");
+		}
+
+		/**
+		 * Method checks if loop makes one more iteration.
+		 *
+		 * @return <code>true</code> if there is one more iteration
+		 */
+		public boolean hasNext() {
+			if (integral)
+				return !overflow && (longStep > 0 ? longValue <= longEnd : longValue >= longEnd);
+			return doubleStep > 0 ? doubleValue <= doubleEnd : doubleValue >= doubleEnd;
+		}
+
+		/**
+		 * Method returns value of loop variable in the next iteration.
+		 *
+		 * @return <code>Long</code> or <code>Double</code> value
+		 */
+		public Object next() {
+			if (integral) {
+				long value = longValue;
+				longValue += longStep;
+				overflow = longStep > 0 ? longValue < value : longValue > value;
+				return value;
+			}
+			double value = doubleValue;
+			doubleValue += doubleStep;
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,317 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable set of language keywords used by <code>Lexer2</code>.
+ * Keywords are compared ignoring case of ASCII letters and are looked up in
+ * open addressing hash table that is enlarged until no two keywords share a slot,
+ * so lookup usually checks only one keyword. Words are checked directly in the
+ * input of the lexer, upper cased copy of the word is never created.
+ * Since the table can not change after it is created, it can be shared between
+ * any number of lexers and threads.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class KeywordTable {
+
+	/**
+	 * keywords of SmartScript language: <code>FOR</code> and <code>END</code>
+	 */
+	public static final KeywordTable DEFAULT = of("FOR", "END");
+
+	/**
+	 * the largest table size that is tried while looking for slots without collisions
+	 */
+	private static final int MAX_PERFECT_SIZE = 1 << 12;
+
+	/**
+	 * upper cased keywords in order in which they were given
+	 */
+	private final String[] keywords;
+	/**
+	 * hash table of upper cased keywords, empty slots are <code>null</code>
+	 */
+	private final String[] slots;
+	/**
+	 * mask that maps hash to slot index
+	 */
+	private final int mask;
+	/**
+	 * length of the shortest keyword
+	 */
+	private final int minLength;
+	/**
+	 * length of the longest keyword
+	 */
+	private final int maxLength;
+
+	/**
+	 * Private constructor, tables are created with {@link #of(String...)}.
+	 *
+	 * @param keywords distinct upper cased keywords
+	 */
+	private KeywordTable(String[] keywords) {
+		this.keywords = keywords;
+
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		for (String keyword : keywords) {
+			min = Math.min(min, keyword.length());
+			max = Math.max(max, keyword.length());
+		}
+		minLength = min;
+		maxLength = max;
+
+		int size = Integer.highestOneBit(Math.max(1, keywords.length * 2 - 1)) << 1;
+		String[] table = place(keywords, size);
+		while (table == null && size < MAX_PERFECT_SIZE) {
+			size <<= 1;
+			table = place(keywords, size);
+		}
+		if (table == null) {
+			// collisions are left to linear probing
+			table = new String[size];
+			for (String keyword : keywords) {
+				int index = hash(keyword) & (size - 1);
+				while (table[index] != null) {
+					index = (index + 1) & (size - 1);
+				}
+				table[index] = keyword;
+			}
+		}
+		slots = table;
+		mask = size - 1;
+	}
+
+	/**
+	 * Method creates new table of given keywords. Keyword must start with ASCII letter
+	 * and contain only ASCII letters, digits and underscores, just like variable names.
+	 * Keywords that differ only in case are considered to be the same keyword.
+	 *
+	 * @param keywords keywords of the table
+	 * @return         new <code>KeywordTable</code>
+	 * @throws IllegalArgumentException if any of keywords is <code>null</code> or is not valid
+	 */
+	public static KeywordTable of(String... keywords) {
+		if (keywords == null)
+			throw new IllegalArgumentException("Keywords must not be null");
+
+		String[] distinct = new String[keywords.length];
+		int size = 0;
+		for (String keyword : keywords) {
+			if (keyword == null)
+				throw new IllegalArgumentException("Keyword must not be null");
+			if (!isValid(keyword))
+				throw new IllegalArgumentException("Keyword must be a valid variable name. You entered: " + keyword);
+
+			char[] upper = keyword.toCharArray();
+			for (int i = 0; i < upper.length; i++) {
+				upper[i] = toUpper(upper[i]);
+			}
+			String upperKeyword = new String(upper);
+			if (!Arrays.asList(distinct).subList(0, size).contains(upperKeyword))
+				distinct[size++] = upperKeyword;
+		}
+		return new KeywordTable(Arrays.copyOf(distinct, size));
+	}
+
+	/**
+	 * Method returns number of keywords in this table.
+	 *
+	 * @return number of keywords
+	 */
+	public int size() {
+		return keywords.length;
+	}
+
+	/**
+	 * Method returns keywords of this table, upper cased.
+	 *
+	 * @return new array of keywords in order in which they were given
+	 */
+	public String[] getKeywords() {
+		return keywords.clone();
+	}
+
+	/**
+	 * Method checks if given word is keyword, ignoring case of ASCII letters.
+	 *
+	 * @param word word that is checked
+	 * @return     <code>true</code> if <code>word</code> is keyword, otherwise <code>false</code>
+	 * @throws IllegalArgumentException if <code>word</code> is <code>null</code>
+	 */
+	public boolean contains(CharSequence word) {
+		if (word == null)
+			throw new IllegalArgumentException("Word must not be null");
+
+		int length = word.length();
+		if (length < minLength || length > maxLength)
+			return false;
+
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + toUpper(word.charAt(i));
+		}
+		for (int index = mix(hash) & mask; slots[index] != null; index = (index + 1) & mask) {
+			String keyword = slots[index];
+			if (keyword.length() != length)
+				continue;
+			int i = 0;
+			while (i < length && toUpper(word.charAt(i)) == keyword.charAt(i)) {
+				i++;
+			}
+			if (i == length)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Method checks if characters in given range are keyword.
+	 *
+	 * @param data  characters that are checked
+	 * @param start index of first character of the word
+	 * @param end   index after last character of the word
+	 * @return      <code>true</code> if word is keyword, otherwise <code>false</code>
+	 */
+	boolean contains(char[] data, int start, int end) {
+		int length = end - start;
+		if (length < minLength || length > maxLength)
+			return false;
+
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + toUpper(data[i]);
+		}
+		for (int index = mix(hash) & mask; slots[index] != null; index = (index + 1) & mask) {
+			String keyword = slots[index];
+			if (keyword.length() != length)
+				continue;
+			int i = 0;
+			while (i < length && toUpper(data[start + i]) == keyword.charAt(i)) {
+				i++;
+			}
+			if (i == length)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Method checks if UTF-8 bytes in given range are keyword. Keywords are ASCII,
+	 * so byte of multi byte sequence never matches any of their characters.
+	 *
+	 * @param bytes bytes that are checked
+	 * @param start index of first byte of the word
+	 * @param end   index after last byte of the word
+	 * @return      <code>true</code> if word is keyword, otherwise <code>false</code>
+	 */
+	boolean contains(ByteBuffer bytes, int start, int end) {
+		int length = end - start;
+		if (length < minLength || length > maxLength)
+			return false;
+
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + toUpper((char) (bytes.get(i) & 0xFF));
+		}
+		for (int index = mix(hash) & mask; slots[index] != null; index = (index + 1) & mask) {
+			String keyword = slots[index];
+			if (keyword.length() != length)
+				continue;
+			int i = 0;
+			while (i < length && toUpper((char) (bytes.get(start + i) & 0xFF)) == keyword.charAt(i)) {
+				i++;
+			}
+			if (i == length)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method that places keywords in table of given size.
+	 *
+	 * @param keywords keywords that are placed
+	 * @param size     size of the table, power of two
+	 * @return         table with every keyword in its own slot, <code>null</code> if two keywords collide
+	 */
+	private static String[] place(String[] keywords, int size) {
+		String[] table = new String[size];
+		for (String keyword : keywords) {
+			int index = hash(keyword) & (size - 1);
+			if (table[index] != null)
+				return null;
+			table[index] = keyword;
+		}
+		return table;
+	}
+
+	/**
+	 * Helper method that calculates hash of upper cased keyword,
+	 * the same way it is calculated for words in lexer input.
+	 *
+	 * @param keyword upper cased keyword
+	 * @return        hash of the keyword
+	 */
+	private static int hash(String keyword) {
+		int hash = 0;
+		for (int i = 0; i < keyword.length(); i++) {
+			hash = 31 * hash + keyword.charAt(i);
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * Helper method that spreads higher bits of hash to lower ones,
+	 * since only lower bits are used as slot index.
+	 *
+	 * @param hash hash of the word
+	 * @return     mixed hash
+	 */
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Helper method that upper cases ASCII letters and leaves other characters as they are.
+	 *
+	 * @param c character
+	 * @return  upper cased character
+	 */
+	private static char toUpper(char c) {
+		return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+	}
+
+	/**
+	 * Helper method that checks if keyword has the form of variable name.
+	 *
+	 * @param keyword keyword that is checked
+	 * @return        <code>true</code> if keyword is valid, otherwise <code>false</code>
+	 */
+	private static boolean isValid(String keyword) {
+		if (keyword.isEmpty() || !isAsciiLetter(keyword.charAt(0)))
+			return false;
+		for (int i = 1; i < keyword.length(); i++) {
+			char c = keyword.charAt(i);
+			if (!isAsciiLetter(c) && !(c >= '0' && c <= '9') && c != '_')
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Helper method that checks if character is ASCII letter.
+	 *
+	 * @param c character
+	 * @return  <code>true</code> if <code>c</code> is ASCII letter, otherwise <code>false</code>
+	 */
+	private static boolean isAsciiLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+}
@@ -1,12 +1,49 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
-import hr.fer.zemris.java.custom.collections.ArrayIndexedCollection;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
 import hr.fer.zemris.java.hw03.prob1.LexerException;
 
+import static hr.fer.zemris.java.custom.scripting.lexer.Lexer2Tables.*;
+
 /**
  * Class represents a lexical analyzer for language specified in assignment.
  * Input of lexical analyzer is original text.
  * Output of lexical analyzer is stream of tokens.
+ * <p>
+ * Input can be given as a whole <code>String</code> or it can be read from a
+ * <code>Reader</code> or a <code>ReadableByteChannel</code>. In the latter case
+ * lexer only holds a window of input in a refillable buffer, so the whole
+ * document is never materialized in memory.
+ * <p>
+ * Lexer can also work directly on UTF-8 encoded bytes, for example on a
+ * <code>MappedByteBuffer</code> of a file. In that mode only bytes that
+ * become token values are decoded and values of TEXT tokens are decoded
+ * from their byte ranges only when they are requested.
+ * <p>
+ * Tokens can be read as <code>Token2</code> objects with {@link #nextToken()},
+ * or through allocation free cursor with {@link #next()}. Cursor exposes type,
+ * offsets and primitive value of current token, while <code>String</code> and
+ * <code>Token2</code> representation of the token are created only on request.
+ * Tokens of input held in memory can also be read in batches into caller's arrays
+ * with {@link #nextTokens(TokenType2[], int[], int[], long[], int, int)}.
+ * <p>
+ * Lexer created with {@link #fromPushedInput()} does not pull its input, input is pushed
+ * into it in chunks as it arrives. Such lexer returns every token that is complete so far
+ * and suspends token that may continue in input that was not pushed yet.
  * 
  * @author Ante Gazibarić
  * @version 1.0
@@ -15,11 +52,83 @@ import hr.fer.zemris.java.hw03.prob1.LexerException;
 public class Lexer2 {
 
 	/**
-	 * input text arranged in char array
+	 * default size of buffer used when input is read from a <code>Reader</code>
+	 */
+	private static final int DEFAULT_BUFFER_SIZE = 8192;
+	/**
+	 * input text arranged in char array, or current window of input when it is read from a <code>Reader</code>
 	 */
 	private char[] data;
 	/**
-	 * current token
+	 * input text that <code>data</code> was copied from, <code>null</code> if input was not given as <code>String</code>
+	 */
+	private String source;
+	/**
+	 * number of valid characters in <code>data</code>
+	 */
+	private int limit;
+	/**
+	 * source of further input, <code>null</code> if whole input is already in <code>data</code>
+	 */
+	private Reader reader;
+	/**
+	 * offset of <code>data[0]</code> from the beginning of input
+	 */
+	private int bufferOffset;
+	/**
+	 * index in <code>data</code> where current token begins, characters before it can be discarded
+	 */
+	private int tokenStart;
+	/**
+	 * UTF-8 encoded input, <code>null</code> if input is given as characters
+	 */
+	private ByteBuffer bytes;
+	/**
+	 * number of input units (bytes in UTF-8 mode) that character returned by <code>current()</code> occupies
+	 */
+	private int currentWidth = 1;
+	/**
+	 * part of current TEXT token that was moved out of <code>data</code> to make room for more input
+	 */
+	private StringBuilder spill;
+	/**
+	 * type of current token, <code>null</code> before first token is read
+	 */
+	private TokenType2 tokenType;
+	/**
+	 * offset of first input unit of current token
+	 */
+	private int startOffset;
+	/**
+	 * offset after last input unit of current token
+	 */
+	private int endOffset;
+	/**
+	 * index in <code>data</code> of first input unit of current token's value
+	 */
+	private int valueStart;
+	/**
+	 * index in <code>data</code> after last input unit of current token's value
+	 */
+	private int valueEnd;
+	/**
+	 * value of current INTEGER token
+	 */
+	private long longValue;
+	/**
+	 * value of current DOUBLE token
+	 */
+	private double doubleValue;
+	/**
+	 * character of current symbol or OPERATOR token
+	 */
+	private char symbol;
+	/**
+	 * materialized text of current token, <code>null</code> if it was not requested
+	 */
+	private String textValue;
+	/**
+	 * materialized current token, <code>null</code> if it was not requested
 	 */
 	private Token2 token;
 	/**
@@ -31,9 +140,50 @@ public class Lexer2 {
 	 */
 	private Lexer2State state = Lexer2State.TEXT;
 	/**
-	 * collection of language keywords
+	 * keywords that are recognized in TAG
+	 */
+	private KeywordTable keywords = KeywordTable.DEFAULT;
+	/**
+	 * tokens that are replayed instead of being read from input, <code>null</code> if input is read
+	 */
+	private TokenList replay;
+	/**
+	 * index of next replayed token
+	 */
+	private int replayIndex;
+	/**
+	 * exception that stopped reading of last batch of tokens, thrown by the next batch
+	 */
+	private RuntimeException pendingError;
+	/**
+	 * flag that is <code>true</code> if input is pushed into lexer with <code>feed</code> methods
+	 */
+	private boolean push;
+	/**
+	 * flag that is <code>true</code> if no more input will be pushed into lexer
 	 */
-	private static ArrayIndexedCollection keywords = new ArrayIndexedCollection();
+	private boolean inputEnded;
+	/**
+	 * flag that is <code>true</code> if scanning of current token reached end of input that was pushed so far
+	 */
+	private boolean starved;
+	/**
+	 * index in <code>data</code> where scanning of suspended TEXT token continues, -1 if there is none
+	 */
+	private int textResume = -1;
+	/**
+	 * flag that is <code>true</code> if <code>data</code> may be used by another lexer or token list,
+	 * so it must not be overwritten on reset
+	 */
+	private boolean sharedData;
+	/**
+	 * flag that is <code>true</code> if exceptions about invalid input are created without stack traces
+	 */
+	private boolean stacklessErrors;
+	/**
+	 * all token types, indexed by their ordinal
+	 */
+	private static final TokenType2[] TOKEN_TYPES = TokenType2.values();
 	
 	/**
 	 * Constructor for creating new <code>Lexer2</code>.
@@ -44,265 +194,1512 @@ public class Lexer2 {
 		if (text == null) 
 			throw new IllegalArgumentException("Text must not be null");
 		
+		source = text;
 		data = text.toCharArray();
-		initLexer();
+		limit = data.length;
 	}
 	
 	/**
-	 * Method returns current token.
+	 * Constructor for creating new <code>Lexer2</code> that reads its input from given <code>reader</code>
+	 * through buffer of given size.
 	 * 
-	 * @return <code>Token2</code> current token
+	 * @param reader     reader that input is read from
+	 * @param bufferSize size of buffer that holds current window of input
 	 */
-	public Token2 getToken() {
-		return token;
+	private Lexer2(Reader reader, int bufferSize) {
+		if (reader == null)
+			throw new IllegalArgumentException("Reader must not be null");
+		if (bufferSize < 1)
+			throw new IllegalArgumentException("Buffer size must not be less than one");
+		
+		this.reader = reader;
+		data = new char[bufferSize];
 	}
 	
 	/**
-	 * Method used for setting next token from input data.
+	 * Method creates new <code>Lexer2</code> that reads its input from given <code>reader</code>.
+	 * Reader is not closed by the lexer.
 	 * 
-	 * @return <code>Token2</code> next token
+	 * @param reader reader that input is read from
+	 * @return       <code>Lexer2</code> that reads from <code>reader</code>
+	 * @throws IllegalArgumentException if <code>reader</code> is <code>null</code>
 	 */
-	public Token2 nextToken() {
-		if (this.state == Lexer2State.TEXT) {
-			setCurrentTokenText();
-		} else {
-			setCurrentTokenTag();
-		}
-		return token;
+	public static Lexer2 fromReader(Reader reader) {
+		return new Lexer2(reader, DEFAULT_BUFFER_SIZE);
 	}
 	
 	/**
-	 * Method used for setting new token when it is in TEXT mode
+	 * Method creates new <code>Lexer2</code> that reads its input from given <code>reader</code>
+	 * through buffer of given size. Buffer is enlarged only if a single token in TAG does not fit in it.
+	 * Reader is not closed by the lexer.
+	 * 
+	 * @param reader     reader that input is read from
+	 * @param bufferSize size of buffer that holds current window of input
+	 * @return           <code>Lexer2</code> that reads from <code>reader</code>
+	 * @throws IllegalArgumentException if <code>reader</code> is <code>null</code> or <code>bufferSize</code> is less than one
 	 */
-	private void setCurrentTokenText() {
-
-		if (token != null && token.getType() == TokenType2.EOF)
-			throw new LexerException("There is no more tokens");
-
-		if (currentIndex >= data.length) {
-			token = new Token2(TokenType2.EOF, null);
-			return;
-		}
-		
-		// open curly bracket represents start of TAG
-		if (data[currentIndex] == '{') {
-			token = new Token2(TokenType2.OPEN_BKRACKETS, Character.valueOf('{'));
-			currentIndex++;
-			return;
-		}
+	public static Lexer2 fromReader(Reader reader, int bufferSize) {
+		return new Lexer2(reader, bufferSize);
+	}
+	
+	/**
+	 * Method creates new <code>Lexer2</code> that reads UTF-8 encoded input from given <code>channel</code>.
+	 * Channel is not closed by the lexer.
+	 * 
+	 * @param channel channel that input is read from
+	 * @return        <code>Lexer2</code> that reads from <code>channel</code>
+	 * @throws IllegalArgumentException if <code>channel</code> is <code>null</code>
+	 */
+	public static Lexer2 fromChannel(ReadableByteChannel channel) {
+		return new Lexer2(newUtf8Reader(channel), DEFAULT_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Constructor for creating new <code>Lexer2</code> whose input is pushed into it.
+	 */
+	private Lexer2() {
+		push = true;
+		data = new char[DEFAULT_BUFFER_SIZE];
+	}
+	
+	/**
+	 * Method creates new <code>Lexer2</code> whose input is pushed into it in chunks with
+	 * {@link #feed(char[], int, int)} or {@link #feed(CharBuffer)}, and whose end is signalled
+	 * with {@link #endOfInput()}. Input is buffered only from start of current token.
+	 * <p>
+	 * {@link #next()} of such lexer returns <code>null</code> if next token is not complete yet,
+	 * because it may continue in input that was not pushed yet. That token is returned after
+	 * more input is pushed. EOF token is returned only after end of input is signalled.
+	 * 
+	 * @return <code>Lexer2</code> whose input is pushed into it
+	 */
+	public static Lexer2 fromPushedInput() {
+		return new Lexer2();
+	}
+	
+	/**
+	 * Method pushes given characters as next chunk of input.
+	 * 
+	 * @param chars  characters that are pushed
+	 * @param offset index of first pushed character
+	 * @param length number of pushed characters
+	 * @throws IllegalArgumentException if <code>chars</code> is <code>null</code>
+	 * @throws IndexOutOfBoundsException if <code>offset</code> and <code>length</code> are not valid for <code>chars</code>
+	 * @throws IllegalStateException if lexer was not created with {@link #fromPushedInput()}
+	 * 		   or end of input was already signalled
+	 */
+	public void feed(char[] chars, int offset, int length) {
+		if (chars == null)
+			throw new IllegalArgumentException("Characters must not be null");
+		if (offset < 0 || length < 0 || offset + length > chars.length)
+			throw new IndexOutOfBoundsException("Offset: " + offset + ", length: " + length);
 		
-		int startingIndex = currentIndex;
-		while (true) {
-			if(currentIndex >= data.length || data[currentIndex] == '{')
-				break;
-			
-			if(data[currentIndex] == '\\') {
-				currentIndex++;
-			}
-			currentIndex++;
-		}
-		String text = new String(data, startingIndex, currentIndex - startingIndex);
-		token = new Token2(TokenType2.TEXT, text);
+		makeRoom(length);
+		System.arraycopy(chars, offset, data, limit, length);
+		limit += length;
 	}
-
+	
 	/**
-	 * Method for setting new token from input data when it is in TAG mode
+	 * Method pushes remaining characters of given buffer as next chunk of input.
+	 * Buffer's position is moved to its limit.
+	 * 
+	 * @param chars buffer whose remaining characters are pushed
+	 * @throws IllegalArgumentException if <code>chars</code> is <code>null</code>
+	 * @throws IllegalStateException if lexer was not created with {@link #fromPushedInput()}
+	 * 		   or end of input was already signalled
 	 */
-	private void setCurrentTokenTag() {
+	public void feed(CharBuffer chars) {
+		if (chars == null)
+			throw new IllegalArgumentException("Buffer must not be null");
 		
-		if (token != null && token.getType() == TokenType2.EOF)
-			throw new LexerException("There is no more tokens");
-
-		if (currentIndex >= data.length) {
-			token = new Token2(TokenType2.EOF, null);
+		int length = chars.remaining();
+		makeRoom(length);
+		chars.get(data, limit, length);
+		limit += length;
+	}
+	
+	/**
+	 * Method signals that no more input will be pushed, so suspended token and EOF token can be returned.
+	 * 
+	 * @throws IllegalStateException if lexer was not created with {@link #fromPushedInput()}
+	 */
+	public void endOfInput() {
+		if (!push)
+			throw new IllegalStateException("Input is not pushed into this lexer");
+		inputEnded = true;
+	}
+	
+	/**
+	 * Helper method that makes room for given number of pushed characters at the end of <code>data</code>.
+	 * Characters before start of current token are discarded only when there is not enough room.
+	 * 
+	 * @param length number of characters that are pushed
+	 */
+	private void makeRoom(int length) {
+		if (!push)
+			throw new IllegalStateException("Input is not pushed into this lexer");
+		if (inputEnded)
+			throw new IllegalStateException("End of input was already signalled");
+		if (limit + length <= data.length)
 			return;
+		
+		if (tokenStart > 0) {
+			// value of current token is never before its start, so it stays valid
+			System.arraycopy(data, tokenStart, data, 0, limit - tokenStart);
+			limit -= tokenStart;
+			currentIndex -= tokenStart;
+			valueStart -= tokenStart;
+			valueEnd -= tokenStart;
+			if (textResume >= 0)
+				textResume -= tokenStart;
+			bufferOffset += tokenStart;
+			tokenStart = 0;
 		}
+		if (limit + length > data.length) {
+			data = Arrays.copyOf(data, Math.max(data.length * 2, limit + length));
+		}
+	}
+	
+	/**
+	 * Constructor for creating new <code>Lexer2</code> that works directly on UTF-8 encoded bytes.
+	 * 
+	 * @param bytes UTF-8 encoded input
+	 */
+	private Lexer2(ByteBuffer bytes) {
+		if (bytes == null)
+			throw new IllegalArgumentException("Buffer must not be null");
 		
-		skipWhitespaces();
+		this.bytes = bytes.slice();
+		limit = this.bytes.limit();
+	}
+	
+	/**
+	 * Method creates new <code>Lexer2</code> that works directly on UTF-8 encoded bytes
+	 * between position and limit of given buffer. Buffer's position and limit are not changed
+	 * and buffer's content must not be changed while lexer is used.
+	 * 
+	 * @param bytes UTF-8 encoded input
+	 * @return      <code>Lexer2</code> that reads from <code>bytes</code>
+	 * @throws IllegalArgumentException if <code>bytes</code> is <code>null</code>
+	 */
+	public static Lexer2 fromUtf8(ByteBuffer bytes) {
+		return new Lexer2(bytes);
+	}
+	
+	/**
+	 * Constructor for creating new <code>Lexer2</code> that replays given tokens.
+	 * 
+	 * @param tokens tokens that are replayed
+	 */
+	private Lexer2(TokenList tokens) {
+		if (tokens == null)
+			throw new IllegalArgumentException("Tokens must not be null");
 		
-		// characters that have special function
-		TokenType2 mappedType =  getTypeFromSpecialSymbols(data[currentIndex]); /* mapOfChars.get(Character.valueOf(data[currentIndex])); */
-		if(mappedType != null) {
-			token = new Token2(mappedType, Character.valueOf(data[currentIndex]));
-			currentIndex++;
-			return;
-		}
-		// Variable: it's starts with letter and further it can contain letters, digits and underscores.
-		if(Character.isLetter(data[currentIndex])) {
-			int beginningOfWord = currentIndex;
-			currentIndex++;
-			while(currentIndex < data.length && (Character.isLetter(data[currentIndex]) || Character.isDigit(data[currentIndex])
-					|| data[currentIndex] == '_')) {
-				currentIndex++;
-			}
-			String word = new String(data, beginningOfWord, currentIndex - beginningOfWord);
-			if(keywords.contains(word.toUpperCase())) {
-				token = new Token2(TokenType2.KEYWORD, word);
+		replay = tokens;
+		data = tokens.chars;
+		bytes = tokens.bytes;
+		sharedData = true;
+	}
+	
+	/**
+	 * Method creates new <code>Lexer2</code> that returns tokens of given list instead of reading input.
+	 * If reading of tokens failed, lexer throws the same exception when it reaches the failure.
+	 * Tokens are returned in the same order regardless of lexer state, so the list must have been
+	 * read with the same state changes that are made while it is replayed.
+	 * 
+	 * @param tokens tokens that are replayed
+	 * @return       <code>Lexer2</code> that replays <code>tokens</code>
+	 * @throws IllegalArgumentException if <code>tokens</code> is <code>null</code>
+	 */
+	public static Lexer2 fromTokens(TokenList tokens) {
+		return new Lexer2(tokens);
+	}
+	
+	/**
+	 * Constructor for creating new <code>Lexer2</code> that shares input held in memory
+	 * with given lexer and reads it in TEXT state between given offsets.
+	 * 
+	 * @param source lexer whose input is shared
+	 * @param offset offset at which reading starts
+	 * @param end    offset at which input ends
+	 */
+	private Lexer2(Lexer2 source, int offset, int end) {
+		data = source.data;
+		this.source = source.source;
+		bytes = source.bytes;
+		limit = end;
+		keywords = source.keywords;
+		currentIndex = offset;
+		sharedData = true;
+		source.sharedData = true;
+	}
+	
+	/**
+	 * Method creates new <code>Lexer2</code> that shares input of this lexer
+	 * and starts reading it in TEXT state at given offset.
+	 * 
+	 * @param offset offset at which reading starts
+	 * @return       new <code>Lexer2</code>
+	 * @throws IllegalStateException if input of this lexer is not held in memory
+	 */
+	Lexer2 startingAt(int offset) {
+		checkInMemory();
+		return new Lexer2(this, offset, limit);
+	}
+	
+	/**
+	 * Method creates new <code>Lexer2</code> that shares input of this lexer and reads only
+	 * its part between given offsets, starting in TEXT state. Offsets of tokens of new lexer
+	 * are still counted from the beginning of the whole input.
+	 * 
+	 * @param start offset at which reading starts
+	 * @param end   offset at which input of new lexer ends
+	 * @return      new <code>Lexer2</code>
+	 * @throws IllegalStateException if input of this lexer is not held in memory
+	 * @throws IndexOutOfBoundsException if offsets are not inside of input
+	 */
+	public Lexer2 subLexer(int start, int end) {
+		checkInMemory();
+		if (start < 0 || start > end || end > limit)
+			throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end);
+		return new Lexer2(this, start, end);
+	}
+	
+	/**
+	 * Method returns length of input held in memory.
+	 * 
+	 * @return number of input units
+	 */
+	int inputLength() {
+		return limit;
+	}
+	
+	/**
+	 * Method returns input unit at given offset of input held in memory,
+	 * in UTF-8 mode that is a single byte.
+	 * 
+	 * @param offset offset of input unit
+	 * @return       input unit
+	 */
+	char unitAt(int offset) {
+		return bytes == null ? data[offset] : (char) (bytes.get(offset) & 0xFF);
+	}
+	
+	/**
+	 * Method creates empty list for tokens of this lexer's input.
+	 * 
+	 * @return new <code>TokenList</code>
+	 */
+	TokenList newTokenList() {
+		return newTokenList(0);
+	}
+	
+	/**
+	 * Method creates new empty list for tokens of input held in memory
+	 * that has room for given number of tokens.
+	 * 
+	 * @param capacity initial number of tokens the list can hold
+	 * @return         new <code>TokenList</code>
+	 */
+	TokenList newTokenList(int capacity) {
+		checkInMemory();
+		sharedData = true;
+		return new TokenList(data, bytes, capacity);
+	}
+	
+	/**
+	 * Method reads tokens into given list and changes state the same way parser does:
+	 * to TAG after open curly bracket is read in TEXT state, and to TEXT after closed
+	 * curly bracket is read in TAG state. Reading stops after EOF token is read,
+	 * or before reading token in TEXT state that starts at or after <code>stopOffset</code>.
+	 * 
+	 * @param list       list that tokens are added to
+	 * @param stopOffset offset at which reading stops
+	 * @throws LexerException if input is invalid
+	 */
+	void readTokens(TokenList list, int stopOffset) {
+		while (state != Lexer2State.TEXT || bufferOffset + currentIndex < stopOffset) {
+			TokenType2 type = next();
+			list.add(type, startOffset, endOffset, tokenValue(type));
+			if (type == TokenType2.EOF)
 				return;
-			}
-			token = new Token2(TokenType2.VAR, word);
-			return;
+			switchState(type);
 		}
-		// Number: it can be integer or double
-		if (Character.isDigit(data[currentIndex])) {
-			int beginningOfNumber = currentIndex;
-			currentIndex++;
-			while(currentIndex < data.length && Character.isDigit(data[currentIndex])) {
-				currentIndex++;
-			}
-			// It's a double
-			if(data[currentIndex] == '.') {
-				currentIndex++;
-				while(currentIndex < data.length && Character.isDigit(data[currentIndex])) {
-					currentIndex++;
-				}
-				String numberInput = new String(data, beginningOfNumber, currentIndex - beginningOfNumber);
-				Double number;
-				number = Double.parseDouble(numberInput);
-				token = new Token2(TokenType2.DOUBLE, number);
-				return;
-			}
-			// It's a integer
-			String numberInput = new String(data, beginningOfNumber, currentIndex - beginningOfNumber);
-			Long number;
-			number = Long.parseLong(numberInput);
-			token = new Token2(TokenType2.INTEGER, number);
-			return;
+	}
+	
+	/**
+	 * Method reads up to <code>length</code> next tokens into given arrays, starting at index
+	 * <code>offset</code> of every array. Lexer changes state the same way parser does: to TAG
+	 * after open curly bracket is read in TEXT state, and to TEXT after closed curly bracket
+	 * is read in TAG state.
+	 * <p>
+	 * For every token its type, start offset, end offset and value are stored. Value of INTEGER
+	 * token is the integer itself, value of DOUBLE token holds bits of the <code>double</code>
+	 * (see {@link Double#longBitsToDouble(long)}), value of OPERATOR and symbol tokens is their
+	 * character and value of TEXT, VAR and KEYWORD token holds range of its text in input, which
+	 * is turned into <code>String</code> with {@link #getTextValue(long)}.
+	 * <p>
+	 * Reading stops after EOF token. If input is invalid, tokens before the invalid one are
+	 * returned and exception is thrown by the next call.
+	 * 
+	 * @param types  array for types of tokens
+	 * @param starts array for start offsets of tokens
+	 * @param ends   array for end offsets of tokens
+	 * @param values array for values of tokens
+	 * @param offset index of first element of arrays that is written
+	 * @param length maximal number of tokens that are read
+	 * @return       number of tokens read, 0 if EOF token was already read
+	 * @throws IllegalArgumentException if any array is <code>null</code>
+	 * @throws IndexOutOfBoundsException if <code>offset</code> and <code>length</code> are not valid for every array
+	 * @throws IllegalStateException if input is read from a <code>Reader</code> or a channel, or pushed into lexer
+	 * @throws LexerException if input is invalid
+	 */
+	public int nextTokens(TokenType2[] types, int[] starts, int[] ends, long[] values, int offset, int length) {
+		if (types == null || starts == null || ends == null || values == null)
+			throw new IllegalArgumentException("Arrays must not be null");
+		if (offset < 0 || length < 0 || offset + length > Math.min(Math.min(types.length, starts.length),
+				Math.min(ends.length, values.length)))
+			throw new IndexOutOfBoundsException("Offset: " + offset + ", length: " + length);
+		if (reader != null || push)
+			throw new IllegalStateException("Tokens can not be read in batches from streamed input");
+		if (pendingError != null) {
+			RuntimeException error = pendingError;
+			pendingError = null;
+			throw error;
 		}
 		
-		// If line starts with double quote, it's a string (TEXT) in TAG
-		if(data[currentIndex] == '\"') {
-			currentIndex++;
-			int beginningOfText = currentIndex;
-			while(true) {
-				
-				if(currentIndex >= data.length)
-					throw new IllegalArgumentException("Invalid input");
-				
-				// break when we come across ending double quote 
-				if(data[currentIndex] == '\"')
-					break;
-				// if we come across backslash skip it
-				if(data[currentIndex] == '\\') {
-					currentIndex++;
-				}
-				currentIndex++;
-			}
-			String text = new String(data, beginningOfText, currentIndex - beginningOfText);
-			token = new Token2(TokenType2.TEXT, text);
-			currentIndex++;
-			return;
-		}
-		// Operators: +, -, *, /, ^
-		if (isOperator(data[currentIndex])) {
-			if(data[currentIndex] == '-') {
-				// Check if it's a negative number
-				int beginningIndex = currentIndex;
-				int nextIndex = currentIndex + 1;
-				if(nextIndex < data.length && Character.isDigit(data[nextIndex])) {
-					nextIndex++;
-					while(nextIndex < data.length && Character.isDigit(data[nextIndex])) {
-						nextIndex++;
-					}
-					String negativeNumberInput = new String(data, beginningIndex, nextIndex - beginningIndex);
-					Long negativeNumber;
-					negativeNumber = Long.parseLong(negativeNumberInput);
-					token = new Token2(TokenType2.INTEGER, negativeNumber);
-					currentIndex = nextIndex;
-					return;
-				}
+		int count = 0;
+		while (count < length && tokenType != TokenType2.EOF) {
+			TokenType2 type;
+			try {
+				type = next();
+			} catch (RuntimeException ex) {
+				if (count == 0)
+					throw ex;
+				pendingError = ex;
+				break;
 			}
-			token = new Token2(TokenType2.OPERATOR, data[currentIndex]);
-			currentIndex++;
-			return;
+			int index = offset + count++;
+			types[index] = type;
+			starts[index] = startOffset;
+			ends[index] = endOffset;
+			values[index] = tokenValue(type);
+			switchState(type);
 		}
-		
-		// Everything else are invalid symbols in TAG
-		throw new LexerException("Invalid symbol in TAG. You entered: " + data[currentIndex]);
+		return count;
 	}
 	
 	/**
-	 * Method checks if character is a valid operator.
-	 * Operators are: '+', '-', '*', '/', '^'
+	 * Method returns text of TEXT, VAR or KEYWORD token whose value was read by
+	 * {@link #nextTokens(TokenType2[], int[], int[], long[], int, int)}.
 	 * 
-	 * @param c character that is checked
-	 * @return  <code>true</code> if given character is operator, otherwise <code>false</code>
+	 * @param value value of token
+	 * @return      <code>String</code> value of token
+	 * @throws IllegalStateException if input is read from a <code>Reader</code> or a channel, or pushed into lexer
 	 */
-	private boolean isOperator(char c) {
-		return c == '+' || c == '-' || c == '*' || c == '/' || c == '^';
+	public String getTextValue(long value) {
+		if (reader != null || push)
+			throw new IllegalStateException("Tokens can not be read in batches from streamed input");
+		return text((int) (value >>> 32), (int) value);
 	}
 	
 	/**
-	 * Method used for initializing <code>Lexer2<code>.
+	 * Method checks, without creating any objects, if text of TEXT, VAR or KEYWORD token
+	 * whose value was read by {@link #nextTokens(TokenType2[], int[], int[], long[], int, int)}
+	 * is equal to given text, ignoring case.
+	 * 
+	 * @param value value of token
+	 * @param text  text that token is compared to
+	 * @return      <code>true</code> if text of token is equal to <code>text</code> ignoring case,
+	 * 				otherwise <code>false</code>
+	 * @throws IllegalStateException if input is read from a <code>Reader</code> or a channel, or pushed into lexer
 	 */
-	private void initLexer() {
-		keywords.add("FOR");
-		keywords.add("END");
+	public boolean textEqualsIgnoreCase(long value, String text) {
+		if (reader != null || push)
+			throw new IllegalStateException("Tokens can not be read in batches from streamed input");
+		return regionEqualsIgnoreCase((int) (value >>> 32), (int) value, text);
 	}
 	
 	/**
-	 * Helper method for getting type of token if character is special symbol
+	 * Helper method that returns value of current token of given type packed into <code>long</code>.
 	 * 
-	 * @param c character that is checked
-	 * @return  <code>TokenType2</code> of <code>c</code> if <code>c</code> is special symbol,
-	 * 			<code>null</code> otherwise
+	 * @param type type of current token
+	 * @return     packed value of current token
 	 */
-	private TokenType2 getTypeFromSpecialSymbols(char c) {
-		if (c == '{') {
-			return TokenType2.OPEN_BKRACKETS;
-		}else if( c == '}') {
-			return TokenType2.CLOSE_BRACKETS;
-		}else if(c == '$') {
-			return TokenType2.DOLLAR;
-		}else if(c == '@') {
-			return TokenType2.AT;
-		}else if(c == '=') {
-			return TokenType2.EQUALS;
-		}else {
-			return null;
+	private long tokenValue(TokenType2 type) {
+		switch (type) {
+		case EOF:
+			return 0;
+		case INTEGER:
+			return longValue;
+		case DOUBLE:
+			return Double.doubleToRawLongBits(doubleValue);
+		case TEXT:
+		case VAR:
+		case KEYWORD:
+			return TokenList.textRange(valueStart, valueEnd);
+		default:
+			return symbol;
 		}
 	}
 	
 	/**
-	 * Method used for changing state of <code>Lexer2</code>.
+	 * Helper method that changes state after token of given type the same way parser does.
 	 * 
-	 * @param state new lexer state
+	 * @param type type of token that was read
 	 */
-	public void setState(Lexer2State state) {
-		this.state = state;
+	private void switchState(TokenType2 type) {
+		if (type == TokenType2.OPEN_BKRACKETS && state == Lexer2State.TEXT)
+			state = Lexer2State.TAG;
+		else if (type == TokenType2.CLOSE_BRACKETS && state == Lexer2State.TAG)
+			state = Lexer2State.TEXT;
 	}
 	
 	/**
-	 * Private method for skipping any whitespaces.
-	 * That includes: ' ', '\n', '\t', '\r'.
+	 * Method resets this lexer so that it reads given text from the beginning in TEXT state,
+	 * as if it was created by {@link #Lexer2(String)}. Buffer of this lexer is reused if it is large
+	 * enough and no other lexer or token list uses it, keyword table of this lexer is kept.
+	 * 
+	 * @param text input text
+	 * @throws IllegalArgumentException if <code>text</code> is <code>null</code>
 	 */
-	private void skipWhitespaces() {
-		while(currentIndex < data.length) {
-			if (isWhitespace(data[currentIndex])) {
-				currentIndex++;
-				continue;
-			}
-			break;	
+	public void reset(String text) {
+		if (text == null) 
+			throw new IllegalArgumentException("Text must not be null");
+		
+		int length = text.length();
+		if (sharedData || data == null || data.length < length) {
+			data = new char[length];
+			sharedData = false;
 		}
+		text.getChars(0, length, data, 0);
+		source = text;
+		limit = length;
+		reader = null;
+		bytes = null;
+		bufferOffset = 0;
+		tokenStart = 0;
+		currentIndex = 0;
+		currentWidth = 1;
+		if (spill != null)
+			spill.setLength(0);
+		tokenType = null;
+		startOffset = 0;
+		endOffset = 0;
+		valueStart = 0;
+		valueEnd = 0;
+		longValue = 0;
+		doubleValue = 0;
+		symbol = 0;
+		textValue = null;
+		token = null;
+		state = Lexer2State.TEXT;
+		replay = null;
+		replayIndex = 0;
+		pendingError = null;
+		push = false;
+		inputEnded = false;
+		starved = false;
+		textResume = -1;
 	}
 	
 	/**
-	 * Method checks if given character is a whitespace.
-	 * That includes: ' ', '\n', '\t', '\r'.
-	 * @param c character that is checked
-	 * @return  <code>true</code> if <code>c</code> is a whitespace, otherwise <code>false</code>
+	 * Method resets this lexer to empty input and overwrites previous input in its buffer,
+	 * so that lexer which is kept for reuse does not hold on to text it has read.
+	 * Buffer itself is kept so that it can be reused by the next {@link #reset(String)}.
 	 */
-	private boolean isWhitespace(char c) {
-		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	public void clear() {
+		if (!sharedData && data != null)
+			Arrays.fill(data, 0, limit, '\0');
+		reset("");
 	}
-
+	
 	/**
-	 * Method returns current state of lexer.
+	 * Helper method that checks if the whole input is held in memory.
+	 */
+	private void checkInMemory() {
+		if (reader != null || replay != null || push)
+			throw new IllegalStateException("Input must be held in memory");
+	}
+	
+	/**
+	 * Method creates new <code>Lexer2</code> that works directly on memory-mapped
+	 * content of given UTF-8 encoded file.
 	 * 
-	 * @return <code>Lexer2State</code> of lexer
+	 * @param path path of the file
+	 * @return     <code>Lexer2</code> that reads from mapped file
+	 * @throws IOException if file can not be mapped
 	 */
-	public Lexer2State getState() {
-		return state;
+	public static Lexer2 fromMappedFile(Path path) throws IOException {
+		return new Lexer2(map(path));
+	}
+	
+	/**
+	 * Method maps content of given file into memory as read only buffer.
+	 * Mapping stays valid after the channel used for mapping is closed.
+	 * 
+	 * @param path path of the file
+	 * @return     <code>MappedByteBuffer</code> with content of the file
+	 * @throws IOException if file can not be mapped
+	 */
+	public static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+	
+	/**
+	 * Helper method that creates UTF-8 decoding reader of given channel.
+	 * Malformed input is replaced the same way <code>new String(bytes, UTF_8)</code> does it.
+	 * 
+	 * @param channel channel that is wrapped
+	 * @return        <code>Reader</code> that decodes channel's bytes
+	 */
+	private static Reader newUtf8Reader(ReadableByteChannel channel) {
+		if (channel == null)
+			throw new IllegalArgumentException("Channel must not be null");
+		
+		return Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE), -1);
+	}
+	
+	/**
+	 * Method returns current token.
+	 * <code>Token2</code> is created on first request and the same object is returned
+	 * until lexer moves to the next token.
+	 * 
+	 * @return <code>Token2</code> current token, <code>null</code> if no token was read
+	 */
+	public Token2 getToken() {
+		if (token != null || tokenType == null)
+			return token;
+		
+		switch (tokenType) {
+		case EOF:
+			token = new Token2(TokenType2.EOF, null);
+			break;
+		case TEXT:
+			if (bytes != null)
+				token = new Token2(TokenType2.TEXT, bytes, valueStart, valueEnd);
+			else
+				token = new Token2(TokenType2.TEXT, getTextValue());
+			break;
+		case VAR:
+		case KEYWORD:
+			token = new Token2(tokenType, getTextValue());
+			break;
+		case INTEGER:
+			token = new Token2(TokenType2.INTEGER, Long.valueOf(longValue));
+			break;
+		case DOUBLE:
+			token = new Token2(TokenType2.DOUBLE, Double.valueOf(getDoubleValue()));
+			break;
+		default:
+			token = new Token2(tokenType, Character.valueOf(symbol));
+		}
+		return token;
+	}
+	
+	/**
+	 * Method used for setting next token from input data.
+	 * 
+	 * @return <code>Token2</code> next token
+	 */
+	public Token2 nextToken() {
+		next();
+		return getToken();
+	}
+	
+	/**
+	 * Method moves cursor to the next token of input data without creating any objects.
+	 * Properties of the token are then read with {@link #getTokenType()}, {@link #getTokenStart()},
+	 * {@link #getTokenEnd()}, {@link #getLongValue()}, {@link #getDoubleValue()},
+	 * {@link #getCharValue()} and {@link #getTextValue()}.
+	 * 
+	 * @return <code>TokenType2</code> of next token, <code>null</code> if input is pushed
+	 * 		   into lexer and next token is not complete yet
+	 * @throws LexerException if there are no more tokens or input is invalid
+	 */
+	public TokenType2 next() {
+		if (tokenType == TokenType2.EOF)
+			throw new LexerException("There is no more tokens");
+		
+		token = null;
+		textValue = null;
+		if (replay != null) {
+			replayNext();
+		} else if (push) {
+			nextPushed();
+		} else if (this.state == Lexer2State.TEXT) {
+			scanText();
+		} else {
+			scanTag();
+		}
+		return tokenType;
+	}
+	
+	/**
+	 * Method reads next token of pushed input. If scanning reaches end of input that was
+	 * pushed so far, token is suspended and there is no current token. Suspended TAG token
+	 * is scanned again from its start, while scanning of TEXT continues where it stopped.
+	 */
+	private void nextPushed() {
+		if (state != Lexer2State.TEXT)
+			textResume = -1;
+		starved = false;
+		try {
+			if (state == Lexer2State.TEXT) {
+				scanText();
+			} else {
+				scanTag();
+			}
+		} catch (RuntimeException ex) {
+			// token that is cut off by end of pushed input is not invalid yet
+			if (!starved)
+				throw ex;
+		}
+		if (starved) {
+			currentIndex = tokenStart;
+			tokenType = null;
+		}
+	}
+	
+	/**
+	 * Method loads next replayed token as current token.
+	 */
+	private void replayNext() {
+		int index = replayIndex;
+		if (index == replay.size()) {
+			if (replay.getError() != null)
+				throw replay.getError();
+			throw new LexerException("There is no more tokens");
+		}
+		replayIndex++;
+		
+		tokenType = TOKEN_TYPES[replay.typeOrdinal(index)];
+		startOffset = replay.getStart(index);
+		endOffset = replay.getEnd(index);
+		long value = replay.value(index);
+		switch (tokenType) {
+		case EOF:
+			break;
+		case INTEGER:
+			longValue = value;
+			break;
+		case DOUBLE:
+			doubleValue = Double.longBitsToDouble(value);
+			break;
+		case TEXT:
+		case VAR:
+		case KEYWORD:
+			valueStart = replay.valueStart(index);
+			valueEnd = replay.valueEnd(index);
+			break;
+		default:
+			symbol = (char) value;
+		}
+	}
+	
+	/**
+	 * Method returns type of current token.
+	 * 
+	 * @return <code>TokenType2</code> of current token, <code>null</code> if no token was read
+	 */
+	public TokenType2 getTokenType() {
+		return tokenType;
+	}
+	
+	/**
+	 * Method returns offset of first character of current token from the beginning of input.
+	 * In UTF-8 mode offsets are counted in bytes. Offset of string in TAG includes its quotes.
+	 * 
+	 * @return offset where current token starts
+	 */
+	public int getTokenStart() {
+		return startOffset;
+	}
+	
+	/**
+	 * Method returns offset after last character of current token from the beginning of input.
+	 * In UTF-8 mode offsets are counted in bytes. Offset of string in TAG includes its quotes.
+	 * 
+	 * @return offset where current token ends
+	 */
+	public int getTokenEnd() {
+		return endOffset;
+	}
+	
+	/**
+	 * Method returns value of current INTEGER token.
+	 * 
+	 * @return <code>long</code> value of current token
+	 * @throws IllegalStateException if current token is not INTEGER
+	 */
+	public long getLongValue() {
+		if (tokenType != TokenType2.INTEGER)
+			throw new IllegalStateException("Current token is not INTEGER. It is: " + tokenType);
+		return longValue;
+	}
+	
+	/**
+	 * Method returns value of current DOUBLE token.
+	 * 
+	 * @return <code>double</code> value of current token
+	 * @throws IllegalStateException if current token is not DOUBLE
+	 */
+	public double getDoubleValue() {
+		if (tokenType != TokenType2.DOUBLE)
+			throw new IllegalStateException("Current token is not DOUBLE. It is: " + tokenType);
+		return doubleValue;
+	}
+	
+	/**
+	 * Method returns character of current OPERATOR token or special symbol token
+	 * (OPEN_BKRACKETS, CLOSE_BRACKETS, DOLLAR, AT, EQUALS).
+	 * 
+	 * @return <code>char</code> value of current token
+	 * @throws IllegalStateException if current token has no character value
+	 */
+	public char getCharValue() {
+		if (!hasCharValue(tokenType))
+			throw new IllegalStateException("Current token has no character value. It is: " + tokenType);
+		return symbol;
+	}
+	
+	/**
+	 * Method returns text of current TEXT, VAR or KEYWORD token.
+	 * <code>String</code> is created on first request.
+	 * 
+	 * @return <code>String</code> value of current token
+	 * @throws IllegalStateException if current token has no text value
+	 */
+	public String getTextValue() {
+		if (textValue != null)
+			return textValue;
+		if (!hasTextValue(tokenType))
+			throw new IllegalStateException("Current token has no text value. It is: " + tokenType);
+		
+		if (tokenType == TokenType2.TEXT && spill != null && spill.length() > 0) {
+			textValue = new StringBuilder(spill.length() + valueEnd - valueStart)
+					.append(spill).append(data, valueStart, valueEnd - valueStart).toString();
+		} else {
+			textValue = text(valueStart, valueEnd);
+		}
+		return textValue;
+	}
+	
+	/**
+	 * Method returns text of current TEXT, VAR or KEYWORD token. If input was given as <code>String</code>,
+	 * returned text is a {@link TextSlice} of that <code>String</code> and no characters are copied,
+	 * otherwise it is the same as {@link #getTextValue()}.
+	 * 
+	 * @return text of current token
+	 * @throws IllegalStateException if current token has no text value
+	 */
+	public CharSequence getTextSequence() {
+		if (textValue != null || source == null || (spill != null && spill.length() > 0))
+			return getTextValue();
+		if (!hasTextValue(tokenType))
+			throw new IllegalStateException("Current token has no text value. It is: " + tokenType);
+		return new TextSlice(source, valueStart, valueEnd);
+	}
+	
+	/**
+	 * Method checks, without creating any objects, if current token is TEXT, VAR or KEYWORD token
+	 * whose text is equal to given text, ignoring case.
+	 * 
+	 * @param text text that current token is compared to
+	 * @return     <code>true</code> if current token has text value equal to <code>text</code>
+	 * 			   ignoring case, otherwise <code>false</code>
+	 */
+	public boolean tokenEqualsIgnoreCase(String text) {
+		if (!hasTextValue(tokenType))
+			return false;
+		if (textValue != null || (spill != null && spill.length() > 0))
+			return getTextValue().equalsIgnoreCase(text);
+		return regionEqualsIgnoreCase(valueStart, valueEnd, text);
+	}
+	
+	/**
+	 * Helper method that compares input between given indexes with given text, ignoring case.
+	 * In UTF-8 mode only ASCII input is compared, since none of the language's words contains other characters.
+	 * 
+	 * @param start index of first input unit
+	 * @param end   index after last input unit
+	 * @param text  text that input is compared to
+	 * @return      <code>true</code> if input is equal to <code>text</code> ignoring case, otherwise <code>false</code>
+	 */
+	private boolean regionEqualsIgnoreCase(int start, int end, String text) {
+		if (end - start != text.length())
+			return false;
+		
+		for (int i = start; i < end; i++) {
+			char c = bytes == null ? data[i] : (char) bytes.get(i);
+			char other = text.charAt(i - start);
+			if (c != other && Character.toUpperCase(c) != Character.toUpperCase(other))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Method checks if tokens of given type have text value.
+	 * 
+	 * @param type type of token
+	 * @return     <code>true</code> for TEXT, VAR and KEYWORD, otherwise <code>false</code>
+	 */
+	private static boolean hasTextValue(TokenType2 type) {
+		return type == TokenType2.TEXT || type == TokenType2.VAR || type == TokenType2.KEYWORD;
+	}
+	
+	/**
+	 * Method checks if tokens of given type have character value.
+	 * 
+	 * @param type type of token
+	 * @return     <code>true</code> for OPERATOR and special symbols, otherwise <code>false</code>
+	 */
+	private static boolean hasCharValue(TokenType2 type) {
+		return type == TokenType2.OPERATOR || type == TokenType2.OPEN_BKRACKETS || type == TokenType2.CLOSE_BRACKETS
+				|| type == TokenType2.DOLLAR || type == TokenType2.AT || type == TokenType2.EQUALS;
+	}
+	
+	/**
+	 * Method sets type and end offset of current token.
+	 * 
+	 * @param type type of token that was read
+	 */
+	private void setToken(TokenType2 type) {
+		tokenType = type;
+		endOffset = bufferOffset + currentIndex;
+	}
+	
+	/**
+	 * Method used for reading new token when lexer is in TEXT mode
+	 */
+	private void scanText() {
+		if (textResume >= 0) {
+			// pushed TEXT token continues where its scanning was suspended
+			currentIndex = textResume;
+			textResume = -1;
+			startOffset = bufferOffset + tokenStart;
+		} else {
+			tokenStart = currentIndex;
+			startOffset = bufferOffset + currentIndex;
+			if (spill != null)
+				spill.setLength(0);
+			
+			if (!hasNext()) {
+				setToken(TokenType2.EOF);
+				return;
+			}
+			
+			// open curly bracket represents start of TAG
+			if (unit() == '{') {
+				symbol = '{';
+				currentIndex++;
+				setToken(TokenType2.OPEN_BKRACKETS);
+				return;
+			}
+		}
+		
+		while (true) {
+			// plain characters are skipped in bulk, loop stops only on delimiters and buffer ends
+			currentIndex = bytes == null
+					? indexOfTextDelimiter(data, currentIndex, limit)
+					: indexOfTextDelimiter(bytes, currentIndex, limit);
+			if (currentIndex == limit) {
+				if (!hasNextText())
+					break;
+				continue;
+			}
+			if (unit() == '{')
+				break;
+			
+			// it's a backslash
+			currentIndex++;
+			// backslash at the very end of input is taken literally
+			if (!hasNextText()) {
+				// unless escaped character was not pushed yet
+				if (starved)
+					currentIndex--;
+				break;
+			}
+			currentIndex++;
+		}
+		if (starved) {
+			textResume = currentIndex;
+			return;
+		}
+		valueStart = tokenStart;
+		valueEnd = currentIndex;
+		setToken(TokenType2.TEXT);
+	}
+	
+	/**
+	 * Method finds first open curly bracket or backslash in given range of characters.
+	 * Four characters are checked in each step without branching on every one of them.
+	 * 
+	 * @param chars characters that are searched
+	 * @param from  index of first character that is checked
+	 * @param to    index after last character that is checked
+	 * @return      index of first delimiter, <code>to</code> if range contains none
+	 */
+	private static int indexOfTextDelimiter(char[] chars, int from, int to) {
+		int i = from;
+		for (int end = to - 3; i < end; i += 4) {
+			char c0 = chars[i];
+			char c1 = chars[i + 1];
+			char c2 = chars[i + 2];
+			char c3 = chars[i + 3];
+			if ((c0 == '{') | (c0 == '\\') | (c1 == '{') | (c1 == '\\')
+					| (c2 == '{') | (c2 == '\\') | (c3 == '{') | (c3 == '\\'))
+				break;
+		}
+		for (; i < to; i++) {
+			char c = chars[i];
+			if (c == '{' || c == '\\')
+				return i;
+		}
+		return to;
+	}
+	
+	/**
+	 * every byte is open curly bracket
+	 */
+	private static final long OPEN_BRACKET_BYTES = 0x7B7B7B7B7B7B7B7BL;
+	/**
+	 * every byte is backslash
+	 */
+	private static final long BACKSLASH_BYTES = 0x5C5C5C5C5C5C5C5CL;
+	/**
+	 * every byte has all bits except the highest one set
+	 */
+	private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+	
+	/**
+	 * Method finds first open curly bracket or backslash in given range of UTF-8 bytes.
+	 * Eight bytes are read as one <code>long</code> and checked at once. Both delimiters
+	 * are ASCII, so they never match a part of multi byte sequence.
+	 * 
+	 * @param bytes big endian buffer that is searched
+	 * @param from  index of first byte that is checked
+	 * @param to    index after last byte that is checked
+	 * @return      index of first delimiter, <code>to</code> if range contains none
+	 */
+	private static int indexOfTextDelimiter(ByteBuffer bytes, int from, int to) {
+		int i = from;
+		for (; i + Long.BYTES <= to; i += Long.BYTES) {
+			long word = bytes.getLong(i);
+			long found = zeroBytes(word ^ OPEN_BRACKET_BYTES) | zeroBytes(word ^ BACKSLASH_BYTES);
+			if (found != 0)
+				// first byte in memory is the most significant one
+				return i + (Long.numberOfLeadingZeros(found) >>> 3);
+		}
+		for (; i < to; i++) {
+			byte b = bytes.get(i);
+			if (b == '{' || b == '\\')
+				return i;
+		}
+		return to;
+	}
+	
+	/**
+	 * Method marks zero bytes of given word. Highest bit of a byte in result is set
+	 * if and only if that byte is zero in <code>word</code>, all other bits are cleared.
+	 * Unlike the usual approximation, carries never cross bytes, so result is exact.
+	 * 
+	 * @param word eight bytes that are checked
+	 * @return     word with highest bit set in every byte that was zero
+	 */
+	private static long zeroBytes(long word) {
+		long low = (word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+		return ~(low | word | LOW_SEVEN_BITS);
+	}
+
+	/**
+	 * the smallest accumulated negative value that can still be multiplied by ten,
+	 * it is the same for positive and negative numbers
+	 */
+	private static final long MULTIPLY_MIN = Long.MIN_VALUE / 10;
+	/**
+	 * the largest mantissa whose every integer value up to it is exactly representable as <code>double</code>
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	/**
+	 * powers of ten that are exactly representable as <code>double</code>
+	 */
+	private static final double[] EXACT_POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	
+	/**
+	 * Method used for reading new token when lexer is in TAG mode.
+	 * Token is recognized by deterministic automaton whose transitions are
+	 * looked up in precomputed tables of <code>Lexer2Tables</code>.
+	 */
+	private void scanTag() {
+		int state = S_START;
+		int target;
+		// integer digits are accumulated as negative number, so that Long.MIN_VALUE can be represented
+		long result = 0;
+		boolean overflow = false;
+		int fractionDigits = 0;
+		char c;
+		// position is kept in locals and written back only when more input is read
+		char[] chars = data;
+		int index = currentIndex;
+		int start = index;
+		int width = 1;
+		
+		while (true) {
+			if (index < limit) {
+				if (chars != null) {
+					c = chars[index];
+				} else {
+					currentIndex = index;
+					c = current();
+					width = currentWidth;
+				}
+				target = c < 128
+						? ASCII_TRANSITIONS[state << 7 | c]
+						: TRANSITIONS[state * CLASS_COUNT + classOf(c)];
+			} else {
+				currentIndex = index;
+				tokenStart = start;
+				boolean more = fill();
+				chars = data;
+				index = currentIndex;
+				start = tokenStart;
+				if (more)
+					continue;
+				c = 0;
+				target = TRANSITIONS[state * CLASS_COUNT + C_END];
+			}
+			
+			if (target < 0)
+				break;
+			if (target >= S_INTEGER && c != '.') {
+				// automaton enters number states only on digits, except for the decimal point
+				int digit = c < 128 ? c - '0' : Character.digit(c, 10);
+				if (result < MULTIPLY_MIN || result * 10 < Long.MIN_VALUE + digit)
+					overflow = true;
+				result = result * 10 - digit;
+				if (state == S_FRACTION)
+					fractionDigits++;
+			}
+			index += width;
+			if (target == S_START) {
+				// whitespaces before token are discarded
+				start = index;
+			}
+			state = target;
+		}
+		
+		currentIndex = index;
+		tokenStart = start;
+		startOffset = bufferOffset + tokenStart;
+		switch (target) {
+		case A_EOF:
+			setToken(TokenType2.EOF);
+			return;
+		case A_WORD:
+			valueStart = tokenStart;
+			valueEnd = currentIndex;
+			setToken(isKeyword() ? TokenType2.KEYWORD : TokenType2.VAR);
+			return;
+		case A_INTEGER:
+			if (state == S_INTEGER) {
+				// positive number can not be Long.MIN_VALUE
+				overflow |= result == Long.MIN_VALUE;
+				result = -result;
+			}
+			if (overflow)
+				throw error("Integer is out of range. You entered: " + text(tokenStart, currentIndex));
+			longValue = result;
+			setToken(TokenType2.INTEGER);
+			return;
+		case A_DOUBLE:
+			if (!overflow && result >= -MAX_EXACT_MANTISSA && fractionDigits < EXACT_POWERS_OF_TEN.length) {
+				// both operands are exact, so correctly rounded division gives correctly rounded result
+				doubleValue = -result / EXACT_POWERS_OF_TEN[fractionDigits];
+			} else {
+				doubleValue = Double.parseDouble(text(tokenStart, currentIndex));
+			}
+			setToken(TokenType2.DOUBLE);
+			return;
+		case A_MINUS:
+			symbol = '-';
+			setToken(TokenType2.OPERATOR);
+			return;
+		case A_SYMBOL:
+			symbol = c;
+			advance();
+			setToken(SYMBOL_TYPES[c]);
+			return;
+		case A_OPERATOR:
+			symbol = c;
+			advance();
+			setToken(TokenType2.OPERATOR);
+			return;
+		case A_STRING:
+			advance();
+			scanString();
+			return;
+		default:
+			// Everything else are invalid symbols in TAG
+			throw error("Invalid symbol in TAG. You entered: " + c);
+		}
+	}
+	
+	/**
+	 * Helper method that creates exception about invalid input, without stack trace
+	 * if stack traces are turned off.
+	 * 
+	 * @param message message that describes invalid input
+	 * @return        new <code>LexerException</code>
+	 */
+	private LexerException error(String message) {
+		return new LexerException(message, !stacklessErrors);
+	}
+	
+	/**
+	 * Helper method that creates exception about string in TAG that is not closed.
+	 * 
+	 * @return <code>IllegalArgumentException</code>, or <code>LexerException</code> without stack trace
+	 *         if stack traces are turned off
+	 */
+	private RuntimeException unclosedString() {
+		return stacklessErrors ? error("Invalid input. String is not closed") : new IllegalArgumentException("Invalid input");
+	}
+	
+	/**
+	 * Method sets if exceptions about invalid input are created without stack traces,
+	 * which makes them much cheaper for callers that expect a lot of invalid input.
+	 * Without stack traces, string in TAG that is not closed is reported with
+	 * <code>LexerException</code> instead of <code>IllegalArgumentException</code>.
+	 * 
+	 * @param stacklessErrors <code>true</code> if exceptions are created without stack traces
+	 */
+	public void setStacklessErrors(boolean stacklessErrors) {
+		this.stacklessErrors = stacklessErrors;
+	}
+	
+	/**
+	 * Method skips the rest of a tag after invalid input was found in it, so that reading can continue:
+	 * input is skipped up to and including the next closed curly bracket, or up to the next
+	 * open curly bracket, whichever comes first. Lexer then continues in TEXT state.
+	 * 
+	 * @throws IllegalStateException if input is not held in memory
+	 */
+	public void skipTag() {
+		checkInMemory();
+		int index = currentIndex;
+		while (index < limit) {
+			char c = data != null ? data[index] : (char) (bytes.get(index) & 0xFF);
+			if (c == '{')
+				break;
+			index++;
+			if (c == '}')
+				break;
+		}
+		currentIndex = index;
+		tokenStart = index;
+		pendingError = null;
+		state = Lexer2State.TEXT;
+	}
+	
+	/**
+	 * Method reads string in TAG whose opening double quote is already consumed.
+	 * Characters after backslash are skipped, they are never treated as closing double quote.
+	 */
+	private void scanString() {
+		int index = currentIndex;
+		while(true) {
+			
+			if(index >= limit) {
+				currentIndex = index;
+				if (!fill())
+					throw unclosedString();
+				index = currentIndex;
+			}
+			
+			char c = data != null ? data[index] : (char) (bytes.get(index) & 0xFF);
+			// break when we come across ending double quote 
+			if(c == '\"')
+				break;
+			// if we come across backslash skip it
+			if(c == '\\') {
+				index++;
+				if(index >= limit) {
+					currentIndex = index;
+					if (!fill())
+						throw unclosedString();
+					index = currentIndex;
+				}
+			}
+			index++;
+		}
+		currentIndex = index;
+		// buffer may have been compacted, but opening quote is still at tokenStart
+		valueStart = tokenStart + 1;
+		valueEnd = currentIndex;
+		currentIndex++;
+		setToken(TokenType2.TEXT);
+	}
+	
+	/**
+	 * Method checks if current word is one of the language keywords.
+	 * 
+	 * @return <code>true</code> if current word is keyword, otherwise <code>false</code>
+	 */
+	private boolean isKeyword() {
+		return bytes == null
+				? keywords.contains(data, valueStart, valueEnd)
+				: keywords.contains(bytes, valueStart, valueEnd);
+	}
+	
+	/**
+	 * Method returns input unit at <code>currentIndex</code> without decoding it.
+	 * In UTF-8 mode that is a single byte, so it must only be compared with ASCII characters.
+	 * 
+	 * @return input unit at <code>currentIndex</code>
+	 */
+	private char unit() {
+		if (bytes == null)
+			return data[currentIndex];
+		return (char) (bytes.get(currentIndex) & 0xFF);
+	}
+	
+	/**
+	 * Method returns character at <code>currentIndex</code>.
+	 * In UTF-8 mode byte sequence of the character is decoded and its length is
+	 * remembered so that <code>advance()</code> can skip it.
+	 * Character outside of Basic Multilingual Plane is represented by its high surrogate,
+	 * the same way it would be seen in character input.
+	 * 
+	 * @return character at <code>currentIndex</code>
+	 */
+	private char current() {
+		if (bytes == null)
+			return data[currentIndex];
+		
+		int b = bytes.get(currentIndex);
+		if (b >= 0) {
+			currentWidth = 1;
+			return (char) b;
+		}
+		return decodeCurrent(b & 0xFF);
+	}
+	
+	/**
+	 * Method moves <code>currentIndex</code> over character returned by last call of <code>current()</code>.
+	 */
+	private void advance() {
+		currentIndex += currentWidth;
+	}
+	
+	/**
+	 * Helper method that decodes multi byte UTF-8 sequence that starts at <code>currentIndex</code>.
+	 * Malformed sequence is decoded as one replacement character per byte.
+	 * 
+	 * @param lead first byte of the sequence
+	 * @return     decoded character
+	 */
+	private char decodeCurrent(int lead) {
+		int length;
+		int codePoint;
+		if (lead >= 0xF0 && lead <= 0xF4) {
+			length = 4;
+			codePoint = lead & 0x07;
+		} else if (lead >= 0xE0) {
+			length = 3;
+			codePoint = lead & 0x0F;
+		} else if (lead >= 0xC2 && lead <= 0xDF) {
+			length = 2;
+			codePoint = lead & 0x1F;
+		} else {
+			currentWidth = 1;
+			return '\uFFFD';
+		}
+		if (lead >= 0xF5 || currentIndex + length > limit) {
+			currentWidth = 1;
+			return '\uFFFD';
+		}
+		for (int i = 1; i < length; i++) {
+			int next = bytes.get(currentIndex + i);
+			if ((next & 0xC0) != 0x80) {
+				currentWidth = 1;
+				return '\uFFFD';
+			}
+			codePoint = (codePoint << 6) | (next & 0x3F);
+		}
+		// overlong encodings, surrogates and values above maximal code point are malformed
+		if ((length == 3 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint)))
+				|| (length == 4 && (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT || codePoint > Character.MAX_CODE_POINT))) {
+			currentWidth = 1;
+			return '\uFFFD';
+		}
+		currentWidth = length;
+		if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT)
+			return Character.highSurrogate(codePoint);
+		return (char) codePoint;
+	}
+	
+	/**
+	 * Method returns text of input between given indexes.
+	 * In UTF-8 mode bytes in that range are decoded.
+	 * 
+	 * @param start index of first input unit
+	 * @param end   index after last input unit
+	 * @return      <code>String</code> representation of input between given indexes
+	 */
+	private String text(int start, int end) {
+		if (bytes == null)
+			return new String(data, start, end - start);
+		return decode(bytes, start, end);
+	}
+	
+	/**
+	 * Method decodes UTF-8 encoded bytes of given buffer between given indexes.
+	 * 
+	 * @param bytes UTF-8 encoded bytes
+	 * @param start index of first byte
+	 * @param end   index after last byte
+	 * @return      decoded <code>String</code>
+	 */
+	static String decode(ByteBuffer bytes, int start, int end) {
+		if (bytes.hasArray())
+			return new String(bytes.array(), bytes.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+		
+		byte[] raw = new byte[end - start];
+		ByteBuffer source = bytes.duplicate();
+		source.position(start);
+		source.get(raw);
+		return new String(raw, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Method checks if there is at least one more unprocessed character,
+	 * reading more input if necessary.
+	 * 
+	 * @return <code>true</code> if <code>data[currentIndex]</code> is valid, otherwise <code>false</code>
+	 */
+	private boolean hasNext() {
+		return currentIndex < limit || fill();
+	}
+	
+	/**
+	 * Method checks if there is at least one more unprocessed character while TEXT token is read.
+	 * Before more input is read, already scanned part of TEXT token is moved to <code>spill</code>
+	 * so that buffer never has to grow because of long text.
+	 * 
+	 * @return <code>true</code> if <code>data[currentIndex]</code> is valid, otherwise <code>false</code>
+	 */
+	private boolean hasNextText() {
+		if (currentIndex < limit)
+			return true;
+		if (reader == null)
+			return starve();
+		
+		if (spill == null)
+			spill = new StringBuilder();
+		spill.append(data, tokenStart, currentIndex - tokenStart);
+		tokenStart = currentIndex;
+		return fill();
+	}
+	
+	/**
+	 * Method reads more input into <code>data</code>.
+	 * Characters before start of current token are discarded and buffer is enlarged
+	 * only if current token occupies the whole buffer.
+	 * 
+	 * @return <code>true</code> if at least one character was read, <code>false</code> if there is no more input
+	 * @throws UncheckedIOException if reading fails
+	 */
+	private boolean fill() {
+		if (reader == null)
+			return starve();
+		
+		if (tokenStart > 0) {
+			System.arraycopy(data, tokenStart, data, 0, limit - tokenStart);
+			limit -= tokenStart;
+			currentIndex -= tokenStart;
+			bufferOffset += tokenStart;
+			tokenStart = 0;
+		}
+		if (limit == data.length) {
+			data = Arrays.copyOf(data, data.length * 2);
+		}
+		
+		try {
+			int read;
+			do {
+				read = reader.read(data, limit, data.length - limit);
+			} while (read == 0);
+			
+			if (read < 0) {
+				reader = null;
+				return false;
+			}
+			limit += read;
+			return true;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+	
+	/**
+	 * Method marks that scanning reached end of input that was pushed so far.
+	 * 
+	 * @return <code>false</code>, since there is no more input to scan
+	 */
+	private boolean starve() {
+		if (push && !inputEnded)
+			starved = true;
+		return false;
+	}
+	
+	/**
+	 * Method used for changing state of <code>Lexer2</code>.
+	 * 
+	 * @param state new lexer state
+	 */
+	public void setState(Lexer2State state) {
+		this.state = state;
+	}
+	
+	/**
+	 * Method returns current state of lexer.
+	 * 
+	 * @return <code>Lexer2State</code> of lexer
+	 */
+	public Lexer2State getState() {
+		return state;
+	}
+	
+	/**
+	 * Method used for changing keywords that are recognized in TAG.
+	 * By default those are {@link KeywordTable#DEFAULT} keywords.
+	 * 
+	 * @param keywords new keyword table
+	 * @throws IllegalArgumentException if <code>keywords</code> is <code>null</code>
+	 */
+	public void setKeywords(KeywordTable keywords) {
+		if (keywords == null)
+			throw new IllegalArgumentException("Keywords must not be null");
+		
+		this.keywords = keywords;
+	}
+	
+	/**
+	 * Method returns keywords that are recognized in TAG.
+	 * 
+	 * @return <code>KeywordTable</code> of lexer
+	 */
+	public KeywordTable getKeywords() {
+		return keywords;
 	}
 	
 }
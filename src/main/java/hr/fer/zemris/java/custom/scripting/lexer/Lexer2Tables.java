@@ -0,0 +1,267 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+/**
+ * Class holds precomputed tables that <code>Lexer2</code> uses for scanning in TAG mode.
+ * Every character is first mapped to its character class and then pair of current state
+ * and character class is mapped to next state or to action that finishes the token.
+ * ASCII characters are classified with one table lookup, other characters fall back
+ * to <code>Character.isLetter</code> and <code>Character.isDigit</code>.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+final class Lexer2Tables {
+
+	/**
+	 * characters that have no meaning in TAG
+	 */
+	static final int C_OTHER = 0;
+	/**
+	 * whitespaces: ' ', '\n', '\r', '\t'
+	 */
+	static final int C_WHITESPACE = 1;
+	/**
+	 * letters
+	 */
+	static final int C_LETTER = 2;
+	/**
+	 * digits
+	 */
+	static final int C_DIGIT = 3;
+	/**
+	 * underscore '_'
+	 */
+	static final int C_UNDERSCORE = 4;
+	/**
+	 * dot '.'
+	 */
+	static final int C_DOT = 5;
+	/**
+	 * double quote '"'
+	 */
+	static final int C_QUOTE = 6;
+	/**
+	 * minus '-', which is operator or sign of negative number
+	 */
+	static final int C_MINUS = 7;
+	/**
+	 * operators other than minus: '+', '*', '/', '^'
+	 */
+	static final int C_OPERATOR = 8;
+	/**
+	 * special symbols: '{', '}', '$', '@', '='
+	 */
+	static final int C_SYMBOL = 9;
+	/**
+	 * end of input
+	 */
+	static final int C_END = 10;
+	/**
+	 * number of character classes
+	 */
+	static final int CLASS_COUNT = 11;
+
+	/**
+	 * state before first character of token, whitespaces are skipped in it
+	 */
+	static final int S_START = 0;
+	/**
+	 * state inside of variable or keyword
+	 */
+	static final int S_WORD = 1;
+	/**
+	 * state after minus
+	 */
+	static final int S_MINUS = 2;
+	/**
+	 * state inside of integer part of number, this and every following state accumulate digits
+	 */
+	static final int S_INTEGER = 3;
+	/**
+	 * state inside of negative integer
+	 */
+	static final int S_NEGATIVE = 4;
+	/**
+	 * state inside of decimal part of number
+	 */
+	static final int S_FRACTION = 5;
+	/**
+	 * number of states
+	 */
+	static final int STATE_COUNT = 6;
+
+	/**
+	 * action: end of input, character is not consumed
+	 */
+	static final int A_EOF = -1;
+	/**
+	 * action: variable or keyword ended, character is not consumed
+	 */
+	static final int A_WORD = -2;
+	/**
+	 * action: integer ended, character is not consumed
+	 */
+	static final int A_INTEGER = -3;
+	/**
+	 * action: double ended, character is not consumed
+	 */
+	static final int A_DOUBLE = -4;
+	/**
+	 * action: minus was operator, character after it is not consumed
+	 */
+	static final int A_MINUS = -5;
+	/**
+	 * action: character is special symbol
+	 */
+	static final int A_SYMBOL = -6;
+	/**
+	 * action: character is operator
+	 */
+	static final int A_OPERATOR = -7;
+	/**
+	 * action: character starts string
+	 */
+	static final int A_STRING = -8;
+	/**
+	 * action: character is invalid in TAG
+	 */
+	static final int A_INVALID = -9;
+
+	/**
+	 * character classes of ASCII characters
+	 */
+	static final byte[] ASCII_CLASSES = new byte[128];
+	/**
+	 * token types of special symbols, indexed by character
+	 */
+	static final TokenType2[] SYMBOL_TYPES = new TokenType2[128];
+	/**
+	 * next state or action, indexed by <code>state * CLASS_COUNT + characterClass</code>
+	 */
+	static final byte[] TRANSITIONS = new byte[STATE_COUNT * CLASS_COUNT];
+	/**
+	 * next state or action for ASCII characters, indexed by <code>state &lt;&lt; 7 | character</code>,
+	 * so that the most common characters skip classification
+	 */
+	static final byte[] ASCII_TRANSITIONS = new byte[STATE_COUNT << 7];
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) {
+			ASCII_CLASSES[c] = C_LETTER;
+			ASCII_CLASSES[Character.toUpperCase(c)] = C_LETTER;
+		}
+		for (char c = '0'; c <= '9'; c++) {
+			ASCII_CLASSES[c] = C_DIGIT;
+		}
+		ASCII_CLASSES[' '] = C_WHITESPACE;
+		ASCII_CLASSES['\n'] = C_WHITESPACE;
+		ASCII_CLASSES['\r'] = C_WHITESPACE;
+		ASCII_CLASSES['\t'] = C_WHITESPACE;
+		ASCII_CLASSES['_'] = C_UNDERSCORE;
+		ASCII_CLASSES['.'] = C_DOT;
+		ASCII_CLASSES['"'] = C_QUOTE;
+		ASCII_CLASSES['-'] = C_MINUS;
+		ASCII_CLASSES['+'] = C_OPERATOR;
+		ASCII_CLASSES['*'] = C_OPERATOR;
+		ASCII_CLASSES['/'] = C_OPERATOR;
+		ASCII_CLASSES['^'] = C_OPERATOR;
+
+		symbol('{', TokenType2.OPEN_BKRACKETS);
+		symbol('}', TokenType2.CLOSE_BRACKETS);
+		symbol('$', TokenType2.DOLLAR);
+		symbol('@', TokenType2.AT);
+		symbol('=', TokenType2.EQUALS);
+
+		// START: whitespaces are skipped, first character decides type of token
+		fill(S_START, A_INVALID);
+		transition(S_START, C_WHITESPACE, S_START);
+		transition(S_START, C_LETTER, S_WORD);
+		transition(S_START, C_DIGIT, S_INTEGER);
+		transition(S_START, C_MINUS, S_MINUS);
+		transition(S_START, C_QUOTE, A_STRING);
+		transition(S_START, C_OPERATOR, A_OPERATOR);
+		transition(S_START, C_SYMBOL, A_SYMBOL);
+		transition(S_START, C_END, A_EOF);
+
+		fill(S_WORD, A_WORD);
+		transition(S_WORD, C_LETTER, S_WORD);
+		transition(S_WORD, C_DIGIT, S_WORD);
+		transition(S_WORD, C_UNDERSCORE, S_WORD);
+
+		fill(S_INTEGER, A_INTEGER);
+		transition(S_INTEGER, C_DIGIT, S_INTEGER);
+		transition(S_INTEGER, C_DOT, S_FRACTION);
+
+		fill(S_FRACTION, A_DOUBLE);
+		transition(S_FRACTION, C_DIGIT, S_FRACTION);
+
+		fill(S_MINUS, A_MINUS);
+		transition(S_MINUS, C_DIGIT, S_NEGATIVE);
+
+		fill(S_NEGATIVE, A_INTEGER);
+		transition(S_NEGATIVE, C_DIGIT, S_NEGATIVE);
+		
+		for (int state = 0; state < STATE_COUNT; state++) {
+			for (int c = 0; c < 128; c++) {
+				ASCII_TRANSITIONS[state << 7 | c] = TRANSITIONS[state * CLASS_COUNT + ASCII_CLASSES[c]];
+			}
+		}
+	}
+
+	/**
+	 * Private constructor, class only holds tables.
+	 */
+	private Lexer2Tables() {
+	}
+
+	/**
+	 * Method returns character class of given character.
+	 *
+	 * @param c character that is classified
+	 * @return  character class of <code>c</code>
+	 */
+	static int classOf(char c) {
+		if (c < 128)
+			return ASCII_CLASSES[c];
+		if (Character.isLetter(c))
+			return C_LETTER;
+		if (Character.isDigit(c))
+			return C_DIGIT;
+		return C_OTHER;
+	}
+
+	/**
+	 * Helper method for registering special symbol.
+	 *
+	 * @param c    special symbol
+	 * @param type token type of the symbol
+	 */
+	private static void symbol(char c, TokenType2 type) {
+		ASCII_CLASSES[c] = C_SYMBOL;
+		SYMBOL_TYPES[c] = type;
+	}
+
+	/**
+	 * Helper method that sets the same transition for every character class of given state.
+	 *
+	 * @param state  state whose transitions are set
+	 * @param target next state or action
+	 */
+	private static void fill(int state, int target) {
+		for (int c = 0; c < CLASS_COUNT; c++) {
+			transition(state, c, target);
+		}
+	}
+
+	/**
+	 * Helper method that sets single transition.
+	 *
+	 * @param state          current state
+	 * @param characterClass class of current character
+	 * @param target         next state or action
+	 */
+	private static void transition(int state, int characterClass, int target) {
+		TRANSITIONS[state * CLASS_COUNT + characterClass] = (byte) target;
+	}
+
+}
@@ -0,0 +1,237 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class reads tokens of large input held in memory on multiple threads.
+ * Input is split into chunks at places where a tag most likely starts: at <code>{$</code>
+ * that is not escaped with backslash. Every chunk is read concurrently in a <code>ForkJoinPool</code>
+ * by its own <code>Lexer2</code>, which starts in TEXT state and changes state the same way
+ * <code>SmartScriptParser</code> does. Chunk is read until the first token boundary in TEXT state
+ * at or after the start of the next chunk.
+ * <p>
+ * Split point is only a guess, <code>{$</code> can also be a part of string inside of a tag.
+ * Therefore, chunks are stitched together in order and chunk is accepted only if the previous
+ * chunk stopped exactly at its start. Otherwise, its part of input is read again sequentially.
+ * Resulting tokens are always the same as tokens read by a single <code>Lexer2</code>,
+ * including the exception at the first invalid token.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class ParallelLexer {
+
+	/**
+	 * the smallest number of input units in one chunk
+	 */
+	static final int MIN_CHUNK_SIZE = 1 << 16;
+	/**
+	 * number of chunks per thread of the pool, so that threads are balanced
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+	/**
+	 * estimated number of input units per token, used to size token lists in advance
+	 */
+	private static final int UNITS_PER_TOKEN = 8;
+
+	/**
+	 * Private constructor, class only contains static methods.
+	 */
+	private ParallelLexer() {
+	}
+
+	/**
+	 * Method reads tokens of given text on threads of given pool.
+	 *
+	 * @param text text input that is processed
+	 * @param pool pool that runs reading of chunks
+	 * @return     <code>TokenList</code> with all tokens of the text, ending with EOF token
+	 *             or with error that stopped reading
+	 * @throws IllegalArgumentException if <code>text</code> or <code>pool</code> is <code>null</code>
+	 */
+	public static TokenList tokenize(String text, ForkJoinPool pool) {
+		return tokenize(new Lexer2(text), pool, MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Method reads tokens of UTF-8 encoded input between position and limit of given buffer
+	 * on threads of given pool. Token offsets are byte offsets from buffer's position.
+	 *
+	 * @param bytes UTF-8 encoded input
+	 * @param pool  pool that runs reading of chunks
+	 * @return      <code>TokenList</code> with all tokens of the input, ending with EOF token
+	 *              or with error that stopped reading
+	 * @throws IllegalArgumentException if <code>bytes</code> or <code>pool</code> is <code>null</code>
+	 */
+	public static TokenList tokenize(ByteBuffer bytes, ForkJoinPool pool) {
+		return tokenize(Lexer2.fromUtf8(bytes), pool, MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Method reads tokens of input of given lexer in chunks of at least given size.
+	 *
+	 * @param lexer        lexer whose input is read
+	 * @param pool         pool that runs reading of chunks
+	 * @param minChunkSize the smallest number of input units in one chunk
+	 * @return             <code>TokenList</code> with all tokens of the input
+	 */
+	static TokenList tokenize(Lexer2 lexer, ForkJoinPool pool, int minChunkSize) {
+		if (pool == null)
+			throw new IllegalArgumentException("Pool must not be null");
+
+		int[] splits = findSplits(lexer, pool.getParallelism() * CHUNKS_PER_THREAD, minChunkSize);
+		List<ChunkTask> tasks = new ArrayList<>(splits.length - 1);
+		for (int i = 0; i + 1 < splits.length; i++) {
+			tasks.add(new ChunkTask(lexer, splits[i], splits[i + 1]));
+		}
+		for (ChunkTask task : tasks) {
+			pool.execute(task);
+		}
+
+		// chunks are stitched in order while later chunks are still being read
+		TokenList result = lexer.newTokenList(lexer.inputLength() / UNITS_PER_TOKEN);
+		int position = 0;
+		for (ChunkTask task : tasks) {
+			TokenList tokens = task.join();
+			if (task.start != position) {
+				// previous chunk did not stop at start of this one, so split point was wrong
+				if (position >= task.stop)
+					continue;
+				tokens = task.newTokenList();
+				readChunk(lexer.startingAt(position), tokens, task.stop);
+			}
+			result.addAll(tokens);
+			if (tokens.getError() != null || tokens.getType(tokens.size() - 1) == TokenType2.EOF)
+				break;
+			position = tokens.getEnd(tokens.size() - 1);
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method that finds offsets at which chunks start.
+	 *
+	 * @param lexer        lexer whose input is split
+	 * @param chunks       wanted number of chunks
+	 * @param minChunkSize the smallest number of input units in one chunk
+	 * @return             start offsets of chunks followed by the largest <code>int</code>
+	 */
+	private static int[] findSplits(Lexer2 lexer, int chunks, int minChunkSize) {
+		int length = lexer.inputLength();
+		int chunkSize = Math.max(minChunkSize, length / Math.max(1, chunks));
+
+		List<Integer> splits = new ArrayList<>();
+		splits.add(0);
+		int candidate = chunkSize;
+		while (candidate < length) {
+			int split = nextTagStart(lexer, candidate, length);
+			if (split < 0)
+				break;
+			splits.add(split);
+			candidate = split + chunkSize;
+		}
+		splits.add(Integer.MAX_VALUE);
+
+		int[] result = new int[splits.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = splits.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method that finds the first <code>{$</code> at or after given offset which is not
+	 * escaped: the number of backslashes right before it is even, so they escape each other.
+	 *
+	 * @param lexer  lexer whose input is searched
+	 * @param from   offset at which search starts
+	 * @param length length of input
+	 * @return       offset of found open curly bracket, -1 if there is none
+	 */
+	private static int nextTagStart(Lexer2 lexer, int from, int length) {
+		for (int i = from; i + 1 < length; i++) {
+			if (lexer.unitAt(i) != '{' || lexer.unitAt(i + 1) != '$')
+				continue;
+
+			int backslashes = 0;
+			while (i - backslashes > 0 && lexer.unitAt(i - backslashes - 1) == '\\') {
+				backslashes++;
+			}
+			if (backslashes % 2 == 0)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Helper method that reads tokens of one chunk, remembering exception that stopped reading.
+	 *
+	 * @param lexer  lexer positioned at start of chunk
+	 * @param tokens list that tokens are added to
+	 * @param stop   start of the next chunk
+	 */
+	private static void readChunk(Lexer2 lexer, TokenList tokens, int stop) {
+		try {
+			lexer.readTokens(tokens, stop);
+		} catch (RuntimeException ex) {
+			tokens.setError(ex);
+		}
+	}
+
+	/**
+	 * Task that reads tokens of one chunk.
+	 */
+	private static class ChunkTask extends RecursiveTask<TokenList> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * lexer whose input is read
+		 */
+		private final Lexer2 source;
+		/**
+		 * offset at which chunk starts
+		 */
+		private final int start;
+		/**
+		 * offset at which the next chunk starts
+		 */
+		private final int stop;
+
+		/**
+		 * Constructor for creating new <code>ChunkTask</code>.
+		 *
+		 * @param source lexer whose input is read
+		 * @param start  offset at which chunk starts
+		 * @param stop   offset at which the next chunk starts
+		 */
+		private ChunkTask(Lexer2 source, int start, int stop) {
+			this.source = source;
+			this.start = start;
+			this.stop = stop;
+		}
+
+		/**
+		 * Method creates empty list sized for tokens of this chunk.
+		 *
+		 * @return new <code>TokenList</code>
+		 */
+		private TokenList newTokenList() {
+			int end = Math.min(stop, source.inputLength());
+			return source.newTokenList(Math.max(0, end - start) / UNITS_PER_TOKEN);
+		}
+
+		@Override
+		protected TokenList compute() {
+			TokenList tokens = newTokenList();
+			readChunk(source.startingAt(start), tokens, stop);
+			return tokens;
+		}
+
+	}
+
+}
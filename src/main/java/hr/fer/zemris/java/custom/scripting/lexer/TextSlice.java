@@ -0,0 +1,123 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+/**
+ * Class represents part of an immutable source text between two indexes, without copying its
+ * characters. Many slices can share the same source. <code>String</code> with characters of the
+ * slice is created only by {@link #toString()}.
+ * <p>
+ * Slice keeps its whole source reachable, so it saves memory only while the source is kept anyway,
+ * for example when the source and syntax tree of a template are cached together.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class TextSlice implements CharSequence {
+
+	/**
+	 * text that slice is a part of
+	 */
+	private final String source;
+	/**
+	 * index of first character of slice in source
+	 */
+	private final int start;
+	/**
+	 * index after last character of slice in source
+	 */
+	private final int end;
+
+	/**
+	 * Constructor for creating new <code>TextSlice</code>.
+	 *
+	 * @param source text that slice is a part of
+	 * @param start  index of first character of slice
+	 * @param end    index after last character of slice
+	 * @throws NullPointerException if <code>source</code> is <code>null</code>
+	 * @throws IndexOutOfBoundsException if indexes are not inside of source
+	 */
+	public TextSlice(String source, int start, int end) {
+		if (source == null)
+			throw new NullPointerException("Source must not be null");
+		if (start < 0 || start > end || end > source.length())
+			throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end);
+
+		this.source = source;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Returns text that slice is a part of.
+	 *
+	 * @return source of slice
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns index of first character of slice in its source.
+	 *
+	 * @return start index
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns index after last character of slice in its source.
+	 *
+	 * @return end index
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start)
+			throw new IndexOutOfBoundsException("Index: " + index + ", length: " + (end - start));
+		return source.charAt(start + index);
+	}
+
+	@Override
+	public TextSlice subSequence(int start, int end) {
+		if (start < 0 || start > end || end > length())
+			throw new IndexOutOfBoundsException("Start: " + start + ", end: " + end);
+		return new TextSlice(source, this.start + start, this.start + end);
+	}
+
+	/**
+	 * Method checks if this slice has the same characters as given text.
+	 *
+	 * @param text text that slice is compared to
+	 * @return     <code>true</code> if text has the same characters, otherwise <code>false</code>
+	 */
+	public boolean contentEquals(CharSequence text) {
+		if (text == null || text.length() != end - start)
+			return false;
+		if (text instanceof String)
+			return source.regionMatches(start, (String) text, 0, end - start);
+		for (int i = 0, length = end - start; i < length; i++) {
+			if (source.charAt(start + i) != text.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns new <code>String</code> with characters of this slice.
+	 *
+	 * @return characters of slice
+	 */
+	@Override
+	public String toString() {
+		return source.substring(start, end);
+	}
+
+}
@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.nio.ByteBuffer;
+
 /**
  * Class represents token in lexical analysis.
  * Token is lexical unit that groups one or more consecutive symbols from input text.
@@ -17,6 +19,19 @@ public class Token2 {
 	 * value that token represents
 	 */
 	private Object value;
+	/**
+	 * UTF-8 encoded input that value is decoded from when it is first requested,
+	 * <code>null</code> if value is already known
+	 */
+	private ByteBuffer source;
+	/**
+	 * index of first byte of value in <code>source</code>
+	 */
+	private int start;
+	/**
+	 * index after last byte of value in <code>source</code>
+	 */
+	private int end;
 	
 	/**
 	 * Constructor for creating new <code>Token2</code>.
@@ -32,12 +47,32 @@ public class Token2 {
 		this.value = value;
 	}
 	
+	/**
+	 * Constructor for creating new <code>Token2</code> whose value is <code>String</code>
+	 * that is decoded from given range of UTF-8 encoded input when it is first requested.
+	 * 
+	 * @param type   <code>TokenType2</code> type of token
+	 * @param source UTF-8 encoded input
+	 * @param start  index of first byte of value
+	 * @param end    index after last byte of value
+	 */
+	Token2(TokenType2 type, ByteBuffer source, int start, int end) {
+		this(type, null);
+		this.source = source;
+		this.start = start;
+		this.end = end;
+	}
+	
 	/**
 	 * Method returns value that token contains.
 	 * 
 	 * @return <code>Object</code> value of token
 	 */
 	public Object getValue() {
+		if (source != null) {
+			value = Lexer2.decode(source, start, end);
+			source = null;
+		}
 		return value;
 	}
 	
@@ -0,0 +1,328 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class represents sequence of tokens read from input that is held in memory.
+ * Tokens are stored in parallel primitive arrays instead of as <code>Token2</code> objects:
+ * type, offsets and one <code>long</code> value per token. Value of INTEGER token is the
+ * integer itself, value of DOUBLE token holds bits of the <code>double</code>, value of
+ * TEXT, VAR and KEYWORD token holds range of the text in input and value of other tokens
+ * holds their character. Texts are created from input only when they are requested.
+ * <p>
+ * If reading of tokens failed, list holds tokens that were read before the failure
+ * and exception that caused it.
+ * <p>
+ * List can be replayed as a <code>Lexer2</code> with {@link Lexer2#fromTokens(TokenList)}.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class TokenList {
+
+	/**
+	 * all token types, indexed by their ordinal
+	 */
+	private static final TokenType2[] TYPES = TokenType2.values();
+	/**
+	 * initial capacity of the arrays
+	 */
+	private static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * input characters, <code>null</code> if input is UTF-8 encoded
+	 */
+	final char[] chars;
+	/**
+	 * UTF-8 encoded input, <code>null</code> if input is given as characters
+	 */
+	final ByteBuffer bytes;
+	/**
+	 * ordinals of token types
+	 */
+	private byte[] types;
+	/**
+	 * offsets of first input units of tokens
+	 */
+	private int[] starts;
+	/**
+	 * offsets after last input units of tokens
+	 */
+	private int[] ends;
+	/**
+	 * values of tokens
+	 */
+	private long[] values;
+	/**
+	 * number of tokens in the list
+	 */
+	private int size;
+	/**
+	 * exception that stopped reading of tokens, <code>null</code> if there was none
+	 */
+	private RuntimeException error;
+
+	/**
+	 * Constructor for creating new empty <code>TokenList</code> of tokens from given input.
+	 *
+	 * @param chars input characters, <code>null</code> if input is UTF-8 encoded
+	 * @param bytes UTF-8 encoded input, <code>null</code> if input is given as characters
+	 */
+	TokenList(char[] chars, ByteBuffer bytes) {
+		this(chars, bytes, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor for creating new empty <code>TokenList</code> of tokens from given input
+	 * that has room for given number of tokens.
+	 *
+	 * @param chars    input characters, <code>null</code> if input is UTF-8 encoded
+	 * @param bytes    UTF-8 encoded input, <code>null</code> if input is given as characters
+	 * @param capacity initial number of tokens the list can hold
+	 */
+	TokenList(char[] chars, ByteBuffer bytes, int capacity) {
+		this.chars = chars;
+		this.bytes = bytes;
+		capacity = Math.max(capacity, DEFAULT_CAPACITY);
+		types = new byte[capacity];
+		starts = new int[capacity];
+		ends = new int[capacity];
+		values = new long[capacity];
+	}
+
+	/**
+	 * Method returns number of tokens in the list.
+	 *
+	 * @return number of tokens
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Method returns type of token at given index.
+	 *
+	 * @param index index of token
+	 * @return      <code>TokenType2</code> of token
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 */
+	public TokenType2 getType(int index) {
+		checkIndex(index);
+		return TYPES[types[index]];
+	}
+
+	/**
+	 * Method returns offset of first input unit of token at given index.
+	 *
+	 * @param index index of token
+	 * @return      start offset of token
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 */
+	public int getStart(int index) {
+		checkIndex(index);
+		return starts[index];
+	}
+
+	/**
+	 * Method returns offset after last input unit of token at given index.
+	 *
+	 * @param index index of token
+	 * @return      end offset of token
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 */
+	public int getEnd(int index) {
+		checkIndex(index);
+		return ends[index];
+	}
+
+	/**
+	 * Method returns value of INTEGER token at given index.
+	 *
+	 * @param index index of token
+	 * @return      <code>long</code> value of token
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 * @throws IllegalStateException if token is not INTEGER
+	 */
+	public long getLongValue(int index) {
+		checkType(index, TokenType2.INTEGER);
+		return values[index];
+	}
+
+	/**
+	 * Method returns value of DOUBLE token at given index.
+	 *
+	 * @param index index of token
+	 * @return      <code>double</code> value of token
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 * @throws IllegalStateException if token is not DOUBLE
+	 */
+	public double getDoubleValue(int index) {
+		checkType(index, TokenType2.DOUBLE);
+		return Double.longBitsToDouble(values[index]);
+	}
+
+	/**
+	 * Method returns value of TEXT, VAR or KEYWORD token at given index.
+	 * Value is created from input on every call.
+	 *
+	 * @param index index of token
+	 * @return      <code>String</code> value of token
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 * @throws IllegalStateException if token does not have text value
+	 */
+	public String getTextValue(int index) {
+		checkIndex(index);
+		TokenType2 type = TYPES[types[index]];
+		if (type != TokenType2.TEXT && type != TokenType2.VAR && type != TokenType2.KEYWORD)
+			throw new IllegalStateException("Token does not have text value. It is: " + type);
+
+		int start = valueStart(index);
+		int end = valueEnd(index);
+		if (chars != null)
+			return new String(chars, start, end - start);
+		return Lexer2.decode(bytes, start, end);
+	}
+
+	/**
+	 * Method returns exception that stopped reading of tokens.
+	 *
+	 * @return exception that stopped reading, <code>null</code> if all tokens were read
+	 */
+	public RuntimeException getError() {
+		return error;
+	}
+
+	/**
+	 * Method returns raw value of token at given index.
+	 *
+	 * @param index index of token
+	 * @return      value of token as it is stored
+	 */
+	long value(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Method returns type ordinal of token at given index without checking the index.
+	 *
+	 * @param index index of token
+	 * @return      ordinal of token type
+	 */
+	byte typeOrdinal(int index) {
+		return types[index];
+	}
+
+	/**
+	 * Method returns start of text value of token at given index.
+	 *
+	 * @param index index of token
+	 * @return      index of first input unit of value
+	 */
+	int valueStart(int index) {
+		return (int) (values[index] >>> 32);
+	}
+
+	/**
+	 * Method returns end of text value of token at given index.
+	 *
+	 * @param index index of token
+	 * @return      index after last input unit of value
+	 */
+	int valueEnd(int index) {
+		return (int) values[index];
+	}
+
+	/**
+	 * Method packs range of text value into single value.
+	 *
+	 * @param start index of first input unit of value
+	 * @param end   index after last input unit of value
+	 * @return      packed range
+	 */
+	static long textRange(int start, int end) {
+		return (long) start << 32 | (end & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Method appends token to the end of the list.
+	 *
+	 * @param type  type of token
+	 * @param start offset of first input unit of token
+	 * @param end   offset after last input unit of token
+	 * @param value value of token
+	 */
+	void add(TokenType2 type, int start, int end, long value) {
+		if (size == types.length) {
+			grow(size + 1);
+		}
+		types[size] = (byte) type.ordinal();
+		starts[size] = start;
+		ends[size] = end;
+		values[size] = value;
+		size++;
+	}
+
+	/**
+	 * Method appends all tokens of given list to the end of this list.
+	 * Error of given list becomes error of this list.
+	 *
+	 * @param other list whose tokens are appended
+	 */
+	void addAll(TokenList other) {
+		if (size + other.size > types.length) {
+			grow(size + other.size);
+		}
+		System.arraycopy(other.types, 0, types, size, other.size);
+		System.arraycopy(other.starts, 0, starts, size, other.size);
+		System.arraycopy(other.ends, 0, ends, size, other.size);
+		System.arraycopy(other.values, 0, values, size, other.size);
+		size += other.size;
+		error = other.error;
+	}
+
+	/**
+	 * Method sets exception that stopped reading of tokens.
+	 *
+	 * @param error exception that stopped reading
+	 */
+	void setError(RuntimeException error) {
+		this.error = error;
+	}
+
+	/**
+	 * Helper method that enlarges arrays so that they hold at least given number of tokens.
+	 *
+	 * @param minCapacity required capacity
+	 */
+	private void grow(int minCapacity) {
+		int capacity = Math.max(minCapacity, types.length * 2);
+		types = Arrays.copyOf(types, capacity);
+		starts = Arrays.copyOf(starts, capacity);
+		ends = Arrays.copyOf(ends, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	/**
+	 * Helper method that checks if token at given index has given type.
+	 *
+	 * @param index index of token
+	 * @param type  expected type
+	 */
+	private void checkType(int index, TokenType2 type) {
+		checkIndex(index);
+		if (types[index] != type.ordinal())
+			throw new IllegalStateException("Token is not " + type + ". It is: " + TYPES[types[index]]);
+	}
+
+	/**
+	 * Helper method that checks if given index is valid.
+	 *
+	 * @param index index of token
+	 */
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("You entered: " + index);
+	}
+
+}
@@ -0,0 +1,910 @@
+package hr.fer.zemris.java.custom.scripting.nodes;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementKind;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+
+/**
+ * Class represents read only syntax tree stored in a few primitive arrays instead of
+ * <code>Node</code> and <code>Element</code> objects.
+ * <p>
+ * Nodes are identified by their index in preorder, so the root <code>DocumentNode</code>
+ * is node 0 and all descendants of a node directly follow it. For every node its kind,
+ * parent, end of its subtree, source length and range of its elements are stored.
+ * Elements of FOR loop node are its variable, start, end and step expression.
+ * Element has a kind and one <code>long</code> value: the integer itself, bits of the
+ * <code>double</code>, or index of its text in the string pool. All texts of the
+ * document are stored once in a single <code>char</code> array.
+ * <p>
+ * Document is created from <code>DocumentNode</code> with {@link #of(DocumentNode)}
+ * and turned back into one with {@link #toDocumentNode()}.
+ * <p>
+ * Document can be stored in binary form with {@link #writeTo(ByteBuffer)} or {@link #write(Path)}
+ * and loaded with {@link #readFrom(ByteBuffer)} or {@link #read(Path)}, which only copy
+ * the arrays, so templates do not have to be parsed again on every start. Binary form is
+ * little-endian. It starts with a header of magic number, format version, numbers of nodes,
+ * elements and texts and length of the pool, then come the arrays, and the last
+ * <code>int</code> is CRC32 checksum of everything before it.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class CompactDocument {
+
+	/**
+	 * all node kinds, indexed by their ordinal
+	 */
+	private static final NodeKind[] NODE_KINDS = NodeKind.values();
+	/**
+	 * all element kinds, indexed by their ordinal
+	 */
+	private static final ElementKind[] ELEMENT_KINDS = ElementKind.values();
+	/**
+	 * first bytes of binary form, "SSTB" in ASCII
+	 */
+	private static final int MAGIC = 0x53535442;
+	/**
+	 * version of binary form that is written and can be read
+	 */
+	private static final short VERSION = 1;
+	/**
+	 * size of header of binary form in bytes
+	 */
+	private static final int HEADER_SIZE = 24;
+
+	/**
+	 * ordinals of node kinds
+	 */
+	private final byte[] kinds;
+	/**
+	 * indexes of parent nodes, -1 for the root
+	 */
+	private final int[] parents;
+	/**
+	 * indexes after last descendant of nodes
+	 */
+	private final int[] subtreeEnds;
+	/**
+	 * source lengths of nodes
+	 */
+	private final int[] sourceLengths;
+	/**
+	 * index of text of TEXT node, header length of FOR loop node
+	 */
+	private final int[] payloads;
+	/**
+	 * indexes of first elements of nodes, with number of elements at the end
+	 */
+	private final int[] firstElements;
+	/**
+	 * ordinals of element kinds
+	 */
+	private final byte[] elementKinds;
+	/**
+	 * values of elements
+	 */
+	private final long[] elementValues;
+	/**
+	 * characters of all texts
+	 */
+	private char[] pool;
+	/**
+	 * indexes of first characters of texts in the pool, with length of the pool at the end
+	 */
+	private int[] textStarts;
+	/**
+	 * number of nodes added while document is created
+	 */
+	private int nodeCount;
+	/**
+	 * number of elements added while document is created
+	 */
+	private int elementCount;
+
+	/**
+	 * Constructor for creating new <code>CompactDocument</code> with room for given number of nodes and elements.
+	 *
+	 * @param nodes    number of nodes
+	 * @param elements number of elements
+	 */
+	private CompactDocument(int nodes, int elements) {
+		kinds = new byte[nodes];
+		parents = new int[nodes];
+		subtreeEnds = new int[nodes];
+		sourceLengths = new int[nodes];
+		payloads = new int[nodes];
+		firstElements = new int[nodes + 1];
+		elementKinds = new byte[elements];
+		elementValues = new long[elements];
+	}
+
+	/**
+	 * Method creates <code>CompactDocument</code> that represents given syntax tree.
+	 *
+	 * @param document root of syntax tree
+	 * @return         <code>CompactDocument</code> of the tree
+	 * @throws IllegalArgumentException if <code>document</code> is <code>null</code>, or tree contains
+	 *         <code>null</code> element or node or element of unknown class
+	 */
+	public static CompactDocument of(DocumentNode document) {
+		if (document == null)
+			throw new IllegalArgumentException("Document must not be null");
+
+		int[] counts = new int[2];
+		count(document, counts);
+		CompactDocument compact = new CompactDocument(counts[0], counts[1]);
+		Texts texts = new Texts();
+		compact.add(document, -1, texts);
+		compact.firstElements[compact.nodeCount] = compact.elementCount;
+		compact.pool = texts.chars.toString().toCharArray();
+		compact.textStarts = texts.starts();
+		return compact;
+	}
+
+	/**
+	 * Helper method that counts nodes and elements of subtree with given root.
+	 *
+	 * @param node   root of subtree
+	 * @param counts array whose first element is increased by number of nodes
+	 *               and second by number of elements
+	 */
+	private static void count(Node node, int[] counts) {
+		counts[0]++;
+		if (node instanceof ForLoopNode) {
+			counts[1] += 4;
+		} else if (node instanceof EchoNode) {
+			counts[1] += ((EchoNode) node).getElements().length;
+		}
+		int size = node.numberOfChildren();
+		for (int i = 0; i < size; i++) {
+			count(node.getChild(i), counts);
+		}
+	}
+
+	/**
+	 * Helper method that adds subtree with given root in preorder.
+	 *
+	 * @param node   root of subtree
+	 * @param parent index of parent node, -1 for the root
+	 * @param texts  pool that texts are added to
+	 */
+	private void add(Node node, int parent, Texts texts) {
+		if (node == null)
+			throw new IllegalArgumentException("Node must not be null");
+
+		int index = nodeCount++;
+		parents[index] = parent;
+		sourceLengths[index] = node.getSourceLength();
+		firstElements[index] = elementCount;
+		if (node instanceof TextNode) {
+			kinds[index] = (byte) NodeKind.TEXT.ordinal();
+			payloads[index] = texts.add(((TextNode) node).getText());
+		} else if (node instanceof ForLoopNode) {
+			ForLoopNode forNode = (ForLoopNode) node;
+			kinds[index] = (byte) NodeKind.FOR_LOOP.ordinal();
+			payloads[index] = forNode.getHeaderLength();
+			addElement(forNode.getVariable(), texts);
+			addElement(forNode.getStartExpression(), texts);
+			addElement(forNode.getEndExpression(), texts);
+			addElement(forNode.getStepExpression(), texts);
+		} else if (node instanceof EchoNode) {
+			kinds[index] = (byte) NodeKind.ECHO.ordinal();
+			for (Element element : ((EchoNode) node).getElements()) {
+				addElement(element, texts);
+			}
+		} else if (node instanceof DocumentNode) {
+			kinds[index] = (byte) NodeKind.DOCUMENT.ordinal();
+		} else {
+			throw new IllegalArgumentException("Unsupported node: " + node.getClass().getName());
+		}
+
+		int size = node.numberOfChildren();
+		for (int i = 0; i < size; i++) {
+			add(node.getChild(i), index, texts);
+		}
+		subtreeEnds[index] = nodeCount;
+	}
+
+	/**
+	 * Helper method that adds given element.
+	 *
+	 * @param element element that is added
+	 * @param texts   pool that texts are added to
+	 */
+	private void addElement(Element element, Texts texts) {
+		ElementKind kind;
+		long value;
+		if (element instanceof ElementVariable) {
+			kind = ElementKind.VARIABLE;
+			value = texts.add(((ElementVariable) element).getName());
+		} else if (element instanceof ElementConstantInteger) {
+			kind = ElementKind.CONSTANT_INTEGER;
+			value = ((ElementConstantInteger) element).getValue();
+		} else if (element instanceof ElementConstantDouble) {
+			kind = ElementKind.CONSTANT_DOUBLE;
+			value = Double.doubleToRawLongBits(((ElementConstantDouble) element).getValue());
+		} else if (element instanceof ElementString) {
+			kind = ElementKind.STRING;
+			value = texts.add(((ElementString) element).getValue());
+		} else if (element instanceof ElementFunction) {
+			kind = ElementKind.FUNCTION;
+			value = texts.add(((ElementFunction) element).getValue());
+		} else if (element instanceof ElementOperator) {
+			kind = ElementKind.OPERATOR;
+			value = texts.add(((ElementOperator) element).getValue());
+		} else if (element == null) {
+			throw new IllegalArgumentException("Element must not be null");
+		} else {
+			throw new IllegalArgumentException("Unsupported element: " + element.getClass().getName());
+		}
+		elementKinds[elementCount] = (byte) kind.ordinal();
+		elementValues[elementCount] = value;
+		elementCount++;
+	}
+
+	/**
+	 * Method creates new syntax tree of <code>Node</code> objects that this document represents.
+	 *
+	 * @return root of new syntax tree
+	 */
+	public DocumentNode toDocumentNode() {
+		return (DocumentNode) toNode(0, new String[textStarts.length - 1]);
+	}
+
+	/**
+	 * Helper method that creates subtree of <code>Node</code> objects with given root.
+	 *
+	 * @param node    index of root of subtree
+	 * @param strings texts of the pool that were already created, so equal texts share one <code>String</code>
+	 * @return        new <code>Node</code>
+	 */
+	private Node toNode(int node, String[] strings) {
+		Node result;
+		int first = firstElements[node];
+		switch (NODE_KINDS[kinds[node]]) {
+		case TEXT:
+			result = new TextNode(text(payloads[node], strings));
+			break;
+		case FOR_LOOP:
+			ForLoopNode forNode = new ForLoopNode((ElementVariable) toElement(first, strings),
+					toElement(first + 1, strings), toElement(first + 2, strings), toElement(first + 3, strings));
+			forNode.setHeaderLength(getHeaderLength(node));
+			forNode.setEndTagLength(getEndTagLength(node));
+			result = forNode;
+			break;
+		case ECHO:
+			Element[] elements = new Element[firstElements[node + 1] - first];
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = toElement(first + i, strings);
+			}
+			result = new EchoNode(elements);
+			break;
+		default:
+			result = new DocumentNode();
+		}
+		result.setSourceLength(sourceLengths[node]);
+
+		for (int child = getFirstChild(node); child >= 0; child = getNextSibling(child)) {
+			result.addChildNode(toNode(child, strings));
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method that creates <code>Element</code> object of given element.
+	 *
+	 * @param element index of element
+	 * @param strings texts of the pool that were already created
+	 * @return        new <code>Element</code>
+	 */
+	private Element toElement(int element, String[] strings) {
+		switch (ELEMENT_KINDS[elementKinds[element]]) {
+		case VARIABLE:
+			return new ElementVariable(text((int) elementValues[element], strings));
+		case CONSTANT_INTEGER:
+			return new ElementConstantInteger(elementValues[element]);
+		case CONSTANT_DOUBLE:
+			return new ElementConstantDouble(Double.longBitsToDouble(elementValues[element]));
+		case STRING:
+			return new ElementString(text((int) elementValues[element], strings));
+		case FUNCTION:
+			return new ElementFunction(text((int) elementValues[element], strings));
+		default:
+			return new ElementOperator(text((int) elementValues[element], strings));
+		}
+	}
+
+	/**
+	 * Method returns number of bytes of binary form of this document.
+	 *
+	 * @return size of binary form in bytes
+	 */
+	public int binarySize() {
+		int nodes = kinds.length;
+		int elements = elementKinds.length;
+		return HEADER_SIZE + nodes * 13 + (nodes + 1) * 4 + elements * 9 + textStarts.length * 4 + pool.length * 2 + 4;
+	}
+
+	/**
+	 * Method writes binary form of this document into given buffer, starting at its position.
+	 * Position is moved after written document, so more documents can be written one after another.
+	 *
+	 * @param buffer buffer that document is written into
+	 * @throws java.nio.BufferOverflowException if there are less than {@link #binarySize()} bytes remaining
+	 * @throws IllegalArgumentException if <code>buffer</code> is <code>null</code>
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		if (buffer == null)
+			throw new IllegalArgumentException("Buffer must not be null");
+
+		ByteBuffer out = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		out.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+		out.putInt(kinds.length).putInt(elementKinds.length).putInt(textStarts.length - 1).putInt(pool.length);
+		out.put(kinds);
+		putInts(out, subtreeEnds);
+		putInts(out, sourceLengths);
+		putInts(out, payloads);
+		putInts(out, firstElements);
+		out.put(elementKinds);
+		out.asLongBuffer().put(elementValues);
+		out.position(out.position() + elementValues.length * 8);
+		putInts(out, textStarts);
+		out.asCharBuffer().put(pool);
+		out.position(out.position() + pool.length * 2);
+
+		CRC32 crc = new CRC32();
+		ByteBuffer written = out.duplicate();
+		written.flip();
+		crc.update(written);
+		out.putInt((int) crc.getValue());
+		buffer.position(buffer.position() + out.position());
+	}
+
+	/**
+	 * Method reads document from its binary form in given buffer, starting at its position.
+	 * Position is moved after read document.
+	 *
+	 * @param buffer buffer that document is read from
+	 * @return       read document
+	 * @throws IllegalArgumentException if <code>buffer</code> is <code>null</code>, does not contain binary form
+	 *         of a document, its version is not supported or its checksum does not match
+	 */
+	public static CompactDocument readFrom(ByteBuffer buffer) {
+		if (buffer == null)
+			throw new IllegalArgumentException("Buffer must not be null");
+
+		ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			if (in.getInt() != MAGIC)
+				throw new IllegalArgumentException("Invalid binary document. Magic number does not match");
+			short version = in.getShort();
+			if (version != VERSION)
+				throw new IllegalArgumentException("Unsupported binary document version: " + version);
+			in.getShort();
+			int nodes = in.getInt();
+			int elements = in.getInt();
+			int texts = in.getInt();
+			int poolLength = in.getInt();
+			if (nodes < 1 || elements < 0 || texts < 0 || poolLength < 0)
+				throw new IllegalArgumentException("Invalid binary document. Invalid header");
+			long size = HEADER_SIZE + nodes * 17L + 4 + elements * 9L + (texts + 1L) * 4 + poolLength * 2L + 4;
+			if (size > in.limit())
+				throw new IllegalArgumentException("Invalid binary document. It is truncated");
+
+			CRC32 crc = new CRC32();
+			ByteBuffer checked = in.duplicate();
+			checked.position(0).limit((int) size - 4);
+			crc.update(checked);
+			if (in.getInt((int) size - 4) != (int) crc.getValue())
+				throw new IllegalArgumentException("Invalid binary document. Checksum does not match");
+
+			CompactDocument document = new CompactDocument(nodes, elements);
+			in.get(document.kinds);
+			getInts(in, document.subtreeEnds);
+			getInts(in, document.sourceLengths);
+			getInts(in, document.payloads);
+			getInts(in, document.firstElements);
+			in.get(document.elementKinds);
+			in.asLongBuffer().get(document.elementValues);
+			in.position(in.position() + elements * 8);
+			document.textStarts = new int[texts + 1];
+			getInts(in, document.textStarts);
+			document.pool = new char[poolLength];
+			in.asCharBuffer().get(document.pool);
+			document.nodeCount = nodes;
+			document.elementCount = elements;
+			document.linkParents();
+
+			buffer.position(buffer.position() + (int) size);
+			return document;
+		} catch (BufferUnderflowException ex) {
+			throw new IllegalArgumentException("Invalid binary document. It is truncated");
+		}
+	}
+
+	/**
+	 * Method writes binary form of this document into file at given path, replacing its content.
+	 *
+	 * @param path path of the file
+	 * @throws IOException if file can not be written
+	 * @throws IllegalArgumentException if <code>path</code> is <code>null</code>
+	 */
+	public void write(Path path) throws IOException {
+		if (path == null)
+			throw new IllegalArgumentException("Path must not be null");
+
+		ByteBuffer buffer = ByteBuffer.allocate(binarySize());
+		writeTo(buffer);
+		Files.write(path, buffer.array());
+	}
+
+	/**
+	 * Method reads document from binary form stored at the beginning of file at given path.
+	 * File is mapped into memory, so it is read sequentially by the operating system
+	 * and copied into arrays of the document without any lexing.
+	 *
+	 * @param path path of the file
+	 * @return     read document
+	 * @throws IOException if file can not be read or does not contain valid binary form of a document
+	 * @throws IllegalArgumentException if <code>path</code> is <code>null</code>
+	 */
+	public static CompactDocument read(Path path) throws IOException {
+		if (path == null)
+			throw new IllegalArgumentException("Path must not be null");
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return readFrom(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (IllegalArgumentException ex) {
+			throw new IOException(ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Helper method that writes given array at position of given buffer and moves the position after it.
+	 *
+	 * @param out    buffer that array is written into
+	 * @param values array that is written
+	 */
+	private static void putInts(ByteBuffer out, int[] values) {
+		out.asIntBuffer().put(values);
+		out.position(out.position() + values.length * 4);
+	}
+
+	/**
+	 * Helper method that fills given array from position of given buffer and moves the position after it.
+	 *
+	 * @param in     buffer that array is read from
+	 * @param values array that is filled
+	 */
+	private static void getInts(ByteBuffer in, int[] values) {
+		in.asIntBuffer().get(values);
+		in.position(in.position() + values.length * 4);
+	}
+
+	/**
+	 * Helper method that finds parents of all nodes from ends of their subtrees, after
+	 * document was read from binary form. It also checks that kinds, subtrees, elements and
+	 * texts are valid, so that invalid document is not accepted only because its checksum matches.
+	 */
+	private void linkParents() {
+		int nodes = kinds.length;
+		int elements = elementKinds.length;
+		int texts = textStarts.length - 1;
+		if (textStarts[0] != 0 || textStarts[texts] != pool.length)
+			throw new IllegalArgumentException("Invalid binary document. Invalid text starts");
+		for (int text = 0; text < texts; text++) {
+			if (textStarts[text] > textStarts[text + 1])
+				throw new IllegalArgumentException("Invalid binary document. Invalid start of text: " + text);
+		}
+		if (firstElements[0] != 0 || firstElements[nodes] != elements)
+			throw new IllegalArgumentException("Invalid binary document. Invalid element ranges");
+		for (int element = 0; element < elements; element++) {
+			byte kind = elementKinds[element];
+			if (kind < 0 || kind >= ELEMENT_KINDS.length)
+				throw new IllegalArgumentException("Invalid binary document. Invalid element kind: " + kind);
+			if (kind != ElementKind.CONSTANT_INTEGER.ordinal() && kind != ElementKind.CONSTANT_DOUBLE.ordinal()
+					&& (elementValues[element] < -1 || elementValues[element] >= texts))
+				throw new IllegalArgumentException("Invalid binary document. Invalid text of element: " + element);
+		}
+
+		if (kinds[0] != NodeKind.DOCUMENT.ordinal() || subtreeEnds[0] != nodes)
+			throw new IllegalArgumentException("Invalid binary document. Invalid root");
+		parents[0] = -1;
+		for (int node = 0; node < nodes; node++) {
+			if (kinds[node] < 0 || kinds[node] >= NODE_KINDS.length || subtreeEnds[node] <= node
+					|| subtreeEnds[node] > subtreeEnds[node == 0 ? 0 : parents[node]])
+				throw new IllegalArgumentException("Invalid binary document. Invalid node: " + node);
+			checkElements(node);
+			for (int child = node + 1; child < subtreeEnds[node]; child = subtreeEnds[child]) {
+				if (subtreeEnds[child] <= child)
+					throw new IllegalArgumentException("Invalid binary document. Invalid node: " + child);
+				parents[child] = node;
+			}
+		}
+	}
+
+	/**
+	 * Helper method that checks if elements and payload of given node read from binary form
+	 * match its kind.
+	 *
+	 * @param node index of node
+	 */
+	private void checkElements(int node) {
+		int first = firstElements[node];
+		int count = firstElements[node + 1] - first;
+		if (first < 0 || count < 0)
+			throw new IllegalArgumentException("Invalid binary document. Invalid elements of node: " + node);
+		switch (NODE_KINDS[kinds[node]]) {
+		case TEXT:
+			if (payloads[node] < -1 || payloads[node] >= textStarts.length - 1)
+				throw new IllegalArgumentException("Invalid binary document. Invalid text of node: " + node);
+			if (count != 0)
+				throw new IllegalArgumentException("Invalid binary document. Invalid elements of node: " + node);
+			break;
+		case FOR_LOOP:
+			if (count != 4 || elementKinds[first] != ElementKind.VARIABLE.ordinal())
+				throw new IllegalArgumentException("Invalid binary document. Invalid elements of node: " + node);
+			break;
+		case ECHO:
+			break;
+		default:
+			if (count != 0)
+				throw new IllegalArgumentException("Invalid binary document. Invalid elements of node: " + node);
+		}
+	}
+
+	/**
+	 * Method returns number of nodes in the document, including the root.
+	 *
+	 * @return number of nodes
+	 */
+	public int numberOfNodes() {
+		return kinds.length;
+	}
+
+	/**
+	 * Method returns kind of given node.
+	 *
+	 * @param node index of node
+	 * @return     <code>NodeKind</code> of node
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public NodeKind getKind(int node) {
+		checkNode(node);
+		return NODE_KINDS[kinds[node]];
+	}
+
+	/**
+	 * Method returns parent of given node.
+	 *
+	 * @param node index of node
+	 * @return     index of parent node, -1 for the root
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public int getParent(int node) {
+		checkNode(node);
+		return parents[node];
+	}
+
+	/**
+	 * Method returns first child of given node.
+	 *
+	 * @param node index of node
+	 * @return     index of first child, -1 if node has no children
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public int getFirstChild(int node) {
+		checkNode(node);
+		return node + 1 < subtreeEnds[node] ? node + 1 : -1;
+	}
+
+	/**
+	 * Method returns next child of parent of given node.
+	 *
+	 * @param node index of node
+	 * @return     index of next sibling, -1 if node is the last child or the root
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public int getNextSibling(int node) {
+		checkNode(node);
+		int parent = parents[node];
+		int next = subtreeEnds[node];
+		return parent >= 0 && next < subtreeEnds[parent] ? next : -1;
+	}
+
+	/**
+	 * Method returns number of children of given node.
+	 *
+	 * @param node index of node
+	 * @return     number of children
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public int numberOfChildren(int node) {
+		int size = 0;
+		for (int child = getFirstChild(node); child >= 0; child = getNextSibling(child)) {
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Method returns length of the part of parsed input that given node was created from.
+	 *
+	 * @param node index of node
+	 * @return     length of node's source
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public int getSourceLength(int node) {
+		checkNode(node);
+		return sourceLengths[node];
+	}
+
+	/**
+	 * Method returns content of given TEXT node. <code>String</code> is created on every call.
+	 *
+	 * @param node index of node
+	 * @return     content of node
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 * @throws IllegalStateException if node is not TEXT node
+	 */
+	public String getText(int node) {
+		checkKind(node, NodeKind.TEXT);
+		return text(payloads[node]);
+	}
+
+	/**
+	 * Method returns length of FOR tag of given FOR loop node.
+	 *
+	 * @param node index of node
+	 * @return     length of FOR tag
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 * @throws IllegalStateException if node is not FOR loop node
+	 */
+	public int getHeaderLength(int node) {
+		checkKind(node, NodeKind.FOR_LOOP);
+		return payloads[node];
+	}
+
+	/**
+	 * Method returns length of END tag of given FOR loop node,
+	 * which is what remains of its source length after its FOR tag and children.
+	 *
+	 * @param node index of node
+	 * @return     length of END tag
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 * @throws IllegalStateException if node is not FOR loop node
+	 */
+	public int getEndTagLength(int node) {
+		int length = sourceLengths[node] - getHeaderLength(node);
+		for (int child = node + 1; child < subtreeEnds[node]; child = subtreeEnds[child]) {
+			length -= sourceLengths[child];
+		}
+		return length;
+	}
+
+	/**
+	 * Method returns first element of given node. Elements of FOR loop node are
+	 * its variable, start, end and step expression, in that order.
+	 *
+	 * @param node index of node
+	 * @return     index of first element
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public int getFirstElement(int node) {
+		checkNode(node);
+		return firstElements[node];
+	}
+
+	/**
+	 * Method returns number of elements of given node.
+	 *
+	 * @param node index of node
+	 * @return     number of elements
+	 * @throws IndexOutOfBoundsException if <code>node</code> is not valid
+	 */
+	public int numberOfElements(int node) {
+		checkNode(node);
+		return firstElements[node + 1] - firstElements[node];
+	}
+
+	/**
+	 * Method returns kind of given element.
+	 *
+	 * @param element index of element
+	 * @return        <code>ElementKind</code> of element
+	 * @throws IndexOutOfBoundsException if <code>element</code> is not valid
+	 */
+	public ElementKind getElementKind(int element) {
+		checkElement(element);
+		return ELEMENT_KINDS[elementKinds[element]];
+	}
+
+	/**
+	 * Method returns value of given integer constant element.
+	 *
+	 * @param element index of element
+	 * @return        <code>long</code> value of element
+	 * @throws IndexOutOfBoundsException if <code>element</code> is not valid
+	 * @throws IllegalStateException if element is not integer constant
+	 */
+	public long getLongValue(int element) {
+		checkElementKind(element, ElementKind.CONSTANT_INTEGER);
+		return elementValues[element];
+	}
+
+	/**
+	 * Method returns value of given double constant element.
+	 *
+	 * @param element index of element
+	 * @return        <code>double</code> value of element
+	 * @throws IndexOutOfBoundsException if <code>element</code> is not valid
+	 * @throws IllegalStateException if element is not double constant
+	 */
+	public double getDoubleValue(int element) {
+		checkElementKind(element, ElementKind.CONSTANT_DOUBLE);
+		return Double.longBitsToDouble(elementValues[element]);
+	}
+
+	/**
+	 * Method returns name of variable or function, value of string or symbol of operator
+	 * of given element. <code>String</code> is created on every call.
+	 *
+	 * @param element index of element
+	 * @return        text of element
+	 * @throws IndexOutOfBoundsException if <code>element</code> is not valid
+	 * @throws IllegalStateException if element is a constant
+	 */
+	public String getElementText(int element) {
+		ElementKind kind = getElementKind(element);
+		if (kind == ElementKind.CONSTANT_INTEGER || kind == ElementKind.CONSTANT_DOUBLE)
+			throw new IllegalStateException("Element does not have text value. It is: " + kind);
+		return text((int) elementValues[element]);
+	}
+
+	/**
+	 * Helper method that creates text at given index of the pool.
+	 *
+	 * @param index index of text, -1 for <code>null</code>
+	 * @return      text at given index
+	 */
+	private String text(int index) {
+		if (index < 0)
+			return null;
+		int start = textStarts[index];
+		return new String(pool, start, textStarts[index + 1] - start);
+	}
+
+	/**
+	 * Helper method that returns text at given index of the pool, creating it only once.
+	 *
+	 * @param index   index of text, -1 for <code>null</code>
+	 * @param strings texts of the pool that were already created
+	 * @return        text at given index
+	 */
+	private String text(int index, String[] strings) {
+		if (index < 0)
+			return null;
+		String text = strings[index];
+		if (text == null) {
+			text = text(index);
+			strings[index] = text;
+		}
+		return text;
+	}
+
+	/**
+	 * Helper method that checks if given node has given kind.
+	 *
+	 * @param node index of node
+	 * @param kind expected kind
+	 */
+	private void checkKind(int node, NodeKind kind) {
+		checkNode(node);
+		if (kinds[node] != kind.ordinal())
+			throw new IllegalStateException("Node is not " + kind + ". It is: " + NODE_KINDS[kinds[node]]);
+	}
+
+	/**
+	 * Helper method that checks if given element has given kind.
+	 *
+	 * @param element index of element
+	 * @param kind    expected kind
+	 */
+	private void checkElementKind(int element, ElementKind kind) {
+		checkElement(element);
+		if (elementKinds[element] != kind.ordinal())
+			throw new IllegalStateException("Element is not " + kind + ". It is: " + ELEMENT_KINDS[elementKinds[element]]);
+	}
+
+	/**
+	 * Helper method that checks if given index of node is valid.
+	 *
+	 * @param node index of node
+	 */
+	private void checkNode(int node) {
+		if (node < 0 || node >= kinds.length)
+			throw new IndexOutOfBoundsException("You entered: " + node);
+	}
+
+	/**
+	 * Helper method that checks if given index of element is valid.
+	 *
+	 * @param element index of element
+	 */
+	private void checkElement(int element) {
+		if (element < 0 || element >= elementKinds.length)
+			throw new IndexOutOfBoundsException("You entered: " + element);
+	}
+
+	/**
+	 * Pool of texts that is filled while document is created. Equal texts are stored once.
+	 */
+	private static class Texts {
+
+		/**
+		 * characters of all texts
+		 */
+		private final StringBuilder chars = new StringBuilder();
+		/**
+		 * indexes of texts that were already added
+		 */
+		private final Map<String, Integer> indexes = new HashMap<>();
+		/**
+		 * indexes of first characters of texts, with length of the pool at the end
+		 */
+		private int[] starts = new int[16];
+
+		/**
+		 * Method adds given text to the pool unless it is already there.
+		 *
+		 * @param text text that is added
+		 * @return     index of text, -1 for <code>null</code>
+		 */
+		private int add(String text) {
+			if (text == null)
+				return -1;
+
+			Integer index = indexes.get(text);
+			if (index != null)
+				return index;
+
+			int size = indexes.size();
+			if (size + 2 > starts.length) {
+				starts = Arrays.copyOf(starts, starts.length * 2);
+			}
+			chars.append(text);
+			starts[size + 1] = chars.length();
+			indexes.put(text, size);
+			return size;
+		}
+
+		/**
+		 * Method returns starts of texts trimmed to number of texts.
+		 *
+		 * @return indexes of first characters of texts, with length of the pool at the end
+		 */
+		private int[] starts() {
+			return Arrays.copyOf(starts, indexes.size() + 1);
+		}
+
+	}
+
+}
@@ -27,6 +27,14 @@ public class ForLoopNode extends Node {
 	 * step value that is variable increasing for
 	 */
 	private Element stepExpression;
+	/**
+	 * length of FOR tag in parsed input
+	 */
+	private int headerLength;
+	/**
+	 * length of END tag that closes the loop in parsed input
+	 */
+	private int endTagLength;
 	
 	/**
 	 * Constructor for creating new <code>ForLoopNode</code>.
@@ -76,4 +84,36 @@ public class ForLoopNode extends Node {
 		return stepExpression;
 	}
 
+	/**
+	 * Returns length of FOR tag in parsed input.
+	 * @return length of FOR tag
+	 */
+	public int getHeaderLength() {
+		return headerLength;
+	}
+	
+	/**
+	 * Sets length of FOR tag in parsed input.
+	 * @param headerLength length of FOR tag
+	 */
+	public void setHeaderLength(int headerLength) {
+		this.headerLength = headerLength;
+	}
+	
+	/**
+	 * Returns length of END tag that closes the loop in parsed input.
+	 * @return length of END tag
+	 */
+	public int getEndTagLength() {
+		return endTagLength;
+	}
+	
+	/**
+	 * Sets length of END tag that closes the loop in parsed input.
+	 * @param endTagLength length of END tag
+	 */
+	public void setEndTagLength(int endTagLength) {
+		this.endTagLength = endTagLength;
+	}
+
 }
@@ -1,10 +1,15 @@
 package hr.fer.zemris.java.custom.scripting.nodes;
 
+import java.util.function.Consumer;
+
 import hr.fer.zemris.java.custom.collections.ArrayIndexedCollection;
 
 /**
  * Class that represents general form of node
- * that can store other nodes as its children nodes
+ * that can store other nodes as its children nodes.
+ * <p>
+ * Children of a node can be parsed lazily: node is given a parser of its children
+ * which is called when children are accessed for the first time.
  * 
  * @author Ante Gazibarić
  * @version 1.0
@@ -15,6 +20,14 @@ public class Node {
 	 * collection of children nodes
 	 */
 	private ArrayIndexedCollection nodes;
+	/**
+	 * length of the part of parsed input that node was created from
+	 */
+	private int sourceLength;
+	/**
+	 * parser that adds children when they are first accessed, <code>null</code> if children are known
+	 */
+	private Consumer<Node> childrenParser;
 
 	/**
 	 * Default constructor
@@ -29,18 +42,44 @@ public class Node {
 	 * @param child <code>Node</code> that is added as a child
 	 */
 	public void addChildNode(Node child) {
+		parseChildren();
 		if(nodes == null)
 			nodes = new ArrayIndexedCollection();
 		nodes.add(child);
 	}
 	
+	/**
+	 * Method used for inserting child node at given position.
+	 * Children at that position and after it are shifted by one.
+	 * 
+	 * @param child    <code>Node</code> that is inserted as a child
+	 * @param position position at which child is inserted
+	 */
+	public void insertChildNode(Node child, int position) {
+		parseChildren();
+		if(nodes == null)
+			nodes = new ArrayIndexedCollection();
+		nodes.insert(child, position);
+	}
+	
+	/**
+	 * Method used for removing child node at given <code>index</code>.
+	 * 
+	 * @param index index of child node that is removed
+	 */
+	public void removeChildNode(int index) {
+		parseChildren();
+		nodes.remove(index);
+	}
+	
 	/**
 	 * Method returns number of children that this node has stored.
 	 * 
 	 * @return number of children nodes
 	 */
 	public int numberOfChildren() {
-		return nodes.size();
+		parseChildren();
+		return nodes == null ? 0 : nodes.size();
 	}
 	
 	/**
@@ -50,7 +89,68 @@ public class Node {
 	 * @return      <code>Node</code> child at given <code>index</code>
 	 */
 	public Node getChild(int index) {
+		parseChildren();
 		return (Node) nodes.get(index);
 	}
+	
+	/**
+	 * Method returns length of the part of parsed input that node was created from,
+	 * including tags and children. Length is measured in input units of the parser:
+	 * characters, or bytes for UTF-8 input.
+	 * 
+	 * @return length of node's source
+	 */
+	public int getSourceLength() {
+		return sourceLength;
+	}
+	
+	/**
+	 * Method sets length of the part of parsed input that node was created from.
+	 * 
+	 * @param sourceLength length of node's source
+	 */
+	public void setSourceLength(int sourceLength) {
+		this.sourceLength = sourceLength;
+	}
+	
+	/**
+	 * Method sets parser that adds children of this node when they are first accessed.
+	 * Parser is called with this node and adds children with {@link #addChildNode(Node)}.
+	 * If parser throws exception, node stays without children and parser is called again
+	 * on next access.
+	 * 
+	 * @param childrenParser parser of children, <code>null</code> if children are already known
+	 */
+	public void setChildrenParser(Consumer<Node> childrenParser) {
+		this.childrenParser = childrenParser;
+	}
+	
+	/**
+	 * Method checks if children of this node are already known.
+	 * 
+	 * @return <code>true</code> if children were parsed or were never deferred, otherwise <code>false</code>
+	 */
+	public boolean hasParsedChildren() {
+		return childrenParser == null;
+	}
+	
+	/**
+	 * Helper method that parses deferred children of this node.
+	 */
+	private void parseChildren() {
+		if (childrenParser == null)
+			return;
+		
+		Consumer<Node> parser = childrenParser;
+		// parser adds children through this node, so it must not be called again meanwhile
+		childrenParser = null;
+		try {
+			parser.accept(this);
+		} catch (RuntimeException ex) {
+			nodes = null;
+			childrenParser = parser;
+			throw ex;
+		}
+	}
 
 }
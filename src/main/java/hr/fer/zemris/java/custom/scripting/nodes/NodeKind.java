@@ -0,0 +1,26 @@
+package hr.fer.zemris.java.custom.scripting.nodes;
+
+/**
+ * Class represents different kinds of nodes of syntax tree.
+ * 
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public enum NodeKind {
+	/**
+	 * represents <code>DocumentNode</code>
+	 */
+	DOCUMENT,
+	/**
+	 * represents <code>TextNode</code>
+	 */
+	TEXT,
+	/**
+	 * represents <code>ForLoopNode</code>
+	 */
+	FOR_LOOP,
+	/**
+	 * represents <code>EchoNode</code>
+	 */
+	ECHO
+}
@@ -9,25 +9,36 @@ package hr.fer.zemris.java.custom.scripting.nodes;
 public class TextNode extends Node {
 
 	/**
-	 * content of text node
+	 * content of text node, either a <code>String</code> or a slice of parsed text
 	 */
-	private String text;
+	private CharSequence text;
 	
 	/**
 	 * Constructor for creating new <code>TextNode</code>.
 	 * 
 	 * @param text content of text node that is stored
 	 */
-	public TextNode(String text) {
+	public TextNode(CharSequence text) {
 		this.text = text;
 	}
 	
 	/**
-	 * Returns content of <code>TextNode</code>.
+	 * Returns content of <code>TextNode</code>. If node references a slice of parsed text,
+	 * new <code>String</code> is created on every call, so {@link #getTextSequence()}
+	 * should be preferred where any <code>CharSequence</code> will do.
 	 * 
 	 * @return <code>String</code> that represents content of node
 	 */
 	public String getText() {
+		return text == null ? null : text.toString();
+	}
+	
+	/**
+	 * Returns content of <code>TextNode</code> without copying it.
+	 * 
+	 * @return <code>CharSequence</code> that represents content of node
+	 */
+	public CharSequence getTextSequence() {
 		return text;
 	}
 	
@@ -0,0 +1,137 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+
+/**
+ * Class represents result of parsing many documents with <code>BatchParser</code>.
+ * For every document, in order in which documents were given, it holds either syntax tree
+ * or exception that was thrown while the document was read or parsed. It also reports
+ * throughput of the whole batch.
+ * 
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class BatchParseResult {
+
+	/**
+	 * syntax trees of documents, <code>null</code> for documents that failed
+	 */
+	private final DocumentNode[] documents;
+	/**
+	 * exceptions of documents that failed, <code>null</code> for parsed documents
+	 */
+	private final Throwable[] errors;
+	/**
+	 * number of characters of all documents that were read
+	 */
+	private final long characters;
+	/**
+	 * time that parsing of the batch took, in nanoseconds
+	 */
+	private final long elapsedNanos;
+	
+	/**
+	 * Constructor for creating new <code>BatchParseResult</code>.
+	 * 
+	 * @param documents    syntax trees of documents, <code>null</code> for documents that failed
+	 * @param errors       exceptions and errors of documents that failed, <code>null</code> for parsed documents
+	 * @param characters   number of characters of all documents that were read
+	 * @param elapsedNanos time that parsing of the batch took, in nanoseconds
+	 */
+	BatchParseResult(DocumentNode[] documents, Throwable[] errors, long characters, long elapsedNanos) {
+		this.documents = documents;
+		this.errors = errors;
+		this.characters = characters;
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	/**
+	 * Method returns number of documents in the batch.
+	 * 
+	 * @return number of documents
+	 */
+	public int size() {
+		return documents.length;
+	}
+	
+	/**
+	 * Method returns syntax tree of document at given index.
+	 * 
+	 * @param index index of document in the batch
+	 * @return      syntax tree, <code>null</code> if document could not be read or parsed
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 */
+	public DocumentNode getDocumentNode(int index) {
+		return documents[index];
+	}
+	
+	/**
+	 * Method returns exception or error that was thrown while document at given index was read or parsed.
+	 * 
+	 * @param index index of document in the batch
+	 * @return      exception or error, <code>null</code> if document was parsed
+	 * @throws IndexOutOfBoundsException if <code>index</code> is not valid
+	 */
+	public Throwable getError(int index) {
+		return errors[index];
+	}
+	
+	/**
+	 * Method returns number of documents that could not be read or parsed.
+	 * 
+	 * @return number of failed documents
+	 */
+	public int getErrorCount() {
+		int count = 0;
+		for (Throwable error : errors) {
+			if (error != null)
+				count++;
+		}
+		return count;
+	}
+	
+	/**
+	 * Method returns number of characters of all documents that were read.
+	 * 
+	 * @return number of characters
+	 */
+	public long getCharacters() {
+		return characters;
+	}
+	
+	/**
+	 * Method returns time that parsing of the batch took.
+	 * 
+	 * @return elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+	
+	/**
+	 * Method returns number of documents processed per second.
+	 * 
+	 * @return documents per second
+	 */
+	public double getDocumentsPerSecond() {
+		return documents.length * 1e9 / Math.max(1, elapsedNanos);
+	}
+	
+	/**
+	 * Method returns number of characters processed per second. Characters are counted
+	 * after decoding, so for files they are not the same as bytes that were read.
+	 * 
+	 * @return characters per second
+	 */
+	public double getCharactersPerSecond() {
+		return characters * 1e9 / Math.max(1, elapsedNanos);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%d documents (%d failed), %.1f M characters in %.1f ms: %.0f documents/s, "
+				+ "%.1f M characters/s", documents.length, getErrorCount(), characters / 1e6, elapsedNanos / 1e6,
+				getDocumentsPerSecond(), getCharactersPerSecond() / 1e6);
+	}
+	
+}
@@ -0,0 +1,154 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+
+/**
+ * Class parses many documents concurrently on given executor. At most <code>parallelism</code>
+ * tasks are run at the same time: each of them takes next document that is not processed yet,
+ * reads it if it is a file and parses it with its own reused <code>SmartScriptParser</code>.
+ * When there are more tasks than processors, reading of some documents overlaps
+ * with parsing of others. Results are returned in order in which documents were given,
+ * and failure of one document does not stop the others. Every document gets either a syntax
+ * tree or an error, even if its parsing ends with an <code>Error</code> such as
+ * <code>StackOverflowError</code>.
+ * 
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class BatchParser {
+
+	/**
+	 * executor that parsing tasks are run on
+	 */
+	private final Executor executor;
+	/**
+	 * maximal number of documents that are processed at the same time
+	 */
+	private final int parallelism;
+	
+	/**
+	 * Constructor for creating new <code>BatchParser</code>.
+	 * 
+	 * @param executor    executor that parsing tasks are run on
+	 * @param parallelism maximal number of documents that are processed at the same time
+	 * @throws NullPointerException if <code>executor</code> is <code>null</code>
+	 * @throws IllegalArgumentException if <code>parallelism</code> is less than 1
+	 */
+	public BatchParser(Executor executor, int parallelism) {
+		if (executor == null)
+			throw new NullPointerException("Executor must not be null");
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be at least 1, was: " + parallelism);
+		
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Method parses given documents.
+	 * 
+	 * @param documents texts that are parsed
+	 * @return          syntax trees and errors of documents, in order of <code>documents</code>
+	 * @throws NullPointerException if <code>documents</code> is <code>null</code>
+	 * @throws InterruptedException if thread is interrupted while it waits for parsing to finish
+	 */
+	public BatchParseResult parse(Collection<String> documents) throws InterruptedException {
+		if (documents == null)
+			throw new NullPointerException("Documents must not be null");
+		
+		return run(documents.toArray(new String[0]), (String document) -> document);
+	}
+	
+	/**
+	 * Method reads and parses UTF-8 encoded files at given paths.
+	 * 
+	 * @param paths paths of files that are parsed
+	 * @return      syntax trees and errors of files, in order of <code>paths</code>
+	 * @throws NullPointerException if <code>paths</code> is <code>null</code>
+	 * @throws InterruptedException if thread is interrupted while it waits for parsing to finish
+	 */
+	public BatchParseResult parseFiles(Collection<Path> paths) throws InterruptedException {
+		if (paths == null)
+			throw new NullPointerException("Paths must not be null");
+		
+		return run(paths.toArray(new Path[0]),
+				(Path path) -> new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Helper method that reads and parses given sources with at most <code>parallelism</code> tasks.
+	 * 
+	 * @param sources sources of documents
+	 * @param reader  function that reads text of a source
+	 * @param <T>     type of sources
+	 * @return        syntax trees and errors of sources
+	 * @throws InterruptedException if thread is interrupted while it waits for parsing to finish
+	 */
+	<T> BatchParseResult run(T[] sources, SourceReader<T> reader) throws InterruptedException {
+		DocumentNode[] documents = new DocumentNode[sources.length];
+		Throwable[] errors = new Throwable[sources.length];
+		AtomicInteger next = new AtomicInteger();
+		AtomicLong characters = new AtomicLong();
+		
+		long start = System.nanoTime();
+		int tasks = Math.min(parallelism, sources.length);
+		CountDownLatch finished = new CountDownLatch(tasks);
+		for (int t = 0; t < tasks; t++) {
+			executor.execute(() -> {
+				try {
+					SmartScriptParser parser = new SmartScriptParser();
+					long read = 0;
+					for (int i = next.getAndIncrement(); i < sources.length; i = next.getAndIncrement()) {
+						try {
+							String document = reader.read(sources[i]);
+							if (document == null)
+								throw new NullPointerException("Document must not be null");
+							read += document.length();
+							parser.reset(document);
+							documents[i] = parser.getDocumentNode();
+						} catch (Exception ex) {
+							errors[i] = ex;
+						} catch (Error err) {
+							errors[i] = err;
+							// parser may be left in any state by an error
+							parser = new SmartScriptParser();
+						}
+					}
+					characters.addAndGet(read);
+				} finally {
+					finished.countDown();
+				}
+			});
+		}
+		// latch makes writes of the tasks visible to this thread
+		finished.await();
+		return new BatchParseResult(documents, errors, characters.get(), System.nanoTime() - start);
+	}
+	
+	/**
+	 * Function that reads text of a source of document.
+	 * 
+	 * @param <T> type of sources
+	 */
+	interface SourceReader<T> {
+		/**
+		 * Method reads text of given source.
+		 * 
+		 * @param source source of document
+		 * @return       text of document
+		 * @throws IOException if text can not be read
+		 */
+		String read(T source) throws IOException;
+	}
+	
+}
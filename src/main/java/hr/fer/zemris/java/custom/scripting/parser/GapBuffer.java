@@ -0,0 +1,122 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.util.Arrays;
+
+/**
+ * Class represents text that is edited in place. Characters are kept in an array with a gap
+ * at the place of the last edit, so an edit only moves characters between the previous and
+ * the current edit, and text is copied into a <code>String</code> only when it is requested.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+final class GapBuffer {
+
+	/**
+	 * minimal size of the gap after the array is grown
+	 */
+	private static final int MIN_GAP = 64;
+
+	/**
+	 * characters of text with the gap between <code>gapStart</code> and <code>gapEnd</code>
+	 */
+	private char[] chars;
+	/**
+	 * index of the first character of the gap
+	 */
+	private int gapStart;
+	/**
+	 * index after the last character of the gap
+	 */
+	private int gapEnd;
+
+	/**
+	 * Constructor for creating new <code>GapBuffer</code>.
+	 *
+	 * @param text initial text
+	 */
+	GapBuffer(String text) {
+		int length = text.length();
+		chars = new char[length + MIN_GAP];
+		text.getChars(0, length, chars, 0);
+		gapStart = length;
+		gapEnd = chars.length;
+	}
+
+	/**
+	 * Method returns number of characters of text.
+	 *
+	 * @return length of text
+	 */
+	int length() {
+		return chars.length - (gapEnd - gapStart);
+	}
+
+	/**
+	 * Method returns character of text at given index.
+	 *
+	 * @param index index of character
+	 * @return      character at <code>index</code>
+	 */
+	char charAt(int index) {
+		return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+	}
+
+	/**
+	 * Method appends part of text between given indexes to given builder.
+	 *
+	 * @param sb    builder that characters are appended to
+	 * @param start index of the first appended character
+	 * @param end   index after the last appended character
+	 */
+	void appendTo(StringBuilder sb, int start, int end) {
+		if (start < gapStart)
+			sb.append(chars, start, Math.min(end, gapStart) - start);
+		if (end > gapStart) {
+			int from = Math.max(start, gapStart) + gapEnd - gapStart;
+			sb.append(chars, from, end + gapEnd - gapStart - from);
+		}
+	}
+
+	/**
+	 * Method replaces given number of characters at given offset with given text.
+	 *
+	 * @param offset        offset of the first replaced character
+	 * @param removedLength number of replaced characters
+	 * @param insertedText  text that is inserted at <code>offset</code>
+	 */
+	void replace(int offset, int removedLength, String insertedText) {
+		if (offset < gapStart) {
+			int moved = gapStart - offset;
+			System.arraycopy(chars, offset, chars, gapEnd - moved, moved);
+			gapStart = offset;
+			gapEnd -= moved;
+		} else if (offset > gapStart) {
+			int moved = offset - gapStart;
+			System.arraycopy(chars, gapEnd, chars, gapStart, moved);
+			gapStart = offset;
+			gapEnd += moved;
+		}
+		gapEnd += removedLength;
+
+		int insertedLength = insertedText.length();
+		if (gapEnd - gapStart < insertedLength) {
+			int tail = chars.length - gapEnd;
+			char[] grown = Arrays.copyOf(chars,
+					Math.max(chars.length * 2, chars.length + insertedLength + MIN_GAP));
+			System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+			chars = grown;
+			gapEnd = grown.length - tail;
+		}
+		insertedText.getChars(0, insertedLength, chars, gapStart);
+		gapStart += insertedLength;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(length());
+		appendTo(sb, 0, length());
+		return sb.toString();
+	}
+
+}
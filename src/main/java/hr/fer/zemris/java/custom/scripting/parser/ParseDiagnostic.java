@@ -0,0 +1,55 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+/**
+ * Class represents an error that <code>SmartScriptParser</code> found in text
+ * while it collected all errors instead of stopping at the first one.
+ * 
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class ParseDiagnostic {
+
+	/**
+	 * offset in text of the token at which error was found
+	 */
+	private final int offset;
+	/**
+	 * message that describes the error
+	 */
+	private final String message;
+	
+	/**
+	 * Constructor for creating new <code>ParseDiagnostic</code>.
+	 * 
+	 * @param offset  offset in text of the token at which error was found
+	 * @param message message that describes the error
+	 */
+	public ParseDiagnostic(int offset, String message) {
+		this.offset = offset;
+		this.message = message;
+	}
+	
+	/**
+	 * Method returns offset in text of the token at which error was found.
+	 * 
+	 * @return offset of the error
+	 */
+	public int getOffset() {
+		return offset;
+	}
+	
+	/**
+	 * Method returns message that describes the error.
+	 * 
+	 * @return message of the error
+	 */
+	public String getMessage() {
+		return message;
+	}
+	
+	@Override
+	public String toString() {
+		return offset + ": " + message;
+	}
+	
+}
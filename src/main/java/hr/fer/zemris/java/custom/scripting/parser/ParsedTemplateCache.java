@@ -0,0 +1,515 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.lexer.TextSlice;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+
+/**
+ * Class represents thread safe cache of parsed templates. Template is parsed only the first
+ * time it is requested, later requests return the same <code>DocumentNode</code>. Returned trees
+ * are shared between all users of the cache, so they must not be modified.
+ * <p>
+ * Templates are keyed by their content, or by path, modification time and size of their file.
+ * If more threads request the same missing template at once, it is parsed only once and all
+ * of them wait for the result. Templates that can not be parsed are not cached.
+ * <p>
+ * Every template is weighted by estimated heap size of its syntax tree and its key. When total weight
+ * exceeds maximal weight of the cache, least recently used templates are evicted.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class ParsedTemplateCache {
+
+	/**
+	 * estimated size of object header and reference fields of a node
+	 */
+	private static final int NODE_SIZE = 32;
+	/**
+	 * estimated size of children collection of a node with its default array of 16 references
+	 */
+	private static final int CHILDREN_SIZE = 24 + 16 + 16 * 4;
+	/**
+	 * estimated size of an element
+	 */
+	private static final int ELEMENT_SIZE = 24;
+	/**
+	 * estimated size of a <code>String</code> without its characters
+	 */
+	private static final int STRING_SIZE = 40;
+	/**
+	 * estimated size of a <code>TextSlice</code> without its source
+	 */
+	private static final int SLICE_SIZE = 24;
+	/**
+	 * estimated size of a file key without its path
+	 */
+	private static final int FILE_KEY_SIZE = 32;
+
+	/**
+	 * cached templates in order of access, eldest first
+	 */
+	private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * maximal total weight of cached templates
+	 */
+	private final long maxWeight;
+	/**
+	 * parser used for templates given by their content
+	 */
+	private final Function<String, DocumentNode> parser;
+	/**
+	 * total weight of cached templates
+	 */
+	private long weight;
+	/**
+	 * number of requests that found their template in the cache
+	 */
+	private long hitCount;
+	/**
+	 * number of requests that had to parse their template
+	 */
+	private long missCount;
+	/**
+	 * number of evicted templates
+	 */
+	private long evictionCount;
+
+	/**
+	 * Constructor for creating new <code>ParsedTemplateCache</code>. Templates given by their content
+	 * are parsed with {@link SmartScriptParser#sliced(String)}, since their content is kept as the key
+	 * anyway, so their texts are not copied into syntax trees.
+	 *
+	 * @param maxWeight maximal total estimated heap size of cached syntax trees in bytes
+	 * @throws IllegalArgumentException if <code>maxWeight</code> is negative
+	 */
+	public ParsedTemplateCache(long maxWeight) {
+		this(maxWeight, text -> SmartScriptParser.sliced(text).getDocumentNode());
+	}
+
+	/**
+	 * Constructor for creating new <code>ParsedTemplateCache</code> that parses templates with given parser.
+	 *
+	 * @param maxWeight maximal total weight of cached templates
+	 * @param parser    parser used for templates given by their content
+	 */
+	ParsedTemplateCache(long maxWeight, Function<String, DocumentNode> parser) {
+		if (maxWeight < 0)
+			throw new IllegalArgumentException("Maximal weight must not be negative");
+
+		this.maxWeight = maxWeight;
+		this.parser = parser;
+	}
+
+	/**
+	 * Method returns syntax tree of given template, parsing it only if it is not cached.
+	 *
+	 * @param template text of template
+	 * @return         <code>DocumentNode</code> of template, shared with other users of the cache
+	 * @throws IllegalArgumentException if <code>template</code> is <code>null</code>
+	 * @throws SmartScriptParserException if template can not be parsed
+	 */
+	public DocumentNode get(String template) {
+		if (template == null)
+			throw new IllegalArgumentException("Template must not be null");
+		return get(template, () -> parser.apply(template));
+	}
+
+	/**
+	 * Method returns syntax tree of template in given UTF-8 encoded file. File is parsed again
+	 * when its modification time or size changes.
+	 *
+	 * @param path path of the file
+	 * @return     <code>DocumentNode</code> of template, shared with other users of the cache
+	 * @throws IllegalArgumentException if <code>path</code> is <code>null</code>
+	 * @throws IOException if file can not be read
+	 * @throws SmartScriptParserException if template can not be parsed
+	 */
+	public DocumentNode get(Path path) throws IOException {
+		if (path == null)
+			throw new IllegalArgumentException("Path must not be null");
+
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		FileKey key = new FileKey(path.toAbsolutePath().normalize(), attributes.lastModifiedTime().toMillis(),
+				attributes.size());
+		try {
+			return get(key, () -> {
+				try {
+					return SmartScriptParser.fromFile(path).getDocumentNode();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	/**
+	 * Helper method that returns cached template with given key or loads it with given loader.
+	 *
+	 * @param key    key of template
+	 * @param loader loader that parses template
+	 * @return       <code>DocumentNode</code> of template
+	 */
+	private DocumentNode get(Object key, Supplier<DocumentNode> loader) {
+		Entry entry;
+		boolean owner = false;
+		synchronized (entries) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry();
+				entries.put(key, entry);
+				owner = true;
+				missCount++;
+			} else {
+				hitCount++;
+			}
+		}
+
+		if (owner) {
+			// template is parsed outside of the lock, other requests for it wait for the result
+			DocumentNode document;
+			try {
+				document = loader.get();
+			} catch (RuntimeException | Error ex) {
+				synchronized (entries) {
+					entries.remove(key);
+				}
+				entry.future.completeExceptionally(ex);
+				throw ex;
+			}
+			long entryWeight = weight(key, document);
+			synchronized (entries) {
+				// entries that are being parsed are never removed, so this one is still cached
+				entry.weight = entryWeight;
+				entry.loaded = true;
+				weight += entryWeight;
+				evict();
+			}
+			entry.future.complete(document);
+			return document;
+		}
+
+		try {
+			return entry.future.join();
+		} catch (CompletionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw (RuntimeException) cause;
+		}
+	}
+
+	/**
+	 * Helper method that evicts least recently used templates until total weight
+	 * does not exceed maximal weight. Templates that are still being parsed are not evicted.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			Entry entry = it.next().getValue();
+			if (!entry.loaded)
+				continue;
+			it.remove();
+			weight -= entry.weight;
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Method removes all templates from the cache. Statistics are not reset.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.values().removeIf(entry -> entry.loaded);
+			weight = 0;
+		}
+	}
+
+	/**
+	 * Method returns number of cached templates, including templates that are being parsed.
+	 *
+	 * @return number of templates
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Method returns total estimated heap size of cached syntax trees.
+	 *
+	 * @return total weight in bytes
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	/**
+	 * Method returns maximal total weight of cached templates.
+	 *
+	 * @return maximal weight in bytes
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Method returns number of requests that found their template in the cache,
+	 * including requests that waited for the same template to be parsed.
+	 *
+	 * @return number of hits
+	 */
+	public long getHitCount() {
+		synchronized (entries) {
+			return hitCount;
+		}
+	}
+
+	/**
+	 * Method returns number of requests that had to parse their template.
+	 *
+	 * @return number of misses
+	 */
+	public long getMissCount() {
+		synchronized (entries) {
+			return missCount;
+		}
+	}
+
+	/**
+	 * Method returns number of templates that were evicted because of maximal weight.
+	 *
+	 * @return number of evictions
+	 */
+	public long getEvictionCount() {
+		synchronized (entries) {
+			return evictionCount;
+		}
+	}
+
+	/**
+	 * Method estimates heap size of syntax tree with given root, including its texts and elements.
+	 * Text that slices of parsed text are taken from is kept alive by them, so it is included once,
+	 * no matter how many slices share it.
+	 *
+	 * @param node root of syntax tree
+	 * @return     estimated size in bytes
+	 * @throws IllegalArgumentException if <code>node</code> is <code>null</code>
+	 */
+	public static long estimateHeapSize(Node node) {
+		if (node == null)
+			throw new IllegalArgumentException("Node must not be null");
+
+		return estimateHeapSize(node, Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	/**
+	 * Helper method that estimates weight of cached template with given key and syntax tree.
+	 * Template given by its content is usually the source of slices in its tree, so the source
+	 * is not charged again when it is the key itself.
+	 *
+	 * @param key      content of template or key of its file
+	 * @param document syntax tree of template
+	 * @return         estimated size in bytes
+	 */
+	static long weight(Object key, Node document) {
+		Set<String> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (key instanceof String)
+			sources.add((String) key);
+		return keySize(key) + estimateHeapSize(document, sources);
+	}
+
+	/**
+	 * Helper method that estimates heap size of syntax tree with given root.
+	 *
+	 * @param node    root of syntax tree
+	 * @param sources sources of slices that are already included
+	 * @return        estimated size in bytes
+	 */
+	private static long estimateHeapSize(Node node, Set<String> sources) {
+		long size = NODE_SIZE;
+		int children = node.numberOfChildren();
+		if (children > 0) {
+			size += CHILDREN_SIZE + 4L * Math.max(0, children - 16);
+		}
+		if (node instanceof TextNode) {
+			size += textSize(((TextNode) node).getTextSequence(), sources);
+		} else if (node instanceof EchoNode) {
+			Element[] elements = ((EchoNode) node).getElements();
+			size += 16 + 4L * elements.length;
+			for (Element element : elements) {
+				size += elementSize(element, sources);
+			}
+		} else if (node instanceof ForLoopNode) {
+			ForLoopNode forNode = (ForLoopNode) node;
+			size += elementSize(forNode.getVariable(), sources)
+					+ elementSize(forNode.getStartExpression(), sources)
+					+ elementSize(forNode.getEndExpression(), sources)
+					+ elementSize(forNode.getStepExpression(), sources);
+		}
+		for (int i = 0; i < children; i++) {
+			size += estimateHeapSize(node.getChild(i), sources);
+		}
+		return size;
+	}
+
+	/**
+	 * Helper method that estimates heap size of given key of template. Content of template
+	 * is charged two bytes per character, since it is not necessarily Latin-1 text.
+	 *
+	 * @param key content of template or key of its file
+	 * @return    estimated size in bytes
+	 */
+	static long keySize(Object key) {
+		if (key instanceof String)
+			return STRING_SIZE + 2L * ((String) key).length();
+		return FILE_KEY_SIZE + STRING_SIZE + 2L * ((FileKey) key).path.toString().length();
+	}
+
+	/**
+	 * Helper method that estimates heap size of given element.
+	 *
+	 * @param element element whose size is estimated
+	 * @param sources sources of slices that are already included
+	 * @return        estimated size in bytes
+	 */
+	private static long elementSize(Element element, Set<String> sources) {
+		if (element instanceof ElementVariable)
+			return ELEMENT_SIZE + stringSize(((ElementVariable) element).getName());
+		if (element instanceof ElementString)
+			return ELEMENT_SIZE + textSize(((ElementString) element).getValueSequence(), sources);
+		if (element instanceof ElementFunction)
+			return ELEMENT_SIZE + stringSize(((ElementFunction) element).getValue());
+		if (element instanceof ElementOperator)
+			// operator symbols are shared constants
+			return ELEMENT_SIZE;
+		return element == null ? 0 : ELEMENT_SIZE;
+	}
+
+	/**
+	 * Helper method that estimates heap size of given <code>String</code>,
+	 * assuming one byte per character.
+	 *
+	 * @param text text whose size is estimated
+	 * @return     estimated size in bytes
+	 */
+	private static long stringSize(String text) {
+		return text == null ? 0 : STRING_SIZE + text.length();
+	}
+
+	/**
+	 * Helper method that estimates heap size of given text, which is either
+	 * a <code>String</code> or a slice of parsed text. Source of a slice is included
+	 * only if it was not included before.
+	 *
+	 * @param text    text whose size is estimated
+	 * @param sources sources of slices that are already included
+	 * @return        estimated size in bytes
+	 */
+	private static long textSize(CharSequence text, Set<String> sources) {
+		if (text instanceof TextSlice) {
+			String source = ((TextSlice) text).getSource();
+			return SLICE_SIZE + (sources.add(source) ? stringSize(source) : 0);
+		}
+		return text == null ? 0 : STRING_SIZE + text.length();
+	}
+
+	/**
+	 * Cached template, complete once it is parsed.
+	 */
+	private static class Entry {
+
+		/**
+		 * syntax tree of template
+		 */
+		private final CompletableFuture<DocumentNode> future = new CompletableFuture<>();
+		/**
+		 * estimated heap size of syntax tree
+		 */
+		private long weight;
+		/**
+		 * flag that is <code>true</code> once template is parsed and weighted
+		 */
+		private boolean loaded;
+
+	}
+
+	/**
+	 * Key of template given by its file.
+	 */
+	private static final class FileKey {
+
+		/**
+		 * absolute normalized path of the file
+		 */
+		private final Path path;
+		/**
+		 * modification time of the file in milliseconds
+		 */
+		private final long modified;
+		/**
+		 * size of the file in bytes
+		 */
+		private final long size;
+
+		/**
+		 * Constructor for creating new <code>FileKey</code>.
+		 *
+		 * @param path     absolute normalized path of the file
+		 * @param modified modification time of the file in milliseconds
+		 * @param size     size of the file in bytes
+		 */
+		private FileKey(Path path, long modified, long size) {
+			this.path = path;
+			this.modified = modified;
+			this.size = size;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, modified, size);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof FileKey))
+				return false;
+			FileKey other = (FileKey) obj;
+			return modified == other.modified && size == other.size && path.equals(other.path);
+		}
+
+	}
+
+}
@@ -0,0 +1,62 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+
+/**
+ * Interface of a handler that <code>SmartScriptParser</code> reports parts of text to,
+ * in order in which they appear, instead of building syntax tree. Every method returns
+ * <code>true</code> if parsing should continue, or <code>false</code> if handler is done
+ * and parsing stops. Methods do nothing by default, so handler implements only
+ * methods of parts it is interested in.
+ * 
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public interface SmartScriptHandler {
+
+	/**
+	 * Method is called for text outside of tags.
+	 * 
+	 * @param text text with escape sequences resolved
+	 * @return     <code>true</code> if parsing continues, <code>false</code> if it stops
+	 */
+	default boolean onText(String text) {
+		return true;
+	}
+	
+	/**
+	 * Method is called for FOR tag. Parts of text until matching {@link #onEnd()}
+	 * are in body of the loop.
+	 * 
+	 * @param variable        variable of the loop
+	 * @param startExpression start expression of the loop
+	 * @param endExpression   end expression of the loop
+	 * @param stepExpression  step expression of the loop
+	 * @return                <code>true</code> if parsing continues, <code>false</code> if it stops
+	 */
+	default boolean onForStart(ElementVariable variable, Element startExpression, Element endExpression,
+			Element stepExpression) {
+		return true;
+	}
+	
+	/**
+	 * Method is called for ECHO tag.
+	 * 
+	 * @param elements elements of the tag, array is not used by the parser after the call
+	 * @return         <code>true</code> if parsing continues, <code>false</code> if it stops
+	 */
+	default boolean onEcho(Element[] elements) {
+		return true;
+	}
+	
+	/**
+	 * Method is called for END tag that closes the innermost open FOR loop.
+	 * 
+	 * @return <code>true</code> if parsing continues, <code>false</code> if it stops
+	 */
+	default boolean onEnd() {
+		return true;
+	}
+	
+}
@@ -1,5 +1,15 @@
 package hr.fer.zemris.java.custom.scripting.parser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import hr.fer.zemris.java.custom.collections.ArrayIndexedCollection;
 import hr.fer.zemris.java.custom.collections.EmptyStackException;
 import hr.fer.zemris.java.custom.collections.ObjectStack;
@@ -12,7 +22,8 @@ import hr.fer.zemris.java.custom.scripting.elems.ElementString;
 import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
 import hr.fer.zemris.java.custom.scripting.lexer.Lexer2;
 import hr.fer.zemris.java.custom.scripting.lexer.Lexer2State;
-import hr.fer.zemris.java.custom.scripting.lexer.Token2;
+import hr.fer.zemris.java.custom.scripting.lexer.TextSlice;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenList;
 import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
 import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
 import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
@@ -25,6 +36,23 @@ import hr.fer.zemris.java.hw03.prob1.LexerException;
  * Class represents a syntax analyzer for language specified in assignment.
  * Input of the syntax analyzer is stream of tokens obtained from lexical analyzer.
  * Output of the syntax analyzer is syntax tree.
+ * <p>
+ * Parser created by {@link #lazy(String)} or {@link #lazyFromUtf8(ByteBuffer)} only scans
+ * bodies of FOR loops for their END tags and parses children of a loop when they are first accessed.
+ * Structural errors inside of a loop body are then thrown on that access, or by {@link #validate()}.
+ * Syntax tree of such parser is not safe for use by multiple threads until it is validated.
+ * <p>
+ * Parser can be reused for another text with {@link #reset(String)}, which keeps its
+ * internal buffers, so parsing of many small texts does not allocate them again.
+ * <p>
+ * Parser created by {@link #diagnose(String)} does not stop at the first error. It records
+ * the error with its offset, skips the rest of the tag and continues, so all errors are
+ * collected together with a best-effort syntax tree. Errors in this mode are created
+ * without stack traces.
+ * <p>
+ * Methods {@link #parse(String, SmartScriptHandler)} and {@link #parse(Reader, SmartScriptHandler)}
+ * report parts of text to a {@link SmartScriptHandler} instead of building syntax tree,
+ * so memory they use does not grow with the size of text.
  * 
  * @author Ante Gazibarić
  * @version 1.0
@@ -33,7 +61,7 @@ import hr.fer.zemris.java.hw03.prob1.LexerException;
 public class SmartScriptParser {
 	
 	/**
-	 * original text that is analyzed
+	 * original text that is analyzed, <code>null</code> if text is read from a stream
 	 */
 	String document;
 	/**
@@ -48,6 +76,50 @@ public class SmartScriptParser {
 	 * stack used for implementing syntax tree
 	 */
 	private ObjectStack stack = new ObjectStack();
+	/**
+	 * <code>true</code> if bodies of FOR loops are parsed when they are first accessed
+	 */
+	private boolean lazy;
+	/**
+	 * <code>true</code> if text nodes and string elements reference slices of text instead of copies
+	 */
+	private boolean textSlices;
+	/**
+	 * collection that elements of ECHO tag are collected in, reused for every tag
+	 */
+	private ArrayIndexedCollection echoElements = new ArrayIndexedCollection();
+	/**
+	 * errors found in text, <code>null</code> if parser stops at the first error
+	 */
+	private List<ParseDiagnostic> errors;
+	/**
+	 * handler that parts of text are reported to, <code>null</code> if syntax tree is built
+	 */
+	private SmartScriptHandler handler;
+	/**
+	 * number of FOR loops that are open, used when parts of text are reported to handler
+	 */
+	private int depth;
+	/**
+	 * flag that is <code>true</code> if handler stopped parsing
+	 */
+	private boolean stopped;
+	/**
+	 * edited text, <code>null</code> until the first edit, afterwards <code>document</code> is its cached copy
+	 */
+	private GapBuffer editBuffer;
+	/**
+	 * offsets in text of children of the top node, used to find nodes that an edit touches,
+	 * <code>null</code> until the first edit
+	 */
+	private int[] rootOffsets;
+	
+	/**
+	 * Constructor used for creating new <code>SmartScriptParser</code> that has not analyzed
+	 * any text yet. Text is given with {@link #reset(String)}.
+	 */
+	public SmartScriptParser() {
+	}
 	
 	/**
 	 * Constructor used for creating new <code>SmartScriptParser</code>.
@@ -64,106 +136,560 @@ public class SmartScriptParser {
 	}
 	
 	/**
-	 * Method used for parsing text and constructing syntax tree
+	 * Constructor used for creating new <code>SmartScriptParser</code>
+	 * that parses tokens produced by given <code>lexer</code>.
+	 * 
+	 * @param lexer lexical analyzer that text is tokenized with
+	 */
+	private SmartScriptParser(Lexer2 lexer) {
+		this(lexer, false);
+	}
+	
+	/**
+	 * Constructor used for creating new <code>SmartScriptParser</code>
+	 * that parses tokens produced by given <code>lexer</code>.
+	 * 
+	 * @param lexer lexical analyzer that text is tokenized with
+	 * @param lazy  <code>true</code> if bodies of FOR loops are parsed when they are first accessed
+	 */
+	private SmartScriptParser(Lexer2 lexer, boolean lazy) {
+		this.lexer = lexer;
+		this.lazy = lazy;
+		mainNode = parse();
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses given text lazily:
+	 * bodies of FOR loops are only scanned for their END tags and their children are parsed
+	 * when they are first accessed. Lexical errors are still thrown right away.
+	 * 
+	 * @param document original text that is analyzed
+	 * @return         <code>SmartScriptParser</code> that parsed the text lazily
+	 * @throws NullPointerException if <code>document</code> is <code>null</code>
+	 */
+	public static SmartScriptParser lazy(String document) {
+		if(document == null)
+			throw new NullPointerException("Document must not be null");
+		
+		SmartScriptParser parser = new SmartScriptParser(new Lexer2(document), true);
+		parser.document = document;
+		return parser;
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> whose text nodes and string elements reference
+	 * {@link TextSlice}s of given text instead of holding copies of their characters. Such syntax tree
+	 * keeps the whole text reachable, so it is smaller only while the text is kept anyway,
+	 * for example when text and tree of a template are cached together.
+	 * 
+	 * @param document original text that is analyzed
+	 * @return         <code>SmartScriptParser</code> that parsed the text
+	 * @throws NullPointerException if <code>document</code> is <code>null</code>
+	 */
+	public static SmartScriptParser sliced(String document) {
+		if(document == null)
+			throw new NullPointerException("Document must not be null");
+		
+		SmartScriptParser parser = new SmartScriptParser();
+		parser.document = document;
+		parser.textSlices = true;
+		parser.lexer = new Lexer2(document);
+		parser.mainNode = parser.parse();
+		return parser;
+	}
+	
+	/**
+	 * Method parses given text and reports its parts to given handler, without building syntax tree.
+	 * 
+	 * @param document text that is parsed
+	 * @param handler  handler that parts of text are reported to
+	 * @return         <code>true</code> if the whole text was parsed, <code>false</code> if handler stopped parsing
+	 * @throws NullPointerException if <code>document</code> or <code>handler</code> is <code>null</code>
+	 * @throws SmartScriptParserException if text is not valid
+	 */
+	public static boolean parse(String document, SmartScriptHandler handler) {
+		if(document == null)
+			throw new NullPointerException("Document must not be null");
+		
+		return parse(new Lexer2(document), handler);
+	}
+	
+	/**
+	 * Method parses text read from given <code>reader</code> and reports its parts to given handler,
+	 * without building syntax tree. Text is never materialized as a whole. Reader is not closed
+	 * and, when handler stops parsing, it is not read any further than lexer's buffer.
+	 * 
+	 * @param reader  reader that text is read from
+	 * @param handler handler that parts of text are reported to
+	 * @return        <code>true</code> if the whole text was parsed, <code>false</code> if handler stopped parsing
+	 * @throws NullPointerException if <code>reader</code> or <code>handler</code> is <code>null</code>
+	 * @throws SmartScriptParserException if text is not valid
+	 */
+	public static boolean parse(Reader reader, SmartScriptHandler handler) {
+		if(reader == null)
+			throw new NullPointerException("Reader must not be null");
+		
+		return parse(Lexer2.fromReader(reader), handler);
+	}
+	
+	/**
+	 * Helper method that parses tokens of given lexer and reports parts of text to given handler.
+	 * 
+	 * @param lexer   lexical analyzer that text is tokenized with
+	 * @param handler handler that parts of text are reported to
+	 * @return        <code>true</code> if the whole text was parsed, <code>false</code> if handler stopped parsing
+	 */
+	private static boolean parse(Lexer2 lexer, SmartScriptHandler handler) {
+		if(handler == null)
+			throw new NullPointerException("Handler must not be null");
+		
+		SmartScriptParser parser = new SmartScriptParser();
+		parser.lexer = lexer;
+		parser.handler = handler;
+		parser.parse();
+		return !parser.stopped;
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses given text without stopping
+	 * at errors. Every error is recorded, the rest of its tag is skipped and parsing continues.
+	 * Nodes whose tags are invalid are left out of the syntax tree, FOR loops that are
+	 * not closed end with the text.
+	 * 
+	 * @param document original text that is analyzed
+	 * @return         <code>SmartScriptParser</code> whose errors are given by {@link #getErrors()}
+	 * @throws NullPointerException if <code>document</code> is <code>null</code>
+	 */
+	public static SmartScriptParser diagnose(String document) {
+		if(document == null)
+			throw new NullPointerException("Document must not be null");
+		
+		SmartScriptParser parser = new SmartScriptParser();
+		parser.document = document;
+		parser.errors = new ArrayList<>();
+		parser.lexer = new Lexer2(document);
+		parser.lexer.setStacklessErrors(true);
+		parser.mainNode = parser.parse();
+		return parser;
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses UTF-8 encoded text
+	 * between position and limit of given buffer lazily, like {@link #lazy(String)}.
+	 * Buffer's content must not be changed while syntax tree is used.
+	 * 
+	 * @param bytes UTF-8 encoded text
+	 * @return      <code>SmartScriptParser</code> that parsed the text lazily
+	 * @throws NullPointerException if <code>bytes</code> is <code>null</code>
+	 */
+	public static SmartScriptParser lazyFromUtf8(ByteBuffer bytes) {
+		if(bytes == null)
+			throw new NullPointerException("Buffer must not be null");
+		
+		return new SmartScriptParser(Lexer2.fromUtf8(bytes), true);
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses text read from given <code>reader</code>.
+	 * Text is never materialized as a whole, it is read through lexer's buffer.
+	 * Reader is not closed by the parser.
+	 * 
+	 * @param reader reader that text is read from
+	 * @return       <code>SmartScriptParser</code> that parsed the text
+	 * @throws NullPointerException if <code>reader</code> is <code>null</code>
+	 */
+	public static SmartScriptParser fromReader(Reader reader) {
+		if(reader == null)
+			throw new NullPointerException("Reader must not be null");
+		
+		return new SmartScriptParser(Lexer2.fromReader(reader));
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses UTF-8 encoded text
+	 * read from given <code>channel</code>, for example a <code>FileChannel</code> or a <code>SocketChannel</code>.
+	 * Text is never materialized as a whole, it is read through lexer's buffer.
+	 * Channel is not closed by the parser.
+	 * 
+	 * @param channel channel that text is read from
+	 * @return        <code>SmartScriptParser</code> that parsed the text
+	 * @throws NullPointerException if <code>channel</code> is <code>null</code>
+	 */
+	public static SmartScriptParser fromChannel(ReadableByteChannel channel) {
+		if(channel == null)
+			throw new NullPointerException("Channel must not be null");
+		
+		return new SmartScriptParser(Lexer2.fromChannel(channel));
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses UTF-8 encoded text
+	 * between position and limit of given buffer, for example a <code>MappedByteBuffer</code>.
+	 * Only bytes that become parts of the syntax tree are decoded.
+	 * 
+	 * @param bytes UTF-8 encoded text
+	 * @return      <code>SmartScriptParser</code> that parsed the text
+	 * @throws NullPointerException if <code>bytes</code> is <code>null</code>
+	 */
+	public static SmartScriptParser fromUtf8(ByteBuffer bytes) {
+		if(bytes == null)
+			throw new NullPointerException("Buffer must not be null");
+		
+		return new SmartScriptParser(Lexer2.fromUtf8(bytes));
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses UTF-8 encoded file
+	 * whose content is mapped into memory, so it is never copied into heap as a whole.
+	 * 
+	 * @param path path of the file
+	 * @return     <code>SmartScriptParser</code> that parsed the file
+	 * @throws IOException if file can not be mapped
+	 * @throws NullPointerException if <code>path</code> is <code>null</code>
+	 */
+	public static SmartScriptParser fromFile(Path path) throws IOException {
+		if(path == null)
+			throw new NullPointerException("Path must not be null");
+		
+		return new SmartScriptParser(Lexer2.fromMappedFile(path));
+	}
+	
+	/**
+	 * Method creates new <code>SmartScriptParser</code> that parses already read tokens,
+	 * for example tokens read by <code>ParallelLexer</code>. Tokens must have been read
+	 * with lexer state changed on curly brackets, the same way parser changes it.
+	 * 
+	 * @param tokens tokens of the text
+	 * @return       <code>SmartScriptParser</code> that parsed the tokens
+	 * @throws NullPointerException if <code>tokens</code> is <code>null</code>
+	 */
+	public static SmartScriptParser fromTokens(TokenList tokens) {
+		if(tokens == null)
+			throw new NullPointerException("Tokens must not be null");
+		
+		return new SmartScriptParser(Lexer2.fromTokens(tokens));
+	}
+	
+	/**
+	 * Method parses given text with this parser, reusing its lexer and other internal buffers.
+	 * Syntax tree that was built before is not changed. If text is not valid, exception
+	 * is thrown, parser keeps its previous text and tree and can still be reset again.
+	 * 
+	 * @param document original text that is analyzed
+	 * @throws NullPointerException if <code>document</code> is <code>null</code>
+	 */
+	public void reset(String document) {
+		if(document == null)
+			throw new NullPointerException("Document must not be null");
+		
+		// lazily parsed tree still reads from the previous lexer
+		if (lexer == null || lazy)
+			lexer = new Lexer2(document);
+		else
+			lexer.reset(document);
+		lazy = false;
+		textSlices = false;
+		errors = null;
+		lexer.setStacklessErrors(false);
+		stack.clear();
+		echoElements.clear();
+		
+		DocumentNode node = parse();
+		this.document = document;
+		mainNode = node;
+		editBuffer = null;
+		rootOffsets = null;
+	}
+	
+	/**
+	 * Method drops text and syntax tree of this parser and clears its lexer, so that parser
+	 * which is kept for reuse does not keep them alive. Parser can be used again after
+	 * it is reset with new text.
+	 */
+	void clear() {
+		// lazily parsed tree still reads from the lexer, so it is dropped instead of cleared
+		if (lazy)
+			lexer = null;
+		else if (lexer != null)
+			lexer.clear();
+		lazy = false;
+		textSlices = false;
+		errors = null;
+		handler = null;
+		stack.clear();
+		echoElements.clear();
+		document = null;
+		mainNode = null;
+		editBuffer = null;
+		rootOffsets = null;
+	}
+	
+	/**
+	 * Method used for parsing text and constructing syntax tree.
+	 * Tokens are read through lexer's cursor, so only values that become
+	 * parts of the syntax tree are materialized.
 	 * 
 	 * @return <code>DocumentNode</code> that represents syntax tree
 	 */
 	private DocumentNode parse() {
-		lexer.nextToken();
+		lexer.next();
 		DocumentNode documentNode = new DocumentNode();
 		stack.push(documentNode);
 
-		while (true) {
-			// If it's end of text, we are done with parsing
-			if (isTokenOfType(TokenType2.EOF))
-				break;
+		// If it's end of text, we are done with parsing
+		while (!stopped && !isTokenOfType(TokenType2.EOF)) {
+			try {
+				parseNext();
+			} catch (SmartScriptParserException | LexerException ex) {
+				if (errors == null)
+					throw ex;
+				recover(ex);
+			}
+		}
+		
+		if (stopped)
+			return documentNode;
+		if (handler != null && depth != 0)
+			throw error("Invalid input! Too many END tags");
+		if(stack.size() != 1) {
+			if (errors == null)
+				throw error("Invalid input! Too many END tags");
+			// FOR loops that are not closed end with the text
+			while (stack.size() > 1) {
+				errors.add(new ParseDiagnostic(lexer.getTokenEnd(), "Invalid input. Missing END tag"));
+				closeForLoopNode((ForLoopNode) stack.pop(), 0);
+			}
+		}
+		
+		documentNode.setSourceLength(lexer.getTokenEnd());
+		return documentNode;
+	}
+	
+	/**
+	 * Method parses next text or tag and adds its node to the syntax tree.
+	 */
+	private void parseNext() {
+		// If lexer is in TEXT mode
+		if (lexer.getState() == Lexer2State.TEXT) {
+			// Tag can directly follow another tag or start the document
+			if (isTokenOfType(TokenType2.OPEN_BKRACKETS)) {
+				lexer.setState(Lexer2State.TAG);
+				return;
+			}
+			if (!isTokenOfType(TokenType2.TEXT))
+				throw error("Invalid token type. Text was expected.");
 			
-			// If lexer is in TEXT mode
-			if (lexer.getState() == Lexer2State.TEXT) {
-				if (!isTokenOfType(TokenType2.TEXT))
-					throw new SmartScriptParserException("Invalid token type. Text was expected.");
-				
+			if (handler != null) {
+				stopped = !handler.onText(lexer.getTextValue());
+				if (stopped)
+					return;
+			} else {
 				try {
 					// Try if stack is not empty
 					Node lastNode = (Node) stack.peek();
 					lastNode.addChildNode(getTextNode());
 				} catch(EmptyStackException ex) {
-					throw new SmartScriptParserException("Invalid input. Too many END tags");
+					throw error("Invalid input. Too many END tags");
 				}
-				lexer.nextToken();
-				// If next token is open curly bracket which represents beginning of TAG mode
-				// Change lexer mode in TAG mode
-				if (isTokenOfType(TokenType2.OPEN_BKRACKETS))
-					lexer.setState(Lexer2State.TAG);
+			}
+			lexer.next();
+			// If next token is open curly bracket which represents beginning of TAG mode
+			// Change lexer mode in TAG mode
+			if (isTokenOfType(TokenType2.OPEN_BKRACKETS))
+				lexer.setState(Lexer2State.TAG);
 
-			} else {
-				// If the lexer is in TAG mode
-				if (isTokenOfType(TokenType2.EOF))
-					throw new SmartScriptParserException("Invalid TAG structure.");
+		} else {
+			// If the lexer is in TAG mode
+			if (isTokenOfType(TokenType2.EOF))
+				throw error("Invalid TAG structure.");
 
-				// First token must be open curly bracket
-				if (!isTokenOfType(TokenType2.OPEN_BKRACKETS))
-					throw new SmartScriptParserException("Invalid TAG structure. Open curly brackets was expected.");
-				lexer.nextToken();
+			// First token must be open curly bracket
+			if (!isTokenOfType(TokenType2.OPEN_BKRACKETS))
+				throw error("Invalid TAG structure. Open curly brackets was expected.");
+			int tagStart = lexer.getTokenStart();
+			lexer.next();
 
-				// Second token must be dollar symbol
-				if (!isTokenOfType(TokenType2.DOLLAR))
-					throw new SmartScriptParserException("Invalid TAG structure. '$' was expected.");
-				lexer.nextToken();
+			// Second token must be dollar symbol
+			if (!isTokenOfType(TokenType2.DOLLAR))
+				throw error("Invalid TAG structure. '$' was expected.");
+			lexer.next();
 
-				// Check what comes after dollar symbol
-				if (lexer.getToken().getValue().toString().toUpperCase().equals("FOR")) {
-					// FOR TAG
-					lexer.nextToken();
-					ForLoopNode forNode = getForLoopNode();
+			// Check what comes after dollar symbol
+			if (lexer.tokenEqualsIgnoreCase("FOR")) {
+				// FOR TAG
+				lexer.next();
+				ForLoopNode forNode = getForLoopNode();
+				forNode.setHeaderLength(lexer.getTokenEnd() - tagStart);
+				if (handler != null) {
+					depth++;
+					stopped = !handler.onForStart(forNode.getVariable(), forNode.getStartExpression(),
+							forNode.getEndExpression(), forNode.getStepExpression());
+				} else {
 					try {
 						// Try if stack is not empty
 						Node lastNode = (Node) stack.peek();
 						lastNode.addChildNode(forNode);
-						stack.push(forNode);
 					} catch (EmptyStackException ex) {
-						throw new SmartScriptParserException("Invalid input. Too many END tags");
+						throw error("Invalid input. Too many END tags");
 					}
-				} else if (isTokenOfType(TokenType2.EQUALS)) {
-					// ECHO TAG
-					lexer.nextToken();
-					EchoNode echoNode = getEchoNode();
+					if (lazy)
+						skipForLoopBody(forNode, tagStart);
+					else
+						stack.push(forNode);
+				}
+			} else if (isTokenOfType(TokenType2.EQUALS)) {
+				// ECHO TAG
+				lexer.next();
+				EchoNode echoNode = getEchoNode();
+				echoNode.setSourceLength(lexer.getTokenEnd() - tagStart);
+				if (handler != null) {
+					stopped = !handler.onEcho(echoNode.getElements());
+				} else {
 					try {
 						// Try if stack is not empty
 						Node lastNode = (Node) stack.peek();
 						lastNode.addChildNode(echoNode);
 					} catch(EmptyStackException ex) {
-						throw new SmartScriptParserException("Invalid input. Too many END tags");
+						throw error("Invalid input. Too many END tags");
 					}
-				} else if (lexer.getToken().getValue().toString().toUpperCase().equals("END")) {
-					// END TAG
-					// After 'END' must come '$'
-					if (!(lexer.nextToken().getType() == TokenType2.DOLLAR))
-						throw new SmartScriptParserException("Invalid END statment. '$' was expected");
-					// After '$' must come '}'
-					if (!(lexer.nextToken().getType() == TokenType2.CLOSE_BRACKETS))
-						throw new SmartScriptParserException("Invalid END statment. '}' was expected");
-					// After 'END' tag pop last node from stack
+				}
+			} else if (lexer.tokenEqualsIgnoreCase("END")) {
+				// END TAG
+				// After 'END' must come '$'
+				if (lexer.next() != TokenType2.DOLLAR)
+					throw error("Invalid END statment. '$' was expected");
+				// After '$' must come '}'
+				if (lexer.next() != TokenType2.CLOSE_BRACKETS)
+					throw error("Invalid END statment. '}' was expected");
+				// After 'END' tag pop last node from stack
+				if (handler != null) {
+					if (depth == 0)
+						throw error("Invalid input. Too many END tags");
+					depth--;
+					stopped = !handler.onEnd();
+				} else {
+					if (stack.size() == 1)
+						throw error("Invalid input. Too many END tags");
 					try {
-						stack.pop();
+						Object closed = stack.pop();
+						if (closed instanceof ForLoopNode)
+							closeForLoopNode((ForLoopNode) closed, lexer.getTokenEnd() - tagStart);
 					} catch (EmptyStackException ex) {
-						throw new SmartScriptParserException("Invalid input. Missing END tag");
+						throw error("Invalid input. Missing END tag");
 					}
-				} else {
-					// Invalid tag input
-					throw new SmartScriptParserException("Invalid TAG input");
 				}
-				// End of TAG, change state to TEXT mode
-				lexer.setState(Lexer2State.TEXT);
-				lexer.nextToken();
+			} else {
+				// Invalid tag input
+				throw error("Invalid TAG input");
 			}
+			// End of TAG, change state to TEXT mode
+			lexer.setState(Lexer2State.TEXT);
+			if (!stopped)
+				lexer.next();
 		}
+	}
+	
+	/**
+	 * Method records given error and skips the rest of the tag in which it was found,
+	 * so that parsing can continue with the text after it.
+	 * 
+	 * @param ex exception that describes the error
+	 */
+	private void recover(RuntimeException ex) {
+		errors.add(new ParseDiagnostic(lexer.getTokenStart(), ex.getMessage()));
+		if (isTokenOfType(TokenType2.EOF))
+			return;
 		
-		if(stack.size() != 1) {
-			throw new SmartScriptParserException("Invalid input! Too many END tags");
+		// tag whose closed curly bracket was already read needs no skipping
+		if (ex instanceof LexerException || !isTokenOfType(TokenType2.CLOSE_BRACKETS))
+			lexer.skipTag();
+		lexer.setState(Lexer2State.TEXT);
+		lexer.next();
+	}
+	
+	/**
+	 * Helper method that creates exception about invalid text,
+	 * without stack trace if errors are collected.
+	 * 
+	 * @param message message that describes the error
+	 * @return        new <code>SmartScriptParserException</code>
+	 */
+	private SmartScriptParserException error(String message) {
+		return new SmartScriptParserException(message, errors == null);
+	}
+	
+	/**
+	 * Method sets lengths of FOR loop node whose END tag was just read.
+	 * Length of the whole node is sum of lengths of its tags and children.
+	 * 
+	 * @param forNode      node of FOR loop
+	 * @param endTagLength length of END tag
+	 */
+	private static void closeForLoopNode(ForLoopNode forNode, int endTagLength) {
+		int length = forNode.getHeaderLength() + endTagLength;
+		int size = forNode.numberOfChildren();
+		for (int i = 0; i < size; i++) {
+			length += forNode.getChild(i).getSourceLength();
 		}
+		forNode.setEndTagLength(endTagLength);
+		forNode.setSourceLength(length);
+	}
+	
+	/**
+	 * Method skips body of FOR loop whose header was just read, up to and including its END tag.
+	 * Only tags that open and close FOR loops are recognized, everything else is left to
+	 * the parser of loop's children which is given to the node.
+	 * 
+	 * @param forNode  node of FOR loop
+	 * @param tagStart offset of FOR tag
+	 */
+	private void skipForLoopBody(ForLoopNode forNode, int tagStart) {
+		int bodyStart = lexer.getTokenEnd();
+		int depth = 0;
+		lexer.setState(Lexer2State.TEXT);
 		
-		return documentNode;
+		while (true) {
+			TokenType2 type = lexer.next();
+			if (type == TokenType2.EOF)
+				throw error("Invalid input. Missing END tag");
+			if (type != TokenType2.OPEN_BKRACKETS)
+				continue;
+			
+			int endTagStart = lexer.getTokenStart();
+			lexer.setState(Lexer2State.TAG);
+			if (lexer.next() == TokenType2.DOLLAR) {
+				lexer.next();
+				if (lexer.tokenEqualsIgnoreCase("FOR")) {
+					depth++;
+				} else if (lexer.tokenEqualsIgnoreCase("END") && depth-- == 0) {
+					if (lexer.next() != TokenType2.DOLLAR)
+						throw error("Invalid END statment. '$' was expected");
+					if (lexer.next() != TokenType2.CLOSE_BRACKETS)
+						throw error("Invalid END statment. '}' was expected");
+					
+					forNode.setEndTagLength(lexer.getTokenEnd() - endTagStart);
+					forNode.setSourceLength(lexer.getTokenEnd() - tagStart);
+					Lexer2 source = lexer;
+					forNode.setChildrenParser(node -> {
+						DocumentNode body = new SmartScriptParser(source.subLexer(bodyStart, endTagStart), true)
+								.getDocumentNode();
+						int size = body.numberOfChildren();
+						for (int i = 0; i < size; i++) {
+							node.addChildNode(body.getChild(i));
+						}
+					});
+					return;
+				}
+			}
+			
+			// rest of the tag is skipped
+			while (!isTokenOfType(TokenType2.CLOSE_BRACKETS)) {
+				if (isTokenOfType(TokenType2.EOF))
+					throw error("Invalid TAG structure.");
+				lexer.next();
+			}
+			lexer.setState(Lexer2State.TEXT);
+		}
 	}
 	
 	/**
@@ -175,23 +701,23 @@ public class SmartScriptParser {
 	private ForLoopNode getForLoopNode() {
 		// First token in FOR tag must be variable
 		if(!isTokenOfType(TokenType2.VAR))
-			throw new SmartScriptParserException("Invalid FOR loop. Variable was expected");
-		ElementVariable variable = new ElementVariable(lexer.getToken().getValue().toString());
-		lexer.nextToken();
+			throw error("Invalid FOR loop. Variable was expected");
+		ElementVariable variable = new ElementVariable(lexer.getTextValue());
+		lexer.next();
 		ElementConstantInteger startExpression = getForLoopInteger();
-		lexer.nextToken();
+		lexer.next();
 		ElementConstantInteger endExpression = getForLoopInteger();
-		lexer.nextToken();
+		lexer.next();
 		ElementConstantInteger stepExpression = getForLoopInteger();
-		lexer.nextToken();
+		lexer.next();
 		
 		// After all characteristic elements of FOR tag must come '$' symbol
 		if(!isTokenOfType(TokenType2.DOLLAR))
-			throw new SmartScriptParserException("Invalid FOR loop. '$' was expected");
-		lexer.nextToken();
+			throw error("Invalid FOR loop. '$' was expected");
+		lexer.next();
 		// After '$' symbol must come '}'
 		if(!isTokenOfType(TokenType2.CLOSE_BRACKETS))
-			throw new SmartScriptParserException("Invalid FOR loop. '}' was expected");
+			throw error("Invalid FOR loop. '}' was expected");
 		
 		return new ForLoopNode(variable, startExpression, endExpression, stepExpression);
 	}
@@ -202,24 +728,19 @@ public class SmartScriptParser {
 	 * @return <code>ElementConstantInteger</code> that represents valid integer expression in FOR tag
 	 */
 	private ElementConstantInteger getForLoopInteger() {
-
-		Object forElement = lexer.getToken().getValue();
-		Long number = null;
+		TokenType2 type = lexer.getTokenType();
+		if (type == TokenType2.INTEGER)
+			return new ElementConstantInteger(lexer.getLongValue());
+		
 		// Valid input is also "1", check for that
-		if (forElement instanceof String) {
-			String stringOfElement = (String) forElement;
+		if (type == TokenType2.TEXT || type == TokenType2.VAR || type == TokenType2.KEYWORD) {
 			try {
-				number = Long.parseLong(stringOfElement);
-				return new ElementConstantInteger(number);
+				return new ElementConstantInteger(Long.parseLong(lexer.getTextValue()));
 			} catch (NumberFormatException ex) {
-				throw new SmartScriptParserException("Invalid FOR loop statment.\nValue is not of type Long");
+				// if it's not parsable then it's invalid input
 			}
-			// if it's not parsable then it's invalid input
-		} else if (!(forElement instanceof Long)) {
-			throw new SmartScriptParserException("Invalid FOR loop statment.\nValue is not of type Long");
 		}
-		number = (Long) forElement;
-		return new ElementConstantInteger(number);
+		throw error("Invalid FOR loop statment.\nValue is not of type Long");
 	}
 	
 	/**
@@ -229,68 +750,61 @@ public class SmartScriptParser {
 	 * @return <code>EchoNode</code> that represents ECHO tag
 	 */
 	private EchoNode getEchoNode() {
-		ArrayIndexedCollection elems = new ArrayIndexedCollection();
+		ArrayIndexedCollection elems = echoElements;
+		elems.clear();
 		
 		while(true) {
-			Token2 token = lexer.getToken();
-			TokenType2 type = token.getType();
+			TokenType2 type = lexer.getTokenType();
 			try {
 				// Variable token
 				if (type == TokenType2.VAR) {
-					ElementVariable var = new ElementVariable(token.getValue().toString());
-					elems.add(var);
-					lexer.nextToken();
+					elems.add(new ElementVariable(lexer.getTextValue()));
+					lexer.next();
 					continue;
 				}
 				// Integer number token
 				if (type == TokenType2.INTEGER) {
-					ElementConstantInteger number = new ElementConstantInteger((Long) token.getValue());
-					elems.add(number);
-					lexer.nextToken();
+					elems.add(new ElementConstantInteger(lexer.getLongValue()));
+					lexer.next();
 					continue;
 				}
 				// Double number token
 				if (type == TokenType2.DOUBLE) {
-					ElementConstantDouble number = new ElementConstantDouble((Double) token.getValue());
-					elems.add(number);
-					lexer.nextToken();
+					elems.add(new ElementConstantDouble(lexer.getDoubleValue()));
+					lexer.next();
 					continue;
 				}
 				// Text token ("text")
 				if (type == TokenType2.TEXT) {
-					ElementString string = new ElementString(token.getValue().toString());
-					elems.add(string);
-					lexer.nextToken();
+					elems.add(new ElementString(textValue()));
+					lexer.next();
 					continue;
 				}
 				// Function token ("@" at the beginning, next token must be valid function name - VAR token)
 				if (type == TokenType2.AT) {
-					lexer.nextToken();
-					if (lexer.getToken().getType() != TokenType2.VAR)
-						throw new SmartScriptParserException("Invalid function name");
+					if (lexer.next() != TokenType2.VAR)
+						throw error("Invalid function name");
 
-					ElementFunction function = new ElementFunction(lexer.getToken().getValue().toString());
-					elems.add(function);
-					lexer.nextToken();
+					elems.add(new ElementFunction(lexer.getTextValue()));
+					lexer.next();
 					continue;
 				}
 				// Operator token (+, -, *, /, ^)
 				if (type == TokenType2.OPERATOR) {
-					ElementOperator operator = new ElementOperator(token.getValue().toString());
-					elems.add(operator);
-					lexer.nextToken();
+					elems.add(new ElementOperator(operatorSymbol(lexer.getCharValue())));
+					lexer.next();
 					continue;
 				}
 				// At the end of TAG must come '$' and then '}'
 				if (type == TokenType2.DOLLAR) {
-					if (!(lexer.nextToken().getType() == TokenType2.CLOSE_BRACKETS))
-						throw new SmartScriptParserException("Invalid ECHO tag. Closed curly bracked was expeceted");
+					if (lexer.next() != TokenType2.CLOSE_BRACKETS)
+						throw error("Invalid ECHO tag. Closed curly bracked was expeceted");
 					break;
 				}
 				// if it's not recognized, it is invalid input in ECHO tag
-				throw new SmartScriptParserException("Invalid input in ECHO tag. Input was: " + token.getValue());
+				throw error("Invalid input in ECHO tag. Input was: " + lexer.getToken().getValue());
 			} catch (LexerException ex) {
-				throw new SmartScriptParserException(ex.getMessage());
+				throw error(ex.getMessage());
 			}
 		}
 		
@@ -298,6 +812,30 @@ public class SmartScriptParser {
 		return new EchoNode(elements);
 	}
 	
+	/**
+	 * Method returns <code>String</code> representation of given operator
+	 * without creating new <code>String</code> for every occurrence.
+	 * 
+	 * @param operator operator character
+	 * @return         <code>String</code> that represents operator
+	 */
+	private static String operatorSymbol(char operator) {
+		switch (operator) {
+		case '+':
+			return "+";
+		case '-':
+			return "-";
+		case '*':
+			return "*";
+		case '/':
+			return "/";
+		case '^':
+			return "^";
+		default:
+			return String.valueOf(operator);
+		}
+	}
+	
 	/**
 	 * Method used for filling <code>Element</code> array
 	 * with given collection's elements
@@ -321,10 +859,20 @@ public class SmartScriptParser {
 	 * @return <code>TextNode</code> that represents TEXT element
 	 */
 	private TextNode getTextNode() {
-		TextNode textNode = new TextNode(lexer.getToken().getValue().toString());
+		TextNode textNode = new TextNode(textValue());
+		textNode.setSourceLength(lexer.getTokenEnd() - lexer.getTokenStart());
 		return textNode;
 	}
 	
+	/**
+	 * Method returns text of current token, as a slice of analyzed text if slices are used.
+	 * 
+	 * @return text of current token
+	 */
+	private CharSequence textValue() {
+		return textSlices ? lexer.getTextSequence() : lexer.getTextValue();
+	}
+	
 	/**
 	 * Method that checks if a current token is of a given type.
 	 * 
@@ -332,7 +880,7 @@ public class SmartScriptParser {
 	 * @return     <code>true</code> if current token type is equal to given token type, otherwise <code>false</code>
 	 */
 	private boolean isTokenOfType(TokenType2 type) {
-		return lexer.getToken().getType() == type;
+		return lexer.getTokenType() == type;
 	}
 	
 	/**
@@ -344,5 +892,363 @@ public class SmartScriptParser {
 		return mainNode;
 	}
 	
+	/**
+	 * Method parses all children of FOR loops whose parsing was deferred,
+	 * so that every error in the text is thrown.
+	 * 
+	 * @throws SmartScriptParserException if body of a FOR loop is not valid
+	 */
+	public void validate() {
+		validate(mainNode);
+	}
+	
+	/**
+	 * Helper method that parses deferred children of given node and of all its descendants.
+	 * 
+	 * @param node node whose children are parsed
+	 */
+	private static void validate(Node node) {
+		int size = node.numberOfChildren();
+		for (int i = 0; i < size; i++) {
+			validate(node.getChild(i));
+		}
+	}
+	
+	/**
+	 * Method returns errors found by parser created with {@link #diagnose(String)}, in order
+	 * in which they appear in text. Other parsers throw exception at the first error,
+	 * so they have no errors to return.
+	 * 
+	 * @return unmodifiable list of errors, empty if text is valid or parser stops at the first error
+	 */
+	public List<ParseDiagnostic> getErrors() {
+		return errors == null ? Collections.emptyList() : Collections.unmodifiableList(errors);
+	}
+	
+	/**
+	 * Method returns text that is currently represented by syntax tree.
+	 * 
+	 * @return analyzed text, <code>null</code> if text was read from a stream
+	 */
+	public String getDocument() {
+		if (document == null && editBuffer != null)
+			document = editBuffer.toString();
+		return document;
+	}
+	
+	/**
+	 * Method applies edit to analyzed text and updates syntax tree so that it is the same
+	 * as the tree of the edited text parsed from scratch. Only nodes around the edit
+	 * are parsed again: edit is located in the innermost FOR loop whose body contains it,
+	 * nodes that it touches are parsed again as a standalone document and spliced in place
+	 * of the old ones. If they do not form a valid document on their own, the whole
+	 * enclosing FOR loop is parsed again, and so on up to the root, where nodes are parsed
+	 * again up to the end of the document.
+	 * If edited text is not valid, exception is thrown and both text and tree stay unchanged.
+	 * <p>
+	 * Text is kept in a gap buffer, so edit only moves characters between the previous and
+	 * the current edit, and nodes at the top of the tree are found by their offsets. Text is copied
+	 * into a <code>String</code> only when it is requested with {@link #getDocument()}.
+	 * 
+	 * @param offset        offset in text at which edit starts
+	 * @param removedLength number of characters that are removed at <code>offset</code>
+	 * @param insertedText  text that is inserted at <code>offset</code>
+	 * @throws IllegalStateException if parser was not created from <code>String</code>
+	 * @throws NullPointerException if <code>insertedText</code> is <code>null</code>
+	 * @throws IndexOutOfBoundsException if edited range is not inside of text
+	 * @throws SmartScriptParserException if edited text is not valid
+	 */
+	public void edit(int offset, int removedLength, String insertedText) {
+		if (document == null && editBuffer == null)
+			throw new IllegalStateException("Only text given as String can be edited");
+		if (errors != null && !errors.isEmpty())
+			throw new IllegalStateException("Text with errors can not be edited");
+		if (insertedText == null)
+			throw new NullPointerException("Inserted text must not be null");
+		
+		if (editBuffer == null)
+			editBuffer = new GapBuffer(document);
+		if (offset < 0 || removedLength < 0 || offset > editBuffer.length() - removedLength)
+			throw new IndexOutOfBoundsException("Invalid edit range. Offset: " + offset + ", length: " + removedLength);
+		
+		Edit edit = new Edit(offset, offset + removedLength, insertedText, editBuffer);
+		editChildren(mainNode, 0, edit);
+		mainNode.setSourceLength(edit.length());
+		editBuffer.replace(offset, removedLength, insertedText);
+		document = null;
+	}
+	
+	/**
+	 * Helper method that applies edit to children of given node. If edit is inside of body
+	 * of a single FOR loop child, it is applied to children of that loop.
+	 * 
+	 * @param parent    node whose children are edited
+	 * @param bodyStart offset of the first child of <code>parent</code> in text before edit
+	 * @param edit      edit that is applied
+	 * @return          <code>true</code> if edit was applied, <code>false</code> if it has to be applied to
+	 *                  a larger part of the document
+	 */
+	private boolean editChildren(Node parent, int bodyStart, Edit edit) {
+		int size = parent.numberOfChildren();
+		boolean isRoot = parent == mainNode;
+		
+		// first and last child that edit touches
+		int first = size == 0 ? 0 : -1;
+		int firstStart = bodyStart;
+		int last = -1;
+		int lastEnd = bodyStart;
+		if (isRoot && size > 0) {
+			int[] offsets = rootOffsets();
+			first = countLess(offsets, size, edit.start + 1) - 1;
+			last = Math.max(first, countLess(offsets, size, edit.end) - 1);
+			firstStart = offsets[first];
+			lastEnd = last + 1 < size ? offsets[last + 1] : mainNode.getSourceLength();
+		} else {
+			int childStart = bodyStart;
+			for (int i = 0; i < size; i++) {
+				int childEnd = childStart + parent.getChild(i).getSourceLength();
+				if (childStart <= edit.start) {
+					first = i;
+					firstStart = childStart;
+				}
+				if (childStart < edit.end || i == first) {
+					last = i;
+					lastEnd = childEnd;
+				} else {
+					break;
+				}
+				childStart = childEnd;
+			}
+		}
+		
+		if (first == last && size > 0 && parent.getChild(first) instanceof ForLoopNode) {
+			ForLoopNode forNode = (ForLoopNode) parent.getChild(first);
+			int forBodyStart = firstStart + forNode.getHeaderLength();
+			int forBodyEnd = lastEnd - forNode.getEndTagLength();
+			if (edit.start >= forBodyStart && edit.end <= forBodyEnd && editChildren(forNode, forBodyStart, edit)) {
+				forNode.setSourceLength(forNode.getSourceLength() + edit.delta);
+				if (isRoot)
+					spliceRootOffsets(first + 1, first + 1, 0, null, edit.delta);
+				return true;
+			}
+		}
+		
+		// text next to the edited nodes would be merged with their text, so it is parsed with them
+		while (first > 0 && parent.getChild(first - 1) instanceof TextNode) {
+			first--;
+			firstStart -= parent.getChild(first).getSourceLength();
+		}
+		while (last + 1 < size && parent.getChild(last + 1) instanceof TextNode) {
+			last++;
+			lastEnd += parent.getChild(last).getSourceLength();
+		}
+		
+		if (isRoot && (first > 0 || last < size - 1) && escapesFollowingTag(lastEnd + edit.delta, edit)) {
+			// text of the edited nodes would continue into the next tag
+			first = 0;
+			firstStart = 0;
+			last = size - 1;
+			lastEnd = mainNode.getSourceLength();
+		} else if (!isRoot && escapesFollowingTag(lastEnd + edit.delta, edit)) {
+			return false;
+		}
+		
+		DocumentNode fragment;
+		while (true) {
+			try {
+				fragment = new SmartScriptParser(edit.substring(firstStart, lastEnd + edit.delta)).getDocumentNode();
+				break;
+			} catch (RuntimeException ex) {
+				if (!isRoot)
+					return false;
+				// nodes before the fragment are complete, so only a fragment that reaches the end of
+				// the document is invalid for sure, otherwise its last tag may continue into the next nodes
+				if (last == size - 1)
+					throw ex;
+				last = size - 1;
+				lastEnd = mainNode.getSourceLength();
+			}
+		}
+		
+		if (isRoot)
+			spliceRootOffsets(first, last + 1, firstStart, fragment, edit.delta);
+		for (int i = last; i >= first; i--) {
+			parent.removeChildNode(i);
+		}
+		int fragmentSize = fragment.numberOfChildren();
+		for (int i = 0; i < fragmentSize; i++) {
+			parent.insertChildNode(fragment.getChild(i), first + i);
+		}
+		return true;
+	}
+	
+	/**
+	 * Helper method that returns offsets of children of the top node, computing them
+	 * if they were not computed yet.
+	 * 
+	 * @return offsets of children of the top node
+	 */
+	private int[] rootOffsets() {
+		if (rootOffsets == null) {
+			int size = mainNode.numberOfChildren();
+			rootOffsets = new int[size + 16];
+			int offset = 0;
+			for (int i = 0; i < size; i++) {
+				rootOffsets[i] = offset;
+				offset += mainNode.getChild(i).getSourceLength();
+			}
+		}
+		return rootOffsets;
+	}
+	
+	/**
+	 * Helper method that replaces offsets of children of the top node between given indexes
+	 * with offsets of children of given fragment and shifts offsets of the following children.
+	 * Offsets must be updated before children themselves.
+	 * 
+	 * @param from          index of the first replaced child
+	 * @param to            index after the last replaced child
+	 * @param fragmentStart offset of the fragment in text after edit
+	 * @param fragment      fragment whose children replace the old ones, <code>null</code> if there are none
+	 * @param delta         difference between length of text after and before edit
+	 */
+	private void spliceRootOffsets(int from, int to, int fragmentStart, DocumentNode fragment, int delta) {
+		int size = mainNode.numberOfChildren();
+		int fragmentSize = fragment == null ? 0 : fragment.numberOfChildren();
+		int newSize = size - (to - from) + fragmentSize;
+		// offsets are not computed when top node has no children to find
+		int[] offsets = rootOffsets();
+		if (newSize > offsets.length)
+			rootOffsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, newSize));
+		
+		System.arraycopy(rootOffsets, to, rootOffsets, from + fragmentSize, size - to);
+		for (int i = from + fragmentSize; i < newSize; i++) {
+			rootOffsets[i] += delta;
+		}
+		int offset = fragmentStart;
+		for (int i = 0; i < fragmentSize; i++) {
+			rootOffsets[from + i] = offset;
+			offset += fragment.getChild(i).getSourceLength();
+		}
+	}
+	
+	/**
+	 * Helper method that counts offsets that are less than given offset.
+	 * 
+	 * @param offsets sorted offsets
+	 * @param size    number of offsets
+	 * @param offset  offset that offsets are compared with
+	 * @return        number of offsets less than <code>offset</code>
+	 */
+	private static int countLess(int[] offsets, int size, int offset) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (offsets[middle] < offset)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+	
+	/**
+	 * Helper method that checks if edited text ends with backslash right before
+	 * the end of reparsed part, so that the backslash would escape next tag.
+	 * 
+	 * @param end  offset after reparsed part in edited text
+	 * @param edit edit that is applied
+	 * @return     <code>true</code> if next tag would be escaped, otherwise <code>false</code>
+	 */
+	private static boolean escapesFollowingTag(int end, Edit edit) {
+		return end > 0 && end < edit.length() && edit.charAt(end - 1) == '\\';
+	}
+	
+	/**
+	 * Class describes edit of analyzed text. Text after edit is read through the edit
+	 * from the text before it, which is not changed until the edit is applied.
+	 */
+	private static class Edit {
+		/**
+		 * offset of the first removed character in text before edit
+		 */
+		private final int start;
+		/**
+		 * offset after the last removed character in text before edit
+		 */
+		private final int end;
+		/**
+		 * difference between length of text after and before edit
+		 */
+		private final int delta;
+		/**
+		 * text that is inserted at <code>start</code>
+		 */
+		private final String insertedText;
+		/**
+		 * text before edit
+		 */
+		private final GapBuffer text;
+		
+		/**
+		 * Constructor for creating new <code>Edit</code>.
+		 * 
+		 * @param start        offset of the first removed character in text before edit
+		 * @param end          offset after the last removed character in text before edit
+		 * @param insertedText text that is inserted at <code>start</code>
+		 * @param text         text before edit
+		 */
+		private Edit(int start, int end, String insertedText, GapBuffer text) {
+			this.start = start;
+			this.end = end;
+			this.delta = insertedText.length() - (end - start);
+			this.insertedText = insertedText;
+			this.text = text;
+		}
+		
+		/**
+		 * Method returns length of text after edit.
+		 * 
+		 * @return length of edited text
+		 */
+		private int length() {
+			return text.length() + delta;
+		}
+		
+		/**
+		 * Method returns character of text after edit at given index.
+		 * 
+		 * @param index index of character in edited text
+		 * @return      character at <code>index</code>
+		 */
+		private char charAt(int index) {
+			if (index < start)
+				return text.charAt(index);
+			if (index < start + insertedText.length())
+				return insertedText.charAt(index - start);
+			return text.charAt(index - delta);
+		}
+		
+		/**
+		 * Method returns part of text after edit between given indexes.
+		 * 
+		 * @param from index of the first character in edited text
+		 * @param to   index after the last character in edited text
+		 * @return     part of edited text
+		 */
+		private String substring(int from, int to) {
+			int insertedEnd = start + insertedText.length();
+			StringBuilder sb = new StringBuilder(to - from);
+			if (from < start)
+				text.appendTo(sb, from, Math.min(to, start));
+			if (from < insertedEnd && to > start)
+				sb.append(insertedText, Math.max(from, start) - start, Math.min(to, insertedEnd) - start);
+			if (to > insertedEnd)
+				text.appendTo(sb, Math.max(from, insertedEnd) - delta, to - delta);
+			return sb.toString();
+		}
+	}
+	
 	
 }
@@ -30,5 +30,16 @@ public class SmartScriptParserException extends RuntimeException {
 	public SmartScriptParserException(String message) {
 		super(message);
 	}
+	
+	/**
+	 * Constructor that accepts message about situation that occurred during process of parsing
+	 * and can create exception without stack trace, which is much cheaper to create
+	 * 
+	 * @param message            message that describes what went wrong during process of parsing
+	 * @param writableStackTrace <code>false</code> if stack trace is not filled in
+	 */
+	public SmartScriptParserException(String message, boolean writableStackTrace) {
+		super(message, null, false, writableStackTrace);
+	}
 
 }
@@ -0,0 +1,91 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+
+/**
+ * Class represents bounded pool of reusable <code>SmartScriptParser</code>s that can be
+ * used by multiple threads. Each parser is used by one thread at a time: it is taken from the pool,
+ * reset with new text and returned. If the pool is empty, new parser is created, and if it is full,
+ * returned parser is dropped, so at most <code>capacity</code> idle parsers are kept.
+ * Syntax trees built by the pool's parsers do not depend on the parsers, so they stay valid
+ * after parsers are reused.
+ * 
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class SmartScriptParserPool {
+
+	/**
+	 * parsers that are not used at the moment
+	 */
+	private final ArrayBlockingQueue<SmartScriptParser> idle;
+	
+	/**
+	 * Constructor for creating new <code>SmartScriptParserPool</code>.
+	 * 
+	 * @param capacity maximal number of idle parsers that are kept
+	 * @throws IllegalArgumentException if <code>capacity</code> is less than 1
+	 */
+	public SmartScriptParserPool(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1, was: " + capacity);
+		
+		idle = new ArrayBlockingQueue<>(capacity);
+	}
+	
+	/**
+	 * Method parses given text with a parser from the pool.
+	 * 
+	 * @param document text that is parsed
+	 * @return         <code>DocumentNode</code> that represents syntax tree of the text
+	 * @throws NullPointerException if <code>document</code> is <code>null</code>
+	 * @throws SmartScriptParserException if text is not valid
+	 */
+	public DocumentNode parse(String document) {
+		SmartScriptParser parser = acquire();
+		try {
+			parser.reset(document);
+			return parser.getDocumentNode();
+		} finally {
+			release(parser);
+		}
+	}
+	
+	/**
+	 * Method takes parser from the pool, or creates new one if there is no idle parser.
+	 * Parser must be given back with {@link #release(SmartScriptParser)} when it is no longer used.
+	 * 
+	 * @return parser that is used only by the caller until it is released
+	 */
+	public SmartScriptParser acquire() {
+		SmartScriptParser parser = idle.poll();
+		return parser == null ? new SmartScriptParser() : parser;
+	}
+	
+	/**
+	 * Method gives parser back to the pool. Caller must not use the parser after it is released.
+	 * Text and syntax tree of the parser are dropped, so idle parsers do not keep them alive.
+	 * 
+	 * @param parser parser that is no longer used
+	 * @throws NullPointerException if <code>parser</code> is <code>null</code>
+	 */
+	public void release(SmartScriptParser parser) {
+		if (parser == null)
+			throw new NullPointerException("Parser must not be null");
+		
+		parser.clear();
+		idle.offer(parser);
+	}
+	
+	/**
+	 * Method returns number of idle parsers in the pool.
+	 * 
+	 * @return number of idle parsers
+	 */
+	public int idleCount() {
+		return idle.size();
+	}
+	
+}
@@ -15,9 +15,8 @@ import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
 
-import java.nio.file.Files;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -45,11 +44,12 @@ public class SmartScriptTester {
 	public static void main(String[] args) {
 		
 		String text = null;
+		Path path = null;
 		int numOfArgs = args.length;
 		
 		// Check if args contains file path, if not use default text
 		if (numOfArgs == 1) {
-			text = getTextFromFilePath(args[0]);
+			path = Paths.get(args[0]);
 		} else if (numOfArgs == 0) {
 			text = getDefaultText();
 		} else {
@@ -59,13 +59,16 @@ public class SmartScriptTester {
 			return;
 		}
 
-		String docBody = text;
 		SmartScriptParser parser = null;
 		try {
-			parser = new SmartScriptParser(docBody);
+			// file is parsed directly from its memory-mapped content
+			parser = path != null ? SmartScriptParser.fromFile(path) : new SmartScriptParser(text);
 		} catch (SmartScriptParserException e) {
 			System.out.println("Unable to parse document!");
 			System.exit(-1);
+		} catch (IOException e) {
+			System.out.println("Unable to read file: " + path);
+			System.exit(-1);
 		}catch (Exception e) {
 			System.out.println("If this line ever executes, you have failed this class!");
 			System.exit(-1);
@@ -193,23 +196,6 @@ public class SmartScriptTester {
 		return node.getText();
 	}
 	
-	/**
-	 * Method used for constructing <code>String</code>
-	 * from given text file whose path is given.
-	 * 
-	 * @param filepath path that points to the text file.
-	 * @return		   <code>String</code> representation of text file
-	 */
-	private static String getTextFromFilePath(String filepath) {
-		String docBody = null;
-		try {
-			docBody = new String(Files.readAllBytes(Paths.get(filepath)), StandardCharsets.UTF_8);
-		} catch (IOException ex) {
-			ex.printStackTrace();
-		}
-		return docBody;
-	}
-	
 	/**
 	 * Private method for getting default text for syntax analysis.
 	 * 
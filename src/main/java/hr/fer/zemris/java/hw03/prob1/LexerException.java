@@ -30,4 +30,15 @@ public class LexerException extends RuntimeException {
 	public LexerException(String message) {
 		super(message);
 	}
+	
+	/**
+	 * Constructor that accepts message about situation that occurred during lexical analysis
+	 * and can create exception without stack trace, which is much cheaper to create
+	 * 
+	 * @param message            message that describes what went wrong during lexical analysis
+	 * @param writableStackTrace <code>false</code> if stack trace is not filled in
+	 */
+	public LexerException(String message, boolean writableStackTrace) {
+		super(message, null, false, writableStackTrace);
+	}
 }
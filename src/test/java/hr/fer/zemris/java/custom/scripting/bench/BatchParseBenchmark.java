@@ -0,0 +1,79 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.BatchParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that parses a directory of template files one by one and with <code>BatchParser</code>
+ * of different parallelism, and prints throughput report of the batch.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class BatchParseBenchmark {
+
+	/**
+	 * number of template files
+	 */
+	private static final int FILES = 10_000;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws IOException if template files can not be written
+	 * @throws InterruptedException if benchmark is interrupted
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Path directory = Files.createTempDirectory("templates");
+		List<Path> paths = new ArrayList<>();
+		long bytes = 0;
+		try {
+			for (int i = 0; i < FILES; i++) {
+				byte[] content = BenchmarkSupport.tagDenseDocument(1024 + i % 2048).getBytes(StandardCharsets.UTF_8);
+				paths.add(Files.write(directory.resolve("template" + i + ".txt"), content));
+				bytes += content.length;
+			}
+			System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+
+			// trees are kept like the batch keeps them, they are what warmup is for
+			double sequential = BenchmarkSupport.measure("one by one", bytes, () -> {
+				DocumentNode[] trees = new DocumentNode[paths.size()];
+				for (int i = 0; i < trees.length; i++) {
+					String document = new String(Files.readAllBytes(paths.get(i)), StandardCharsets.UTF_8);
+					trees[i] = new SmartScriptParser(document).getDocumentNode();
+				}
+				return trees.length;
+			});
+
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				for (int parallelism = 1; parallelism <= 8; parallelism *= 2) {
+					BatchParser parser = new BatchParser(executor, parallelism);
+					double batch = BenchmarkSupport.measure("batch, parallelism " + parallelism, bytes,
+							() -> parser.parseFiles(paths).size());
+					BenchmarkSupport.speedup("parallelism " + parallelism + " over one by one", sequential, batch);
+					System.out.println("  " + parser.parseFiles(paths));
+				}
+			} finally {
+				executor.shutdown();
+			}
+		} finally {
+			for (Path path : paths) {
+				Files.delete(path);
+			}
+			Files.delete(directory);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2;
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2State;
+import hr.fer.zemris.java.custom.scripting.lexer.Token2;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
+
+/**
+ * Benchmark that compares reading tokens one by one, as <code>Token2</code> objects or through
+ * the cursor of <code>Lexer2</code>, with reading them in batches into primitive arrays.
+ * Every consumer sums offsets and numeric values of all tokens.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class BatchedTokensBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 1 << 22; i++) {
+			sb.append("Line ").append(i).append(" {$= value_").append(i).append(" 2.5 * ").append(i)
+					.append(" \"s\" @sin $}\n");
+			if (i % 50 == 0)
+				sb.append("{$ FOR i 1 ").append(i).append(" 1 $}loop body {$= i $}{$END$}\n");
+		}
+		String document = sb.toString();
+
+		double objects = BenchmarkSupport.measure("nextToken objects", document.length(), () -> {
+			Lexer2 lexer = new Lexer2(document);
+			long checksum = 0;
+			while (true) {
+				Token2 token = lexer.nextToken();
+				TokenType2 type = token.getType();
+				if (type == TokenType2.EOF)
+					return checksum;
+				checksum += lexer.getTokenEnd();
+				if (type == TokenType2.INTEGER)
+					checksum += (Long) token.getValue();
+				else if (type == TokenType2.OPEN_BKRACKETS)
+					lexer.setState(Lexer2State.TAG);
+				else if (type == TokenType2.CLOSE_BRACKETS)
+					lexer.setState(Lexer2State.TEXT);
+			}
+		});
+
+		double cursor = BenchmarkSupport.measure("next cursor", document.length(), () -> {
+			Lexer2 lexer = new Lexer2(document);
+			long checksum = 0;
+			while (true) {
+				TokenType2 type = lexer.next();
+				if (type == TokenType2.EOF)
+					return checksum;
+				checksum += lexer.getTokenEnd();
+				if (type == TokenType2.INTEGER)
+					checksum += lexer.getLongValue();
+				else if (type == TokenType2.OPEN_BKRACKETS)
+					lexer.setState(Lexer2State.TAG);
+				else if (type == TokenType2.CLOSE_BRACKETS)
+					lexer.setState(Lexer2State.TEXT);
+			}
+		});
+		BenchmarkSupport.speedup("cursor over objects", objects, cursor);
+
+		for (int batch = 64; batch <= 4096; batch *= 8) {
+			int size = batch;
+			TokenType2[] types = new TokenType2[size];
+			int[] starts = new int[size];
+			int[] ends = new int[size];
+			long[] values = new long[size];
+			double batched = BenchmarkSupport.measure("nextTokens, batch of " + size, document.length(), () -> {
+				Lexer2 lexer = new Lexer2(document);
+				long checksum = 0;
+				int count;
+				while ((count = lexer.nextTokens(types, starts, ends, values, 0, size)) > 0) {
+					for (int i = 0; i < count; i++) {
+						checksum += ends[i];
+						if (types[i] == TokenType2.INTEGER)
+							checksum += values[i];
+					}
+				}
+				return checksum;
+			});
+			BenchmarkSupport.speedup("batch of " + size + " over cursor", cursor, batched);
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+/**
+ * Class contains helper methods shared by benchmarks of the scripting package:
+ * simple warm up and measurement loop, and generators of synthetic documents.
+ * Benchmarks are plain programs started with <code>main</code> method, they are
+ * not run as part of the tests.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public final class BenchmarkSupport {
+
+	/**
+	 * Task whose execution time is measured. Task returns some value computed from
+	 * its work so that JIT can not remove the work as dead code.
+	 */
+	public interface Task {
+		/**
+		 * Method executes task once.
+		 *
+		 * @return value computed from task's work
+		 */
+		long run() throws Exception;
+	}
+
+	/**
+	 * value that results of all tasks are accumulated in
+	 */
+	private static long blackhole;
+
+	/**
+	 * Private constructor, class only contains static methods.
+	 */
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * Method runs given task for given warm up time, then measures it for given time
+	 * and prints average time per execution.
+	 *
+	 * @param name          name that is printed with results
+	 * @param bytesPerRun   number of input bytes processed per execution, used for throughput
+	 * @param warmupMillis  time that task is run before measurement
+	 * @param measureMillis time that task is measured
+	 * @param task          task that is measured
+	 * @return              average time of one execution in nanoseconds
+	 */
+	public static double measure(String name, long bytesPerRun, long warmupMillis, long measureMillis, Task task) {
+		try {
+			runFor(warmupMillis, task);
+			long start = System.nanoTime();
+			long runs = runFor(measureMillis, task);
+			double nanosPerRun = (System.nanoTime() - start) / (double) runs;
+			double megabytesPerSecond = bytesPerRun / nanosPerRun * 1e9 / (1024 * 1024);
+			System.out.printf("%-45s %14.1f ns/op %10.1f MB/s%n", name, nanosPerRun, megabytesPerSecond);
+			return nanosPerRun;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * Method measures task with default warm up and measurement times.
+	 *
+	 * @param name        name that is printed with results
+	 * @param bytesPerRun number of input bytes processed per execution
+	 * @param task        task that is measured
+	 * @return            average time of one execution in nanoseconds
+	 */
+	public static double measure(String name, long bytesPerRun, Task task) {
+		return measure(name, bytesPerRun, 2000, 3000, task);
+	}
+
+	/**
+	 * Helper method that runs task repeatedly for given time.
+	 *
+	 * @param millis time that task is run
+	 * @param task   task that is run
+	 * @return       number of executions
+	 * @throws Exception if task fails
+	 */
+	private static long runFor(long millis, Task task) throws Exception {
+		long end = System.nanoTime() + millis * 1_000_000;
+		long runs = 0;
+		do {
+			blackhole += task.run();
+			runs++;
+		} while (System.nanoTime() < end);
+		return runs;
+	}
+
+	/**
+	 * Method prints ratio of two measured times.
+	 *
+	 * @param name     name of comparison
+	 * @param baseline time of baseline implementation
+	 * @param measured time of new implementation
+	 */
+	public static void speedup(String name, double baseline, double measured) {
+		System.out.printf("%-45s %14.2fx%n", name, baseline / measured);
+	}
+
+	/**
+	 * Method generates document where most of the content are tags with expressions.
+	 *
+	 * @param approximateLength approximate number of characters of the document
+	 * @return                  generated document
+	 */
+	public static String tagDenseDocument(int approximateLength) {
+		StringBuilder sb = new StringBuilder(approximateLength + 128);
+		int i = 0;
+		while (sb.length() < approximateLength) {
+			sb.append("{$FOR i").append(i % 10).append(" -1 \"100\" 2 $}");
+			sb.append("x{$= i 22.03 \"Joe \\\"Long\\\" Smith\" var_").append(i)
+					.append(" * @sin \"0.000\" @decfmt -15 3 + $}");
+			sb.append("{$END$}\n");
+			i++;
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Method generates document where most of the content is static text.
+	 *
+	 * @param approximateLength approximate number of characters of the document
+	 * @return                  generated document
+	 */
+	public static String textHeavyDocument(int approximateLength) {
+		StringBuilder sb = new StringBuilder(approximateLength + 1024);
+		int i = 0;
+		while (sb.length() < approximateLength) {
+			for (int line = 0; line < 20; line++) {
+				sb.append("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ")
+						.append("incididunt ut labore et dolore magna aliqua. Escaped \\{ bracket ").append(line).append('\n');
+			}
+			sb.append("{$= value_").append(i++).append(" $}\n");
+		}
+		return sb.toString();
+	}
+
+}
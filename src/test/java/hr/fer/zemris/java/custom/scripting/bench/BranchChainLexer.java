@@ -0,0 +1,251 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2State;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
+import hr.fer.zemris.java.hw03.prob1.LexerException;
+
+/**
+ * Copy of TAG scanning of <code>Lexer2</code> as it was before it was rebuilt as
+ * table driven automaton. Every character is classified with chain of
+ * <code>getTypeFromSpecialSymbols</code>, <code>Character.isLetter</code>,
+ * <code>Character.isDigit</code>, <code>isOperator</code> and <code>isWhitespace</code> calls.
+ * It is kept only as baseline for {@link TagScannerBenchmark}, so it works on
+ * <code>String</code> input and exposes only type of current token.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class BranchChainLexer {
+
+	/**
+	 * input text arranged in char array
+	 */
+	private char[] data;
+	/**
+	 * index of first unprocessed <code>char</code> in <code>data</code>
+	 */
+	private int currentIndex;
+	/**
+	 * current lexer state
+	 */
+	private Lexer2State state = Lexer2State.TEXT;
+	/**
+	 * type of current token
+	 */
+	private TokenType2 tokenType;
+	/**
+	 * value of current INTEGER token
+	 */
+	private long longValue;
+
+	/**
+	 * Constructor for creating new <code>BranchChainLexer</code>.
+	 *
+	 * @param text text input that is processed
+	 */
+	public BranchChainLexer(String text) {
+		data = text.toCharArray();
+	}
+
+	/**
+	 * Method moves to the next token.
+	 *
+	 * @return type of next token
+	 */
+	public TokenType2 next() {
+		if (tokenType == TokenType2.EOF)
+			throw new LexerException("There is no more tokens");
+		if (state == Lexer2State.TEXT) {
+			scanText();
+		} else {
+			scanTag();
+		}
+		return tokenType;
+	}
+
+	/**
+	 * Method returns value of current INTEGER token.
+	 *
+	 * @return value of current token
+	 */
+	public long getLongValue() {
+		return longValue;
+	}
+
+	/**
+	 * Method used for changing state of lexer.
+	 *
+	 * @param state new lexer state
+	 */
+	public void setState(Lexer2State state) {
+		this.state = state;
+	}
+
+	/**
+	 * Method reads token in TEXT mode.
+	 */
+	private void scanText() {
+		if (currentIndex >= data.length) {
+			tokenType = TokenType2.EOF;
+			return;
+		}
+		if (data[currentIndex] == '{') {
+			currentIndex++;
+			tokenType = TokenType2.OPEN_BKRACKETS;
+			return;
+		}
+		while (currentIndex < data.length && data[currentIndex] != '{') {
+			if (data[currentIndex] == '\\')
+				currentIndex++;
+			currentIndex++;
+		}
+		if (currentIndex > data.length)
+			currentIndex = data.length;
+		tokenType = TokenType2.TEXT;
+	}
+
+	/**
+	 * Method reads token in TAG mode.
+	 */
+	private void scanTag() {
+		while (currentIndex < data.length && isWhitespace(data[currentIndex])) {
+			currentIndex++;
+		}
+		if (currentIndex >= data.length) {
+			tokenType = TokenType2.EOF;
+			return;
+		}
+
+		TokenType2 mappedType = getTypeFromSpecialSymbols(data[currentIndex]);
+		if (mappedType != null) {
+			currentIndex++;
+			tokenType = mappedType;
+			return;
+		}
+		if (Character.isLetter(data[currentIndex])) {
+			int beginningOfWord = currentIndex;
+			currentIndex++;
+			while (currentIndex < data.length && (Character.isLetter(data[currentIndex])
+					|| Character.isDigit(data[currentIndex]) || data[currentIndex] == '_')) {
+				currentIndex++;
+			}
+			tokenType = isKeyword(beginningOfWord, currentIndex) ? TokenType2.KEYWORD : TokenType2.VAR;
+			return;
+		}
+		if (Character.isDigit(data[currentIndex])) {
+			int beginningOfNumber = currentIndex;
+			while (currentIndex < data.length && Character.isDigit(data[currentIndex])) {
+				currentIndex++;
+			}
+			if (currentIndex < data.length && data[currentIndex] == '.') {
+				currentIndex++;
+				while (currentIndex < data.length && Character.isDigit(data[currentIndex])) {
+					currentIndex++;
+				}
+				tokenType = TokenType2.DOUBLE;
+				return;
+			}
+			longValue = accumulate(beginningOfNumber, currentIndex);
+			tokenType = TokenType2.INTEGER;
+			return;
+		}
+		if (data[currentIndex] == '"') {
+			currentIndex++;
+			while (data[currentIndex] != '"') {
+				if (data[currentIndex] == '\\')
+					currentIndex++;
+				currentIndex++;
+			}
+			currentIndex++;
+			tokenType = TokenType2.TEXT;
+			return;
+		}
+		if (isOperator(data[currentIndex])) {
+			if (data[currentIndex] == '-' && currentIndex + 1 < data.length && Character.isDigit(data[currentIndex + 1])) {
+				int beginningOfNumber = ++currentIndex;
+				while (currentIndex < data.length && Character.isDigit(data[currentIndex])) {
+					currentIndex++;
+				}
+				longValue = -accumulate(beginningOfNumber, currentIndex);
+				tokenType = TokenType2.INTEGER;
+				return;
+			}
+			currentIndex++;
+			tokenType = TokenType2.OPERATOR;
+			return;
+		}
+		throw new LexerException("Invalid symbol in TAG. You entered: " + data[currentIndex]);
+	}
+
+	/**
+	 * Helper method that computes value of digits between given indexes.
+	 *
+	 * @param start index of first digit
+	 * @param end   index after last digit
+	 * @return      value of digits
+	 */
+	private long accumulate(int start, int end) {
+		long result = 0;
+		for (int i = start; i < end; i++) {
+			result = result * 10 + Character.digit(data[i], 10);
+		}
+		return result;
+	}
+
+	/**
+	 * Helper method that checks if word between given indexes is FOR or END.
+	 *
+	 * @param start index of first character
+	 * @param end   index after last character
+	 * @return      <code>true</code> if word is keyword
+	 */
+	private boolean isKeyword(int start, int end) {
+		if (end - start != 3)
+			return false;
+		String word = new String(data, start, 3).toUpperCase();
+		return word.equals("FOR") || word.equals("END");
+	}
+
+	/**
+	 * Method checks if character is operator.
+	 *
+	 * @param c character that is checked
+	 * @return  <code>true</code> if <code>c</code> is operator
+	 */
+	private boolean isOperator(char c) {
+		return c == '+' || c == '-' || c == '*' || c == '/' || c == '^';
+	}
+
+	/**
+	 * Method returns type of special symbol.
+	 *
+	 * @param c character that is checked
+	 * @return  type of special symbol or <code>null</code>
+	 */
+	private TokenType2 getTypeFromSpecialSymbols(char c) {
+		if (c == '{') {
+			return TokenType2.OPEN_BKRACKETS;
+		} else if (c == '}') {
+			return TokenType2.CLOSE_BRACKETS;
+		} else if (c == '$') {
+			return TokenType2.DOLLAR;
+		} else if (c == '@') {
+			return TokenType2.AT;
+		} else if (c == '=') {
+			return TokenType2.EQUALS;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Method checks if character is whitespace.
+	 *
+	 * @param c character that is checked
+	 * @return  <code>true</code> if <code>c</code> is whitespace
+	 */
+	private boolean isWhitespace(char c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+}
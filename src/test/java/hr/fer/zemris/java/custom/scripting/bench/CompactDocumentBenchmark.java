@@ -0,0 +1,107 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import hr.fer.zemris.java.custom.scripting.nodes.CompactDocument;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.NodeKind;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that compares heap retained by cached templates kept as trees of <code>Node</code>
+ * objects and as <code>CompactDocument</code>, and speed of walking over both representations.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class CompactDocumentBenchmark {
+
+	/**
+	 * number of cached templates
+	 */
+	private static final int TEMPLATES = 200;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String[] documents = { BenchmarkSupport.tagDenseDocument(64 * 1024), BenchmarkSupport.textHeavyDocument(64 * 1024) };
+		String[] names = { "tag dense", "text heavy" };
+		for (int d = 0; d < documents.length; d++) {
+			String document = documents[d];
+			long source = (long) document.length() * TEMPLATES;
+			long tree = retained(i -> new SmartScriptParser(document).getDocumentNode());
+			long compact = retained(i -> CompactDocument.of(new SmartScriptParser(document).getDocumentNode()));
+			System.out.printf("%-45s %10.2f bytes per source char%n", names[d] + ", Node tree", (double) tree / source);
+			System.out.printf("%-45s %10.2f bytes per source char%n", names[d] + ", CompactDocument", (double) compact / source);
+			BenchmarkSupport.speedup(names[d] + ", memory saving", tree, compact);
+		}
+
+		String document = documents[0];
+		DocumentNode node = new SmartScriptParser(document).getDocumentNode();
+		CompactDocument compact = CompactDocument.of(node);
+		double walkTree = BenchmarkSupport.measure("count echo elements, Node tree", document.length(),
+				() -> countElements(node));
+		double walkCompact = BenchmarkSupport.measure("count echo elements, CompactDocument", document.length(), () -> {
+			long count = 0;
+			for (int i = 0, size = compact.numberOfNodes(); i < size; i++) {
+				if (compact.getKind(i) == NodeKind.ECHO)
+					count += compact.numberOfElements(i);
+			}
+			return count;
+		});
+		BenchmarkSupport.speedup("compact walk over tree walk", walkTree, walkCompact);
+	}
+
+	/**
+	 * Measures heap retained by templates created by given factory.
+	 *
+	 * @param factory factory that creates template with given index
+	 * @return        number of retained bytes
+	 */
+	private static long retained(Function<Integer, Object> factory) {
+		long before = usedMemory();
+		List<Object> cache = new ArrayList<>();
+		for (int i = 0; i < TEMPLATES; i++) {
+			cache.add(factory.apply(i));
+		}
+		long after = usedMemory();
+		if (cache.size() != TEMPLATES)
+			throw new IllegalStateException();
+		return after - before;
+	}
+
+	/**
+	 * Returns used heap after garbage collection.
+	 *
+	 * @return number of used bytes
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Counts elements of all ECHO nodes in given subtree.
+	 *
+	 * @param node root of subtree
+	 * @return     number of elements
+	 */
+	private static long countElements(Node node) {
+		long count = node instanceof EchoNode ? ((EchoNode) node).getElements().length : 0;
+		for (int i = 0, size = node.numberOfChildren(); i < size; i++) {
+			count += countElements(node.getChild(i));
+		}
+		return count;
+	}
+
+}
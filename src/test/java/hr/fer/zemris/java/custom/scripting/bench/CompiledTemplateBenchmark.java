@@ -0,0 +1,90 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledTemplate;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.TemplateCompiler;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+/**
+ * Benchmark that renders documents from <code>examples</code> directory and a template with
+ * nested loops with <code>SmartScriptEngine</code>, which walks the tree, and with template
+ * compiled by <code>TemplateCompiler</code>. Both write into a reused <code>StringBuilder</code>.
+ * Time of compilation is measured as well. Throughput is given in characters of output.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class CompiledTemplateBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws IOException if an example can not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		for (String example : new String[] { "examples/doc1.txt", "examples/doc2.txt", "examples/Other/doc1.txt" }) {
+			Path path = Paths.get(example);
+			String document = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+			try {
+				run(example, document);
+			} catch (SmartScriptParserException ex) {
+				System.out.printf("%s is skipped, it can not be parsed%n", example);
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("<table>\n{$ FOR row 1 2000 1 $}<tr>{$ FOR col 1 8 1 $}<td>{$= row col * $}</td>{$END$}")
+				.append("<td>{$= row 3 / \" / \" row 0.5 * @sin \"0.000\" @decfmt $}</td></tr>\n{$END$}</table>\n");
+		run("loop dense", sb.toString());
+	}
+
+	/**
+	 * Runs the benchmark on given template.
+	 *
+	 * @param name     name of template
+	 * @param template template that is rendered
+	 * @throws IOException never, output is in memory
+	 */
+	private static void run(String name, String template) throws IOException {
+		DocumentNode document = SmartScriptParser.sliced(template).getDocumentNode();
+		Map<String, Object> variables = new HashMap<>();
+		RenderBenchmark.addMissingVariables(document, variables);
+		SmartScriptEngine engine = new SmartScriptEngine(document);
+		CompiledTemplate compiled = TemplateCompiler.compile(document);
+
+		StringBuilder sb = new StringBuilder();
+		engine.execute(variables, sb);
+		String expected = sb.toString();
+		sb.setLength(0);
+		compiled.render(variables, sb);
+		if (!expected.equals(sb.toString()))
+			throw new IllegalStateException("Engine and compiled template give different output");
+		long length = expected.length();
+
+		double walking = BenchmarkSupport.measure(name + ", tree walking engine", length, () -> {
+			sb.setLength(0);
+			engine.execute(variables, sb);
+			return sb.length();
+		});
+		double generated = BenchmarkSupport.measure(name + ", compiled template", length, () -> {
+			sb.setLength(0);
+			compiled.render(variables, sb);
+			return sb.length();
+		});
+		BenchmarkSupport.speedup(name + ", compiled over tree walking", walking, generated);
+		BenchmarkSupport.measure(name + ", compilation", template.length(),
+				() -> TemplateCompiler.compile(document).hashCode());
+	}
+
+}
@@ -0,0 +1,92 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+import hr.fer.zemris.java.hw03.prob1.LexerException;
+
+/**
+ * Benchmark that validates many small templates, most of which are invalid. Templates are
+ * checked by parsing them and catching the exception about their first error, and with
+ * <code>SmartScriptParser.diagnose</code>, which finds all errors without stack traces.
+ * Validation runs below a number of stack frames, like it would inside of a web service,
+ * since filling in stack traces gets more expensive with deeper stacks.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class DiagnosticParseBenchmark {
+
+	/**
+	 * number of templates
+	 */
+	private static final int TEMPLATES = 1024;
+	/**
+	 * number of stack frames below validation
+	 */
+	private static final int STACK_DEPTH = 100;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		measure("error in the middle", 2);
+		measure("error at the start", Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Measures validation of templates with errors at given position.
+	 *
+	 * @param name     name of the measurement
+	 * @param position divisor of template length that gives offset of the error,
+	 *                 <code>Integer.MAX_VALUE</code> for errors at the start
+	 */
+	private static void measure(String name, int position) {
+		String[] templates = new String[TEMPLATES];
+		long bytes = 0;
+		for (int i = 0; i < TEMPLATES; i++) {
+			StringBuilder sb = new StringBuilder(BenchmarkSupport.tagDenseDocument(512));
+			// three of every four templates have an error
+			if (i % 4 != 0)
+				sb.insert(sb.length() / position, i % 2 == 0 ? "{$= a # b $}" : "{$ FOR 1 2 $}");
+			templates[i] = sb.toString();
+			bytes += templates[i].length();
+		}
+
+		double exceptions = BenchmarkSupport.measure("parse, catch first error, " + name, bytes,
+				() -> atDepth(STACK_DEPTH, () -> {
+					long invalid = 0;
+					for (String template : templates) {
+						try {
+							new SmartScriptParser(template);
+						} catch (SmartScriptParserException | LexerException ex) {
+							invalid++;
+						}
+					}
+					return invalid;
+				}));
+		double diagnostics = BenchmarkSupport.measure("diagnose, collect all errors, " + name, bytes,
+				() -> atDepth(STACK_DEPTH, () -> {
+					long errors = 0;
+					for (String template : templates) {
+						errors += SmartScriptParser.diagnose(template).getErrors().size();
+					}
+					return errors;
+				}));
+		BenchmarkSupport.speedup("diagnose over catching exceptions, " + name, exceptions, diagnostics);
+	}
+
+	/**
+	 * Runs given task below given number of additional stack frames.
+	 *
+	 * @param depth number of stack frames
+	 * @param task  task that is run
+	 * @return      result of the task
+	 * @throws Exception if task fails
+	 */
+	private static long atDepth(int depth, BenchmarkSupport.Task task) throws Exception {
+		return depth == 0 ? task.run() : atDepth(depth - 1, task) + 1;
+	}
+
+}
@@ -0,0 +1,65 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that renders templates dominated by ECHO tags with <code>SmartScriptEngine</code>
+ * into a reused <code>StringBuilder</code> and reports time and bytes allocated per render.
+ * Throughput is given in characters of output.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class EchoBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws IOException never, output is in memory
+	 */
+	public static void main(String[] args) throws IOException {
+		run("integer arithmetic", "{$ FOR i 1 100000 1 $}{$= i i * 7 + i 2 / - x + \" \" $}{$END$}");
+		run("sin and decfmt", "{$ FOR i 1 100000 1 $}{$= i i * @sin \"0.000\" @decfmt \" \" $}{$END$}");
+	}
+
+	/**
+	 * Runs the benchmark on given template.
+	 *
+	 * @param name     name of template
+	 * @param template template that is rendered
+	 * @throws IOException never, output is in memory
+	 */
+	private static void run(String name, String template) throws IOException {
+		SmartScriptEngine engine = new SmartScriptEngine(new SmartScriptParser(template).getDocumentNode());
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("x", 1);
+		StringBuilder sb = new StringBuilder();
+		engine.execute(variables, sb);
+		long length = sb.length();
+
+		BenchmarkSupport.measure(name, length, () -> {
+			sb.setLength(0);
+			engine.execute(variables, sb);
+			return sb.length();
+		});
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		int renders = 200;
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < renders; i++) {
+			sb.setLength(0);
+			engine.execute(variables, sb);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		System.out.printf("%-50s %10.1f bytes allocated per render%n", name, (double) allocated / renders);
+	}
+
+}
@@ -0,0 +1,132 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.StringReader;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptHandler;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that counts ECHO tags of a large document by walking its syntax tree and
+ * with <code>SmartScriptHandler</code> that is given parts of the document without a tree,
+ * and finds variable of the first FOR loop with a handler that stops parsing there.
+ * Besides time, it reports memory that is retained while the document is processed.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class EventParseBenchmark {
+
+	/**
+	 * result of work whose retained memory is measured
+	 */
+	private static Object held;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String document = BenchmarkSupport.tagDenseDocument(8 << 20);
+
+		double tree = BenchmarkSupport.measure("count echoes, syntax tree", document.length(),
+				() -> countEchoes(new SmartScriptParser(document).getDocumentNode()));
+		double events = BenchmarkSupport.measure("count echoes, handler", document.length(), () -> {
+			EchoCounter counter = new EchoCounter();
+			SmartScriptParser.parse(document, counter);
+			return counter.count;
+		});
+		BenchmarkSupport.speedup("handler over tree", tree, events);
+		double reader = BenchmarkSupport.measure("count echoes, handler on reader", document.length(), () -> {
+			EchoCounter counter = new EchoCounter();
+			SmartScriptParser.parse(new StringReader(document), counter);
+			return counter.count;
+		});
+		BenchmarkSupport.speedup("handler on reader over tree", tree, reader);
+
+		double first = BenchmarkSupport.measure("first FOR variable, handler", document.length(), () -> {
+			String[] variable = new String[1];
+			SmartScriptParser.parse(document, new SmartScriptHandler() {
+				@Override
+				public boolean onForStart(ElementVariable var, Element start, Element end, Element step) {
+					variable[0] = var.getName();
+					return false;
+				}
+			});
+			return variable[0].length();
+		});
+		BenchmarkSupport.speedup("stopped handler over tree", tree, first);
+
+		long treeMemory = retained(() -> new SmartScriptParser(document).getDocumentNode());
+		long handlerMemory = retained(() -> {
+			EchoCounter counter = new EchoCounter();
+			SmartScriptParser.parse(new StringReader(document), counter);
+			return counter;
+		});
+		System.out.printf("%-45s %12d KB%n", "retained by syntax tree", treeMemory / 1024);
+		System.out.printf("%-45s %12d KB%n", "retained by handler on reader", handlerMemory / 1024);
+	}
+
+	/**
+	 * Counts ECHO nodes of given syntax tree.
+	 *
+	 * @param node root of the tree
+	 * @return     number of ECHO nodes
+	 */
+	private static long countEchoes(Node node) {
+		long count = node instanceof EchoNode ? 1 : 0;
+		int size = node.numberOfChildren();
+		for (int i = 0; i < size; i++) {
+			count += countEchoes(node.getChild(i));
+		}
+		return count;
+	}
+
+	/**
+	 * Measures heap memory that is still used after given work, while its result is held.
+	 *
+	 * @param work work whose result is held
+	 * @return     number of retained bytes
+	 */
+	private static long retained(java.util.function.Supplier<Object> work) {
+		long before = usedMemory();
+		held = work.get();
+		long after = usedMemory();
+		held = null;
+		return after - before;
+	}
+
+	/**
+	 * Returns used heap memory after garbage collection.
+	 *
+	 * @return number of used bytes
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Handler that counts ECHO tags.
+	 */
+	private static class EchoCounter implements SmartScriptHandler {
+		/**
+		 * number of ECHO tags
+		 */
+		private long count;
+
+		@Override
+		public boolean onEcho(Element[] elements) {
+			count++;
+			return true;
+		}
+	}
+
+}
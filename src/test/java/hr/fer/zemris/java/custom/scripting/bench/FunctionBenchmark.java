@@ -0,0 +1,101 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.exec.CompiledTemplate;
+import hr.fer.zemris.java.custom.scripting.exec.FunctionRegistry;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.TemplateCompiler;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark of functions in ECHO tags. Built-in function is measured with the default registry
+ * and with a registry that also contains custom functions, and a costly custom function is
+ * measured with and without memoization, with <code>SmartScriptEngine</code> and with template
+ * compiled by <code>TemplateCompiler</code>. Throughput is given in characters of output.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class FunctionBenchmark {
+
+	/**
+	 * Custom function whose result takes some time to compute.
+	 *
+	 * @param x argument
+	 * @return  sum of square roots of numbers from 1 to 100, multiplied by <code>x</code>
+	 */
+	public static double roots(long x) {
+		double sum = 0;
+		for (int i = 1; i <= 100; i++) {
+			sum += Math.sqrt(i * x);
+		}
+		return Math.floor(sum);
+	}
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws ReflectiveOperationException if custom function can not be found
+	 * @throws IOException never, output is in memory
+	 */
+	public static void main(String[] args) throws ReflectiveOperationException, IOException {
+		FunctionRegistry builtIns = new FunctionRegistry();
+		FunctionRegistry custom = new FunctionRegistry();
+		for (String name : new String[] { "roots", "max", "min", "abs", "cube", "clamp" }) {
+			custom.register(name, MethodHandles.lookup().findStatic(FunctionBenchmark.class, "roots",
+					MethodType.methodType(double.class, long.class)), true);
+		}
+		FunctionRegistry memoized = new FunctionRegistry().setMemoSize(1024);
+		memoized.register("roots", MethodHandles.lookup().findStatic(FunctionBenchmark.class, "roots",
+				MethodType.methodType(double.class, long.class)), true);
+
+		String sin = "{$ FOR i 1 100000 1 $}{$= i @sin \" \" $}{$END$}";
+		double base = run("built-in sin, default registry", sin, builtIns);
+		double measured = run("built-in sin, with custom functions", sin, custom);
+		BenchmarkSupport.speedup("built-in sin, custom over default registry", base, measured);
+
+		String roots = "{$ FOR j 1 20 1 $}{$ FOR i 1 1000 1 $}{$= i @roots \" \" $}{$END$}{$END$}";
+		base = run("custom function", roots, custom);
+		measured = run("custom function, memoized", roots, memoized);
+		BenchmarkSupport.speedup("custom function, memoized over plain", base, measured);
+	}
+
+	/**
+	 * Runs the benchmark on given template.
+	 *
+	 * @param name     name of template
+	 * @param template template that is rendered
+	 * @param registry registry that functions are resolved in
+	 * @return         time of one render with <code>SmartScriptEngine</code> in nanoseconds
+	 * @throws IOException never, output is in memory
+	 */
+	private static double run(String name, String template, FunctionRegistry registry) throws IOException {
+		DocumentNode document = new SmartScriptParser(template).getDocumentNode();
+		SmartScriptEngine engine = new SmartScriptEngine(document, registry);
+		CompiledTemplate compiled = TemplateCompiler.compile(document, registry);
+		Map<String, Object> variables = new HashMap<>();
+		StringBuilder sb = new StringBuilder();
+		engine.execute(variables, sb);
+		long length = sb.length();
+
+		double time = BenchmarkSupport.measure(name + ", engine", length, () -> {
+			sb.setLength(0);
+			engine.execute(variables, sb);
+			return sb.length();
+		});
+		BenchmarkSupport.measure(name + ", compiled template", length, () -> {
+			sb.setLength(0);
+			compiled.render(variables, sb);
+			return sb.length();
+		});
+		return time;
+	}
+
+}
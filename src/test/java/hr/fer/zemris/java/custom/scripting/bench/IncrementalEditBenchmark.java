@@ -0,0 +1,45 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that simulates typing in the middle of a large document. Every keystroke
+ * is either parsed from scratch or applied with <code>SmartScriptParser.edit</code>.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class IncrementalEditBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 1 << 20; i++) {
+			sb.append("Line ").append(i).append(" of static text {$= value_").append(i).append(" 2 * $}\n");
+			if (i % 50 == 0)
+				sb.append("{$ FOR i 1 ").append(i).append(" 1 $}loop body {$= i $}{$END$}\n");
+		}
+		String document = sb.toString();
+		int offset = document.indexOf("Line", document.length() / 2) + 2;
+
+		double fullParse = BenchmarkSupport.measure("keystroke with full parse", document.length(), () -> {
+			String edited = document.substring(0, offset) + "x" + document.substring(offset);
+			return new SmartScriptParser(edited).getDocumentNode().numberOfChildren();
+		});
+
+		SmartScriptParser parser = new SmartScriptParser(document);
+		double incremental = BenchmarkSupport.measure("keystroke with incremental edit", document.length(), () -> {
+			// typing and deleting one character keeps the document size stable
+			parser.edit(offset, 0, "x");
+			parser.edit(offset, 1, "");
+			return parser.getDocumentNode().numberOfChildren();
+		}) / 2;
+
+		BenchmarkSupport.speedup("incremental over full parse", fullParse, incremental);
+	}
+
+}
@@ -0,0 +1,102 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that compares eager parsing with lazy parsing of FOR loop bodies on a large document
+ * made of nested loops. It measures time until the first node of the document is available,
+ * time until one nested loop is reached and time of parsing the whole document.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class LazyParseBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String document = nestedDocument(8 << 20);
+
+		double eager = BenchmarkSupport.measure("eager parse, first node", document.length(),
+				() -> new SmartScriptParser(document).getDocumentNode().getChild(0).getSourceLength());
+		double lazy = BenchmarkSupport.measure("lazy parse, first node", document.length(),
+				() -> SmartScriptParser.lazy(document).getDocumentNode().getChild(0).getSourceLength());
+		BenchmarkSupport.speedup("lazy over eager, first node", eager, lazy);
+
+		double eagerPath = BenchmarkSupport.measure("eager parse, one nested loop", document.length(),
+				() -> firstLeaf(new SmartScriptParser(document).getDocumentNode()));
+		double lazyPath = BenchmarkSupport.measure("lazy parse, one nested loop", document.length(),
+				() -> firstLeaf(SmartScriptParser.lazy(document).getDocumentNode()));
+		BenchmarkSupport.speedup("lazy over eager, one nested loop", eagerPath, lazyPath);
+
+		double lazyFull = BenchmarkSupport.measure("lazy parse, validated", document.length(), () -> {
+			SmartScriptParser parser = SmartScriptParser.lazy(document);
+			parser.validate();
+			return parser.getDocumentNode().numberOfChildren();
+		});
+		BenchmarkSupport.speedup("lazy over eager, whole document", eager, lazyFull);
+	}
+
+	/**
+	 * Follows the first FOR loop of every level down to the innermost one.
+	 *
+	 * @param document syntax tree
+	 * @return         depth of the innermost loop
+	 */
+	private static long firstLeaf(DocumentNode document) {
+		Node node = document;
+		long depth = 0;
+		search: while (true) {
+			int size = node.numberOfChildren();
+			for (int i = 0; i < size; i++) {
+				if (node.getChild(i) instanceof ForLoopNode) {
+					node = node.getChild(i);
+					depth++;
+					continue search;
+				}
+			}
+			return depth;
+		}
+	}
+
+	/**
+	 * Generates document of top level FOR loops that each contain three levels of nested loops
+	 * with text and ECHO tags in every body.
+	 *
+	 * @param size approximate number of characters
+	 * @return     generated document
+	 */
+	private static String nestedDocument(int size) {
+		StringBuilder sb = new StringBuilder(size + 1024);
+		sb.append("Header of the document\n");
+		for (int i = 0; sb.length() < size; i++) {
+			nestedLoop(sb, i, 3);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Appends FOR loop with given number of nested levels.
+	 *
+	 * @param sb    builder of document
+	 * @param i     number used in generated tags
+	 * @param depth number of nested levels
+	 */
+	private static void nestedLoop(StringBuilder sb, int i, int depth) {
+		sb.append("Line ").append(i).append("{$ FOR i").append(depth).append(" 1 ").append(i).append(" 1 $}\n");
+		for (int j = 0; j < 4; j++) {
+			sb.append("  body ").append(j).append(" {$= i").append(depth).append(" value_").append(j)
+					.append(" 2.5 * \"s\" @sin $}\n");
+			if (depth > 0)
+				nestedLoop(sb, j, depth - 1);
+		}
+		sb.append("{$END$}\n");
+	}
+
+}
@@ -0,0 +1,77 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2;
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2State;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
+
+/**
+ * Benchmark that compares numbers accumulated by <code>Lexer2</code> while scanning
+ * with the original conversion that cuts the number out of input and parses it with
+ * <code>Long.parseLong</code> or <code>Double.parseDouble</code>.
+ * Document consists of ECHO tags full of integer and decimal literals.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class NumericLiteralBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 1 << 20; i++) {
+			sb.append("{$= ").append(i).append(' ').append(i % 1000).append('.').append(i % 97)
+					.append(" -").append(i * 31L).append(" 3.14159 ").append(i).append(".5 * + $}\n");
+		}
+		String document = sb.toString();
+
+		double substrings = BenchmarkSupport.measure("substring and parse", document.length(), () -> {
+			Lexer2 lexer = new Lexer2(document);
+			long checksum = 0;
+			while (true) {
+				TokenType2 type = nextSwitchingState(lexer);
+				if (type == TokenType2.EOF)
+					return checksum;
+				if (type == TokenType2.INTEGER)
+					checksum += Long.parseLong(document.substring(lexer.getTokenStart(), lexer.getTokenEnd()));
+				else if (type == TokenType2.DOUBLE)
+					checksum += (long) Double.parseDouble(document.substring(lexer.getTokenStart(), lexer.getTokenEnd()));
+			}
+		});
+
+		double inPlace = BenchmarkSupport.measure("accumulated while scanning", document.length(), () -> {
+			Lexer2 lexer = new Lexer2(document);
+			long checksum = 0;
+			while (true) {
+				TokenType2 type = nextSwitchingState(lexer);
+				if (type == TokenType2.EOF)
+					return checksum;
+				if (type == TokenType2.INTEGER)
+					checksum += lexer.getLongValue();
+				else if (type == TokenType2.DOUBLE)
+					checksum += (long) lexer.getDoubleValue();
+			}
+		});
+
+		BenchmarkSupport.speedup("in place over substring", substrings, inPlace);
+	}
+
+	/**
+	 * Moves lexer to next token and switches its state on curly brackets.
+	 *
+	 * @param lexer lexer that is moved
+	 * @return      type of next token
+	 */
+	private static TokenType2 nextSwitchingState(Lexer2 lexer) {
+		TokenType2 type = lexer.next();
+		if (type == TokenType2.OPEN_BKRACKETS)
+			lexer.setState(Lexer2State.TAG);
+		else if (type == TokenType2.CLOSE_BRACKETS)
+			lexer.setState(Lexer2State.TEXT);
+		return type;
+	}
+
+}
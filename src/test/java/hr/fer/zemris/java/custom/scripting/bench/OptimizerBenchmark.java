@@ -0,0 +1,97 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.exec.DocumentOptimizer;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+/**
+ * Benchmark that renders documents from <code>examples</code> directory and templates with
+ * small loops and constant expressions with <code>SmartScriptEngine</code>, from the parsed
+ * syntax tree and from the tree optimized by <code>DocumentOptimizer</code>. Both write into
+ * a reused <code>StringBuilder</code>. Time of optimization is measured as well. Throughput is
+ * given in characters of output.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class OptimizerBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws IOException if an example can not be read
+	 */
+	public static void main(String[] args) throws IOException {
+		for (String example : new String[] { "examples/doc1.txt", "examples/doc2.txt", "examples/Other/doc1.txt" }) {
+			Path path = Paths.get(example);
+			String document = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+			try {
+				run(example, document);
+			} catch (SmartScriptParserException ex) {
+				System.out.printf("%s is skipped, it can not be parsed%n", example);
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("<table>\n{$ FOR row 1 2000 1 $}<tr>{$ FOR col 1 8 1 $}<td>{$= row col * $}</td>{$END$}")
+				.append("<td>{$= row 3 / \" / \" 30 @sin \"0.000\" @decfmt $}</td></tr>\n{$END$}</table>\n");
+		run("small inner loop", sb.toString());
+
+		sb.setLength(0);
+		for (int i = 0; i < 500; i++) {
+			sb.append("<p>{$= \"Item \" ").append(i).append(" $}: {$= 60 60 * 24 * $} s, {$= 45 @sin \"0.00\" @decfmt $}")
+					.append("{$ FOR i 1 0 1 $}never{$END$}</p>\n");
+		}
+		run("constant expressions", sb.toString());
+	}
+
+	/**
+	 * Runs the benchmark on given template.
+	 *
+	 * @param name     name of template
+	 * @param template template that is rendered
+	 * @throws IOException never, output is in memory
+	 */
+	private static void run(String name, String template) throws IOException {
+		DocumentNode document = SmartScriptParser.sliced(template).getDocumentNode();
+		Map<String, Object> variables = new HashMap<>();
+		RenderBenchmark.addMissingVariables(document, variables);
+		SmartScriptEngine engine = new SmartScriptEngine(document);
+		SmartScriptEngine optimized = new SmartScriptEngine(DocumentOptimizer.optimize(document));
+
+		StringBuilder sb = new StringBuilder();
+		engine.execute(variables, sb);
+		String expected = sb.toString();
+		sb.setLength(0);
+		optimized.execute(variables, sb);
+		if (!expected.equals(sb.toString()))
+			throw new IllegalStateException("Original and optimized tree give different output");
+		long length = expected.length();
+
+		double parsed = BenchmarkSupport.measure(name + ", parsed tree", length, () -> {
+			sb.setLength(0);
+			engine.execute(variables, sb);
+			return sb.length();
+		});
+		double folded = BenchmarkSupport.measure(name + ", optimized tree", length, () -> {
+			sb.setLength(0);
+			optimized.execute(variables, sb);
+			return sb.length();
+		});
+		BenchmarkSupport.speedup(name + ", optimized over parsed", parsed, folded);
+		BenchmarkSupport.measure(name + ", optimization", template.length(),
+				() -> DocumentOptimizer.optimize(document).numberOfChildren());
+	}
+
+}
@@ -0,0 +1,61 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2;
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2State;
+import hr.fer.zemris.java.custom.scripting.lexer.ParallelLexer;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
+
+/**
+ * Benchmark that compares reading tokens of a large document with a single <code>Lexer2</code>
+ * and with <code>ParallelLexer</code> on pools of 1, 2, 4 and 8 threads.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class ParallelLexingBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 1 << 24; i++) {
+			sb.append("Line ").append(i).append(" of static text {$= value_").append(i).append(" 2.5 * \"s\" $}\n");
+			if (i % 50 == 0)
+				sb.append("{$ FOR i 1 ").append(i).append(" 1 $}loop body {$= i @sin $}{$END$}\n");
+		}
+		String document = sb.toString();
+		System.out.println("available processors: " + Runtime.getRuntime().availableProcessors());
+
+		double sequential = BenchmarkSupport.measure("sequential lexer", document.length(), () -> {
+			Lexer2 lexer = new Lexer2(document);
+			int count = 0;
+			while (true) {
+				TokenType2 type = lexer.next();
+				count++;
+				if (type == TokenType2.EOF)
+					return count;
+				if (type == TokenType2.OPEN_BKRACKETS)
+					lexer.setState(Lexer2State.TAG);
+				else if (type == TokenType2.CLOSE_BRACKETS)
+					lexer.setState(Lexer2State.TEXT);
+			}
+		});
+
+		for (int threads = 1; threads <= 8; threads *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				double parallel = BenchmarkSupport.measure("parallel lexer, " + threads + " threads",
+						document.length(), () -> ParallelLexer.tokenize(document, pool).size());
+				BenchmarkSupport.speedup(threads + " threads over sequential", sequential, parallel);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserPool;
+
+/**
+ * Benchmark that parses many documents of about 1 KB with a new <code>SmartScriptParser</code>
+ * for every document, with one parser that is reset for every document, and with
+ * <code>SmartScriptParserPool</code> used by one and by four threads.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class ParserPoolBenchmark {
+
+	/**
+	 * number of different documents
+	 */
+	private static final int DOCUMENTS = 1024;
+	/**
+	 * number of threads that share the pool
+	 */
+	private static final int THREADS = 4;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws Exception if parsing on a thread fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] documents = new String[DOCUMENTS];
+		long bytes = 0;
+		for (int i = 0; i < DOCUMENTS; i++) {
+			documents[i] = BenchmarkSupport.tagDenseDocument(1024 + i % 64);
+			bytes += documents[i].length();
+		}
+
+		double fresh = BenchmarkSupport.measure("new parser per document", bytes, () -> {
+			long checksum = 0;
+			for (String document : documents) {
+				checksum += new SmartScriptParser(document).getDocumentNode().numberOfChildren();
+			}
+			return checksum;
+		});
+
+		SmartScriptParser parser = new SmartScriptParser();
+		double reset = BenchmarkSupport.measure("one parser, reset per document", bytes, () -> {
+			long checksum = 0;
+			for (String document : documents) {
+				parser.reset(document);
+				checksum += parser.getDocumentNode().numberOfChildren();
+			}
+			return checksum;
+		});
+		BenchmarkSupport.speedup("reset over new parser", fresh, reset);
+
+		SmartScriptParserPool pool = new SmartScriptParserPool(THREADS);
+		double pooled = BenchmarkSupport.measure("pool, 1 thread", bytes, () -> parseAll(pool, documents, 0, 1));
+		BenchmarkSupport.speedup("pool over new parser", fresh, pooled);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			double freshThreads = BenchmarkSupport.measure("new parser per document, " + THREADS + " threads", bytes,
+					() -> onThreads(executor, t -> {
+						long checksum = 0;
+						for (int i = t; i < DOCUMENTS; i += THREADS) {
+							checksum += new SmartScriptParser(documents[i]).getDocumentNode().numberOfChildren();
+						}
+						return checksum;
+					}));
+			double pooledThreads = BenchmarkSupport.measure("pool, " + THREADS + " threads", bytes,
+					() -> onThreads(executor, t -> parseAll(pool, documents, t, THREADS)));
+			BenchmarkSupport.speedup("pool over new parser, " + THREADS + " threads", freshThreads, pooledThreads);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Parses every <code>step</code>-th document with parsers from given pool.
+	 *
+	 * @param pool      pool of parsers
+	 * @param documents documents that are parsed
+	 * @param first     index of the first parsed document
+	 * @param step      distance between parsed documents
+	 * @return          checksum of parsed trees
+	 */
+	private static long parseAll(SmartScriptParserPool pool, String[] documents, int first, int step) {
+		long checksum = 0;
+		for (int i = first; i < documents.length; i += step) {
+			checksum += pool.parse(documents[i]).numberOfChildren();
+		}
+		return checksum;
+	}
+
+	/**
+	 * Runs given work on every thread of the executor and waits for it to finish.
+	 *
+	 * @param executor executor with {@link #THREADS} threads
+	 * @param work     work that is given index of its thread
+	 * @return         sum of results of all threads
+	 * @throws Exception if work fails
+	 */
+	private static long onThreads(ExecutorService executor, ThreadWork work) throws Exception {
+		List<Future<Long>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			int thread = t;
+			futures.add(executor.submit(() -> work.run(thread)));
+		}
+		long checksum = 0;
+		for (Future<Long> future : futures) {
+			checksum += future.get();
+		}
+		return checksum;
+	}
+
+	/**
+	 * Work done by one thread of the benchmark.
+	 */
+	private interface ThreadWork {
+		/**
+		 * Method does the work of given thread.
+		 *
+		 * @param thread index of the thread
+		 * @return       checksum of the work
+		 */
+		long run(int thread);
+	}
+
+}
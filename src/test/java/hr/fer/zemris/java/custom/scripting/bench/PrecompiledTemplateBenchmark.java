@@ -0,0 +1,66 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import hr.fer.zemris.java.custom.scripting.nodes.CompactDocument;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that compares building syntax tree of a template by parsing its source with
+ * loading it from binary form written by <code>CompactDocument</code>, both from memory
+ * and from files, for a tag dense and a text heavy document.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class PrecompiledTemplateBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws IOException if temporary files can not be written
+	 */
+	public static void main(String[] args) throws IOException {
+		String[] names = { "tag dense", "text heavy" };
+		String[] documents = { BenchmarkSupport.tagDenseDocument(1 << 20), BenchmarkSupport.textHeavyDocument(1 << 20) };
+
+		for (int d = 0; d < documents.length; d++) {
+			String document = documents[d];
+			CompactDocument compact = CompactDocument.of(new SmartScriptParser(document).getDocumentNode());
+			ByteBuffer binary = ByteBuffer.allocate(compact.binarySize());
+			compact.writeTo(binary);
+			System.out.printf("%-45s %8d KB source, %8d KB binary%n", names[d],
+					document.getBytes(StandardCharsets.UTF_8).length / 1024, compact.binarySize() / 1024);
+
+			double parse = BenchmarkSupport.measure(names[d] + ", parse source", document.length(),
+					() -> new SmartScriptParser(document).getDocumentNode().numberOfChildren());
+			double load = BenchmarkSupport.measure(names[d] + ", load binary", document.length(), () -> {
+				binary.rewind();
+				return CompactDocument.readFrom(binary).toDocumentNode().numberOfChildren();
+			});
+			BenchmarkSupport.speedup(names[d] + ", load over parse", parse, load);
+
+			Path source = Files.createTempFile("template", ".txt");
+			Path precompiled = Files.createTempFile("template", ".bin");
+			try {
+				Files.write(source, document.getBytes(StandardCharsets.UTF_8));
+				compact.write(precompiled);
+				double parseFile = BenchmarkSupport.measure(names[d] + ", parse source file", document.length(),
+						() -> new SmartScriptParser(new String(Files.readAllBytes(source), StandardCharsets.UTF_8))
+								.getDocumentNode().numberOfChildren());
+				double loadFile = BenchmarkSupport.measure(names[d] + ", load binary file", document.length(),
+						() -> CompactDocument.read(precompiled).toDocumentNode().numberOfChildren());
+				BenchmarkSupport.speedup(names[d] + ", file load over parse", parseFile, loadFile);
+			} finally {
+				Files.delete(source);
+				Files.delete(precompiled);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2;
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2State;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
+
+/**
+ * Benchmark that simulates document arriving over network in chunks. Document is either
+ * buffered until its last chunk arrives and then read by <code>Lexer2</code>, or every chunk
+ * is pushed into <code>Lexer2</code> as it arrives. Besides throughput of the whole run,
+ * the benchmark reports latency from arrival of the last chunk to the EOF token.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class PushLexerBenchmark {
+
+	/**
+	 * size of chunks in which document arrives
+	 */
+	private static final int CHUNK_SIZE = 16 * 1024;
+	/**
+	 * number of measured runs of latency
+	 */
+	private static final int LATENCY_RUNS = 200;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String document = BenchmarkSupport.tagDenseDocument(4 << 20);
+		char[] chars = document.toCharArray();
+
+		double buffered = BenchmarkSupport.measure("buffer whole document, then lex", chars.length,
+				() -> lexBuffered(chars, chars.length));
+		double pushed = BenchmarkSupport.measure("push chunks as they arrive", chars.length,
+				() -> drain(pushAllButLast(chars), chars, chars.length));
+		BenchmarkSupport.speedup("push over buffered, throughput", buffered, pushed);
+
+		// latency is the work that is left after the last chunk arrives
+		int lastChunk = (chars.length - 1) / CHUNK_SIZE * CHUNK_SIZE;
+		long bufferedLatency = 0;
+		long pushedLatency = 0;
+		for (int run = -LATENCY_RUNS / 4; run < LATENCY_RUNS; run++) {
+			long start = System.nanoTime();
+			lexBuffered(chars, chars.length);
+			long end = System.nanoTime();
+			if (run >= 0)
+				bufferedLatency += end - start;
+
+			Lexer2 lexer = pushAllButLast(chars);
+			start = System.nanoTime();
+			lexer.feed(chars, lastChunk, chars.length - lastChunk);
+			lexer.endOfInput();
+			drain(lexer, chars, chars.length);
+			end = System.nanoTime();
+			if (run >= 0)
+				pushedLatency += end - start;
+		}
+		System.out.printf("%-45s %12.1f us%n", "last chunk to EOF, buffered", bufferedLatency / 1e3 / LATENCY_RUNS);
+		System.out.printf("%-45s %12.1f us%n", "last chunk to EOF, pushed", pushedLatency / 1e3 / LATENCY_RUNS);
+		BenchmarkSupport.speedup("push over buffered, latency", bufferedLatency, pushedLatency);
+	}
+
+	/**
+	 * Buffers received chunks and reads tokens of the whole document.
+	 *
+	 * @param chars  document
+	 * @param length length of document
+	 * @return       number of tokens
+	 */
+	private static long lexBuffered(char[] chars, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i += CHUNK_SIZE) {
+			sb.append(chars, i, Math.min(CHUNK_SIZE, length - i));
+		}
+		Lexer2 lexer = new Lexer2(sb.toString());
+		long count = 0;
+		while (nextSwitchingState(lexer) != TokenType2.EOF) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Pushes all chunks except the last one into new lexer, reading tokens after every chunk.
+	 *
+	 * @param chars document
+	 * @return      lexer that waits for the last chunk
+	 */
+	private static Lexer2 pushAllButLast(char[] chars) {
+		Lexer2 lexer = Lexer2.fromPushedInput();
+		int lastChunk = (chars.length - 1) / CHUNK_SIZE * CHUNK_SIZE;
+		for (int i = 0; i < lastChunk; i += CHUNK_SIZE) {
+			lexer.feed(chars, i, CHUNK_SIZE);
+			while (nextSwitchingState(lexer) != null) {
+				// tokens that are complete so far are consumed
+			}
+		}
+		return lexer;
+	}
+
+	/**
+	 * Pushes the last chunk into given lexer if it was not pushed and reads remaining tokens.
+	 *
+	 * @param lexer  lexer that waits for the last chunk or already has it
+	 * @param chars  document
+	 * @param length length of document
+	 * @return       number of remaining tokens
+	 */
+	private static long drain(Lexer2 lexer, char[] chars, int length) {
+		int lastChunk = (length - 1) / CHUNK_SIZE * CHUNK_SIZE;
+		long count = 0;
+		while (true) {
+			TokenType2 type = nextSwitchingState(lexer);
+			if (type == TokenType2.EOF)
+				return count;
+			if (type == null) {
+				lexer.feed(chars, lastChunk, length - lastChunk);
+				lexer.endOfInput();
+			} else {
+				count++;
+			}
+		}
+	}
+
+	/**
+	 * Moves lexer to next token and switches its state on curly brackets.
+	 *
+	 * @param lexer lexer that is moved
+	 * @return      type of next token, <code>null</code> if it is not complete yet
+	 */
+	private static TokenType2 nextSwitchingState(Lexer2 lexer) {
+		TokenType2 type = lexer.next();
+		if (type == TokenType2.OPEN_BKRACKETS)
+			lexer.setState(Lexer2State.TAG);
+		else if (type == TokenType2.CLOSE_BRACKETS)
+			lexer.setState(Lexer2State.TEXT);
+		return type;
+	}
+
+}
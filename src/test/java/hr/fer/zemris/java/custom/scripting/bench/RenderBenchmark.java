@@ -0,0 +1,206 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that renders templates with <code>SmartScriptEngine</code> into a reused
+ * <code>StringBuilder</code> and <code>Writer</code>, and with a simple interpreter that walks
+ * the tree with boxed values in a map and builds the output as one <code>String</code>.
+ * Throughput is given in characters of output.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class RenderBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 * @throws IOException never, output is in memory
+	 */
+	public static void main(String[] args) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<table>\n{$ FOR row 1 2000 1 $}<tr>{$ FOR col 1 8 1 $}<td>{$= row col * $}</td>{$END$}")
+				.append("<td>{$= row 3 / \" / \" row 0.5 * @sin \"0.000\" @decfmt $}</td></tr>\n{$END$}</table>\n");
+		run("loop dense", sb.toString(), new HashMap<>());
+
+		Map<String, Object> variables = new HashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			variables.put("value_" + i, i * 7);
+		}
+		run("text heavy", BenchmarkSupport.textHeavyDocument(4 << 20), variables);
+	}
+
+	/**
+	 * Runs the benchmark on given template.
+	 *
+	 * @param name      name of template
+	 * @param template  template that is rendered
+	 * @param variables variables of template, every variable that is missing is added with value 1
+	 * @throws IOException never, output is in memory
+	 */
+	private static void run(String name, String template, Map<String, Object> variables) throws IOException {
+		DocumentNode document = SmartScriptParser.sliced(template).getDocumentNode();
+		addMissingVariables(document, variables);
+		SmartScriptEngine engine = new SmartScriptEngine(document);
+		StringBuilder sb = new StringBuilder();
+		engine.execute(variables, sb);
+		String expected = sb.toString();
+		if (!expected.equals(interpret(document, variables)))
+			throw new IllegalStateException("Interpreter and engine give different output");
+		long length = expected.length();
+
+		double interpreter = BenchmarkSupport.measure(name + ", tree walking interpreter", length,
+				() -> interpret(document, variables).length());
+		double builder = BenchmarkSupport.measure(name + ", engine to StringBuilder", length, () -> {
+			sb.setLength(0);
+			engine.execute(variables, sb);
+			return sb.length();
+		});
+		BenchmarkSupport.speedup(name + ", StringBuilder over interpreter", interpreter, builder);
+		CharArrayWriter writer = new CharArrayWriter(expected.length());
+		double written = BenchmarkSupport.measure(name + ", engine to Writer", length, () -> {
+			writer.reset();
+			engine.execute(variables, writer);
+			return writer.size();
+		});
+		BenchmarkSupport.speedup(name + ", Writer over interpreter", interpreter, written);
+	}
+
+	/**
+	 * Adds variables that echo tags of given tree use and are not defined, with value 1.
+	 *
+	 * @param node      root of syntax tree
+	 * @param variables variables that are completed
+	 */
+	static void addMissingVariables(Node node, Map<String, Object> variables) {
+		if (node instanceof EchoNode) {
+			for (Element element : ((EchoNode) node).getElements()) {
+				if (element instanceof ElementVariable)
+					variables.putIfAbsent(((ElementVariable) element).getName(), 1);
+			}
+		}
+		for (int i = 0; i < node.numberOfChildren(); i++) {
+			addMissingVariables(node.getChild(i), variables);
+		}
+	}
+
+	/**
+	 * Renders given tree the way a simple interpreter does: values are boxed, loop variables
+	 * are put into a map and every part of output is concatenated into one <code>String</code>.
+	 *
+	 * @param document  root of syntax tree
+	 * @param variables variables of template
+	 * @return          output of template
+	 */
+	private static String interpret(DocumentNode document, Map<String, Object> variables) {
+		return interpret(document, new HashMap<>(variables), new StringBuilder()).toString();
+	}
+
+	/**
+	 * Renders children of given node.
+	 *
+	 * @param node      node whose children are rendered
+	 * @param variables variables of template and loops
+	 * @param output    output so far
+	 * @return          output with children of node
+	 */
+	private static StringBuilder interpret(Node node, Map<String, Object> variables, StringBuilder output) {
+		for (int i = 0; i < node.numberOfChildren(); i++) {
+			Node child = node.getChild(i);
+			if (child instanceof TextNode) {
+				output.append(((TextNode) child).getText().replace("\\\\", "\\").replace("\\{", "{"));
+			} else if (child instanceof EchoNode) {
+				output.append(echo(((EchoNode) child).getElements(), variables));
+			} else if (child instanceof ForLoopNode) {
+				ForLoopNode forNode = (ForLoopNode) child;
+				String name = forNode.getVariable().getName();
+				Object previous = variables.get(name);
+				long end = ((ElementConstantInteger) forNode.getEndExpression()).getValue();
+				long step = ((ElementConstantInteger) forNode.getStepExpression()).getValue();
+				for (long value = ((ElementConstantInteger) forNode.getStartExpression()).getValue(); value <= end; value += step) {
+					variables.put(name, value);
+					interpret(forNode, variables, output);
+				}
+				variables.put(name, previous);
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Evaluates ECHO tag with a stack of boxed values and returns its output.
+	 *
+	 * @param elements  elements of ECHO tag
+	 * @param variables variables of template and loops
+	 * @return          output of tag
+	 */
+	private static String echo(Element[] elements, Map<String, Object> variables) {
+		Deque<Object> stack = new ArrayDeque<>();
+		for (Element element : elements) {
+			if (element instanceof ElementConstantInteger) {
+				stack.push(((ElementConstantInteger) element).getValue());
+			} else if (element instanceof ElementConstantDouble) {
+				stack.push(((ElementConstantDouble) element).getValue());
+			} else if (element instanceof ElementString) {
+				stack.push(((ElementString) element).getValue());
+			} else if (element instanceof ElementVariable) {
+				Object value = variables.get(((ElementVariable) element).getName());
+				stack.push(value instanceof Integer ? Long.valueOf((Integer) value) : value);
+			} else if (element instanceof ElementOperator) {
+				Number y = (Number) stack.pop();
+				Number x = (Number) stack.pop();
+				String operator = ((ElementOperator) element).getValue();
+				if (x instanceof Long && y instanceof Long) {
+					long a = x.longValue();
+					long b = y.longValue();
+					stack.push(operator.equals("+") ? a + b : operator.equals("-") ? a - b
+							: operator.equals("*") ? a * b : a / b);
+				} else {
+					double a = x.doubleValue();
+					double b = y.doubleValue();
+					stack.push(operator.equals("+") ? a + b : operator.equals("-") ? a - b
+							: operator.equals("*") ? a * b : a / b);
+				}
+			} else if (element instanceof ElementFunction) {
+				String function = ((ElementFunction) element).getValue();
+				if (function.equals("sin")) {
+					stack.push(Math.sin(Math.toRadians(((Number) stack.pop()).doubleValue())));
+				} else {
+					DecimalFormat format = new DecimalFormat((String) stack.pop(),
+							java.text.DecimalFormatSymbols.getInstance(java.util.Locale.ROOT));
+					stack.push(format.format(stack.pop()));
+				}
+			}
+		}
+		String result = "";
+		for (Iterator<Object> it = stack.descendingIterator(); it.hasNext();) {
+			result += it.next();
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,49 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Regression benchmark that parses many small documents in a row. Lexer state
+ * that is shared between instances, like a keyword list growing with every new
+ * lexer, shows up as throughput that keeps falling from round to round.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class RepeatedParseBenchmark {
+
+	/**
+	 * number of measured rounds
+	 */
+	private static final int ROUNDS = 10;
+	/**
+	 * number of documents parsed in one round
+	 */
+	private static final int DOCUMENTS_PER_ROUND = 100_000;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String document = "Hello {$ FOR i 1 10 1 $}number {$= i \"x\" @sin * $} {$END$} and {$ for j -1 10 2 $}.{$ end $}";
+
+		double first = 0;
+		for (int round = 1; round <= ROUNDS; round++) {
+			double nanosPerDocument = BenchmarkSupport.measure("round " + round + " (" + DOCUMENTS_PER_ROUND + " parses)",
+					(long) document.length() * DOCUMENTS_PER_ROUND, 0, 1000, () -> {
+						long checksum = 0;
+						for (int i = 0; i < DOCUMENTS_PER_ROUND; i++) {
+							checksum += new SmartScriptParser(document).getDocumentNode().numberOfChildren();
+						}
+						return checksum;
+					});
+			if (round == 1)
+				first = nanosPerDocument;
+			else if (round == ROUNDS)
+				BenchmarkSupport.speedup("last round over first round", first, nanosPerDocument);
+		}
+	}
+
+}
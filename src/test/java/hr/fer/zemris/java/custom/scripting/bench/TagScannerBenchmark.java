@@ -0,0 +1,62 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2;
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2State;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
+
+/**
+ * Benchmark that compares table driven TAG scanning of <code>Lexer2</code>
+ * with the original chain of character checks kept in {@link BranchChainLexer}.
+ * Both lexers tokenize the same tag dense document through their cursors.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class TagScannerBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String document = BenchmarkSupport.tagDenseDocument(1 << 20);
+
+		double branchChain = BenchmarkSupport.measure("branch chain TAG scanner", document.length(), () -> {
+			BranchChainLexer lexer = new BranchChainLexer(document);
+			long checksum = 0;
+			while (true) {
+				TokenType2 type = lexer.next();
+				if (type == TokenType2.EOF)
+					return checksum;
+				if (type == TokenType2.OPEN_BKRACKETS)
+					lexer.setState(Lexer2State.TAG);
+				else if (type == TokenType2.CLOSE_BRACKETS)
+					lexer.setState(Lexer2State.TEXT);
+				else if (type == TokenType2.INTEGER)
+					checksum += lexer.getLongValue();
+				checksum++;
+			}
+		});
+
+		double tableDriven = BenchmarkSupport.measure("table driven TAG scanner", document.length(), () -> {
+			Lexer2 lexer = new Lexer2(document);
+			long checksum = 0;
+			while (true) {
+				TokenType2 type = lexer.next();
+				if (type == TokenType2.EOF)
+					return checksum;
+				if (type == TokenType2.OPEN_BKRACKETS)
+					lexer.setState(Lexer2State.TAG);
+				else if (type == TokenType2.CLOSE_BRACKETS)
+					lexer.setState(Lexer2State.TEXT);
+				else if (type == TokenType2.INTEGER)
+					checksum += lexer.getLongValue();
+				checksum++;
+			}
+		});
+
+		BenchmarkSupport.speedup("table driven over branch chain", branchChain, tableDriven);
+	}
+
+}
@@ -0,0 +1,77 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.util.Random;
+
+import hr.fer.zemris.java.custom.scripting.parser.ParsedTemplateCache;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that requests templates from a skewed set of a thousand templates, parsing every
+ * request or going through <code>ParsedTemplateCache</code> whose budget holds only part of them.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class TemplateCacheBenchmark {
+
+	/**
+	 * number of distinct templates
+	 */
+	private static final int TEMPLATES = 1000;
+	/**
+	 * number of requests per measured run
+	 */
+	private static final int REQUESTS = 1000;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String[] templates = new String[TEMPLATES];
+		long totalLength = 0;
+		for (int i = 0; i < TEMPLATES; i++) {
+			templates[i] = "Template " + i + "\n" + BenchmarkSupport.tagDenseDocument(4096);
+			totalLength += templates[i].length();
+		}
+		// requests come as copies of template text, as they would from network or disk
+		Random random = new Random(42);
+		String[] requests = new String[REQUESTS * 16];
+		long requestedLength = 0;
+		for (int i = 0; i < requests.length; i++) {
+			// squared uniform variable makes low indexes much more popular
+			double u = random.nextDouble();
+			requests[i] = new String(templates[(int) (u * u * TEMPLATES)]);
+			requestedLength += requests[i].length();
+		}
+		long bytesPerRun = requestedLength / 16;
+
+		long estimate = ParsedTemplateCache.estimateHeapSize(new SmartScriptParser(templates[0]).getDocumentNode());
+		System.out.printf("%-45s %10.2f bytes per source char%n", "estimated tree size", (double) estimate / templates[0].length());
+
+		int[] next = new int[1];
+		double parse = BenchmarkSupport.measure("parse every request", bytesPerRun, () -> {
+			long count = 0;
+			for (int i = 0; i < REQUESTS; i++) {
+				count += new SmartScriptParser(requests[next[0]++ & (requests.length - 1)]).getDocumentNode().numberOfChildren();
+			}
+			return count;
+		});
+
+		ParsedTemplateCache cache = new ParsedTemplateCache(estimate * TEMPLATES / 4);
+		double cached = BenchmarkSupport.measure("cache holding a quarter of templates", bytesPerRun, () -> {
+			long count = 0;
+			for (int i = 0; i < REQUESTS; i++) {
+				count += cache.get(requests[next[0]++ & (requests.length - 1)]).numberOfChildren();
+			}
+			return count;
+		});
+		BenchmarkSupport.speedup("cache over parsing", parse, cached);
+		System.out.printf("%-45s %10.1f %%%n", "hit rate",
+				100.0 * cache.getHitCount() / (cache.getHitCount() + cache.getMissCount()));
+		System.out.printf("%-45s %10d of %d bytes%n", "cache weight", cache.getWeight(), cache.getMaxWeight());
+		System.out.printf("%-45s %10d%n", "source of all templates", totalLength);
+	}
+
+}
@@ -0,0 +1,114 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import hr.fer.zemris.java.custom.scripting.lexer.Lexer2;
+import hr.fer.zemris.java.custom.scripting.lexer.TokenType2;
+
+/**
+ * Benchmark that compares bulk scanning of TEXT in <code>Lexer2</code> with the
+ * original loop that checks one character at a time. Lexer stays in TEXT state,
+ * so the whole text heavy document is split only on open curly brackets.
+ * Both character input and UTF-8 input are measured.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class TextScanBenchmark {
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		String document = BenchmarkSupport.textHeavyDocument(1 << 22);
+		byte[] encoded = document.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer bytes = ByteBuffer.allocateDirect(encoded.length);
+		bytes.put(encoded).flip();
+
+		// lexer copies the string into its own array, so the baseline pays for the copy too
+		double charLoop = BenchmarkSupport.measure("char by char TEXT scan (chars)", document.length(),
+				() -> scanCharByChar(document.toCharArray()));
+		double charBulk = BenchmarkSupport.measure("bulk TEXT scan (chars)", document.length(),
+				() -> scanWithLexer(new Lexer2(document)));
+		BenchmarkSupport.speedup("bulk over char by char (chars)", charLoop, charBulk);
+
+		double byteLoop = BenchmarkSupport.measure("char by char TEXT scan (UTF-8)", encoded.length,
+				() -> scanByteByByte(bytes));
+		double byteBulk = BenchmarkSupport.measure("bulk TEXT scan (UTF-8)", encoded.length,
+				() -> scanWithLexer(Lexer2.fromUtf8(bytes)));
+		BenchmarkSupport.speedup("bulk over char by char (UTF-8)", byteLoop, byteBulk);
+	}
+
+	/**
+	 * Tokenizes whole input in TEXT state.
+	 *
+	 * @param lexer lexer that is used
+	 * @return      sum of token ends
+	 */
+	private static long scanWithLexer(Lexer2 lexer) {
+		long checksum = 0;
+		while (lexer.next() != TokenType2.EOF) {
+			checksum += lexer.getTokenEnd();
+		}
+		return checksum;
+	}
+
+	/**
+	 * Frozen copy of the original TEXT loop working on characters.
+	 *
+	 * @param data input characters
+	 * @return     sum of token ends
+	 */
+	private static long scanCharByChar(char[] data) {
+		long checksum = 0;
+		int currentIndex = 0;
+		while (currentIndex < data.length) {
+			if (data[currentIndex] == '{') {
+				currentIndex++;
+			} else {
+				while (currentIndex < data.length && data[currentIndex] != '{') {
+					if (data[currentIndex] == '\\') {
+						currentIndex++;
+						if (currentIndex >= data.length)
+							break;
+					}
+					currentIndex++;
+				}
+			}
+			checksum += currentIndex;
+		}
+		return checksum;
+	}
+
+	/**
+	 * Frozen copy of the original TEXT loop working on UTF-8 bytes.
+	 *
+	 * @param bytes input bytes
+	 * @return      sum of token ends
+	 */
+	private static long scanByteByByte(ByteBuffer bytes) {
+		long checksum = 0;
+		int limit = bytes.limit();
+		int currentIndex = 0;
+		while (currentIndex < limit) {
+			if (bytes.get(currentIndex) == '{') {
+				currentIndex++;
+			} else {
+				while (currentIndex < limit && bytes.get(currentIndex) != '{') {
+					if (bytes.get(currentIndex) == '\\') {
+						currentIndex++;
+						if (currentIndex >= limit)
+							break;
+					}
+					currentIndex++;
+				}
+			}
+			checksum += currentIndex;
+		}
+		return checksum;
+	}
+
+}
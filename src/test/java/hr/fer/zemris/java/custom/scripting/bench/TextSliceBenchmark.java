@@ -0,0 +1,112 @@
+package hr.fer.zemris.java.custom.scripting.bench;
+
+import java.util.function.Function;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+/**
+ * Benchmark that compares syntax trees whose texts are copied out of the template with trees
+ * whose texts are slices of it. Templates are held the whole time, as they are in a cache
+ * keyed by their content, so only memory retained by syntax trees is reported.
+ * Besides memory, it reports time of parsing with both kinds of texts.
+ *
+ * @author Ante Gazibarić
+ * @version 1.0
+ */
+public class TextSliceBenchmark {
+
+	/**
+	 * number of templates that are held at once
+	 */
+	private static final int TEMPLATES = 256;
+	/**
+	 * approximate length of every template
+	 */
+	private static final int TEMPLATE_LENGTH = 32 * 1024;
+
+	/**
+	 * syntax trees whose retained memory is measured
+	 */
+	private static Object held;
+
+	/**
+	 * Starts the benchmark.
+	 *
+	 * @param args not used
+	 */
+	public static void main(String[] args) {
+		run("tag dense", BenchmarkSupport.tagDenseDocument(TEMPLATE_LENGTH));
+		run("text heavy", BenchmarkSupport.textHeavyDocument(TEMPLATE_LENGTH));
+	}
+
+	/**
+	 * Runs the benchmark on templates that are variants of given document.
+	 *
+	 * @param name     name of the kind of document
+	 * @param document document that templates are made of
+	 */
+	private static void run(String name, String document) {
+		String[] templates = new String[TEMPLATES];
+		long length = 0;
+		for (int i = 0; i < TEMPLATES; i++) {
+			templates[i] = i + document;
+			length += templates[i].length();
+		}
+
+		double copied = BenchmarkSupport.measure(name + ", parse with copies", length,
+				() -> parseAll(templates, text -> new SmartScriptParser(text).getDocumentNode()).length);
+		double sliced = BenchmarkSupport.measure(name + ", parse with slices", length,
+				() -> parseAll(templates, text -> SmartScriptParser.sliced(text).getDocumentNode()).length);
+		BenchmarkSupport.speedup(name + ", slices over copies", copied, sliced);
+
+		long copiedMemory = retained(() -> parseAll(templates, text -> new SmartScriptParser(text).getDocumentNode()));
+		long slicedMemory = retained(() -> parseAll(templates, text -> SmartScriptParser.sliced(text).getDocumentNode()));
+		System.out.printf("%-45s %12d KB%n", name + ", retained by trees with copies", copiedMemory / 1024);
+		System.out.printf("%-45s %12d KB%n", name + ", retained by trees with slices", slicedMemory / 1024);
+		System.out.printf("%-45s %12.2f x%n", name + ", memory saving", (double) copiedMemory / slicedMemory);
+	}
+
+	/**
+	 * Parses all given templates.
+	 *
+	 * @param templates templates that are parsed
+	 * @param parser    parser that builds syntax tree of a template
+	 * @return          syntax trees of templates
+	 */
+	private static DocumentNode[] parseAll(String[] templates, Function<String, DocumentNode> parser) {
+		DocumentNode[] trees = new DocumentNode[templates.length];
+		for (int i = 0; i < templates.length; i++) {
+			trees[i] = parser.apply(templates[i]);
+		}
+		return trees;
+	}
+
+	/**
+	 * Measures heap memory that is still used after given work, while its result is held.
+	 *
+	 * @param work work whose result is held
+	 * @return     number of retained bytes
+	 */
+	private static long retained(java.util.function.Supplier<Object> work) {
+		long before = usedMemory();
+		held = work.get();
+		long after = usedMemory();
+		held = null;
+		return after - before;
+	}
+
+	/**
+	 * Returns used heap memory after garbage collection.
+	 *
+	 * @return number of used bytes
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,288 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+public class DocumentOptimizerTest {
+
+	@Test
+	public void testTextsAreMerged() throws IOException {
+		DocumentNode document = new DocumentNode();
+		document.addChildNode(new TextNode("a\\"));
+		document.addChildNode(new TextNode("{b\\\\"));
+		document.addChildNode(new TextNode(""));
+		document.addChildNode(new TextNode("c"));
+
+		DocumentNode optimized = DocumentOptimizer.optimize(document);
+		Assert.assertEquals(1, optimized.numberOfChildren());
+		Assert.assertEquals("a\\{b\\c", render(optimized, Collections.emptyMap()));
+		Assert.assertEquals(4, document.numberOfChildren());
+	}
+
+	@Test
+	public void testConstantEchoBecomesText() {
+		DocumentNode optimized = optimize("A {$= 1 2 + \" \" 1.5 \"x\\\\y\" $} B");
+		Assert.assertEquals(1, optimized.numberOfChildren());
+		Assert.assertEquals("A 3 1.5x\\y B", TemplateCompiler.unescapeText(text(optimized.getChild(0))));
+	}
+
+	@Test
+	public void testConstantsAreFolded() {
+		assertFolded("{$= x 2 3 * + $}", "x", "6", "+");
+		assertFolded("{$= \"2\" \"3\" * x $}", "6", "x");
+		assertFolded("{$= 2 -1 ^ x 1 2 @swap - $}", "0.5", "x", "1");
+		assertFolded("{$= x 3 @dup * $}", "x", "9");
+		assertFolded("{$= 90 @sin \"0.0\" @decfmt x $}", "1.0", "x");
+		assertFolded("{$= x 1 0 / 2 3 + $}", "x", "1", "0", "/", "5");
+		assertFolded("{$= x @dup 1 2 + $}", "x", "dup", "3");
+		assertFolded("{$= 1 2 @unknown 3 4 + $}", "1", "2", "unknown", "3", "4", "+");
+	}
+
+	@Test
+	public void testLoopsWithoutIterationsAreRemoved() {
+		DocumentNode optimized = optimize("a{$ FOR i 3 1 1 $}{$= i $}{$END$}b{$ FOR i 1 3 -1 $}x{$END$}c");
+		Assert.assertEquals(1, optimized.numberOfChildren());
+		Assert.assertEquals("abc", text(optimized.getChild(0)));
+	}
+
+	@Test
+	public void testSmallLoopsAreUnrolled() {
+		DocumentNode optimized = optimize("{$ FOR i 1 3 1 $}{$= i i * \" \" $}{$ FOR j 1 2 1 $}{$= i j $},{$END$}{$END$}");
+		Assert.assertEquals(1, optimized.numberOfChildren());
+		Assert.assertEquals("1 11,12,4 21,22,9 31,32,", text(optimized.getChild(0)));
+	}
+
+	@Test
+	public void testLargeLoopsAreKept() throws IOException {
+		DocumentNode optimized = optimize("{$ FOR i 1 100 1 $}{$= i 2 3 * * $}.{$ FOR i 1 2 1 $}{$= i $}{$END$}{$END$}");
+		Assert.assertEquals(1, optimized.numberOfChildren());
+		ForLoopNode loop = (ForLoopNode) optimized.getChild(0);
+		Assert.assertEquals(2, loop.numberOfChildren());
+		Assert.assertEquals("i 6 *", asText(((EchoNode) loop.getChild(0)).getElements()));
+		Assert.assertEquals(".12", text(loop.getChild(1)));
+	}
+
+	@Test
+	public void testLazyBodiesStayLazy() throws IOException {
+		DocumentNode document = SmartScriptParser
+				.lazy("{$ FOR i 1 100 1 $}{$ FOR j 1 2 1 $}{$= i j $}{$END$}{$END$}{$ FOR i 2 1 1 $}{$= i $}{$END$}")
+				.getDocumentNode();
+		DocumentNode optimized = DocumentOptimizer.optimize(document);
+		Assert.assertEquals(1, optimized.numberOfChildren());
+		Assert.assertFalse(optimized.getChild(0).hasParsedChildren());
+		Assert.assertEquals(render(document, Collections.emptyMap()), render(optimized, Collections.emptyMap()));
+	}
+
+	@Test
+	public void testPureFunctionsAreFolded() throws ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry()
+				.register("max", MethodHandles.lookup().findStatic(Math.class, "max",
+						MethodType.methodType(long.class, long.class, long.class)), true)
+				.register("min", MethodHandles.lookup().findStatic(Math.class, "min",
+						MethodType.methodType(long.class, long.class, long.class)), false)
+				.register("sin", MethodHandles.lookup().findStatic(Math.class, "abs",
+						MethodType.methodType(long.class, long.class)), false);
+		DocumentNode optimized = DocumentOptimizer.optimize(
+				new SmartScriptParser("{$= 1 2 @max 1 2 @min -1 @sin $}").getDocumentNode(), registry);
+		Assert.assertEquals("2 1 2 min -1 sin", asText(((EchoNode) optimized.getChild(0)).getElements()));
+	}
+
+	@Test
+	public void testSameOutputAsEngine() throws IOException {
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("a", 6);
+		variables.put("b", 2.5);
+		variables.put("s", "4");
+		variables.put("zero", 0);
+
+		String[] documents = {
+				"Text \\{$ with \\\\ escapes\\",
+				"a\\{$ FOR i 1 2 1 $}\\\\{$= i \"\\\\\" $}\\{$END$}\\",
+				"{$ FOR i 5 1 -2 $}{$= i $} {$END$}{$ FOR i 1 3 0 $}{$= i $}{$END$}",
+				"{$ FOR i 1 2 1 $}{$ FOR i 3 4 1 $}{$= i $}{$END$}{$= i $}{$END$}{$= a $}",
+				"{$ FOR a 1 2 1 $}{$= a $}x{$END$}{$= a $}",
+				"{$ FOR i 9223372036854775806 9223372036854775807 1 $}{$= i $};{$END$}",
+				"{$ FOR i \"3\" 1 \"-1\" $}{$= i $};{$END$}",
+				"{$= a 2 + $}{$= 2 10 ^ $}{$= 2 -1 ^ $}{$= 3 62 ^ $}{$= 9223372036854775807 1 + $}",
+				"{$= \"say \\\"hi\\\"\\n\" $}{$= \"x\\\\y\\q\" \"1\" + $}{$= \"a\\tb\" 0 @decfmt $}",
+				"{$= 7 2 / $}{$= 7.0 2 / $}{$= 1 0.0 / $}{$= 0.0 0.0 / $}{$= 1 0 / $}",
+				"{$= 90 @sin \"0.000\" @decfmt $}{$= 1234567 \"#,##0\" @decfmt $}{$= 1 \"0.0.0\" @decfmt $}",
+				"{$= 3 @dup $}{$= 1 2 @swap $}{$= a @dup * $}{$= 1 2 3 @swap @dup $}{$= a 1 @swap - $}",
+				"before {$= 1 + $} after",
+				"before {$= 1 2 @unknown $} after",
+				"before {$= \"a\" 1 + $} after",
+				"{$ FOR i 1 3 1 $}row {$= i $}{$= i zero / $}{$END$}",
+				"{$ FOR i 1 3 1 $}{$ FOR j 1 3 1 $}{$ FOR k 1 3 1 $}{$= i j k * * $},{$END$}{$END$}{$END$}",
+		};
+		for (String document : documents) {
+			assertSameAsEngine(document, new SmartScriptParser(document).getDocumentNode(), variables);
+		}
+	}
+
+	@Test
+	public void testLoopsOverOtherValues() throws IOException {
+		Map<String, Object> variables = Collections.<String, Object>singletonMap("n", 3L);
+		Element[][] loops = {
+				{ new ElementConstantInteger(0), new ElementConstantInteger(1), new ElementConstantDouble(0.25) },
+				{ new ElementConstantDouble(1), new ElementConstantInteger(-1), new ElementConstantDouble(-0.5) },
+				{ new ElementString("1"), new ElementString(" 4 "), new ElementString("1.5") },
+				{ new ElementConstantInteger(1), new ElementConstantInteger(2), null },
+				{ new ElementConstantDouble(0), new ElementConstantInteger(1), new ElementConstantDouble(Double.NaN) },
+				{ new ElementConstantDouble(Double.NaN), new ElementConstantInteger(1), new ElementConstantInteger(1) },
+				{ new ElementConstantInteger(1), new ElementConstantInteger(3), new ElementConstantDouble(0) },
+				{ new ElementConstantInteger(1), new ElementString("text"), null },
+				{ new ElementConstantInteger(1), new ElementOperator("+"), null },
+				{ new ElementConstantInteger(Long.MAX_VALUE - 1), new ElementConstantInteger(Long.MAX_VALUE), null },
+		};
+		for (Element[] bounds : loops) {
+			ForLoopNode inner = new ForLoopNode(new ElementVariable("j"), new ElementVariable("i"), new ElementVariable("n"), null);
+			inner.addChildNode(new EchoNode(new Element[] { new ElementVariable("i"), new ElementVariable("j"),
+					new ElementOperator("*"), new ElementString(",") }));
+			ForLoopNode outer = new ForLoopNode(new ElementVariable("i"), bounds[0], bounds[1], bounds[2]);
+			outer.addChildNode(new EchoNode(new Element[] { new ElementVariable("i"), new ElementString(":") }));
+			outer.addChildNode(new Node());
+			outer.getChild(1).addChildNode(inner);
+			outer.addChildNode(new TextNode(";"));
+			DocumentNode document = new DocumentNode();
+			document.addChildNode(outer);
+			assertSameAsEngine(Arrays.toString(bounds), document, variables);
+		}
+	}
+
+	@Test
+	public void testRandomTemplates() throws IOException {
+		Random random = new Random(7);
+		String[] bounds = { "-1", "0", "2", "\"3\"", "40" };
+		String[] values = { "1", "-3", "2.5", "0", "\"7\"", "\"1.5\"", "\"a\\nb\"", "x", "y", "i", "j" };
+		String[] operations = { "+", "-", "*", "/", "^", "@sin", "@dup", "@swap", "\"0.0\" @decfmt" };
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("x", 4);
+		variables.put("y", 0.5);
+		variables.put("n", 3);
+
+		for (int n = 0; n < 500; n++) {
+			StringBuilder sb = new StringBuilder("<");
+			int loops = random.nextInt(3);
+			for (int i = 0; i < loops; i++) {
+				sb.append("{$ FOR ").append(i == 0 ? "i " : "j ").append(bounds[random.nextInt(bounds.length)])
+						.append(' ').append(bounds[random.nextInt(bounds.length)])
+						.append(random.nextBoolean() ? " 1 $}" : " -1 $}").append(i);
+			}
+			for (int tag = 0, tags = 1 + random.nextInt(2); tag < tags; tag++) {
+				sb.append("{$=");
+				for (int i = 0, length = 1 + random.nextInt(6); i < length; i++) {
+					sb.append(' ').append(values[random.nextInt(values.length)]);
+					if (random.nextBoolean())
+						sb.append(' ').append(operations[random.nextInt(operations.length)]);
+				}
+				sb.append(" $}.");
+			}
+			for (int i = 0; i < loops; i++) {
+				sb.append("{$END$}\\\\");
+			}
+			String document = sb.toString();
+			assertSameAsEngine(document, new SmartScriptParser(document).getDocumentNode(), variables);
+		}
+	}
+
+	@Test
+	public void testExamples() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("examples"), "*.txt")) {
+			for (Path file : files) {
+				String document = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+				try {
+					new SmartScriptParser(document);
+				} catch (SmartScriptParserException ex) {
+					continue;
+				}
+				assertSameAsEngine(file.toString(), SmartScriptParser.sliced(document).getDocumentNode(),
+						Collections.emptyMap());
+			}
+		}
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullDocument() {
+		DocumentOptimizer.optimize(null);
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullRegistry() {
+		DocumentOptimizer.optimize(new DocumentNode(), null);
+	}
+
+	private static DocumentNode optimize(String document) {
+		return DocumentOptimizer.optimize(new SmartScriptParser(document).getDocumentNode());
+	}
+
+	private static void assertFolded(String document, String... elements) {
+		EchoNode echo = (EchoNode) optimize(document).getChild(0);
+		Assert.assertEquals(document, String.join(" ", elements), asText(echo.getElements()));
+	}
+
+	private static String asText(Element[] elements) {
+		StringBuilder sb = new StringBuilder();
+		for (Element element : elements) {
+			sb.append(sb.length() == 0 ? "" : " ").append(element.asText());
+		}
+		return sb.toString();
+	}
+
+	private static String text(Node node) {
+		return ((TextNode) node).getText();
+	}
+
+	private static void assertSameAsEngine(String message, DocumentNode document, Map<String, ?> variables)
+			throws IOException {
+		String expected = render(document, variables);
+		DocumentNode optimized = DocumentOptimizer.optimize(document);
+		Assert.assertEquals(message, expected, render(optimized, variables));
+
+		StringBuilder sb = new StringBuilder();
+		try {
+			TemplateCompiler.compile(optimized).render(variables, sb);
+		} catch (SmartScriptEngineException ex) {
+			sb.append("error: ").append(ex.getMessage());
+		}
+		Assert.assertEquals(message, expected, sb.toString());
+	}
+
+	private static String render(DocumentNode document, Map<String, ?> variables) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		try {
+			new SmartScriptEngine(document).execute(variables, sb);
+		} catch (SmartScriptEngineException ex) {
+			sb.append("error: ").append(ex.getMessage());
+		}
+		return sb.toString();
+	}
+
+}
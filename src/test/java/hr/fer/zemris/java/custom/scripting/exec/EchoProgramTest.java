@@ -0,0 +1,116 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+public class EchoProgramTest {
+
+	private static final byte LONG_LOOP = EchoProgram.loopKind(new ElementConstantInteger(1),
+			new ElementConstantInteger(2), null);
+
+	@Test
+	public void testConstantsAreFolded() {
+		EchoProgram program = compile("1 2 + 3 * 2 -1 ^ 90 @sin");
+		assertOpcodes(program, EchoProgram.PUSH_LONG, EchoProgram.PUSH_DOUBLE, EchoProgram.PUSH_DOUBLE);
+		Assert.assertEquals(9, program.longs[0]);
+		Assert.assertEquals(0.5, program.doubles[0], 0);
+		Assert.assertEquals(1.0, program.doubles[1], 0);
+	}
+
+	@Test
+	public void testDivisionByZeroIsNotFolded() {
+		assertOpcodes(compile("1 0 /"), EchoProgram.PUSH_LONG, EchoProgram.PUSH_LONG, EchoProgram.DIVIDE_LONGS);
+	}
+
+	@Test
+	public void testOperatorsOnIntegersAreSpecialized() {
+		assertOpcodes(compile("i i * @sin \"0.000\" @decfmt", "i"), EchoProgram.PUSH_LOOP, EchoProgram.PUSH_LOOP,
+				EchoProgram.MULTIPLY_LONGS, EchoProgram.SIN, EchoProgram.DECFMT_CONSTANT);
+		assertOpcodes(compile("i 2 * x +", "i"), EchoProgram.PUSH_LOOP, EchoProgram.PUSH_LONG,
+				EchoProgram.MULTIPLY_LONGS, EchoProgram.PUSH_VARIABLE, EchoProgram.ADD);
+		assertOpcodes(compile("i \"2\" *", "i"), EchoProgram.PUSH_LOOP, EchoProgram.PUSH_OBJECT, EchoProgram.MULTIPLY);
+		assertOpcodes(compile("i 2 ^", "i"), EchoProgram.PUSH_LOOP, EchoProgram.PUSH_LONG, EchoProgram.POWER);
+	}
+
+	@Test
+	public void testLoopVariablesAreResolvedInnermostFirst() {
+		EchoProgram program = compile("i j", "i", "j", "i");
+		assertOpcodes(program, EchoProgram.PUSH_LOOP, EchoProgram.PUSH_LOOP);
+		Assert.assertEquals(2, program.code[0] >>> EchoProgram.OPCODE_BITS);
+		Assert.assertEquals(1, program.code[1] >>> EchoProgram.OPCODE_BITS);
+	}
+
+	@Test
+	public void testErrorsAreCompiled() {
+		EchoProgram program = compile("x 1 + + 2");
+		assertOpcodes(program, EchoProgram.PUSH_VARIABLE, EchoProgram.PUSH_LONG, EchoProgram.ADD, EchoProgram.FAIL);
+		Assert.assertEquals("Not enough values on the stack for +", program.objects[program.objects.length - 1]);
+
+		program = compile("1 2 @max");
+		Assert.assertEquals(EchoProgram.FAIL, program.code[program.code.length - 1] & EchoProgram.OPCODE_MASK);
+		Assert.assertEquals("Unknown function: @max", program.objects[program.objects.length - 1]);
+	}
+
+	@Test
+	public void testMaxStack() {
+		Assert.assertEquals(3, compile("1 x 2 + y").maxStack);
+		Assert.assertEquals(3, compile("x @dup @dup").maxStack);
+	}
+
+	@Test
+	public void testCustomFunctionsAreCalledThroughCallSites() throws ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry().register("max", MethodHandles.lookup()
+				.findStatic(Math.class, "max", MethodType.methodType(long.class, long.class, long.class)), true);
+		EchoProgram program = compile(registry, "x 1 @max");
+		assertOpcodes(program, EchoProgram.PUSH_VARIABLE, EchoProgram.PUSH_LONG, EchoProgram.CALL);
+		Assert.assertTrue(program.objects[program.code[2] >>> EchoProgram.OPCODE_BITS] instanceof FunctionCallSite);
+
+		program = compile(registry, "3 7 @max 1 +");
+		assertOpcodes(program, EchoProgram.PUSH_LONG);
+		Assert.assertEquals(8, program.longs[0]);
+	}
+
+	@Test
+	public void testLoopKind() {
+		Assert.assertEquals(LONG_LOOP, EchoProgram.loopKind(new ElementConstantInteger(1),
+				new ElementConstantInteger(3), new ElementConstantInteger(1)));
+		Assert.assertNotEquals(LONG_LOOP, EchoProgram.loopKind(new ElementConstantInteger(1),
+				new ElementConstantDouble(3), null));
+		Assert.assertNotEquals(LONG_LOOP, EchoProgram.loopKind(new ElementConstantInteger(1),
+				new ElementString("3"), null));
+		Assert.assertNotEquals(LONG_LOOP, EchoProgram.loopKind(new ElementConstantInteger(1),
+				new ElementVariable("n"), null));
+	}
+
+	private static EchoProgram compile(String elements, String... loops) {
+		return compile(new FunctionRegistry(), elements, loops);
+	}
+
+	private static EchoProgram compile(FunctionRegistry registry, String elements, String... loops) {
+		EchoNode node = (EchoNode) new SmartScriptParser("{$= " + elements + " $}").getDocumentNode().getChild(0);
+		byte[] kinds = new byte[loops.length];
+		for (int i = 0; i < kinds.length; i++) {
+			kinds[i] = LONG_LOOP;
+		}
+		return EchoProgram.compile(node.getElements(), loops, kinds, loops.length, new HashMap<>(), registry);
+	}
+
+	private static void assertOpcodes(EchoProgram program, int... opcodes) {
+		Assert.assertEquals(opcodes.length, program.code.length);
+		for (int i = 0; i < opcodes.length; i++) {
+			Assert.assertEquals("instruction " + i, opcodes[i], program.code[i] & EchoProgram.OPCODE_MASK);
+		}
+	}
+
+}
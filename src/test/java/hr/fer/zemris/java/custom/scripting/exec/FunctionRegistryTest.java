@@ -0,0 +1,267 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+public class FunctionRegistryTest {
+
+	private int calls;
+
+	public long square(long x) {
+		calls++;
+		return x * x;
+	}
+
+	public static long max(long x, long y) {
+		return Math.max(x, y);
+	}
+
+	public static long min(long x, long y) {
+		return Math.min(x, y);
+	}
+
+	public static String join(Object x, Object y) {
+		return x + ":" + y;
+	}
+
+	public static int half(long x) {
+		return (int) (x / 2);
+	}
+
+	public static Object fail(Object x) {
+		throw new IllegalStateException("boom");
+	}
+
+	public static Object nothing(Object x) {
+		return null;
+	}
+
+	public static void print(Object x) {
+	}
+
+	@Test
+	public void testCustomFunctions() throws IOException, ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry()
+				.register("max", handle("max", long.class, long.class, long.class), true)
+				.register("join", handle("join", String.class, Object.class, Object.class), false)
+				.register("half", handle("half", int.class, long.class), true);
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("a", 5);
+		variables.put("s", "text");
+
+		assertRenders("7 5 8", "{$= 3 7 @max \" \" a 2 @max \" \" a 3 + 1 @max $}", registry, variables);
+		assertRenders("1:2.5 text:2 0.500:s", "{$= 1 2.5 @join \" \" s 1 1 + @join \" \" "
+				+ "0.5 \"0.000\" @decfmt \"s\" @join $}", registry, variables);
+		assertRenders("3 6", "{$= 7 @half \" \" a 7 + @half $}", registry, variables);
+		assertRenders("7:3", "{$= 3 7 @max 3 @join $}", registry, variables);
+	}
+
+	@Test
+	public void testBuiltInsWithRegistry() throws IOException, ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry();
+		assertRenders("1.00 2 11", "{$= 90 @sin \"0.00\" @decfmt \" \" 1 2 @swap \" \" @swap @dup $}",
+				registry, Collections.<String, Object>emptyMap());
+		Assert.assertTrue(registry.contains("decfmt"));
+		Assert.assertFalse(registry.contains("max"));
+		Assert.assertFalse(registry.contains(null));
+	}
+
+	@Test
+	public void testErrors() throws IOException, ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry()
+				.register("max", handle("max", long.class, long.class, long.class), false)
+				.register("fail", handle("fail", Object.class, Object.class), true)
+				.register("nothing", handle("nothing", Object.class, Object.class), false);
+		Map<String, Object> variables = Collections.<String, Object>singletonMap("d", 1.5);
+
+		assertRenders("error: Unknown function: @min", "{$= 1 2 @min $}", registry, variables);
+		assertRenders("error: Not enough values on the stack for @max", "{$= 1 @max $}", registry, variables);
+		assertRenders("error: Function @fail failed: java.lang.IllegalStateException: boom", "{$= 1 @fail $}",
+				registry, variables);
+		assertRenders("error: Function @nothing returned null", "{$= 1 @nothing $}", registry, variables);
+		Assert.assertTrue(render(true, "{$= 1 d @max $}", registry, variables)
+				.startsWith("error: Function @max failed: java.lang.ClassCastException"));
+		Assert.assertTrue(render(false, "{$= 1 d @max $}", registry, variables)
+				.startsWith("error: Function @max failed: java.lang.ClassCastException"));
+	}
+
+	@Test
+	public void testCustomFunctionReplacesBuiltIn() throws IOException, ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry()
+				.register("sin", handle("join", String.class, Object.class, Object.class), false);
+		assertRenders("1:2", "{$= 1 2 @sin $}", registry, Collections.<String, Object>emptyMap());
+	}
+
+	@Test
+	public void testCallSitesLinkAgainWhenRegistryChanges() throws IOException, ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry()
+				.register("pick", handle("max", long.class, long.class, long.class), false);
+		Map<String, Object> variables = Collections.<String, Object>singletonMap("a", 5);
+		DocumentNode document = new SmartScriptParser("{$= a 2 @pick $}").getDocumentNode();
+		SmartScriptEngine engine = new SmartScriptEngine(document, registry);
+		CompiledTemplate compiled = TemplateCompiler.compile(document, registry);
+
+		Assert.assertEquals("5", execute(engine, variables));
+		Assert.assertEquals("5", render(compiled, variables));
+
+		registry.register("pick", handle("min", long.class, long.class, long.class), false);
+		Assert.assertEquals("2", execute(engine, variables));
+		Assert.assertEquals("2", render(compiled, variables));
+
+		registry.register("pick", handle("join", String.class, Object.class, Object.class).bindTo("x"), false);
+		Assert.assertEquals("5x:2", execute(engine, variables));
+		Assert.assertEquals("error: Function @pick with 2 arguments is not registered", render(compiled, variables));
+	}
+
+	@Test
+	public void testPureFunctionWithConstantsIsCalledOnce() throws IOException, ReflectiveOperationException {
+		FunctionRegistry registry = new FunctionRegistry().register("square", squareHandle(), true);
+		DocumentNode document = new SmartScriptParser("{$ FOR i 1 3 1 $}{$= 4 @square 1 + $} {$END$}")
+				.getDocumentNode();
+		Map<String, Object> variables = Collections.emptyMap();
+
+		SmartScriptEngine engine = new SmartScriptEngine(document, registry);
+		Assert.assertEquals("17 17 17 ", execute(engine, variables));
+		Assert.assertEquals("17 17 17 ", execute(engine, variables));
+		Assert.assertEquals(1, calls);
+
+		calls = 0;
+		CompiledTemplate compiled = TemplateCompiler.compile(document, registry);
+		Assert.assertEquals("17 17 17 ", render(compiled, variables));
+		Assert.assertEquals("17 17 17 ", render(compiled, variables));
+		Assert.assertEquals(1, calls);
+	}
+
+	@Test
+	public void testMemoizedCalls() throws IOException, ReflectiveOperationException {
+		String template = "{$ FOR j 1 5 1 $}{$ FOR i 1 3 1 $}{$= i @square $} {$END$}{$END$}";
+		DocumentNode document = new SmartScriptParser(template).getDocumentNode();
+		Map<String, Object> variables = Collections.emptyMap();
+		String expected = "1 4 9 1 4 9 1 4 9 1 4 9 1 4 9 ";
+
+		FunctionRegistry registry = new FunctionRegistry().register("square", squareHandle(), true);
+		Assert.assertEquals(expected, execute(new SmartScriptEngine(document, registry), variables));
+		Assert.assertEquals(15, calls);
+
+		calls = 0;
+		registry.setMemoSize(3);
+		Assert.assertEquals(expected, execute(new SmartScriptEngine(document, registry), variables));
+		Assert.assertEquals(3, calls);
+
+		calls = 0;
+		Assert.assertEquals(expected, render(TemplateCompiler.compile(document, registry), variables));
+		Assert.assertEquals(3, calls);
+
+		// least recently used result is always the next one that is needed
+		calls = 0;
+		registry.setMemoSize(2);
+		Assert.assertEquals(expected, execute(new SmartScriptEngine(document, registry), variables));
+		Assert.assertEquals(15, calls);
+
+		calls = 0;
+		registry.register("square", squareHandle(), false).setMemoSize(3);
+		Assert.assertEquals(expected, execute(new SmartScriptEngine(document, registry), variables));
+		Assert.assertEquals(15, calls);
+	}
+
+	@Test
+	public void testConcurrentChangesGetOwnVersions() throws Exception {
+		FunctionRegistry registry = new FunctionRegistry();
+		MethodHandle max = handle("max", long.class, long.class, long.class);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			String name = "f" + t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					registry.register(name, max, true);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(threads.length * 10000, registry.getVersion());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidName() throws ReflectiveOperationException {
+		new FunctionRegistry().register("1st", handle("max", long.class, long.class, long.class), true);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testVoidFunction() throws ReflectiveOperationException {
+		new FunctionRegistry().register("print", handle("print", void.class, Object.class), false);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeMemoSize() {
+		new FunctionRegistry().setMemoSize(-1);
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullHandle() {
+		new FunctionRegistry().register("f", null, true);
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullRegistry() {
+		new SmartScriptEngine(new SmartScriptParser("text").getDocumentNode(), null);
+	}
+
+	private MethodHandle squareHandle() throws ReflectiveOperationException {
+		return MethodHandles.lookup().findVirtual(FunctionRegistryTest.class, "square",
+				MethodType.methodType(long.class, long.class)).bindTo(this);
+	}
+
+	private static MethodHandle handle(String name, Class<?> result, Class<?>... parameters)
+			throws ReflectiveOperationException {
+		return MethodHandles.lookup().findStatic(FunctionRegistryTest.class, name,
+				MethodType.methodType(result, parameters));
+	}
+
+	private static void assertRenders(String expected, String template, FunctionRegistry registry,
+			Map<String, Object> variables) throws IOException {
+		Assert.assertEquals(template, expected, render(true, template, registry, variables));
+		Assert.assertEquals(template, expected, render(false, template, registry, variables));
+	}
+
+	private static String render(boolean compiled, String template, FunctionRegistry registry,
+			Map<String, Object> variables) throws IOException {
+		DocumentNode document = new SmartScriptParser(template).getDocumentNode();
+		return compiled ? render(TemplateCompiler.compile(document, registry), variables)
+				: execute(new SmartScriptEngine(document, registry), variables);
+	}
+
+	private static String execute(SmartScriptEngine engine, Map<String, Object> variables) throws IOException {
+		try {
+			StringBuilder sb = new StringBuilder();
+			engine.execute(variables, sb);
+			return sb.toString();
+		} catch (SmartScriptEngineException ex) {
+			return "error: " + ex.getMessage();
+		}
+	}
+
+	private static String render(CompiledTemplate template, Map<String, Object> variables) throws IOException {
+		try {
+			StringBuilder sb = new StringBuilder();
+			template.render(variables, sb);
+			return sb.toString();
+		} catch (SmartScriptEngineException ex) {
+			return "error: " + ex.getMessage();
+		}
+	}
+
+}
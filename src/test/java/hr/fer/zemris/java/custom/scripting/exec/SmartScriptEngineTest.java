@@ -0,0 +1,125 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+
+public class SmartScriptEngineTest {
+
+	@Test
+	public void testTextWithEscapes() throws IOException {
+		Assert.assertEquals("Text {$ with \\ escapes\\", run("Text \\{$ with \\\\ escapes\\", Collections.emptyMap()));
+	}
+
+	@Test
+	public void testForLoops() throws IOException {
+		Assert.assertEquals("1 2 3 ", run("{$ FOR i 1 3 1 $}{$= i $} {$END$}", Collections.emptyMap()));
+		Assert.assertEquals("5 3 1 ", run("{$ FOR i 5 1 -2 $}{$= i $} {$END$}", Collections.emptyMap()));
+		Assert.assertEquals("", run("{$ FOR i 3 1 1 $}{$= i $}{$END$}", Collections.emptyMap()));
+		Assert.assertEquals("11 12 21 22 ",
+				run("{$ FOR i 1 2 1 $}{$ FOR j 1 2 1 $}{$= i j $} {$END$}{$END$}", Collections.emptyMap()));
+		// loop variable hides given variable only inside the loop
+		Assert.assertEquals("x1x2x", run("{$= i $}{$ FOR i 1 2 1 $}{$= i $}x{$END$}", Collections.singletonMap("i", "x")));
+	}
+
+	@Test
+	public void testEchoStackMachine() throws IOException {
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("a", 6);
+		variables.put("b", 2.5);
+		variables.put("s", "4");
+
+		Assert.assertEquals("8", run("{$= a 2 + $}", variables));
+		Assert.assertEquals("15.0", run("{$= a b * $}", variables));
+		Assert.assertEquals("24", run("{$= a s * $}", variables));
+		Assert.assertEquals("3", run("{$= a 2 / $}", variables));
+		Assert.assertEquals("1024", run("{$= 2 10 ^ $}", variables));
+		Assert.assertEquals("0.5", run("{$= 2 -1 ^ $}", variables));
+		Assert.assertEquals("6 and 2.5", run("{$= a \" and \" b $}", variables));
+		Assert.assertEquals("say \"hi\"\n", run("{$= \"say \\\"hi\\\"\\n\" $}", variables));
+	}
+
+	@Test
+	public void testFunctions() throws IOException {
+		Map<String, Object> variables = Collections.emptyMap();
+		Assert.assertEquals("1.000", run("{$= 90 @sin \"0.000\" @decfmt $}", variables));
+		Assert.assertEquals("0.50", run("{$= 30 @sin \"0.00\" @decfmt $}", variables));
+		Assert.assertEquals("33", run("{$= 3 @dup $}", variables));
+		Assert.assertEquals("21", run("{$= 1 2 @swap $}", variables));
+		Assert.assertEquals("1.00 2.00 ",
+				run("{$ FOR i 1 2 1 $}{$= i \"0.00\" @decfmt \" \" $}{$END$}", variables));
+	}
+
+	@Test
+	public void testFormattedValuesOnStack() throws IOException {
+		Map<String, Object> variables = Collections.singletonMap("p", "0.0");
+		Assert.assertEquals("1.51.5", run("{$= 1.5 \"0.0\" @decfmt @dup $}", variables));
+		Assert.assertEquals("x1.5", run("{$= 1.5 \"0.0\" @decfmt \"x\" @swap $}", variables));
+		Assert.assertEquals("3.0", run("{$= 1.5 p @decfmt 2 * $}", variables));
+		Assert.assertEquals("2.0", run("{$= 2 \"0.0\" @decfmt \"0.0\" @decfmt $}", variables));
+		Assert.assertEquals("1.52.5", run("{$ FOR i 1 2 1 $}{$= i 0.5 + p @decfmt $}{$END$}", variables));
+
+		StringWriter writer = new StringWriter();
+		new SmartScriptEngine(new SmartScriptParser("{$= 1234567.891 \"#,##0.00\" @decfmt @dup $}").getDocumentNode())
+				.execute(variables, writer);
+		Assert.assertEquals("1,234,567.891,234,567.89", writer.toString());
+	}
+
+	@Test
+	public void testWriterAndSlicedTree() throws IOException {
+		String document = "Head \\{ {$ FOR i -1 10 3 $}row {$= i i * \"-\" $}\\\\n{$END$} tail";
+		String expected = run(document, Collections.emptyMap());
+		Assert.assertEquals("Head { row 1-\\nrow 4-\\nrow 25-\\nrow 64-\\n tail", expected);
+
+		SmartScriptEngine engine = new SmartScriptEngine(SmartScriptParser.sliced(document).getDocumentNode());
+		for (int i = 0; i < 2; i++) {
+			StringWriter writer = new StringWriter();
+			engine.execute(Collections.emptyMap(), writer);
+			Assert.assertEquals(expected, writer.toString());
+		}
+	}
+
+	@Test(expected=SmartScriptEngineException.class)
+	public void testUndefinedVariable() throws IOException {
+		run("{$= missing $}", Collections.emptyMap());
+	}
+
+	@Test(expected=SmartScriptEngineException.class)
+	public void testNotEnoughOperands() throws IOException {
+		run("{$= 1 + $}", Collections.emptyMap());
+	}
+
+	@Test(expected=SmartScriptEngineException.class)
+	public void testStringIsNotNumber() throws IOException {
+		run("{$= \"abc\" 1 + $}", Collections.emptyMap());
+	}
+
+	@Test
+	public void testEngineIsReusableAfterError() throws IOException {
+		SmartScriptEngine engine = new SmartScriptEngine(
+				new SmartScriptParser("{$ FOR i 1 2 1 $}{$= i 1 x / $}{$END$}").getDocumentNode());
+		try {
+			engine.execute(Collections.singletonMap("x", 0), new StringBuilder());
+			Assert.fail();
+		} catch (SmartScriptEngineException ex) {
+			// division by zero
+		}
+		StringBuilder sb = new StringBuilder();
+		engine.execute(Collections.singletonMap("x", 1), sb);
+		Assert.assertEquals("1121", sb.toString());
+	}
+
+	private static String run(String document, Map<String, ?> variables) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		new SmartScriptEngine(new SmartScriptParser(document).getDocumentNode()).execute(variables, sb);
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,277 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+public class TemplateCompilerTest {
+
+	@Test
+	public void testSameOutputAsEngine() throws IOException {
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("a", 6);
+		variables.put("b", 2.5);
+		variables.put("s", "4");
+		variables.put("d", " 1.5 ");
+		variables.put("n", 3L);
+		variables.put("f", 0.25f);
+		variables.put("text", new StringBuilder("builder"));
+
+		String[] documents = {
+				"Text \\{$ with \\\\ escapes\\",
+				"{$ FOR i 1 3 1 $}{$= i $} {$END$}",
+				"{$ FOR i 5 1 -2 $}{$= i $} {$END$}",
+				"{$ FOR i 3 1 1 $}{$= i $}{$END$}",
+				"{$ FOR i 1 2 1 $}{$ FOR j 1 2 1 $}{$= i j $} {$END$}{$END$}",
+				"{$= a $}{$ FOR a 1 2 1 $}{$= a $}x{$END$}{$= a $}",
+				"{$ FOR i 9223372036854775806 9223372036854775807 1 $}{$= i $};{$END$}",
+				"{$ FOR i 1 3 1 $}{$END$}empty",
+				"{$ FOR i \"3\" 1 \"-1\" $}{$= i $};{$END$}",
+				"{$= a 2 + $}{$= a b * $}{$= a s * $}{$= a 2 / $}{$= 2 10 ^ $}{$= 2 -1 ^ $}",
+				"{$= a \" and \" b $}{$= \"say \\\"hi\\\"\\n\" $}{$= \"x\\\\y\\q\" $}",
+				"{$= s d + $}{$= \"2\" \"3\" * $}{$= \"2\" 0.5 ^ $}{$= n \"-2\" ^ $}{$= f 2 * $}{$= f $}",
+				"{$= 7 2 / $}{$= 7.0 2 / $}{$= 1 0.0 / $}{$= -1 0.0 / $}{$= 0.0 0.0 / $}",
+				"{$= 90 @sin \"0.000\" @decfmt $}{$= 30 @sin \"0.00\" @decfmt $}{$= s @sin $}",
+				"{$= 3 @dup $}{$= 1 2 @swap $}{$= a @dup * $}{$= s 1 @swap - $}{$= 1 2 3 @swap @dup $}",
+				"{$= 1234567 \"#,##0\" @decfmt $}{$= d 5 @decfmt $}{$= n \"0.0\" @decfmt $}",
+				"{$= text $}{$= text text $}",
+				"{$ FOR i 1 2 1 $}{$= i \"0.00\" @decfmt \" \" $}{$END$}",
+				"Head \\{ {$ FOR i -1 10 3 $}row {$= i i * \"-\" $}\\\\n{$END$} tail",
+				"{$= 9223372036854775807 1 + $}{$= 3 62 ^ $}",
+		};
+		for (String document : documents) {
+			assertSameAsEngine(document, variables);
+		}
+	}
+
+	@Test
+	public void testSameErrorsAsEngine() throws IOException {
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("zero", 0);
+		variables.put("s", "abc");
+		variables.put("list", Collections.emptyList());
+
+		String[] documents = {
+				"before {$= missing $}",
+				"{$= 1 + $}",
+				"{$= \"abc\" 1 + $}",
+				"{$= 1 s * $}",
+				"{$= list 1 + $}",
+				"{$= 1 zero / $}",
+				"{$= 1 0 / $}",
+				"{$= @sin $}",
+				"{$= 1 @decfmt $}",
+				"{$= 1 @swap $}",
+				"{$= @dup $}",
+				"{$= 1 @cos $}",
+				"{$= 1.5 \"0.0.0.#\" @decfmt $}",
+				"{$ FOR i 1 3 0 $}x{$END$}",
+				"{$ FOR i 1 3 1 $}{$= i $}{$= 1 i zero * / $}{$END$}",
+		};
+		for (String document : documents) {
+			assertSameAsEngine(document, variables);
+		}
+	}
+
+	@Test
+	public void testLargeTemplate() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append("text ").append(i).append(" {$= i ").append(i).append(" * \"-\" $}");
+			if (i % 1000 == 0)
+				sb.append("{$ FOR j 1 2 1 $}{$= i j + $}{$END$}");
+		}
+		for (int i = 0; i < 20000; i++) {
+			sb.append("long text ");
+		}
+		assertSameAsEngine(sb.toString(), Collections.singletonMap("i", 3));
+	}
+
+	@Test
+	public void testLoopsOverOtherValues() throws IOException {
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("n", 3L);
+		variables.put("b", 2.5);
+		variables.put("s", " 4 ");
+		variables.put("d", "1.5");
+		variables.put("zero", 0);
+		variables.put("text", "abc");
+
+		Element[][] loops = {
+				{ new ElementConstantInteger(0), new ElementConstantInteger(1), new ElementConstantDouble(0.25) },
+				{ new ElementConstantDouble(1), new ElementConstantInteger(-1), new ElementConstantDouble(-0.5) },
+				{ new ElementString("1"), new ElementString("4"), new ElementString("1.5") },
+				{ new ElementConstantInteger(1), new ElementVariable("n"), null },
+				{ new ElementVariable("s"), new ElementVariable("d"), new ElementConstantInteger(-1) },
+				{ new ElementConstantInteger(1), new ElementVariable("b"), new ElementVariable("d") },
+				{ new ElementConstantDouble(0), new ElementConstantInteger(1), new ElementConstantDouble(Double.NaN) },
+				{ new ElementConstantDouble(Double.NaN), new ElementConstantInteger(1), new ElementConstantInteger(1) },
+				{ new ElementConstantInteger(1), new ElementConstantInteger(3), new ElementConstantDouble(0) },
+				{ new ElementConstantInteger(1), new ElementConstantInteger(3), new ElementVariable("zero") },
+				{ new ElementConstantInteger(1), new ElementVariable("text"), null },
+				{ new ElementConstantInteger(1), new ElementVariable("missing"), null },
+				{ new ElementConstantInteger(1), new ElementOperator("+"), null },
+				{ new ElementVariable("n"), new ElementConstantInteger(Long.MAX_VALUE),
+						new ElementConstantInteger(Long.MAX_VALUE / 2) },
+		};
+		for (Element[] bounds : loops) {
+			ForLoopNode inner = new ForLoopNode(new ElementVariable("j"), new ElementVariable("i"), new ElementVariable("n"), null);
+			inner.addChildNode(new EchoNode(new Element[] { new ElementVariable("i"), new ElementVariable("j"),
+					new ElementOperator("*"), new ElementString(",") }));
+			ForLoopNode outer = new ForLoopNode(new ElementVariable("i"), bounds[0], bounds[1], bounds[2]);
+			outer.addChildNode(new EchoNode(new Element[] { new ElementVariable("i"), new ElementString(":") }));
+			outer.addChildNode(inner);
+			outer.addChildNode(new TextNode(";"));
+			DocumentNode document = new DocumentNode();
+			document.addChildNode(outer);
+			assertSameAsEngine(Arrays.toString(bounds), document, variables);
+		}
+	}
+
+	@Test
+	public void testDeepNesting() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			sb.append("{$ FOR v").append(i).append(i % 2 == 0 ? " 1 1 1 $}" : " 2 1 -1 $}");
+		}
+		sb.append("{$= v0 v1 + v2 * v38 v39 $}");
+		for (int i = 0; i < 40; i++) {
+			sb.append("{$END$}");
+		}
+		assertSameAsEngine(sb.toString(), Collections.emptyMap());
+	}
+
+	@Test
+	public void testRandomTemplates() throws IOException {
+		Random random = new Random(42);
+		String[] bounds = { "-1", "0", "2", "\"3\"" };
+		String[] values = { "1", "-3", "2.5", "0", "\"7\"", "\"1.5\"", "\"a\\nb\"", "x", "y", "i", "j" };
+		String[] operations = { "+", "-", "*", "/", "^", "@sin", "@dup", "@swap", "\"0.0\" @decfmt" };
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("x", 4);
+		variables.put("y", 0.5);
+
+		for (int n = 0; n < 300; n++) {
+			StringBuilder sb = new StringBuilder();
+			int loops = random.nextInt(3);
+			for (int i = 0; i < loops; i++) {
+				sb.append("{$ FOR ").append(i == 0 ? "i " : "j ").append(bounds[random.nextInt(bounds.length)])
+						.append(' ').append(bounds[random.nextInt(bounds.length)])
+						.append(random.nextBoolean() ? " 1 $}" : " -1 $}");
+			}
+			sb.append("{$=");
+			for (int i = 0, length = 1 + random.nextInt(6); i < length; i++) {
+				sb.append(' ').append(values[random.nextInt(values.length)]);
+				if (random.nextBoolean())
+					sb.append(' ').append(operations[random.nextInt(operations.length)]);
+			}
+			sb.append(" $}.");
+			for (int i = 0; i < loops; i++) {
+				sb.append("{$END$}");
+			}
+			assertSameAsEngine(sb.toString(), variables);
+		}
+	}
+
+	@Test
+	public void testExamples() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("examples"), "*.txt")) {
+			for (Path file : files) {
+				String document = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+				try {
+					new SmartScriptParser(document);
+				} catch (SmartScriptParserException ex) {
+					continue;
+				}
+				assertSameAsEngine(document, Collections.emptyMap());
+			}
+		}
+	}
+
+	@Test
+	public void testWriterAndReuse() throws IOException {
+		CompiledTemplate template = TemplateCompiler.compile(
+				SmartScriptParser.sliced("{$ FOR i 1 2 1 $}{$= i 1 x / $}{$END$}").getDocumentNode());
+		try {
+			template.render(Collections.singletonMap("x", 0), new StringBuilder());
+			Assert.fail();
+		} catch (SmartScriptEngineException ex) {
+			Assert.assertEquals("Division by zero", ex.getMessage());
+		}
+		StringWriter writer = new StringWriter();
+		template.render(Collections.singletonMap("x", 1), writer);
+		Assert.assertEquals("1121", writer.toString());
+	}
+
+	@Test
+	public void testTemplatesHaveOwnClassLoaders() {
+		DocumentNode document = new SmartScriptParser("text").getDocumentNode();
+		CompiledTemplate first = TemplateCompiler.compile(document);
+		CompiledTemplate second = TemplateCompiler.compile(document);
+		Assert.assertNotSame(first.getClass(), second.getClass());
+		Assert.assertNotSame(first.getClass().getClassLoader(), second.getClass().getClassLoader());
+		Assert.assertNotSame(TemplateCompiler.class.getClassLoader(), first.getClass().getClassLoader());
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullVariables() throws IOException {
+		TemplateCompiler.compile(new SmartScriptParser("text").getDocumentNode()).render(null, new StringBuilder());
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullDocument() {
+		TemplateCompiler.compile(null);
+	}
+
+	private static void assertSameAsEngine(String document, Map<String, ?> variables) throws IOException {
+		assertSameAsEngine(document, new SmartScriptParser(document).getDocumentNode(), variables);
+	}
+
+	private static void assertSameAsEngine(String message, DocumentNode documentNode, Map<String, ?> variables)
+			throws IOException {
+		String expected;
+		try {
+			StringBuilder sb = new StringBuilder();
+			new SmartScriptEngine(documentNode).execute(variables, sb);
+			expected = sb.toString();
+		} catch (SmartScriptEngineException ex) {
+			expected = "error: " + ex.getMessage();
+		}
+
+		String actual;
+		try {
+			StringBuilder sb = new StringBuilder();
+			TemplateCompiler.compile(documentNode).render(variables, sb);
+			actual = sb.toString();
+		} catch (SmartScriptEngineException ex) {
+			actual = "error: " + ex.getMessage();
+		}
+		Assert.assertEquals(message, expected, actual);
+	}
+
+}
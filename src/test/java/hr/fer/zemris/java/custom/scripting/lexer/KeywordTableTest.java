@@ -0,0 +1,72 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class KeywordTableTest {
+
+	@Test
+	public void testDefaultKeywords() {
+		Assert.assertEquals(2, KeywordTable.DEFAULT.size());
+		Assert.assertTrue(KeywordTable.DEFAULT.contains("FOR"));
+		Assert.assertTrue(KeywordTable.DEFAULT.contains("for"));
+		Assert.assertTrue(KeywordTable.DEFAULT.contains("eNd"));
+		Assert.assertFalse(KeywordTable.DEFAULT.contains("FORE"));
+		Assert.assertFalse(KeywordTable.DEFAULT.contains("FO"));
+		Assert.assertFalse(KeywordTable.DEFAULT.contains("ENđ"));
+		Assert.assertFalse(KeywordTable.DEFAULT.contains(""));
+	}
+
+	@Test
+	public void testManyKeywords() {
+		String[] keywords = new String[200];
+		for (int i = 0; i < keywords.length; i++) {
+			keywords[i] = "k" + i;
+		}
+		KeywordTable table = KeywordTable.of(keywords);
+		Assert.assertEquals(200, table.size());
+		for (int i = 0; i < keywords.length; i++) {
+			Assert.assertTrue(table.contains("K" + i));
+			Assert.assertFalse(table.contains("K" + (i + 200)));
+		}
+	}
+
+	@Test
+	public void testDuplicatesIgnoringCase() {
+		KeywordTable table = KeywordTable.of("while", "WHILE", "Do");
+		Assert.assertArrayEquals(new String[] { "WHILE", "DO" }, table.getKeywords());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidKeyword() {
+		KeywordTable.of("FOR", "1abc");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullKeyword() {
+		KeywordTable.of("FOR", null);
+	}
+
+	@Test
+	public void testKeywordsOfLexer() {
+		String input = "{$ for while end $}";
+		Lexer2 lexer = new Lexer2(input);
+		lexer.setKeywords(KeywordTable.of("WHILE"));
+		lexer.next();
+		lexer.setState(Lexer2State.TAG);
+		lexer.next();
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertEquals(TokenType2.KEYWORD, lexer.next());
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+
+		// other lexers still use default keywords
+		lexer = Lexer2.fromUtf8(java.nio.ByteBuffer.wrap(input.getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+		lexer.next();
+		lexer.setState(Lexer2State.TAG);
+		lexer.next();
+		Assert.assertEquals(TokenType2.KEYWORD, lexer.next());
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertEquals(TokenType2.KEYWORD, lexer.next());
+	}
+
+}
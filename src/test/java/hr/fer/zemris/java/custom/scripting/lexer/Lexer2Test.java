@@ -3,7 +3,11 @@ package hr.fer.zemris.java.custom.scripting.lexer;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -120,6 +124,355 @@ public class Lexer2Test {
 		}
 	}
 	
+	@Test
+	public void testReaderWithSmallBufferMatchesString() {
+		String textInput = loader("document7.txt") + "Escaped \\{$ and long text at the end\\";
+		for (int bufferSize = 1; bufferSize <= 16; bufferSize++) {
+			Lexer2 expected = new Lexer2(textInput);
+			Lexer2 actual = Lexer2.fromReader(new StringReader(textInput), bufferSize);
+			checkSameTokenStreams(expected, actual);
+		}
+	}
+	
+	@Test
+	public void testUtf8MatchesString() {
+		String textInput = loader("document7.txt") + "Čćžšđ €uro {$= čvor_1 \"Ž\\\"ž\" 𝄞 $}";
+		ByteBuffer bytes = ByteBuffer.allocateDirect(textInput.length() * 4);
+		bytes.put(textInput.getBytes(StandardCharsets.UTF_8)).flip();
+		
+		Lexer2 expected = new Lexer2(textInput);
+		Lexer2 actual = Lexer2.fromUtf8(bytes);
+		try {
+			checkSameTokenStreams(expected, actual);
+			Assert.fail("Invalid symbol was expected.");
+		} catch (LexerException ex) {
+			// both lexers must reject the same symbol
+			Assert.assertEquals("Invalid symbol in TAG. You entered: \uD834", ex.getMessage());
+		}
+	}
+	
+	@Test
+	public void testCursor() {
+		Lexer2 lexer = new Lexer2("Text {$ FOR i -12 \"3\" 4.5 $}");
+		
+		Assert.assertEquals(TokenType2.TEXT, lexer.next());
+		Assert.assertEquals(0, lexer.getTokenStart());
+		Assert.assertEquals(5, lexer.getTokenEnd());
+		Assert.assertEquals("Text ", lexer.getTextValue());
+		Assert.assertEquals(TokenType2.OPEN_BKRACKETS, lexer.next());
+		Assert.assertEquals('{', lexer.getCharValue());
+		lexer.setState(Lexer2State.TAG);
+		Assert.assertEquals(TokenType2.DOLLAR, lexer.next());
+		Assert.assertEquals(TokenType2.KEYWORD, lexer.next());
+		Assert.assertTrue(lexer.tokenEqualsIgnoreCase("for"));
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertFalse(lexer.tokenEqualsIgnoreCase("FOR"));
+		Assert.assertEquals(TokenType2.INTEGER, lexer.next());
+		Assert.assertEquals(-12L, lexer.getLongValue());
+		Assert.assertEquals(14, lexer.getTokenStart());
+		Assert.assertEquals(17, lexer.getTokenEnd());
+		Assert.assertEquals(TokenType2.TEXT, lexer.next());
+		Assert.assertEquals("3", lexer.getTextValue());
+		Assert.assertEquals(18, lexer.getTokenStart());
+		Assert.assertEquals(21, lexer.getTokenEnd());
+		Assert.assertEquals(TokenType2.DOUBLE, lexer.next());
+		Assert.assertEquals(4.5, lexer.getDoubleValue(), 0);
+		Assert.assertEquals(Double.valueOf(4.5), lexer.getToken().getValue());
+		Assert.assertSame(lexer.getToken(), lexer.getToken());
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void testCursorWrongValueType() {
+		Lexer2 lexer = new Lexer2("Text");
+		lexer.next();
+		lexer.getLongValue();
+	}
+	
+	@Test
+	public void testTagNumbersAndWords() {
+		Lexer2 lexer = new Lexer2("{$ -9223372036854775808 9223372036854775807 -x 1.5- v_1Ä2 $}");
+		lexer.next();
+		lexer.setState(Lexer2State.TAG);
+		Assert.assertEquals(TokenType2.DOLLAR, lexer.next());
+		Assert.assertEquals(TokenType2.INTEGER, lexer.next());
+		Assert.assertEquals(Long.MIN_VALUE, lexer.getLongValue());
+		Assert.assertEquals(TokenType2.INTEGER, lexer.next());
+		Assert.assertEquals(Long.MAX_VALUE, lexer.getLongValue());
+		Assert.assertEquals(TokenType2.OPERATOR, lexer.next());
+		Assert.assertEquals('-', lexer.getCharValue());
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertEquals("x", lexer.getTextValue());
+		Assert.assertEquals(TokenType2.DOUBLE, lexer.next());
+		Assert.assertEquals(1.5, lexer.getDoubleValue(), 1e-9);
+		Assert.assertEquals(TokenType2.OPERATOR, lexer.next());
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertEquals("v_1Ä2", lexer.getTextValue());
+		Assert.assertEquals(TokenType2.DOLLAR, lexer.next());
+		Assert.assertEquals(TokenType2.CLOSE_BRACKETS, lexer.next());
+	}
+	
+	@Test
+	public void testTextDelimitersAtEveryOffset() {
+		for (int prefix = 0; prefix < 20; prefix++) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < prefix; i++) {
+				sb.append((char) ('a' + i));
+			}
+			String text = sb + "\\{\\\\ bžc";
+			String input = text + "{$ $}" + sb + "\\";
+			ByteBuffer bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+			for (Lexer2 lexer : new Lexer2[] { new Lexer2(input), Lexer2.fromUtf8(bytes) }) {
+				Assert.assertEquals(TokenType2.TEXT, lexer.next());
+				Assert.assertEquals(text, lexer.getTextValue());
+				Assert.assertEquals(TokenType2.OPEN_BKRACKETS, lexer.next());
+				lexer.setState(Lexer2State.TAG);
+				Assert.assertEquals(TokenType2.DOLLAR, lexer.next());
+				Assert.assertEquals(TokenType2.DOLLAR, lexer.next());
+				Assert.assertEquals(TokenType2.CLOSE_BRACKETS, lexer.next());
+				lexer.setState(Lexer2State.TEXT);
+				Assert.assertEquals(TokenType2.TEXT, lexer.next());
+				Assert.assertEquals(sb + "\\", lexer.getTextValue());
+				Assert.assertEquals(TokenType2.EOF, lexer.next());
+			}
+		}
+	}
+	
+	@Test
+	public void testDoublesMatchParseDouble() {
+		java.util.Random random = new java.util.Random(42);
+		StringBuilder sb = new StringBuilder("{$");
+		java.util.List<String> numbers = new java.util.ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			String number = (random.nextInt(1 + i % 20) == 0 ? "0" : Long.toString(random.nextLong() & Long.MAX_VALUE >>> random.nextInt(63)))
+					+ "." + Long.toString(random.nextLong() & Long.MAX_VALUE >>> random.nextInt(63));
+			numbers.add(number);
+			sb.append(' ').append(number);
+		}
+		sb.append(" 123456789012345678901234567890.5 0.1 9007199254740993.0 $}");
+		numbers.add("123456789012345678901234567890.5");
+		numbers.add("0.1");
+		numbers.add("9007199254740993.0");
+		
+		Lexer2 lexer = new Lexer2(sb.toString());
+		lexer.next();
+		lexer.setState(Lexer2State.TAG);
+		lexer.next();
+		for (String number : numbers) {
+			Assert.assertEquals(TokenType2.DOUBLE, lexer.next());
+			Assert.assertEquals(number, Double.parseDouble(number), lexer.getDoubleValue(), 0);
+		}
+	}
+	
+	@Test(expected = LexerException.class)
+	public void testTagIntegerOverflow() {
+		Lexer2 lexer = new Lexer2("9223372036854775808");
+		lexer.setState(Lexer2State.TAG);
+		lexer.next();
+	}
+	
+	@Test
+	public void testBatchesMatchCursor() {
+		String text = "Text \\{$ FOR i -1 10 2 $} čž {$= i 2.5 \"s\\\"\" @sin * $}{$END$} end";
+		for (int batch = 1; batch < 8; batch++) {
+			Lexer2 cursor = new Lexer2(text);
+			Lexer2 lexer = Lexer2.fromUtf8(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+			Lexer2 chars = new Lexer2(text);
+			TokenType2[] types = new TokenType2[batch + 1];
+			int[] starts = new int[batch + 1];
+			int[] ends = new int[batch + 1];
+			long[] values = new long[batch + 1];
+			long[] charValues = new long[batch + 1];
+			
+			while (true) {
+				int count = lexer.nextTokens(types, starts, ends, values, 1, batch);
+				Assert.assertEquals(count, chars.nextTokens(new TokenType2[batch + 1], new int[batch + 1],
+						new int[batch + 1], charValues, 1, batch));
+				if (count == 0)
+					break;
+				for (int i = 1; i <= count; i++) {
+					TokenType2 type = cursor.next();
+					Assert.assertEquals(type, types[i]);
+					if (type == TokenType2.INTEGER)
+						Assert.assertEquals(cursor.getLongValue(), values[i]);
+					else if (type == TokenType2.DOUBLE)
+						Assert.assertEquals(cursor.getDoubleValue(), Double.longBitsToDouble(values[i]), 0);
+					else if (type == TokenType2.TEXT || type == TokenType2.VAR || type == TokenType2.KEYWORD) {
+						Assert.assertEquals(cursor.getTextValue(), lexer.getTextValue(values[i]));
+						Assert.assertEquals(cursor.getTextValue(), chars.getTextValue(charValues[i]));
+						Assert.assertTrue(chars.textEqualsIgnoreCase(charValues[i], cursor.getTextValue().toUpperCase()));
+					} else if (type != TokenType2.EOF)
+						Assert.assertEquals(cursor.getCharValue(), (char) values[i]);
+					
+					if (type == TokenType2.OPEN_BKRACKETS)
+						cursor.setState(Lexer2State.TAG);
+					else if (type == TokenType2.CLOSE_BRACKETS)
+						cursor.setState(Lexer2State.TEXT);
+				}
+			}
+			Assert.assertEquals(TokenType2.EOF, cursor.getTokenType());
+		}
+	}
+	
+	@Test
+	public void testBatchErrorIsThrownByNextBatch() {
+		Lexer2 lexer = new Lexer2("text {$= a # $}");
+		TokenType2[] types = new TokenType2[16];
+		int count = lexer.nextTokens(types, new int[16], new int[16], new long[16], 0, 16);
+		Assert.assertEquals(5, count);
+		Assert.assertEquals(TokenType2.VAR, types[4]);
+		try {
+			lexer.nextTokens(types, new int[16], new int[16], new long[16], 0, 16);
+			Assert.fail("LexerException was expected");
+		} catch (LexerException ex) {
+			Assert.assertEquals("Invalid symbol in TAG. You entered: #", ex.getMessage());
+		}
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testBatchFromReader() {
+		Lexer2.fromReader(new StringReader("text")).nextTokens(new TokenType2[1], new int[1], new int[1], new long[1], 0, 1);
+	}
+	
+	@Test
+	public void testPushedChunksMatchString() {
+		String text = "Text \\{$ \\\\ FOR {$ FOR i -1 10 2 $} čž {$= i 2.5 -3 - 1.25e \"s\\\"{$\" @sin * $}{$END$} end\\";
+		Random random = new Random(7);
+		for (int i = 0; i < 200; i++) {
+			checkPushedMatchesString(text, random, 1 + i % 8);
+		}
+		StringBuilder sb = new StringBuilder();
+		while (sb.length() < 100000) {
+			sb.append(text).append("{$= long_").append(sb.length()).append(" $}");
+		}
+		checkPushedMatchesString(sb.toString(), random, 3000);
+	}
+	
+	@Test
+	public void testPushedInvalidInput() {
+		String text = "text {$= a \"str\" #x $}";
+		for (int chunk = 1; chunk < 5; chunk++) {
+			try {
+				checkPushedMatchesString(text, new Random(chunk), chunk);
+				Assert.fail("LexerException was expected");
+			} catch (LexerException ex) {
+				Assert.assertEquals("Invalid symbol in TAG. You entered: #", ex.getMessage());
+			}
+		}
+	}
+	
+	@Test
+	public void testTextSequenceIsSliceOfInput() {
+		String text = "abc {$= var \"s\" $}";
+		Lexer2 lexer = new Lexer2(text);
+		Assert.assertEquals(TokenType2.TEXT, lexer.next());
+		CharSequence sequence = lexer.getTextSequence();
+		Assert.assertTrue(sequence instanceof TextSlice);
+		Assert.assertEquals("abc ", sequence.toString());
+		Assert.assertEquals("bc", sequence.subSequence(1, 3).toString());
+		Assert.assertEquals('c', sequence.charAt(2));
+		
+		lexer.next();
+		lexer.setState(Lexer2State.TAG);
+		lexer.next();
+		lexer.next();
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertEquals("var", lexer.getTextSequence().toString());
+		Assert.assertEquals(TokenType2.TEXT, lexer.next());
+		Assert.assertEquals("s", lexer.getTextSequence().toString());
+		
+		// input that is not a String is copied
+		lexer = Lexer2.fromReader(new StringReader(text));
+		lexer.next();
+		Assert.assertEquals("abc ", lexer.getTextSequence());
+	}
+	
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testTextSliceOutOfBounds() {
+		new TextSlice("abc", 1, 3).charAt(2);
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testFeedAfterEndOfInput() {
+		Lexer2 lexer = Lexer2.fromPushedInput();
+		lexer.endOfInput();
+		lexer.feed(new char[1], 0, 1);
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testFeedNotPushedLexer() {
+		new Lexer2("").feed(CharBuffer.wrap("text"));
+	}
+	
+	// Helper method that pushes text in random chunks and checks that returned tokens,
+	// including their values after later chunks were pushed, are the same as tokens of whole text.
+	private void checkPushedMatchesString(String text, Random random, int maxChunk) {
+		Lexer2 expected = new Lexer2(text);
+		Lexer2 pushed = Lexer2.fromPushedInput();
+		char[] chars = text.toCharArray();
+		int fed = 0;
+		int counter = 0;
+		while (true) {
+			TokenType2 type = pushed.next();
+			if (type == null) {
+				Assert.assertNull(pushed.getToken());
+				if (fed == chars.length) {
+					pushed.endOfInput();
+					continue;
+				}
+				int length = Math.min(1 + random.nextInt(maxChunk), chars.length - fed);
+				if (random.nextBoolean())
+					pushed.feed(chars, fed, length);
+				else
+					pushed.feed(CharBuffer.wrap(text, fed, fed + length));
+				fed += length;
+				continue;
+			}
+			
+			String msg = "Checking token " + counter++ + ":";
+			Assert.assertEquals(msg, expected.next(), type);
+			Assert.assertEquals(msg, expected.getTokenStart(), pushed.getTokenStart());
+			Assert.assertEquals(msg, expected.getTokenEnd(), pushed.getTokenEnd());
+			if (fed < chars.length) {
+				// value stays valid when more input is pushed
+				int length = Math.min(1 + random.nextInt(maxChunk), chars.length - fed);
+				pushed.feed(chars, fed, length);
+				fed += length;
+			}
+			Assert.assertEquals(msg, expected.getToken().getValue(), pushed.getToken().getValue());
+			if (type == TokenType2.EOF)
+				break;
+			
+			if (type == TokenType2.OPEN_BKRACKETS) {
+				expected.setState(Lexer2State.TAG);
+				pushed.setState(Lexer2State.TAG);
+			} else if (type == TokenType2.CLOSE_BRACKETS) {
+				expected.setState(Lexer2State.TEXT);
+				pushed.setState(Lexer2State.TEXT);
+			}
+		}
+	}
+	
+	
+	// Helper method for checking if two lexers generate the same stream of tokens,
+	// switching lexer state between TEXT and TAG the same way parser does.
+	private void checkSameTokenStreams(Lexer2 expectedLexer, Lexer2 actualLexer) {
+		int counter = 0;
+		while (true) {
+			Token2 expected = expectedLexer.nextToken();
+			Token2 actual = actualLexer.nextToken();
+			String msg = "Checking token " + counter + ":";
+			Assert.assertEquals(msg, expected.getType(), actual.getType());
+			Assert.assertEquals(msg, expected.getValue(), actual.getValue());
+			if (expected.getType() == TokenType2.EOF)
+				break;
+			
+			Lexer2State state = expected.getType() == TokenType2.OPEN_BKRACKETS ? Lexer2State.TAG
+					: expected.getType() == TokenType2.CLOSE_BRACKETS ? Lexer2State.TEXT : expectedLexer.getState();
+			expectedLexer.setState(state);
+			actualLexer.setState(state);
+			counter++;
+		}
+	}
 	
 	// Helper method for checking if lexer generates the same stream of tokens
 	// as the given stream.
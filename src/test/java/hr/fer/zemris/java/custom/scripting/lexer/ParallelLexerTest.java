@@ -0,0 +1,100 @@
+package hr.fer.zemris.java.custom.scripting.lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParallelLexerTest {
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+	@AfterClass
+	public static void shutdownPool() {
+		POOL.shutdown();
+	}
+
+	@Test
+	public void testSameAsSequential() {
+		Random random = new Random(3);
+		String[] parts = { "text ", "\\{$ escaped ", "\\\\", "{$= x 1.5 \"str {$= y $}\" @sin $}", "{$ FOR i 1 2 1 $}",
+				"{$END$}", "čćž ", "\n", "{$= \"\\\" {$ quoted\" $}" };
+		for (int i = 0; i < 200; i++) {
+			StringBuilder sb = new StringBuilder();
+			int count = random.nextInt(200);
+			for (int j = 0; j < count; j++) {
+				sb.append(parts[random.nextInt(parts.length)]);
+			}
+			String text = sb.toString();
+			for (int chunkSize = 1; chunkSize < 64; chunkSize *= 4) {
+				checkSame(new Lexer2(text), chunkSize);
+				checkSame(Lexer2.fromUtf8(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))), chunkSize);
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidInput() {
+		String text = "ok {$= a $} more {$= b $} {$= # $} after {$= c $}";
+		TokenList tokens = ParallelLexer.tokenize(new Lexer2(text), POOL, 1);
+		Assert.assertNotNull(tokens.getError());
+		Assert.assertEquals("Invalid symbol in TAG. You entered: #", tokens.getError().getMessage());
+		checkSame(new Lexer2(text), 1);
+	}
+
+	@Test
+	public void testReplay() {
+		String text = "a {$= x 2 3.5 \"s\" * @f $} b";
+		Lexer2 lexer = Lexer2.fromTokens(ParallelLexer.tokenize(text, POOL));
+		Assert.assertEquals(TokenType2.TEXT, lexer.next());
+		Assert.assertEquals("a ", lexer.getTextValue());
+		Assert.assertEquals(TokenType2.OPEN_BKRACKETS, lexer.next());
+		Assert.assertEquals(TokenType2.DOLLAR, lexer.next());
+		Assert.assertEquals(TokenType2.EQUALS, lexer.next());
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertEquals("x", lexer.getTextValue());
+		Assert.assertEquals(TokenType2.INTEGER, lexer.next());
+		Assert.assertEquals(2, lexer.getLongValue());
+		Assert.assertEquals(TokenType2.DOUBLE, lexer.next());
+		Assert.assertEquals(3.5, lexer.getDoubleValue(), 0);
+		Assert.assertEquals(TokenType2.TEXT, lexer.next());
+		Assert.assertEquals("s", lexer.getToken().getValue());
+		Assert.assertEquals(TokenType2.OPERATOR, lexer.next());
+		Assert.assertEquals('*', lexer.getCharValue());
+		Assert.assertEquals(TokenType2.AT, lexer.next());
+		Assert.assertEquals(TokenType2.VAR, lexer.next());
+		Assert.assertEquals(TokenType2.DOLLAR, lexer.next());
+		Assert.assertEquals(TokenType2.CLOSE_BRACKETS, lexer.next());
+		Assert.assertEquals(TokenType2.TEXT, lexer.next());
+		Assert.assertEquals(" b", lexer.getTextValue());
+		Assert.assertEquals(TokenType2.EOF, lexer.next());
+	}
+
+	private static void checkSame(Lexer2 lexer, int chunkSize) {
+		TokenList expected = lexer.newTokenList();
+		try {
+			lexer.startingAt(0).readTokens(expected, Integer.MAX_VALUE);
+		} catch (RuntimeException ex) {
+			expected.setError(ex);
+		}
+		TokenList actual = ParallelLexer.tokenize(lexer, POOL, chunkSize);
+
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.getType(i), actual.getType(i));
+			Assert.assertEquals(expected.getStart(i), actual.getStart(i));
+			Assert.assertEquals(expected.getEnd(i), actual.getEnd(i));
+			Assert.assertEquals(expected.value(i), actual.value(i));
+		}
+		if (expected.getError() == null) {
+			Assert.assertNull(actual.getError());
+		} else {
+			Assert.assertEquals(expected.getError().getMessage(), actual.getError().getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,264 @@
+package hr.fer.zemris.java.custom.scripting.nodes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementKind;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParserException;
+
+public class CompactDocumentTest {
+
+	@Test
+	public void testRoundTripOfDocuments() {
+		int parsed = 0;
+		for (int i = 1; i <= 10; i++) {
+			DocumentNode document;
+			try {
+				document = new SmartScriptParser(loader("document" + i + ".txt")).getDocumentNode();
+			} catch (SmartScriptParserException ex) {
+				continue;
+			}
+			parsed++;
+			CompactDocument compact = CompactDocument.of(document);
+			Assert.assertEquals(dump(document), dump(compact.toDocumentNode()));
+		}
+		Assert.assertTrue(parsed > 0);
+	}
+	
+	@Test
+	public void testViews() {
+		String text = "a {$ FOR i 1 10 2 $}b{$= i 2.5 \"s\" @sin * $}{$END$}{$= i $}";
+		CompactDocument compact = CompactDocument.of(new SmartScriptParser(text).getDocumentNode());
+		
+		Assert.assertEquals(6, compact.numberOfNodes());
+		Assert.assertEquals(NodeKind.DOCUMENT, compact.getKind(0));
+		Assert.assertEquals(3, compact.numberOfChildren(0));
+		Assert.assertEquals(text.length(), compact.getSourceLength(0));
+		Assert.assertEquals(-1, compact.getParent(0));
+		Assert.assertEquals(-1, compact.getNextSibling(0));
+		
+		Assert.assertEquals(1, compact.getFirstChild(0));
+		Assert.assertEquals("a ", compact.getText(1));
+		int forNode = compact.getNextSibling(1);
+		Assert.assertEquals(NodeKind.FOR_LOOP, compact.getKind(forNode));
+		Assert.assertEquals("{$ FOR i 1 10 2 $}".length(), compact.getHeaderLength(forNode));
+		Assert.assertEquals("{$END$}".length(), compact.getEndTagLength(forNode));
+		Assert.assertEquals(2, compact.numberOfChildren(forNode));
+		int first = compact.getFirstElement(forNode);
+		Assert.assertEquals(4, compact.numberOfElements(forNode));
+		Assert.assertEquals(ElementKind.VARIABLE, compact.getElementKind(first));
+		Assert.assertEquals("i", compact.getElementText(first));
+		Assert.assertEquals(10, compact.getLongValue(first + 2));
+		
+		int echo = compact.getNextSibling(compact.getFirstChild(forNode));
+		Assert.assertEquals(forNode, compact.getParent(echo));
+		Assert.assertEquals(-1, compact.getNextSibling(echo));
+		Assert.assertEquals(-1, compact.getFirstChild(echo));
+		first = compact.getFirstElement(echo);
+		Assert.assertEquals(5, compact.numberOfElements(echo));
+		Assert.assertEquals(2.5, compact.getDoubleValue(first + 1), 0);
+		Assert.assertEquals("s", compact.getElementText(first + 2));
+		Assert.assertEquals(ElementKind.FUNCTION, compact.getElementKind(first + 3));
+		Assert.assertEquals("sin", compact.getElementText(first + 3));
+		Assert.assertEquals("*", compact.getElementText(first + 4));
+		
+		int last = compact.getNextSibling(forNode);
+		Assert.assertEquals(5, last);
+		Assert.assertEquals(NodeKind.ECHO, compact.getKind(last));
+		Assert.assertEquals(-1, compact.getNextSibling(last));
+	}
+	
+	@Test
+	public void testBuiltTree() {
+		DocumentNode document = new DocumentNode();
+		ForLoopNode forNode = new ForLoopNode(new ElementVariable("x"), new ElementConstantInteger(-1),
+				new ElementConstantDouble(1e300), new ElementString(null));
+		forNode.addChildNode(new TextNode(null));
+		forNode.addChildNode(new EchoNode(new Element[0]));
+		document.addChildNode(forNode);
+		
+		DocumentNode copy = CompactDocument.of(document).toDocumentNode();
+		Assert.assertEquals(dump(document), dump(copy));
+		Assert.assertNull(((TextNode) copy.getChild(0).getChild(0)).getText());
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testWrongNodeKind() {
+		CompactDocument.of(new DocumentNode()).getText(0);
+	}
+	
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testInvalidNode() {
+		CompactDocument.of(new DocumentNode()).getKind(1);
+	}
+	
+	@Test
+	public void testBinaryRoundTrip() {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		java.util.List<String> expected = new java.util.ArrayList<>();
+		for (int i = 1; i <= 10; i++) {
+			DocumentNode document;
+			try {
+				document = new SmartScriptParser(loader("document" + i + ".txt")).getDocumentNode();
+			} catch (SmartScriptParserException ex) {
+				continue;
+			}
+			CompactDocument compact = CompactDocument.of(document);
+			int start = buffer.position();
+			compact.writeTo(buffer);
+			Assert.assertEquals(compact.binarySize(), buffer.position() - start);
+			expected.add(dump(document));
+		}
+		
+		// documents are read one after another from the same buffer
+		buffer.flip();
+		for (String dump : expected) {
+			Assert.assertEquals(dump, dump(CompactDocument.readFrom(buffer).toDocumentNode()));
+		}
+		Assert.assertFalse(buffer.hasRemaining());
+	}
+	
+	@Test
+	public void testBinaryFile() throws IOException {
+		String text = "Čćž {$ FOR i 1 10 2 $}b{$= i 2.5 \"s\" @sin * -3 $}{$END$}";
+		DocumentNode document = new SmartScriptParser(text).getDocumentNode();
+		Path path = Files.createTempFile("template", ".bin");
+		try {
+			CompactDocument.of(document).write(path);
+			Assert.assertEquals(dump(document), dump(CompactDocument.read(path).toDocumentNode()));
+			
+			byte[] bytes = Files.readAllBytes(path);
+			bytes[bytes.length / 2] ^= 1;
+			Files.write(path, bytes);
+			try {
+				CompactDocument.read(path);
+				Assert.fail();
+			} catch (IOException ex) {
+				Assert.assertTrue(ex.getMessage(), ex.getMessage().contains("Checksum"));
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+	
+	@Test
+	public void testInvalidBinaryForm() {
+		CompactDocument compact = CompactDocument.of(new SmartScriptParser("a {$= b $}").getDocumentNode());
+		ByteBuffer buffer = ByteBuffer.allocate(compact.binarySize());
+		compact.writeTo(buffer);
+		byte[] bytes = buffer.array();
+		
+		checkInvalid(Arrays.copyOf(bytes, bytes.length - 1), "truncated");
+		byte[] version = bytes.clone();
+		version[4] = 2;
+		checkInvalid(version, "version");
+		byte[] magic = bytes.clone();
+		magic[0] = 'x';
+		checkInvalid(magic, "Magic");
+	}
+	
+	@Test
+	public void testCorruptedArraysWithValidChecksum() {
+		byte[] text = binary("hello{$= x $}");
+		// payload of the text node follows the header, kinds, subtree ends and source lengths of 3 nodes
+		checkInvalid(withInt(text, 24 + 3 + 2 * 3 * 4 + 4, 9999), "Invalid text of node: 1");
+		// value of the only element follows kinds and first elements of 3 nodes and the element kind
+		checkInvalid(withInt(text, 24 + 3 + 3 * 3 * 4 + 4 * 4 + 1, 9999), "Invalid text of element: 0");
+		// first of the starts of 2 texts, which are followed by 6 characters of the pool
+		checkInvalid(withInt(text, text.length - 4 - 6 * 2 - 3 * 4, 1), "Invalid text starts");
+		// element of the ECHO node is given to the text node
+		checkInvalid(withInt(text, 24 + 3 + 3 * 3 * 4 + 2 * 4, 1), "Invalid elements of node: 1");
+		
+		byte[] forLoop = binary("{$ FOR i 1 2 1 $}{$END$}");
+		// variable of FOR loop follows kinds, subtree ends, source lengths, payloads and first elements of 2 nodes
+		forLoop[24 + 2 + 3 * 2 * 4 + 3 * 4] = (byte) ElementKind.STRING.ordinal();
+		checkInvalid(withChecksum(forLoop), "Invalid elements of node: 1");
+	}
+	
+	private static byte[] binary(String text) {
+		CompactDocument compact = CompactDocument.of(new SmartScriptParser(text).getDocumentNode());
+		ByteBuffer buffer = ByteBuffer.allocate(compact.binarySize());
+		compact.writeTo(buffer);
+		return buffer.array();
+	}
+	
+	private static byte[] withInt(byte[] bytes, int offset, int value) {
+		byte[] changed = bytes.clone();
+		ByteBuffer.wrap(changed).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		return withChecksum(changed);
+	}
+	
+	private static byte[] withChecksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - 4);
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length - 4, (int) crc.getValue());
+		return bytes;
+	}
+	
+	private static void checkInvalid(byte[] bytes, String message) {
+		try {
+			CompactDocument.readFrom(ByteBuffer.wrap(bytes));
+			Assert.fail();
+		} catch (IllegalArgumentException ex) {
+			Assert.assertTrue(ex.getMessage(), ex.getMessage().contains(message));
+		}
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNullDocument() {
+		CompactDocument.of(null);
+	}
+	
+	private static String dump(Node node) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(node.getClass().getSimpleName()).append('[').append(node.getSourceLength());
+		if (node instanceof TextNode) {
+			sb.append(' ').append(((TextNode) node).getText());
+		} else if (node instanceof EchoNode) {
+			for (Element element : ((EchoNode) node).getElements()) {
+				dump(element, sb);
+			}
+		} else if (node instanceof ForLoopNode) {
+			ForLoopNode forNode = (ForLoopNode) node;
+			dump(forNode.getVariable(), sb);
+			dump(forNode.getStartExpression(), sb);
+			dump(forNode.getEndExpression(), sb);
+			dump(forNode.getStepExpression(), sb);
+			sb.append(' ').append(forNode.getHeaderLength()).append(' ').append(forNode.getEndTagLength());
+		}
+		for (int i = 0; i < node.numberOfChildren(); i++) {
+			sb.append(' ').append(dump(node.getChild(i)));
+		}
+		return sb.append(']').toString();
+	}
+	
+	private static void dump(Element element, StringBuilder sb) {
+		sb.append(' ').append(element.getClass().getSimpleName()).append(':').append(element.asText());
+	}
+	
+	private static String loader(String filename) {
+		try {
+			return new String(Files.readAllBytes(Paths.get("src/main/resources", filename)), StandardCharsets.UTF_8);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+}
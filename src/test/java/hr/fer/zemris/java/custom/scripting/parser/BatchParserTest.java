@@ -0,0 +1,101 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static hr.fer.zemris.java.hw03.SmartScriptTester.createOriginalDocumentBody;
+
+public class BatchParserTest {
+
+	@Test
+	public void testResultsAreInInputOrder() throws InterruptedException {
+		List<String> documents = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			documents.add(i % 7 == 3 ? "{$ FOR i 1 " + i + " 1 $}" : "Text " + i + " {$ FOR i 1 " + i + " 1 $}{$= i $}{$END$}");
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			BatchParseResult result = new BatchParser(executor, 3).parse(documents);
+			Assert.assertEquals(documents.size(), result.size());
+			int errors = 0;
+			for (int i = 0; i < documents.size(); i++) {
+				if (i % 7 == 3) {
+					Assert.assertNull(result.getDocumentNode(i));
+					Assert.assertTrue(result.getError(i) instanceof SmartScriptParserException);
+					errors++;
+				} else {
+					Assert.assertNull(result.getError(i));
+					Assert.assertEquals(createOriginalDocumentBody(new SmartScriptParser(documents.get(i)).getDocumentNode()),
+							createOriginalDocumentBody(result.getDocumentNode(i)));
+				}
+			}
+			Assert.assertEquals(errors, result.getErrorCount());
+			Assert.assertEquals(documents.stream().mapToLong(String::length).sum(), result.getCharacters());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testParseFiles() throws IOException, InterruptedException {
+		Path directory = Files.createTempDirectory("templates");
+		try {
+			Path valid = Files.write(directory.resolve("valid.txt"), "Čćž {$= \"š\" $}".getBytes(StandardCharsets.UTF_8));
+			Path invalid = Files.write(directory.resolve("invalid.txt"), "{$END$}".getBytes(StandardCharsets.UTF_8));
+			Path missing = directory.resolve("missing.txt");
+			
+			BatchParseResult result = new BatchParser(Runnable::run, 2).parseFiles(Arrays.asList(missing, valid, invalid));
+			Assert.assertTrue(result.getError(0) instanceof IOException);
+			Assert.assertEquals("Čćž ", createOriginalDocumentBody(result.getDocumentNode(1)).substring(0, 4));
+			Assert.assertTrue(result.getError(2) instanceof SmartScriptParserException);
+			Assert.assertEquals(2, result.getErrorCount());
+			Assert.assertEquals("Čćž {$= \"š\" $}{$END$}".length(), result.getCharacters());
+			Assert.assertTrue(result.toString(), result.toString().endsWith(" M characters/s"));
+		} finally {
+			for (Path path : Files.newDirectoryStream(directory)) {
+				Files.delete(path);
+			}
+			Files.delete(directory);
+		}
+	}
+	
+	@Test
+	public void testErrorsAreRecorded() throws InterruptedException {
+		String[] documents = { "first", "overflow", "third {$= 1 $}" };
+		BatchParseResult result = new BatchParser(Runnable::run, 1).run(documents, (String document) -> {
+			if (document.equals("overflow"))
+				throw new StackOverflowError();
+			return document;
+		});
+		Assert.assertNotNull(result.getDocumentNode(0));
+		Assert.assertNull(result.getDocumentNode(1));
+		Assert.assertTrue(result.getError(1) instanceof StackOverflowError);
+		Assert.assertEquals("third {$= 1 $}", createOriginalDocumentBody(result.getDocumentNode(2)));
+		Assert.assertEquals(1, result.getErrorCount());
+	}
+	
+	@Test
+	public void testEmptyBatch() throws InterruptedException {
+		BatchParseResult result = new BatchParser(Runnable::run, 4).parse(Collections.emptyList());
+		Assert.assertEquals(0, result.size());
+		Assert.assertEquals(0, result.getErrorCount());
+	}
+	
+	@Test (expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		new BatchParser(Runnable::run, 0);
+	}
+	
+}
@@ -0,0 +1,167 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+
+public class ParsedTemplateCacheTest {
+
+	@Test
+	public void testHit() {
+		ParsedTemplateCache cache = new ParsedTemplateCache(1 << 20);
+		DocumentNode first = cache.get("text {$= a $}");
+		Assert.assertSame(first, cache.get(new String("text {$= a $}")));
+		Assert.assertNotSame(first, cache.get("other text"));
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(2, cache.size());
+		Assert.assertTrue(cache.getWeight() > 0);
+	}
+	
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		long weight = ParsedTemplateCache.weight("template 0", SmartScriptParser.sliced("template 0").getDocumentNode());
+		ParsedTemplateCache cache = new ParsedTemplateCache(3 * weight);
+		DocumentNode first = cache.get("template 0");
+		cache.get("template 1");
+		cache.get("template 2");
+		Assert.assertSame(first, cache.get("template 0"));
+		cache.get("template 3");
+		
+		Assert.assertEquals(1, cache.getEvictionCount());
+		Assert.assertEquals(3, cache.size());
+		Assert.assertEquals(3 * weight, cache.getWeight());
+		Assert.assertSame(first, cache.get("template 0"));
+		cache.get("template 1");
+		Assert.assertEquals(5, cache.getMissCount());
+	}
+	
+	@Test
+	public void testKeyIsWeighted() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("{$= a $}");
+		}
+		String template = sb.toString();
+		ParsedTemplateCache cache = new ParsedTemplateCache(1 << 20);
+		DocumentNode document = cache.get(template);
+		Assert.assertEquals(ParsedTemplateCache.weight(template, document), cache.getWeight());
+		Assert.assertTrue(cache.getWeight() > 2L * template.length());
+	}
+	
+	@Test
+	public void testSliceSourceIsChargedOnce() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("text {$= \"string\" $}");
+		}
+		String template = sb.toString();
+		DocumentNode sliced = SmartScriptParser.sliced(template).getDocumentNode();
+		long copied = ParsedTemplateCache.estimateHeapSize(new SmartScriptParser(template).getDocumentNode());
+		long slices = ParsedTemplateCache.estimateHeapSize(sliced);
+		
+		// slices keep the whole template alive, but it is included only once
+		Assert.assertTrue(slices > template.length());
+		Assert.assertTrue(slices < copied + template.length());
+		// source of slices is the key of the cached template, so it is not included again
+		Assert.assertTrue(ParsedTemplateCache.weight(template, sliced)
+				< slices + ParsedTemplateCache.keySize(template) - template.length());
+	}
+	
+	@Test
+	public void testTooHeavyTemplateIsNotKept() {
+		ParsedTemplateCache cache = new ParsedTemplateCache(10);
+		cache.get("text");
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(0, cache.getWeight());
+		Assert.assertEquals(1, cache.getEvictionCount());
+	}
+	
+	@Test
+	public void testInvalidTemplateIsNotCached() {
+		ParsedTemplateCache cache = new ParsedTemplateCache(1 << 20);
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.get("{$END$}");
+				Assert.fail("SmartScriptParserException was expected");
+			} catch (SmartScriptParserException ex) {
+				// expected
+			}
+		}
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals(2, cache.getMissCount());
+	}
+	
+	@Test
+	public void testConcurrentMissesAreCoalesced() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger parses = new AtomicInteger();
+		ParsedTemplateCache cache = new ParsedTemplateCache(1 << 20, text -> {
+			parses.incrementAndGet();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return new SmartScriptParser(text).getDocumentNode();
+		});
+		
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<DocumentNode>> results = new ArrayList<>();
+			results.add(executor.submit(() -> cache.get("shared")));
+			started.await();
+			for (int i = 1; i < 8; i++) {
+				results.add(executor.submit(() -> cache.get("shared")));
+			}
+			while (cache.getHitCount() < 7) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			
+			DocumentNode document = results.get(0).get(10, TimeUnit.SECONDS);
+			for (Future<DocumentNode> result : results) {
+				Assert.assertSame(document, result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertEquals(1, parses.get());
+		Assert.assertEquals(1, cache.getMissCount());
+	}
+	
+	@Test
+	public void testFileIsParsedAgainWhenChanged() throws IOException {
+		Path file = Files.createTempFile("template", ".txt");
+		try {
+			ParsedTemplateCache cache = new ParsedTemplateCache(1 << 20);
+			Files.write(file, "text {$= a $}".getBytes(StandardCharsets.UTF_8));
+			DocumentNode first = cache.get(file);
+			Assert.assertSame(first, cache.get(file));
+			
+			Files.write(file, "changed text {$= a $}".getBytes(StandardCharsets.UTF_8));
+			DocumentNode changed = cache.get(file);
+			Assert.assertNotSame(first, changed);
+			Assert.assertEquals(2, changed.numberOfChildren());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package hr.fer.zemris.java.custom.scripting.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static hr.fer.zemris.java.hw03.SmartScriptTester.createOriginalDocumentBody;
+
+public class SmartScriptParserPoolTest {
+
+	@Test
+	public void testParsersAreReused() {
+		SmartScriptParserPool pool = new SmartScriptParserPool(2);
+		SmartScriptParser first = pool.acquire();
+		SmartScriptParser second = pool.acquire();
+		SmartScriptParser third = pool.acquire();
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		Assert.assertEquals(2, pool.idleCount());
+		Assert.assertSame(first, pool.acquire());
+		
+		pool.parse("text {$= a $}");
+		Assert.assertEquals(1, pool.idleCount());
+	}
+	
+	@Test
+	public void testReleasedParserIsCleared() {
+		SmartScriptParserPool pool = new SmartScriptParserPool(1);
+		SmartScriptParser parser = pool.acquire();
+		parser.reset("text {$ FOR i 1 2 1 $}{$= i $}{$END$}");
+		pool.release(parser);
+		Assert.assertNull(parser.getDocument());
+		Assert.assertNull(parser.getDocumentNode());
+		
+		Assert.assertSame(parser, pool.acquire());
+		parser.reset("other {$= a $}");
+		Assert.assertEquals("other {$= a $}", createOriginalDocumentBody(parser.getDocumentNode()));
+	}
+	
+	@Test
+	public void testInvalidDocumentReleasesParser() {
+		SmartScriptParserPool pool = new SmartScriptParserPool(1);
+		try {
+			pool.parse("{$ FOR i 1 2 1 $}");
+			Assert.fail();
+		} catch (SmartScriptParserException ex) {
+			// expected
+		}
+		Assert.assertEquals(1, pool.idleCount());
+		Assert.assertEquals(1, pool.parse("text").numberOfChildren());
+	}
+	
+	@Test
+	public void testConcurrentParsing() throws Exception {
+		SmartScriptParserPool pool = new SmartScriptParserPool(2);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 500; i++) {
+						String document = "Text " + thread + " " + i + " {$ FOR i 1 " + i + " 1 $}{$= i \"" + thread
+								+ "\" @sin $}{$END$}";
+						String expected = createOriginalDocumentBody(new SmartScriptParser(document).getDocumentNode());
+						Assert.assertEquals(expected, createOriginalDocumentBody(pool.parse(document)));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertTrue(pool.idleCount() <= 2);
+	}
+	
+	@Test (expected = IllegalArgumentException.class)
+	public void testInvalidCapacity() {
+		new SmartScriptParserPool(0);
+	}
+	
+}
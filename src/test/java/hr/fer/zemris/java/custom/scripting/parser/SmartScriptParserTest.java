@@ -3,15 +3,28 @@ package hr.fer.zemris.java.custom.scripting.parser;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import hr.fer.zemris.java.custom.scripting.elems.Element;
 import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
 import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.lexer.ParallelLexer;
+import hr.fer.zemris.java.custom.scripting.lexer.TextSlice;
 import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
 import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.Node;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
 
 import static hr.fer.zemris.java.hw03.SmartScriptTester.createOriginalDocumentBody;
 
@@ -95,9 +108,527 @@ public class SmartScriptParserTest {
 		Assert.assertEquals(stepExpected, stepText);
 	}
 	
+	@Test
+	public void testParseFromReaderAndChannel() {
+		String document = loader("document7.txt");
+		String expected = createOriginalDocumentBody(new SmartScriptParser(document).getDocumentNode());
+		
+		DocumentNode fromReader = SmartScriptParser.fromReader(new StringReader(document)).getDocumentNode();
+		Assert.assertEquals(expected, createOriginalDocumentBody(fromReader));
+		
+		DocumentNode fromChannel = SmartScriptParser.fromChannel(Channels.newChannel(
+				this.getClass().getClassLoader().getResourceAsStream("document7.txt"))).getDocumentNode();
+		Assert.assertEquals(expected, createOriginalDocumentBody(fromChannel));
+	}
+	
+	@Test
+	public void testParseMappedFile() throws IOException, URISyntaxException {
+		String document = loader("document7.txt");
+		String expected = createOriginalDocumentBody(new SmartScriptParser(document).getDocumentNode());
+		
+		DocumentNode mapped = SmartScriptParser.fromFile(
+				Paths.get(this.getClass().getClassLoader().getResource("document7.txt").toURI())).getDocumentNode();
+		Assert.assertEquals(expected, createOriginalDocumentBody(mapped));
+	}
+	
+	@Test
+	public void testTagsAtStartAndNextToEachOther() {
+		String document = "{$FOR i 1 2 1 $}{$= i $}{$END$}text";
+		DocumentNode node = new SmartScriptParser(document).getDocumentNode();
+		
+		Assert.assertEquals(2, node.numberOfChildren());
+		Assert.assertEquals(1, node.getChild(0).numberOfChildren());
+		Assert.assertEquals("{$FOR i 1 2 1 $}{$= i $}{$END$}text", createOriginalDocumentBody(node));
+	}
 	
 	
 	// Helper method for getting text input from text files in resources
+	@Test
+	public void testSourceLengths() {
+		String document = loader("document7.txt");
+		DocumentNode node = new SmartScriptParser(document).getDocumentNode();
+		Assert.assertEquals(document.length(), node.getSourceLength());
+		
+		ForLoopNode forNode = (ForLoopNode) node.getChild(1);
+		Assert.assertEquals("{$ FOR i 1 10 1 $}".length(), forNode.getHeaderLength());
+		Assert.assertEquals("{$END$}".length(), forNode.getEndTagLength());
+		Assert.assertEquals(document.indexOf("\nAnother") - document.indexOf("{$ FOR"), forNode.getSourceLength());
+		Assert.assertEquals("{$= i $}".length(), forNode.getChild(1).getSourceLength());
+	}
+	
+	@Test
+	public void testParseParallelTokens() {
+		String document = loader("document7.txt");
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(2);
+		try {
+			SmartScriptParser parser = SmartScriptParser.fromTokens(ParallelLexer.tokenize(document, pool));
+			Assert.assertEquals(dump(new SmartScriptParser(document).getDocumentNode()), dump(parser.getDocumentNode()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testEditMatchesFullParse() {
+		String[] snippets = { "a", "\\", "{$= x 1 $}", "{$ FOR i 1 2 1 $}", "{$END$}", "}", "{", "$", "\"", " ", "{$", "$}" };
+		java.util.Random random = new java.util.Random(7);
+		SmartScriptParser parser = new SmartScriptParser(loader("document7.txt"));
+		int applied = 0;
+		for (int i = 0; i < 3000; i++) {
+			String document = parser.getDocument();
+			int offset = random.nextInt(document.length() + 1);
+			int removedLength = random.nextInt(3) == 0 ? random.nextInt(Math.min(12, document.length() - offset) + 1) : 0;
+			String inserted = random.nextInt(4) == 0 ? "" : snippets[random.nextInt(snippets.length)];
+			String edited = document.substring(0, offset) + inserted + document.substring(offset + removedLength);
+			
+			SmartScriptParser expected;
+			try {
+				expected = new SmartScriptParser(edited);
+			} catch (RuntimeException ex) {
+				expected = null;
+			}
+			String before = dump(parser.getDocumentNode());
+			try {
+				parser.edit(offset, removedLength, inserted);
+				Assert.assertNotNull("Edit of invalid document was applied: " + edited, expected);
+				applied++;
+			} catch (RuntimeException ex) {
+				Assert.assertNull("Valid edit was rejected: " + edited, expected);
+				Assert.assertEquals(document, parser.getDocument());
+				Assert.assertEquals(before, dump(parser.getDocumentNode()));
+				continue;
+			}
+			Assert.assertEquals(edited, parser.getDocument());
+			Assert.assertEquals(edited, dump(expected.getDocumentNode()), dump(parser.getDocumentNode()));
+		}
+		Assert.assertTrue(applied > 500);
+	}
+	
+	@Test
+	public void testEditOfEmptyDocument() {
+		SmartScriptParser parser = new SmartScriptParser("");
+		parser.edit(0, 0, "abc {$= x $}");
+		Assert.assertEquals("abc {$= x $}", parser.getDocument());
+		Assert.assertEquals(dump(new SmartScriptParser("abc {$= x $}").getDocumentNode()), dump(parser.getDocumentNode()));
+		
+		parser.edit(0, parser.getDocument().length(), "");
+		Assert.assertEquals("", parser.getDocument());
+		Assert.assertEquals(0, parser.getDocumentNode().numberOfChildren());
+		parser.edit(0, 0, "d");
+		Assert.assertEquals("d", parser.getDocument());
+	}
+	
+	@Test
+	public void testEditAfterResetToEmptyDocument() {
+		SmartScriptParser parser = new SmartScriptParser("text {$ FOR i 1 2 1 $}{$= i $}{$END$}");
+		parser.edit(0, 1, "T");
+		parser.reset("");
+		parser.edit(0, 0, "{$= y $} text");
+		Assert.assertEquals("{$= y $} text", parser.getDocument());
+		Assert.assertEquals(dump(new SmartScriptParser("{$= y $} text").getDocumentNode()), dump(parser.getDocumentNode()));
+	}
+	
+	@Test
+	public void testEditsFarApartMatchFullParse() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			sb.append("line ").append(i).append(" {$= v").append(i).append(" $}\n");
+		}
+		String document = sb.toString();
+		SmartScriptParser parser = new SmartScriptParser(document);
+		java.util.Random random = new java.util.Random(3);
+		for (int i = 0; i < 200; i++) {
+			// whole lines are inserted and removed, so the document stays valid
+			int offset = document.indexOf("line", random.nextInt(document.length()));
+			if (offset < 0)
+				offset = 0;
+			String inserted = i % 3 == 0 ? "" : sb.substring(0, sb.indexOf("\n", random.nextInt(300)) + 1);
+			int removedLength = i % 3 == 0 ? document.indexOf('\n', offset) + 1 - offset : 0;
+			parser.edit(offset, removedLength, inserted);
+			document = document.substring(0, offset) + inserted + document.substring(offset + removedLength);
+		}
+		Assert.assertEquals(document, parser.getDocument());
+		Assert.assertEquals(dump(new SmartScriptParser(document).getDocumentNode()), dump(parser.getDocumentNode()));
+	}
+	
+	@Test
+	public void testEditOfTagThatContinuesIntoNextNodes() {
+		String[][] edits = {
+				{ "{$= \"s\\\"t\" $}{$= D$}t\" $}", "6", "6", "" },
+				{ "{$= \"a\" $}{$= b $}c\" $} d", "6", "5", "" },
+				{ "a {$ FOR i 1 2 1 $}{$= \"x\" $}{$END$}{$= y $}\" $}", "22", "6", "" },
+				{ "{$= x $}{$= y $}\" $}", "3", "1", " \"" },
+		};
+		for (String[] edit : edits) {
+			String document = edit[0];
+			int offset = Integer.parseInt(edit[1]);
+			int removedLength = Integer.parseInt(edit[2]);
+			String edited = document.substring(0, offset) + edit[3] + document.substring(offset + removedLength);
+			
+			SmartScriptParser parser = new SmartScriptParser(document);
+			SmartScriptParser expected;
+			try {
+				expected = new SmartScriptParser(edited);
+			} catch (RuntimeException ex) {
+				expected = null;
+			}
+			try {
+				parser.edit(offset, removedLength, edit[3]);
+				Assert.assertNotNull("Edit of invalid document was applied: " + edited, expected);
+			} catch (RuntimeException ex) {
+				Assert.assertNull("Valid edit was rejected: " + edited, expected);
+				Assert.assertEquals(document, parser.getDocument());
+				continue;
+			}
+			Assert.assertEquals(edited, parser.getDocument());
+			Assert.assertEquals(edited, dump(expected.getDocumentNode()), dump(parser.getDocumentNode()));
+		}
+	}
+	
+	@Test
+	public void testLazyParseMatchesEager() {
+		for (int i = 1; i <= 9; i++) {
+			checkLazyMatchesEager(loader("document" + i + ".txt"));
+		}
+		
+		String[] snippets = { "text ", "\\", "{$= x 1 \"s\" $}", "{$ FOR i 1 2 1 $}", "{$ for j 3 4 1 $}", "{$END$}",
+				"{$ end $}", "{$ END x $}", "{$ FOR $}", "{", "}", "$", "{$ = @sin $}" };
+		java.util.Random random = new java.util.Random(11);
+		for (int i = 0; i < 3000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++) {
+				sb.append(snippets[random.nextInt(snippets.length)]);
+			}
+			checkLazyMatchesEager(sb.toString());
+		}
+	}
+	
+	@Test
+	public void testSlicedParseMatchesEager() {
+		for (int i = 1; i <= 9; i++) {
+			String document = loader("document" + i + ".txt");
+			String expected;
+			try {
+				expected = dump(new SmartScriptParser(document).getDocumentNode());
+			} catch (RuntimeException ex) {
+				continue;
+			}
+			Assert.assertEquals(document, expected, dump(SmartScriptParser.sliced(document).getDocumentNode()));
+		}
+	}
+	
+	@Test
+	public void testSlicedNodesShareDocument() {
+		String document = "a \\\\ b {$= \"str\\\"ing\" x $} tail";
+		DocumentNode node = SmartScriptParser.sliced(document).getDocumentNode();
+		DocumentNode expected = new SmartScriptParser(document).getDocumentNode();
+		
+		TextSlice text = (TextSlice) ((TextNode) node.getChild(0)).getTextSequence();
+		Assert.assertSame(document, text.getSource());
+		Assert.assertTrue(text.contentEquals(((TextNode) expected.getChild(0)).getText()));
+		
+		ElementString string = (ElementString) ((EchoNode) node.getChild(1)).getElements()[0];
+		Assert.assertSame(document, ((TextSlice) string.getValueSequence()).getSource());
+		Assert.assertEquals(((EchoNode) expected.getChild(1)).getElements()[0].asText(), string.asText());
+		Assert.assertEquals(" tail", ((TextNode) node.getChild(2)).getText());
+	}
+	
+	@Test
+	public void testLazyParseFromUtf8() {
+		String document = loader("document7.txt");
+		SmartScriptParser parser = SmartScriptParser.lazyFromUtf8(
+				java.nio.ByteBuffer.wrap(document.getBytes(StandardCharsets.UTF_8)));
+		ForLoopNode forNode = (ForLoopNode) parser.getDocumentNode().getChild(1);
+		Assert.assertFalse(forNode.hasParsedChildren());
+		Assert.assertEquals(dump(new SmartScriptParser(document).getDocumentNode()), dump(parser.getDocumentNode()));
+		Assert.assertTrue(forNode.hasParsedChildren());
+	}
+	
+	@Test
+	public void testLazyBodyErrorIsDeferred() {
+		String document = "a {$ FOR i 1 2 1 $} b {$ FOR $}{$ END $} c {$END$} d";
+		SmartScriptParser parser = SmartScriptParser.lazy(document);
+		DocumentNode node = parser.getDocumentNode();
+		Assert.assertEquals(3, node.numberOfChildren());
+		Assert.assertEquals(document.indexOf(" d") - document.indexOf("{$ FOR i"), node.getChild(1).getSourceLength());
+		
+		// error is thrown on every access until body is valid
+		for (int i = 0; i < 2; i++) {
+			try {
+				node.getChild(1).numberOfChildren();
+				Assert.fail();
+			} catch (SmartScriptParserException ex) {
+				// expected
+			}
+		}
+		try {
+			parser.validate();
+			Assert.fail();
+		} catch (SmartScriptParserException ex) {
+			// expected
+		}
+	}
+	
+	@Test (expected = SmartScriptParserException.class)
+	public void testLazyMissingEndTag() {
+		SmartScriptParser.lazy("{$ FOR i 1 2 1 $} a {$ FOR j 1 2 1 $} b {$END$}");
+	}
+	
+	@Test
+	public void testResetMatchesNewParser() {
+		SmartScriptParser parser = new SmartScriptParser();
+		Assert.assertNull(parser.getDocumentNode());
+		DocumentNode previous = null;
+		String previousDump = null;
+		for (int round = 0; round < 2; round++) {
+			for (int i = 9; i >= 1; i--) {
+				String document = loader("document" + i + ".txt");
+				String expected;
+				try {
+					expected = dump(new SmartScriptParser(document).getDocumentNode());
+				} catch (RuntimeException ex) {
+					expected = null;
+				}
+				
+				try {
+					parser.reset(document);
+					Assert.assertEquals(expected, dump(parser.getDocumentNode()));
+					Assert.assertEquals(document, parser.getDocument());
+				} catch (RuntimeException ex) {
+					Assert.assertNull(expected);
+					continue;
+				}
+				// tree of previous text is not changed by reuse
+				if (previous != null)
+					Assert.assertEquals(previousDump, dump(previous));
+				previous = parser.getDocumentNode();
+				previousDump = expected;
+			}
+		}
+	}
+	
+	@Test
+	public void testResetAfterLazyParse() {
+		String document = loader("document7.txt");
+		SmartScriptParser parser = SmartScriptParser.lazy(document);
+		DocumentNode lazyNode = parser.getDocumentNode();
+		parser.reset("{$ FOR x 1 2 1 $} other {$END$}");
+		Assert.assertEquals(dump(new SmartScriptParser(document).getDocumentNode()), dump(lazyNode));
+		Assert.assertEquals(1, parser.getDocumentNode().getChild(0).numberOfChildren());
+	}
+	
+	@Test
+	public void testDiagnoseCollectsAllErrors() {
+		String document = "a {$= x # $} b {$ FOR 1 $} c {$= y $} d {$ FOO $} e {$END$} f {}{$ FOR i 1 2 1 $} g";
+		SmartScriptParser parser = SmartScriptParser.diagnose(document);
+		List<ParseDiagnostic> errors = parser.getErrors();
+		Assert.assertEquals(errors.toString(), 6, errors.size());
+		Assert.assertEquals(document.indexOf('#'), errors.get(0).getOffset());
+		Assert.assertEquals(document.indexOf(" 1 $}") + 1, errors.get(1).getOffset());
+		Assert.assertEquals(document.indexOf("FOO"), errors.get(2).getOffset());
+		Assert.assertEquals(document.indexOf("{$END") + 6, errors.get(3).getOffset());
+		Assert.assertEquals(document.indexOf("{}") + 1, errors.get(4).getOffset());
+		Assert.assertEquals(document.length(), errors.get(5).getOffset());
+		
+		// valid parts are kept, loop that is not closed ends with the text
+		DocumentNode node = parser.getDocumentNode();
+		Assert.assertEquals(8, node.numberOfChildren());
+		Assert.assertEquals("y", ((EchoNode) node.getChild(3)).getElements()[0].asText());
+		ForLoopNode forNode = (ForLoopNode) node.getChild(7);
+		Assert.assertEquals(" g", ((TextNode) forNode.getChild(0)).getText());
+		Assert.assertEquals(document.length() - document.lastIndexOf("{$ FOR"), forNode.getSourceLength());
+		
+		try {
+			parser.edit(0, 1, "b");
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testDiagnoseMatchesEager() {
+		for (int i = 1; i <= 9; i++) {
+			checkDiagnoseMatchesEager(loader("document" + i + ".txt"));
+		}
+		
+		String[] snippets = { "text ", "\\", "{$= x 1 \"s\" $}", "{$ FOR i 1 2 1 $}", "{$END$}", "{$ END x $}",
+				"{$ FOR $}", "{", "}", "$", "{$ = @sin $}", "{$= # $}", "{$= 99999999999999999999 $}", "\"", "{$ @ $}" };
+		java.util.Random random = new java.util.Random(5);
+		for (int i = 0; i < 3000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(12);
+			for (int j = 0; j < length; j++) {
+				sb.append(snippets[random.nextInt(snippets.length)]);
+			}
+			checkDiagnoseMatchesEager(sb.toString());
+		}
+	}
+	
+	@Test
+	public void testHandlerEventsMatchTree() {
+		for (int i = 1; i <= 10; i++) {
+			String document = loader("document" + i + ".txt");
+			String expected;
+			try {
+				expected = events(new SmartScriptParser(document).getDocumentNode());
+			} catch (RuntimeException ex) {
+				continue;
+			}
+			
+			StringBuilder sb = new StringBuilder();
+			Assert.assertTrue(SmartScriptParser.parse(document, recorder(sb, Integer.MAX_VALUE)));
+			Assert.assertEquals(expected, sb.toString());
+			
+			sb.setLength(0);
+			Assert.assertTrue(SmartScriptParser.parse(new StringReader(document), recorder(sb, Integer.MAX_VALUE)));
+			Assert.assertEquals(expected, sb.toString());
+		}
+	}
+	
+	@Test
+	public void testHandlerStopsEarly() {
+		// text after the stop is not parsed, so its errors are not found
+		String document = "a {$ FOR i 1 2 1 $} b {$= i $} c {$END$} {$ FOR $}";
+		StringBuilder sb = new StringBuilder();
+		Assert.assertFalse(SmartScriptParser.parse(document, recorder(sb, 3)));
+		Assert.assertEquals("T[a ] F[i] T[ b ] ", sb.toString());
+		
+		int[] echoes = new int[1];
+		Assert.assertTrue(SmartScriptParser.parse("{$= a $}{$ FOR i 1 2 1 $}{$= b $}{$END$}", new SmartScriptHandler() {
+			@Override
+			public boolean onEcho(Element[] elements) {
+				echoes[0]++;
+				return true;
+			}
+		}));
+		Assert.assertEquals(2, echoes[0]);
+	}
+	
+	@Test
+	public void testHandlerInvalidDocument() {
+		for (String document : new String[] { "{$END$}", "{$ FOR i 1 2 1 $} a", "{$= # $}", "{$ FOO $}" }) {
+			try {
+				SmartScriptParser.parse(document, new SmartScriptHandler() {});
+				Assert.fail(document);
+			} catch (SmartScriptParserException | hr.fer.zemris.java.hw03.prob1.LexerException ex) {
+				// expected
+			}
+		}
+	}
+	
+	private static SmartScriptHandler recorder(StringBuilder sb, int limit) {
+		return new SmartScriptHandler() {
+			private int events;
+			
+			@Override
+			public boolean onText(String text) {
+				sb.append("T[").append(text).append("] ");
+				return ++events < limit;
+			}
+			
+			@Override
+			public boolean onForStart(ElementVariable variable, Element startExpression, Element endExpression,
+					Element stepExpression) {
+				sb.append("F[").append(variable.asText()).append("] ");
+				return ++events < limit;
+			}
+			
+			@Override
+			public boolean onEcho(Element[] elements) {
+				sb.append("E[");
+				for (Element element : elements) {
+					sb.append(element.asText()).append(',');
+				}
+				sb.append("] ");
+				return ++events < limit;
+			}
+			
+			@Override
+			public boolean onEnd() {
+				sb.append("END ");
+				return ++events < limit;
+			}
+		};
+	}
+	
+	private static String events(Node node) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < node.numberOfChildren(); i++) {
+			Node child = node.getChild(i);
+			if (child instanceof TextNode) {
+				sb.append("T[").append(((TextNode) child).getText()).append("] ");
+			} else if (child instanceof EchoNode) {
+				sb.append("E[");
+				for (Element element : ((EchoNode) child).getElements()) {
+					sb.append(element.asText()).append(',');
+				}
+				sb.append("] ");
+			} else {
+				sb.append("F[").append(((ForLoopNode) child).getVariable().asText()).append("] ");
+				sb.append(events(child)).append("END ");
+			}
+		}
+		return sb.toString();
+	}
+	
+	private static void checkDiagnoseMatchesEager(String document) {
+		String expected;
+		try {
+			expected = dump(new SmartScriptParser(document).getDocumentNode());
+		} catch (RuntimeException ex) {
+			expected = null;
+		}
+		
+		SmartScriptParser parser = SmartScriptParser.diagnose(document);
+		if (expected == null) {
+			Assert.assertFalse(document, parser.getErrors().isEmpty());
+		} else {
+			Assert.assertEquals(document, Collections.emptyList(), parser.getErrors());
+			Assert.assertEquals(document, expected, dump(parser.getDocumentNode()));
+		}
+	}
+	
+	private static void checkLazyMatchesEager(String document) {
+		String expected;
+		try {
+			expected = dump(new SmartScriptParser(document).getDocumentNode());
+		} catch (RuntimeException ex) {
+			expected = null;
+		}
+		
+		String actual;
+		try {
+			SmartScriptParser parser = SmartScriptParser.lazy(document);
+			parser.validate();
+			actual = dump(parser.getDocumentNode());
+		} catch (RuntimeException ex) {
+			actual = null;
+		}
+		Assert.assertEquals(document, expected, actual);
+	}
+	
+	private static String dump(Node node) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(node.getClass().getSimpleName()).append('[').append(node.getSourceLength());
+		if (node instanceof TextNode) {
+			sb.append(' ').append(((TextNode) node).getText());
+		} else if (node instanceof EchoNode) {
+			for (Element element : ((EchoNode) node).getElements()) {
+				sb.append(' ').append(element.asText());
+			}
+		} else if (node instanceof ForLoopNode) {
+			ForLoopNode forNode = (ForLoopNode) node;
+			sb.append(' ').append(forNode.getVariable().asText()).append(' ').append(forNode.getHeaderLength())
+					.append(' ').append(forNode.getEndTagLength());
+		}
+		for (int i = 0; i < node.numberOfChildren(); i++) {
+			sb.append(' ').append(dump(node.getChild(i)));
+		}
+		return sb.append(']').toString();
+	}
+	
 	private String loader(String filename) {
 		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		try (InputStream is = this.getClass().getClassLoader().getResourceAsStream(filename)) {